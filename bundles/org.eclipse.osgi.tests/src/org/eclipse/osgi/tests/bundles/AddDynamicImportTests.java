@@ -107,6 +107,58 @@ public class AddDynamicImportTests extends AbstractBundleTests {
 		});
 	}
 
+	@Test
+	public void testAddDynamicImportWithNotFoundCache() throws Exception {
+		ManifestElement[] packageImport = parseHeader(Constants.DYNAMICIMPORT_PACKAGE, "org.osgi.framework");
+		Map<String, String> cacheConfig = Collections.singletonMap(EquinoxConfiguration.PROP_CLASS_NOT_FOUND_CACHE_SIZE, "10");
+		runTest(1, cacheConfig, (a, b, threadPool) -> {
+			// the second miss is served from the not found cache
+			assertThrows(ClassNotFoundException.class, () -> b.loadClass("org.osgi.framework.Bundle"));
+			assertThrows(ClassNotFoundException.class, () -> b.loadClass("org.osgi.framework.Bundle"));
+			BundleLoader bl = ((ModuleClassLoader) b.adapt(BundleWiring.class).getClassLoader()).getBundleLoader();
+			// this should clear the not found cache
+			bl.addDynamicImportPackage(packageImport);
+			b.loadClass("org.osgi.framework.Bundle");
+		});
+	}
+
+	@Test
+	public void testAddDynamicImportWhileRecordingNotFound() throws Exception {
+		ManifestElement[] packageImport = parseHeader(Constants.DYNAMICIMPORT_PACKAGE, "org.osgi.framework");
+		Map<String, String> cacheConfig = Collections.singletonMap(EquinoxConfiguration.PROP_CLASS_NOT_FOUND_CACHE_SIZE, "10");
+		// test with four threads in parallel
+		runTest(4, cacheConfig, (a, b, threadPool) -> {
+			for (int i = 0; i < 1000; i++) {
+				BundleLoader bl = ((ModuleClassLoader) b.adapt(BundleWiring.class).getClassLoader()).getBundleLoader();
+
+				Callable<Void> addDynamic = () -> {
+					// this should clear the not found cache
+					bl.addDynamicImportPackage(packageImport);
+					return null;
+				};
+
+				Callable<Void> recordNotFound = () -> {
+					for (int j = 0; j < 10; j++) {
+						try {
+							b.loadClass("org.osgi.framework.Bundle");
+						} catch (ClassNotFoundException e) {
+							// expected until the dynamic import is added
+						}
+					}
+					return null;
+				};
+
+				List<Future<Void>> results = threadPool.invokeAll(Arrays.asList(recordNotFound, addDynamic, recordNotFound, recordNotFound));
+				for (Future<Void> result : results) {
+					result.get(); // propagate exceptions
+				}
+				// a miss recorded while the cache was invalidated must not hide the class
+				b.loadClass("org.osgi.framework.Bundle");
+				refresh(bl);
+			}
+		});
+	}
+
 	private void refresh(BundleLoader bl) {
 		Module module = bl.getWiring().getRevision().getRevisions().getModule();
 		module.getContainer().refresh(Collections.singletonList(module));
@@ -117,6 +169,10 @@ public class AddDynamicImportTests extends AbstractBundleTests {
 	}
 
 	private void runTest(int threads, ThrowingBiConsumer<Bundle, Bundle> testConsumer) throws Exception {
+		runTest(threads, Collections.emptyMap(), testConsumer);
+	}
+
+	private void runTest(int threads, Map<String, String> extraConfig, ThrowingBiConsumer<Bundle, Bundle> testConsumer) throws Exception {
 		File config = OSGiTestsActivator.getContext().getDataFile(getName());
 
 		Map<String, String> headersA = new HashMap<>();
@@ -138,6 +194,7 @@ public class AddDynamicImportTests extends AbstractBundleTests {
 		Map<String, String> fwkConfig = new HashMap<>();
 		fwkConfig.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
 		fwkConfig.put(EquinoxConfiguration.PROP_RESOLVER_BATCH_TIMEOUT, "10000000");
+		fwkConfig.putAll(extraConfig);
 		Equinox equinox = new Equinox(fwkConfig);
 		ExecutorService executor = Executors.newFixedThreadPool(threads);
 		try {
@@ -45,6 +45,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -2396,6 +2399,165 @@ public class ClassLoadingBundleTests extends AbstractBundleTests {
 		}
 	}
 
+	@Test
+	public void testDynamicImportLookups() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+
+		Map<String, String> importerHeaders = new HashMap<>();
+		importerHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		importerHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "dynamic.importer");
+		importerHeaders.put(Constants.DYNAMICIMPORT_PACKAGE, "dynamic.*");
+		Map<String, String> importerContent = new HashMap<>();
+		importerContent.put("importer/", null);
+		importerContent.put("importer/resource.txt", "importer");
+		File importerBundleFile = SystemBundleTests.createBundle(config, getName() + "-importer", importerHeaders, importerContent);
+
+		final int numPackages = 10;
+		Map<String, String> exporterHeaders = new HashMap<>();
+		exporterHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		exporterHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "dynamic.exporter");
+		Map<String, String> exporterContent = new HashMap<>();
+		StringBuilder exports = new StringBuilder();
+		for (int i = 0; i < numPackages; i++) {
+			if (i > 0) {
+				exports.append(", ");
+			}
+			exports.append("dynamic.pkg").append(i);
+			exporterContent.put("dynamic/pkg" + i + "/", null);
+			exporterContent.put("dynamic/pkg" + i + "/resource.txt", "pkg" + i);
+		}
+		exporterHeaders.put(Constants.EXPORT_PACKAGE, exports.toString());
+		exporterContent.put("other/", null);
+		exporterContent.put("other/resource.txt", "other");
+		File exporterBundleFile = SystemBundleTests.createBundle(config, getName() + "-exporter", exporterHeaders, exporterContent);
+
+		Bundle importer = getContext().installBundle(getName() + "-importer", new FileInputStream(importerBundleFile));
+		Bundle exporter = null;
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		try {
+			importer.start();
+			ClassLoader importerCL = importer.adapt(BundleWiring.class).getClassLoader();
+			assertNull("Found dynamic resource without a provider.", importerCL.getResource("dynamic/pkg0/resource.txt"));
+
+			exporter = getContext().installBundle(getName() + "-exporter", new FileInputStream(exporterBundleFile));
+			exporter.start();
+
+			// resolve the dynamic imports concurrently from many threads
+			List<Future<String>> results = new ArrayList<>();
+			for (int round = 0; round < 10; round++) {
+				for (int i = 0; i < numPackages; i++) {
+					final String resource = "dynamic/pkg" + i + "/resource.txt";
+					results.add(executor.submit(() -> {
+						URL url = importerCL.getResource(resource);
+						return url == null ? null : readURL(url);
+					}));
+				}
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals("Wrong dynamic resource.", "pkg" + (i % numPackages), results.get(i).get(30, TimeUnit.SECONDS));
+			}
+
+			List<BundleWire> packageWires = importer.adapt(BundleWiring.class).getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE);
+			assertEquals("Wrong number of dynamic wires.", numPackages, packageWires.size());
+			for (BundleWire wire : packageWires) {
+				assertEquals("Wrong provider.", exporter, wire.getProvider().getBundle());
+			}
+
+			assertNull("Found resource from a package that is not exported.", importerCL.getResource("other/resource.txt"));
+			assertEquals("Wrong local resource.", "importer", readURL(importerCL.getResource("importer/resource.txt")));
+		} finally {
+			executor.shutdown();
+			importer.uninstall();
+			if (exporter != null) {
+				exporter.uninstall();
+			}
+		}
+	}
+
+	@Test
+	public void testRequiredBundleLookups() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+
+		Map<String, String> baseHeaders = new HashMap<>();
+		baseHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		baseHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "required.base");
+		baseHeaders.put(Constants.EXPORT_PACKAGE, "base, split");
+		Map<String, String> baseContent = new HashMap<>();
+		baseContent.put("base/", null);
+		baseContent.put("base/resource.txt", "base");
+		baseContent.put("split/", null);
+		baseContent.put("split/base.txt", "base");
+		baseContent.put("internal/", null);
+		baseContent.put("internal/resource.txt", "internal");
+		File baseBundleFile = SystemBundleTests.createBundle(config, getName() + "-base", baseHeaders, baseContent);
+
+		Map<String, String> reexporterHeaders = new HashMap<>();
+		reexporterHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		reexporterHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "required.reexporter");
+		reexporterHeaders.put(Constants.REQUIRE_BUNDLE, "required.base; visibility:=reexport");
+		reexporterHeaders.put(Constants.EXPORT_PACKAGE, "reexporter");
+		Map<String, String> reexporterContent = new HashMap<>();
+		reexporterContent.put("reexporter/", null);
+		reexporterContent.put("reexporter/resource.txt", "reexporter");
+		File reexporterBundleFile = SystemBundleTests.createBundle(config, getName() + "-reexporter", reexporterHeaders, reexporterContent);
+
+		Map<String, String> requirerHeaders = new HashMap<>();
+		requirerHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		requirerHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "required.requirer");
+		requirerHeaders.put(Constants.REQUIRE_BUNDLE, "required.reexporter");
+		Map<String, String> requirerContent = new HashMap<>();
+		requirerContent.put("requirer/", null);
+		requirerContent.put("requirer/resource.txt", "requirer");
+		requirerContent.put("split/", null);
+		requirerContent.put("split/requirer.txt", "requirer");
+		File requirerBundleFile = SystemBundleTests.createBundle(config, getName() + "-requirer", requirerHeaders, requirerContent);
+
+		Map<String, String> fragmentHeaders = new HashMap<>();
+		fragmentHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		fragmentHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "required.fragment");
+		fragmentHeaders.put(Constants.FRAGMENT_HOST, "required.base");
+		fragmentHeaders.put(Constants.EXPORT_PACKAGE, "fragment");
+		Map<String, String> fragmentContent = new HashMap<>();
+		fragmentContent.put("fragment/", null);
+		fragmentContent.put("fragment/resource.txt", "fragment");
+		File fragmentBundleFile = SystemBundleTests.createBundle(config, getName() + "-fragment", fragmentHeaders, fragmentContent);
+
+		Bundle base = getContext().installBundle(getName() + "-base", new FileInputStream(baseBundleFile));
+		Bundle reexporter = getContext().installBundle(getName() + "-reexporter", new FileInputStream(reexporterBundleFile));
+		Bundle requirer = getContext().installBundle(getName() + "-requirer", new FileInputStream(requirerBundleFile));
+		Bundle fragment = null;
+		try {
+			requirer.start();
+			ClassLoader requirerCL = requirer.adapt(BundleWiring.class).getClassLoader();
+			assertEquals("Wrong reexported resource.", "base", readURL(requirerCL.getResource("base/resource.txt")));
+			assertEquals("Wrong required resource.", "reexporter", readURL(requirerCL.getResource("reexporter/resource.txt")));
+			assertEquals("Wrong local resource.", "requirer", readURL(requirerCL.getResource("requirer/resource.txt")));
+			// split packages search the required bundles first and then the local content
+			assertEquals("Wrong required split resource.", "base", readURL(requirerCL.getResource("split/base.txt")));
+			assertEquals("Wrong local split resource.", "requirer", readURL(requirerCL.getResource("split/requirer.txt")));
+			assertNull("Found resource from a package that is not exported.", requirerCL.getResource("internal/resource.txt"));
+			assertNull("Found resource from a missing package.", requirerCL.getResource("fragment/resource.txt"));
+
+			// a fragment adding an export to the required bundle must show up after refresh
+			fragment = getContext().installBundle(getName() + "-fragment", new FileInputStream(fragmentBundleFile));
+			refreshBundles(Collections.singleton(base));
+			requirer.start();
+			requirerCL = requirer.adapt(BundleWiring.class).getClassLoader();
+			assertEquals("Wrong fragment resource.", "fragment", readURL(requirerCL.getResource("fragment/resource.txt")));
+			assertEquals("Wrong reexported resource.", "base", readURL(requirerCL.getResource("base/resource.txt")));
+			assertNull("Found resource from a package that is not exported.", requirerCL.getResource("internal/resource.txt"));
+		} finally {
+			requirer.uninstall();
+			reexporter.uninstall();
+			base.uninstall();
+			if (fragment != null) {
+				fragment.uninstall();
+			}
+		}
+	}
+
 	void refreshBundles(Collection<Bundle> bundles) throws InterruptedException {
 		final CountDownLatch refreshSignal = new CountDownLatch(1);
 		getContext().getBundle(Constants.SYSTEM_BUNDLE_LOCATION).adapt(FrameworkWiring.class).refreshBundles(bundles, event -> {
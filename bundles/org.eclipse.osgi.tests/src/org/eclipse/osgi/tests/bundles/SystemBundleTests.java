@@ -16,6 +16,7 @@ package org.eclipse.osgi.tests.bundles;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -23,12 +24,15 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.Proxy;
@@ -39,6 +43,7 @@ import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.security.Permission;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
@@ -82,12 +87,17 @@ import org.eclipse.equinox.log.test.TestListener2;
 import org.eclipse.osgi.container.Module;
 import org.eclipse.osgi.framework.util.FilePath;
 import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.framework.BundleContextImpl;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.location.EquinoxLocations;
 import org.eclipse.osgi.launch.Equinox;
 import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.osgi.service.environment.EnvironmentInfo;
 import org.eclipse.osgi.service.urlconversion.URLConverter;
+import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.Storage;
+import org.eclipse.osgi.storage.Storage.InstallResult;
+import org.eclipse.osgi.storage.bundlefile.MRUBundleFileList;
 import org.eclipse.osgi.storage.url.reference.Handler;
 import org.eclipse.osgi.tests.OSGiTestsActivator;
 import org.eclipse.osgi.tests.security.BaseSecurityTest;
@@ -103,6 +113,8 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.SynchronousBundleListener;
@@ -2828,6 +2840,341 @@ public class SystemBundleTests extends AbstractBundleTests {
 		assertEquals("Wrong state for SystemBundle", Bundle.RESOLVED, equinox.getState()); //$NON-NLS-1$
 	}
 
+	@Test
+	public void testBulkInstall() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		File[] testBundles = createBundles(new File(config, "bundles"), 50); //$NON-NLS-1$
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_EQUINOX_INSTALL_THREAD_COUNT, "4");
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContextImpl systemContext = (BundleContextImpl) equinox.getBundleContext();
+			Bundle existing = systemContext.installBundle("file:///" + testBundles[0].getAbsolutePath());
+
+			List<String> locations = new ArrayList<>();
+			for (File testBundle : testBundles) {
+				locations.add("file:///" + testBundle.getAbsolutePath());
+			}
+			locations.add(5, "file:///" + new File(config, "does.not.exist").getAbsolutePath());
+
+			List<InstallResult> results = systemContext.installBundles(locations, null);
+			assertEquals("Wrong number of results.", locations.size(), results.size());
+			assertEquals("Wrong existing bundle.", existing, results.get(0).getGeneration().getRevision().getBundle());
+			assertNotNull("Expected a failure.", results.get(5).getException());
+			assertNull("Unexpected generation.", results.get(5).getGeneration());
+
+			long lastId = existing.getBundleId();
+			for (int i = 1; i < results.size(); i++) {
+				if (i == 5) {
+					continue;
+				}
+				InstallResult result = results.get(i);
+				assertNull("Unexpected failure: " + result.getException(), result.getException());
+				Bundle bundle = result.getGeneration().getRevision().getBundle();
+				assertEquals("Wrong location.", locations.get(i), bundle.getLocation());
+				assertTrue("Bundle ids are not in install order.", bundle.getBundleId() > lastId);
+				lastId = bundle.getBundleId();
+			}
+			assertEquals("Wrong number of bundles.", testBundles.length + 1, systemContext.getBundles().length);
+
+			// install content from URLs that differ from the locations
+			File contentDir = new File(config, "content"); //$NON-NLS-1$
+			contentDir.mkdirs();
+			List<String> contentLocations = new ArrayList<>();
+			List<URL> contents = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				contentLocations.add(getName() + i);
+				contents.add(createBundle(contentDir, "-c" + i, false, false).toURI().toURL()); //$NON-NLS-1$
+			}
+			results = systemContext.installBundles(contentLocations, contents);
+			assertEquals("Wrong number of results.", contentLocations.size(), results.size());
+			for (int i = 0; i < results.size(); i++) {
+				InstallResult result = results.get(i);
+				assertNull("Unexpected failure: " + result.getException(), result.getException());
+				Bundle bundle = result.getGeneration().getRevision().getBundle();
+				assertEquals("Wrong location.", contentLocations.get(i), bundle.getLocation());
+				assertEquals("Wrong content.", "bundle-c" + i, bundle.getSymbolicName());
+			}
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	@Test
+	public void testBulkInstallCleanup() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		File[] testBundles = createBundles(new File(config, "bundles"), 50); //$NON-NLS-1$
+		Map<String, String> invalidHeaders = new HashMap<>();
+		invalidHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		File invalid = createBundle(new File(config, "bundles"), "-invalid", invalidHeaders); //$NON-NLS-1$
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_EQUINOX_INSTALL_THREAD_COUNT, "4");
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContextImpl systemContext = (BundleContextImpl) equinox.getBundleContext();
+			List<String> locations = new ArrayList<>();
+			for (int i = 0; i < 25; i++) {
+				locations.add("file:///" + testBundles[i].getAbsolutePath());
+			}
+			// fails after its content has been copied into the storage
+			locations.add(10, "file:///" + invalid.getAbsolutePath());
+
+			List<InstallResult> results = systemContext.installBundles(locations, null);
+			assertNotNull("Expected a failure.", results.get(10).getException());
+			assertNull("Unexpected generation.", results.get(10).getGeneration());
+			assertEquals("Wrong number of bundles.", 26, systemContext.getBundles().length);
+			assertNoStrayBundleDirs(config, systemContext);
+
+			// interrupt the installing thread while the bundles are being prepared
+			locations.clear();
+			for (int i = 25; i < testBundles.length; i++) {
+				locations.add("file:///" + testBundles[i].getAbsolutePath());
+			}
+			Thread.currentThread().interrupt();
+			try {
+				results = systemContext.installBundles(locations, null);
+			} finally {
+				Thread.interrupted();
+			}
+			assertEquals("Wrong number of results.", locations.size(), results.size());
+			int installed = 0;
+			for (InstallResult result : results) {
+				if (result.getGeneration() != null) {
+					installed++;
+				}
+			}
+			assertEquals("Wrong number of bundles.", 26 + installed, systemContext.getBundles().length);
+			assertNoStrayBundleDirs(config, systemContext);
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	private static void assertNoStrayBundleDirs(File config, BundleContext systemContext) {
+		File storage = new File(config, "org.eclipse.osgi"); //$NON-NLS-1$
+		for (File bundleDir : storage.listFiles()) {
+			long bundleId;
+			try {
+				bundleId = Long.parseLong(bundleDir.getName());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			assertNotNull("Found stray bundle directory: " + bundleDir, systemContext.getBundle(bundleId));
+		}
+	}
+
+	@Test
+	public void testAsyncServiceEventOrder() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_SERVICE_EVENT_ASYNC, "true"); //$NON-NLS-1$
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			List<String> events1 = Collections.synchronizedList(new ArrayList<>());
+			List<String> events2 = Collections.synchronizedList(new ArrayList<>());
+			String filter = "(" + getName() + "=*)"; //$NON-NLS-1$ //$NON-NLS-2$
+			systemContext.addServiceListener(e -> events1.add(e.getType() + ":" + e.getServiceReference().getProperty(getName())), filter); //$NON-NLS-1$
+			systemContext.addServiceListener(e -> events2.add(e.getType() + ":" + e.getServiceReference().getProperty(getName())), filter); //$NON-NLS-1$
+
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), Integer.valueOf(i))));
+				expected.add(ServiceEvent.REGISTERED + ":" + i); //$NON-NLS-1$
+			}
+			for (List<String> events : Arrays.asList(events1, events2)) {
+				long waitUntil = System.currentTimeMillis() + 10000;
+				while (events.size() < expected.size() && System.currentTimeMillis() < waitUntil) {
+					Thread.sleep(10);
+				}
+				// each listener receives the events in the order they were published
+				assertEquals("Wrong events.", expected, events); //$NON-NLS-1$
+			}
+
+			// modifying a service delivers its pending REGISTERED event first
+			ServiceRegistration<Object> reg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), Integer.valueOf(10))));
+			reg.setProperties(new Hashtable<>(Collections.singletonMap(getName(), Integer.valueOf(11))));
+			expected.add(ServiceEvent.REGISTERED + ":10"); //$NON-NLS-1$
+			expected.add(ServiceEvent.MODIFIED + ":11"); //$NON-NLS-1$
+			assertEquals("Wrong events.", expected, events1); //$NON-NLS-1$
+			assertEquals("Wrong events.", expected, events2); //$NON-NLS-1$
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	@Test
+	public void testAsyncServiceEventUnregistering() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_SERVICE_EVENT_ASYNC, "true"); //$NON-NLS-1$
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			List<Integer> events = Collections.synchronizedList(new ArrayList<>());
+			List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+			systemContext.addServiceListener(e -> {
+				events.add(e.getType());
+				threads.add(Thread.currentThread());
+			}, "(" + getName() + "=true)"); //$NON-NLS-1$ //$NON-NLS-2$
+
+			for (int i = 0; i < 20; i++) {
+				events.clear();
+				threads.clear();
+				ServiceRegistration<Object> reg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), Boolean.TRUE)));
+				reg.unregister();
+				// UNREGISTERING is delivered before unregister returns and after REGISTERED
+				assertEquals("Wrong events.", Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.UNREGISTERING), events); //$NON-NLS-1$
+				assertEquals("UNREGISTERING not delivered on the unregistering thread.", Thread.currentThread(), threads.get(1)); //$NON-NLS-1$
+			}
+
+			events.clear();
+			ServiceRegistration<Object> reg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), Boolean.TRUE)));
+			reg.setProperties(new Hashtable<>(Collections.singletonMap(getName(), Boolean.FALSE)));
+			// MODIFIED_ENDMATCH is matched against the previous properties
+			assertEquals("Wrong events.", Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.MODIFIED_ENDMATCH), events); //$NON-NLS-1$
+			reg.unregister();
+			assertEquals("Wrong events.", Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.MODIFIED_ENDMATCH), events); //$NON-NLS-1$
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	@Test
+	public void testAsyncServiceEventRemovedListener() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_SERVICE_EVENT_ASYNC, "true"); //$NON-NLS-1$
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			CountDownLatch blocking = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			// block the dispatcher while it delivers the first batch
+			ServiceListener blocker = e -> {
+				if (e.getType() == ServiceEvent.REGISTERED) {
+					blocking.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			systemContext.addServiceListener(blocker, "(" + getName() + "=blocker)"); //$NON-NLS-1$ //$NON-NLS-2$
+			List<ServiceEvent> removedEvents = Collections.synchronizedList(new ArrayList<>());
+			ServiceListener removed = removedEvents::add;
+			systemContext.addServiceListener(removed, "(" + getName() + "=queued)"); //$NON-NLS-1$ //$NON-NLS-2$
+			List<ServiceEvent> keptEvents = Collections.synchronizedList(new ArrayList<>());
+			CountDownLatch kept = new CountDownLatch(1);
+			systemContext.addServiceListener(e -> {
+				keptEvents.add(e);
+				kept.countDown();
+			}, "(" + getName() + "=queued)"); //$NON-NLS-1$ //$NON-NLS-2$
+
+			ServiceRegistration<Object> blockerReg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), "blocker"))); //$NON-NLS-1$
+			assertTrue("Dispatcher did not deliver the event.", blocking.await(10, TimeUnit.SECONDS)); //$NON-NLS-1$
+			ServiceRegistration<Object> queuedReg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), "queued"))); //$NON-NLS-1$
+			systemContext.removeServiceListener(removed);
+			release.countDown();
+
+			assertTrue("Remaining listener did not receive the event.", kept.await(10, TimeUnit.SECONDS)); //$NON-NLS-1$
+			assertEquals("Wrong event.", queuedReg.getReference(), keptEvents.get(0).getServiceReference()); //$NON-NLS-1$
+			assertEquals("Removed listener received an event.", Collections.emptyList(), removedEvents); //$NON-NLS-1$
+			queuedReg.unregister();
+			blockerReg.unregister();
+			assertEquals("Removed listener received an event.", Collections.emptyList(), removedEvents); //$NON-NLS-1$
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	@Test
+	public void testAsyncServiceEventNoDeadlock() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_SERVICE_EVENT_ASYNC, "true"); //$NON-NLS-1$
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			Object lock = new Object();
+			CountDownLatch blocking = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch entered = new CountDownLatch(1);
+			// block the dispatcher so the next services are queued in the same batch
+			systemContext.addServiceListener(e -> {
+				if (e.getType() == ServiceEvent.REGISTERED) {
+					blocking.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "(" + getName() + "=blocker)"); //$NON-NLS-1$ //$NON-NLS-2$
+			// a listener of another service which needs the lock held by the unregistering thread
+			systemContext.addServiceListener(e -> {
+				entered.countDown();
+				synchronized (lock) {
+					// nothing
+				}
+			}, "(" + getName() + "=locking)"); //$NON-NLS-1$ //$NON-NLS-2$
+			List<Integer> events = Collections.synchronizedList(new ArrayList<>());
+			systemContext.addServiceListener(e -> events.add(e.getType()), "(" + getName() + "=unregistered)"); //$NON-NLS-1$ //$NON-NLS-2$
+
+			ServiceRegistration<Object> blockerReg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), "blocker"))); //$NON-NLS-1$
+			assertTrue("Dispatcher did not deliver the event.", blocking.await(10, TimeUnit.SECONDS)); //$NON-NLS-1$
+			ServiceRegistration<Object> lockingReg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), "locking"))); //$NON-NLS-1$
+			ServiceRegistration<Object> unregisteredReg = systemContext.registerService(Object.class, new Object(), new Hashtable<>(Collections.singletonMap(getName(), "unregistered"))); //$NON-NLS-1$
+
+			CountDownLatch unregistered = new CountDownLatch(1);
+			Thread unregistering = new Thread(() -> {
+				synchronized (lock) {
+					release.countDown();
+					try {
+						if (entered.await(10, TimeUnit.SECONDS)) {
+							// the dispatcher waits for the lock; unregister must not wait for the dispatcher
+							unregisteredReg.unregister();
+							unregistered.countDown();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, getName());
+			unregistering.setDaemon(true);
+			unregistering.start();
+			assertTrue("Unregister did not complete.", unregistered.await(10, TimeUnit.SECONDS)); //$NON-NLS-1$
+			assertEquals("Wrong events.", Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.UNREGISTERING), events); //$NON-NLS-1$
+
+			lockingReg.unregister();
+			blockerReg.unregister();
+			assertEquals("Wrong events.", Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.UNREGISTERING), events); //$NON-NLS-1$
+		} finally {
+			stop(equinox);
+		}
+	}
+
 	@Test
 	public void testMRUBundleFileListOverflow() throws Exception {
 		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
@@ -2885,6 +3232,70 @@ public class SystemBundleTests extends AbstractBundleTests {
 		assertTrue("Test took too long: " + timeTaken, timeTaken < 30);
 	}
 
+	@Test
+	public void testMRUBundleFileListEvictAndReopen() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+		final int limit = 10;
+		final int numBundles = 3 * limit;
+		File[] testBundleFiles = new File[numBundles];
+		for (int i = 0; i < numBundles; i++) {
+			Map<String, String> bundleHeaders = new HashMap<>();
+			bundleHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			bundleHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName() + i);
+			Map<String, String> bundleEntries = new HashMap<>();
+			bundleEntries.put("data/", null);
+			bundleEntries.put("data/content.txt", "content" + i);
+			testBundleFiles[i] = SystemBundleTests.createBundle(config, getName() + i, bundleHeaders, bundleEntries);
+		}
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_FILE_LIMIT, Integer.toString(limit));
+
+		Equinox equinox = new Equinox(configuration);
+		try {
+			equinox.start();
+			BundleContext systemContext = equinox.getBundleContext();
+			List<Bundle> bundles = new ArrayList<>();
+			for (File testBundleFile : testBundleFiles) {
+				bundles.add(systemContext.installBundle("file:///" + testBundleFile.getAbsolutePath()));
+			}
+			MRUBundleFileList mruList = ((Generation) bundles.get(0).adapt(Module.class).getCurrentRevision().getRevisionInfo()).getBundleInfo().getStorage().getMRUBundleFileList();
+			assertTrue("MRU list is not enabled.", mruList.isEnabled());
+
+			// hold a stream open on the first bundle file while it gets evicted
+			BufferedReader held = new BufferedReader(new InputStreamReader(bundles.get(0).getEntry("data/content.txt").openStream()));
+			try {
+				long evictions = mruList.getEvictionCount();
+				for (int i = 0; i < numBundles; i++) {
+					assertEquals("Wrong content.", "content" + i, readEntry(bundles.get(i), "data/content.txt"));
+				}
+				assertTrue("Expected evictions: " + mruList, mruList.getEvictionCount() - evictions >= numBundles - limit);
+				assertEquals("Wrong content for held stream.", "content0", held.readLine());
+			} finally {
+				held.close();
+			}
+
+			// all evicted bundle files must open again
+			long reopens = mruList.getReopenCount();
+			for (int i = 0; i < numBundles; i++) {
+				assertEquals("Wrong content after reopen.", "content" + i, readEntry(bundles.get(i), "data/content.txt"));
+			}
+			assertTrue("Expected reopens: " + mruList, mruList.getReopenCount() - reopens >= numBundles - limit);
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	private static String readEntry(Bundle bundle, String path) throws IOException {
+		URL entry = bundle.getEntry(path);
+		assertNotNull("Entry not found: " + path, entry);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(entry.openStream()))) {
+			return reader.readLine();
+		}
+	}
+
 	@Test
 	public void testZipBundleFileOpenLock() throws Exception {
 		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
@@ -2973,6 +3384,424 @@ public class SystemBundleTests extends AbstractBundleTests {
 		}
 	}
 
+	@Test
+	public void testBundleFileIndex() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+
+		Map<String, String> bundleHeaders = new HashMap<>();
+		bundleHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		bundleHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName());
+		Map<String, String> bundleEntries = new LinkedHashMap<>();
+		bundleEntries.put("dirA/", null);
+		bundleEntries.put("dirA/fileA", "fileA");
+		// file in a directory with no directory entry
+		bundleEntries.put("dirA/dirC/fileC", "fileC");
+		File testBundleFile = SystemBundleTests.createBundle(config, getName(), bundleHeaders, bundleEntries);
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_BUNDLE_FILE_INDEX, "true");
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		Bundle testBundle = equinox.getBundleContext().installBundle("file:///" + testBundleFile.getAbsolutePath());
+		assertNotNull("Resource not found.", testBundle.getResource("dirA/fileA"));
+		assertNotNull("Resource not found.", testBundle.getResource("/dirA/dirC/fileC"));
+		assertNotNull("Resource not found.", testBundle.getResource("dirA/dirC/"));
+		assertNull("Unexpected resource.", testBundle.getResource("dirA/dirD/fileD"));
+		assertNull("Unexpected resource.", testBundle.getResource("dirB/fileB"));
+		stop(equinox);
+
+		// the persisted index is used after restart
+		equinox = new Equinox(configuration);
+		equinox.start();
+		testBundle = equinox.getBundleContext().getBundle(testBundle.getBundleId());
+		assertNotNull("Resource not found.", testBundle.getResource("dirA/dirC/fileC"));
+		assertNull("Unexpected resource.", testBundle.getResource("dirA/dirD/fileD"));
+
+		// entry lookups are answered by the index for missing entries
+		assertNotNull("Entry not found.", testBundle.getEntry("dirA/fileA"));
+		assertNotNull("Entry not found.", testBundle.getEntry("/dirA/dirC/"));
+		assertNotNull("Entry not found.", testBundle.getEntry("dirA"));
+		assertNull("Unexpected entry.", testBundle.getEntry("dirA/fileB"));
+		assertNull("Unexpected entry.", testBundle.getEntry("dirA/dirC"));
+		assertNull("Unexpected entry.", testBundle.getEntry("META-INF/services/" + getName()));
+		stop(equinox);
+	}
+
+	@Test
+	public void testEntryIndex() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+
+		Map<String, String> bundleHeaders = new HashMap<>();
+		bundleHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		bundleHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName());
+		Map<String, String> bundleEntries = new LinkedHashMap<>();
+		bundleEntries.put("META-INF/services/test.Service", "test.Impl");
+		bundleEntries.put("dirA/dirC/fileC", "fileC");
+		File testBundleFile = SystemBundleTests.createBundle(config, getName(), bundleHeaders, bundleEntries);
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_BUNDLE_FILE_INDEX, "true");
+		configuration.put(EquinoxConfiguration.PROP_ENTRY_INDEX, "true");
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		Bundle testBundle = equinox.getBundleContext().installBundle("file:///" + testBundleFile.getAbsolutePath());
+		assertNotNull("Entries not found.", testBundle.findEntries("META-INF/services", "test.Service", false));
+		assertNotNull("Entries not found.", testBundle.findEntries("/dirA", "*", true));
+		assertNull("Unexpected entries.", testBundle.findEntries("dirB", "*", true));
+		stop(equinox);
+
+		// the persisted entry index is used after restart
+		equinox = new Equinox(configuration);
+		equinox.start();
+		testBundle = equinox.getBundleContext().getBundle(testBundle.getBundleId());
+		assertNotNull("Entries not found.", testBundle.findEntries("dirA/dirC/", "fileC", false));
+		assertNull("Unexpected entries.", testBundle.findEntries("META-INF/other", "*", true));
+		assertNotNull("Resource not found.", testBundle.getResource("META-INF/services/test.Service"));
+		stop(equinox);
+	}
+
+	@Test
+	public void testEntryIndexResources() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+
+		Map<String, String> services = Collections.singletonMap("META-INF/services/test.Service", "test.Impl"); //$NON-NLS-1$ //$NON-NLS-2$
+		Map<String, String> other = Collections.singletonMap("other/file", "file"); //$NON-NLS-1$ //$NON-NLS-2$
+		Map<String, String> headers = new HashMap<>();
+		headers.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, "host"); //$NON-NLS-1$
+		File hostFile = SystemBundleTests.createBundle(config, "host", headers, services); //$NON-NLS-1$
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, "hostFrag"); //$NON-NLS-1$
+		headers.put(Constants.FRAGMENT_HOST, "host"); //$NON-NLS-1$
+		File hostFragFile = SystemBundleTests.createBundle(config, "hostFrag", headers, services); //$NON-NLS-1$
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, "noServicesFrag"); //$NON-NLS-1$
+		headers.put(Constants.FRAGMENT_HOST, "noServices"); //$NON-NLS-1$
+		File noServicesFragFile = SystemBundleTests.createBundle(config, "noServicesFrag", headers, services); //$NON-NLS-1$
+		headers.remove(Constants.FRAGMENT_HOST);
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, "noServices"); //$NON-NLS-1$
+		File noServicesFile = SystemBundleTests.createBundle(config, "noServices", headers, other); //$NON-NLS-1$
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, "none"); //$NON-NLS-1$
+		File noneFile = SystemBundleTests.createBundle(config, "none", headers, other); //$NON-NLS-1$
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_BUNDLE_FILE_INDEX, "true"); //$NON-NLS-1$
+		configuration.put(EquinoxConfiguration.PROP_ENTRY_INDEX, "true"); //$NON-NLS-1$
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		BundleContext systemContext = equinox.getBundleContext();
+		List<Bundle> bundles = new ArrayList<>();
+		for (File file : Arrays.asList(hostFile, hostFragFile, noServicesFile, noServicesFragFile, noneFile)) {
+			bundles.add(systemContext.installBundle("file:///" + file.getAbsolutePath())); //$NON-NLS-1$
+		}
+		assertTrue("Bundles not resolved.", equinox.adapt(FrameworkWiring.class).resolveBundles(bundles)); //$NON-NLS-1$
+		assertEntryIndexResources(bundles);
+		stop(equinox);
+
+		// the persisted entry index is used after restart
+		equinox = new Equinox(configuration);
+		equinox.start();
+		List<Bundle> restarted = new ArrayList<>();
+		for (Bundle bundle : bundles) {
+			restarted.add(equinox.getBundleContext().getBundle(bundle.getBundleId()));
+		}
+		assertEntryIndexResources(restarted);
+		stop(equinox);
+	}
+
+	private void assertEntryIndexResources(List<Bundle> bundles) throws IOException {
+		String service = "META-INF/services/test.Service"; //$NON-NLS-1$
+		Bundle host = bundles.get(0);
+		Bundle noServices = bundles.get(2);
+		Bundle none = bundles.get(4);
+		// both the host and its fragment have the directory
+		assertEquals("Wrong number of resources.", 2, Collections.list(host.getResources(service)).size()); //$NON-NLS-1$
+		// only the fragment has the directory
+		assertEquals("Wrong number of resources.", 1, Collections.list(noServices.getResources(service)).size()); //$NON-NLS-1$
+		assertNull("Unexpected resources.", none.getResources(service)); //$NON-NLS-1$
+		assertNotNull("Resources not found.", none.getResources("other/file")); //$NON-NLS-1$
+
+		int local = BundleWiring.LISTRESOURCES_LOCAL;
+		assertEquals("Wrong resources.", Collections.singletonList(service), new ArrayList<>(host.adapt(BundleWiring.class).listResources("META-INF/services", "*", local))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Wrong resources.", Collections.singletonList(service), new ArrayList<>(noServices.adapt(BundleWiring.class).listResources("META-INF/services", "*", local))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Unexpected resources.", none.adapt(BundleWiring.class).listResources("META-INF/services", "*", local).isEmpty()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Wrong entries.", 1, Collections.list(noServices.findEntries("META-INF/services", "*", false)).size()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull("Unexpected entries.", none.findEntries("META-INF/services", "*", true)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testContentStore() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+		File store = new File(config, "store");
+
+		Map<String, String> bundleHeaders = new HashMap<>();
+		bundleHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		bundleHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName());
+		File testBundleFile = SystemBundleTests.createBundle(config, getName(), bundleHeaders);
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(Constants.FRAMEWORK_BSNVERSION, Constants.FRAMEWORK_BSNVERSION_MULTIPLE);
+		configuration.put(EquinoxConfiguration.PROP_CONTENT_STORE, store.getAbsolutePath());
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext bc = equinox.getBundleContext();
+			Bundle b1 = bc.installBundle("b1", new FileInputStream(testBundleFile));
+			Bundle b2 = bc.installBundle("b2", new FileInputStream(testBundleFile));
+			File content1 = ((Generation) b1.adapt(Module.class).getCurrentRevision().getRevisionInfo()).getContent();
+			File content2 = ((Generation) b2.adapt(Module.class).getCurrentRevision().getRevisionInfo()).getContent();
+			assertNotEquals("Same content file.", content1, content2);
+			// identical content is only shared when the file system supports hard links
+			assumeTrue("Hard links are not supported.", supportsLinks(config));
+			assertTrue("Content not shared.", Files.isSameFile(content1.toPath(), content2.toPath()));
+			assertEquals("Wrong symbolic name.", getName(), b2.getSymbolicName());
+			b1.uninstall();
+			assertTrue("Missing content.", content2.isFile());
+			assertEquals("Wrong symbolic name.", getName(), b2.getHeaders().get(Constants.BUNDLE_SYMBOLICNAME));
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	@Test
+	public void testContentStoreMismatch() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+		assumeTrue("Hard links are not supported.", supportsLinks(config));
+		File store = new File(config, "store");
+
+		Map<String, String> bundleHeaders = new HashMap<>();
+		bundleHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		bundleHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName());
+		File testBundleFile = SystemBundleTests.createBundle(config, getName(), bundleHeaders);
+
+		// plant a stored file named by the hash of the bundle with other content of the same size
+		byte[] bytes = Files.readAllBytes(testBundleFile.toPath());
+		StringBuilder hash = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+			hash.append(String.format("%02x", b & 0xFF));
+		}
+		File planted = new File(store, hash.substring(0, 2) + '/' + hash);
+		planted.getParentFile().mkdirs();
+		Files.write(planted.toPath(), new byte[bytes.length]);
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_CONTENT_STORE, store.getAbsolutePath());
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			Bundle b = equinox.getBundleContext().installBundle("b", new FileInputStream(testBundleFile));
+			File content = ((Generation) b.adapt(Module.class).getCurrentRevision().getRevisionInfo()).getContent();
+			assertFalse("Content linked to a stored file with other content.", Files.isSameFile(content.toPath(), planted.toPath()));
+			assertArrayEquals("Wrong content.", bytes, Files.readAllBytes(content.toPath()));
+			assertEquals("Wrong symbolic name.", getName(), b.getSymbolicName());
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	private static boolean supportsLinks(File dir) throws IOException {
+		File target = new File(dir, "link.target");
+		File link = new File(dir, "link");
+		try {
+			target.createNewFile();
+			Files.createLink(link.toPath(), target.toPath());
+			return true;
+		} catch (IOException | UnsupportedOperationException e) {
+			return false;
+		} finally {
+			link.delete();
+			target.delete();
+		}
+	}
+
+	@Test
+	public void testStorageJournal() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+		File storage = new File(config, "org.eclipse.osgi");
+		File journal = new File(storage, Storage.FRAMEWORK_JOURNAL);
+
+		Map<String, String> exporterHeaders = new HashMap<>();
+		exporterHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		exporterHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName() + ".exporter");
+		exporterHeaders.put(Constants.EXPORT_PACKAGE, "exporter");
+		File exporterFile = SystemBundleTests.createBundle(config, getName() + ".exporter", exporterHeaders);
+		exporterHeaders.put(Constants.BUNDLE_VERSION, "2.0");
+		File exporterFile2 = SystemBundleTests.createBundle(config, getName() + ".exporter2", exporterHeaders);
+		Map<String, String> importerHeaders = new HashMap<>();
+		importerHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		importerHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName() + ".importer");
+		importerHeaders.put(Constants.IMPORT_PACKAGE, "exporter");
+		File importerFile = SystemBundleTests.createBundle(config, getName() + ".importer", importerHeaders);
+		Map<String, String> otherHeaders = new HashMap<>();
+		otherHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		otherHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName() + ".other");
+		File otherFile = SystemBundleTests.createBundle(config, getName() + ".other", otherHeaders);
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_STORAGE_JOURNAL, "true");
+
+		// the first save is always a full snapshot
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		stop(equinox);
+		assertFalse("Unexpected journal.", journal.exists());
+		Map<String, Long> snapshot = getFrameworkInfos(storage);
+
+		// installs, resolves, start level and settings changes are journaled
+		equinox = new Equinox(configuration);
+		equinox.start();
+		BundleContext context = equinox.getBundleContext();
+		Bundle exporter = context.installBundle("file:///" + exporterFile.getAbsolutePath());
+		Bundle importer = context.installBundle("file:///" + importerFile.getAbsolutePath());
+		Bundle other = context.installBundle("file:///" + otherFile.getAbsolutePath());
+		assertTrue("Could not resolve.", equinox.adapt(FrameworkWiring.class).resolveBundles(Arrays.asList(exporter, importer)));
+		importer.adapt(BundleStartLevel.class).setStartLevel(3);
+		importer.start();
+		long exporterId = exporter.getBundleId();
+		long importerId = importer.getBundleId();
+		long otherId = other.getBundleId();
+		stop(equinox);
+		assertTrue("Missing journal.", journal.isFile());
+		assertEquals("Framework info was saved.", snapshot, getFrameworkInfos(storage));
+
+		// updates, refreshes and uninstalls are journaled
+		equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			context = equinox.getBundleContext();
+			exporter = context.getBundle(exporterId);
+			importer = context.getBundle(importerId);
+			assertEquals("Wrong importer state.", Bundle.RESOLVED, importer.getState());
+			assertEquals("Wrong exporter state.", Bundle.RESOLVED, exporter.getState());
+			BundleStartLevel bsl = importer.adapt(BundleStartLevel.class);
+			assertEquals("Wrong start level.", 3, bsl.getStartLevel());
+			assertTrue("Not persistently started.", bsl.isPersistentlyStarted());
+			assertImporterWiredTo(importer, exporter, Version.emptyVersion);
+
+			context.getBundle(otherId).uninstall();
+			try (FileInputStream in = new FileInputStream(exporterFile2)) {
+				exporter.update(in);
+			}
+			refreshBundles(equinox, Collections.singleton(exporter));
+			assertImporterWiredTo(importer, exporter, Version.valueOf("2.0"));
+		} finally {
+			stop(equinox);
+		}
+		assertTrue("Missing journal.", journal.isFile());
+		assertEquals("Framework info was saved.", snapshot, getFrameworkInfos(storage));
+
+		// the journal is still replayed with journaling disabled; the next save compacts it
+		configuration.remove(EquinoxConfiguration.PROP_STORAGE_JOURNAL);
+		equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			context = equinox.getBundleContext();
+			exporter = context.getBundle(exporterId);
+			importer = context.getBundle(importerId);
+			assertNull("Uninstalled bundle found.", context.getBundle(otherId));
+			assertEquals("Wrong importer state.", Bundle.RESOLVED, importer.getState());
+			assertEquals("Wrong exporter version.", Version.valueOf("2.0"), exporter.getVersion());
+			assertImporterWiredTo(importer, exporter, Version.valueOf("2.0"));
+			importer.adapt(BundleStartLevel.class).setStartLevel(4);
+		} finally {
+			stop(equinox);
+		}
+		assertFalse("Unexpected journal.", journal.exists());
+
+		equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			context = equinox.getBundleContext();
+			exporter = context.getBundle(exporterId);
+			importer = context.getBundle(importerId);
+			assertNull("Uninstalled bundle found.", context.getBundle(otherId));
+			assertEquals("Wrong start level.", 4, importer.adapt(BundleStartLevel.class).getStartLevel());
+			assertEquals("Wrong importer state.", Bundle.RESOLVED, importer.getState());
+			assertImporterWiredTo(importer, exporter, Version.valueOf("2.0"));
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	private static Map<String, Long> getFrameworkInfos(File storage) {
+		Map<String, Long> infos = new HashMap<>();
+		for (File file : storage.listFiles()) {
+			if (file.getName().startsWith(Storage.FRAMEWORK_INFO)) {
+				infos.put(file.getName(), file.lastModified());
+			}
+		}
+		return infos;
+	}
+
+	private static void assertImporterWiredTo(Bundle importer, Bundle exporter, Version version) {
+		List<BundleWire> wires = importer.adapt(BundleWiring.class).getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE);
+		assertEquals("Wrong number of wires.", 1, wires.size());
+		BundleWiring providerWiring = wires.get(0).getProviderWiring();
+		assertEquals("Wrong provider.", exporter, providerWiring.getBundle());
+		assertEquals("Wrong provider version.", version, providerWiring.getRevision().getVersion());
+		assertTrue("Provider wiring is not current.", providerWiring.isCurrent());
+		assertTrue("Missing provided wire.", providerWiring.getProvidedWires(PackageNamespace.PACKAGE_NAMESPACE).contains(wires.get(0)));
+	}
+
+	private static void refreshBundles(Equinox equinox, Collection<Bundle> bundles) throws InterruptedException {
+		CountDownLatch refreshed = new CountDownLatch(1);
+		equinox.adapt(FrameworkWiring.class).refreshBundles(bundles, e -> refreshed.countDown());
+		assertTrue("Refresh did not complete.", refreshed.await(30, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testMappedBundleFile() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		config.mkdirs();
+
+		Map<String, String> bundleHeaders = new HashMap<>();
+		bundleHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		bundleHeaders.put(Constants.BUNDLE_SYMBOLICNAME, getName());
+		Map<String, String> bundleEntries = new LinkedHashMap<>();
+		bundleEntries.put("dirA/", null);
+		bundleEntries.put("dirA/fileA", "fileA");
+		bundleEntries.put("dirA/dirC/fileC", "fileC");
+		File testBundleFile = SystemBundleTests.createBundle(config, getName(), bundleHeaders, bundleEntries);
+
+		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_BUNDLE_FILE_MAPPED, "true");
+
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			Bundle testBundle = equinox.getBundleContext().installBundle("file:///" + testBundleFile.getAbsolutePath());
+			assertEquals("Wrong symbolic name.", getName(), testBundle.getSymbolicName());
+			URL fileA = testBundle.getEntry("dirA/fileA");
+			assertNotNull("Entry not found.", fileA);
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(fileA.openStream()))) {
+				assertEquals("Wrong content.", "fileA", reader.readLine());
+			}
+			assertNotNull("Entry not found.", testBundle.getEntry("dirA/dirC/"));
+			assertNull("Unexpected entry.", testBundle.getEntry("dirB/fileB"));
+			List<String> paths = Collections.list(testBundle.getEntryPaths("dirA/"));
+			assertTrue("Missing path: " + paths, paths.contains("dirA/fileA"));
+			assertTrue("Missing path: " + paths, paths.contains("dirA/dirC/"));
+		} finally {
+			stop(equinox);
+		}
+	}
+
 	@Test
 	public void testContextFinderGetResource() throws Exception {
 		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
@@ -15,6 +15,7 @@ package org.eclipse.osgi.tests.container;
 
 import static java.util.jar.Attributes.Name.MANIFEST_VERSION;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -76,6 +77,7 @@ import org.eclipse.osgi.framework.util.ThreadInfoReport;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.report.resolution.ResolutionReport;
+import org.eclipse.osgi.report.resolution.ResolutionStatistics;
 import org.eclipse.osgi.tests.container.dummys.DummyCollisionHook;
 import org.eclipse.osgi.tests.container.dummys.DummyContainerAdaptor;
 import org.eclipse.osgi.tests.container.dummys.DummyDebugOptions;
@@ -291,6 +293,30 @@ public class TestModuleContainer extends AbstractTest {
 		Assert.assertNull("Unexpected resoltuion exception", report.getResolutionException());
 	}
 
+	@Test
+	public void testResolutionStatistics() throws BundleException, IOException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		Module systemBundle = installDummyModule("system.bundle.MF", Constants.SYSTEM_BUNDLE_LOCATION, container);
+		container.resolve(Arrays.asList(systemBundle), true);
+
+		Module b1 = installDummyModule("b1_v1.MF", "b1", container);
+		ResolutionReport report = container.resolve(Arrays.asList(b1), true);
+		Assert.assertNull("Unexpected resolution exception", report.getResolutionException());
+
+		ResolutionStatistics statistics = report.getStatistics();
+		Assert.assertNotNull("No statistics", statistics);
+		Assert.assertEquals("Wrong number of permutations", 1, statistics.getPermutationCount());
+		Assert.assertEquals("Wrong number of batch retries", 0, statistics.getBatchRetryCount());
+		Assert.assertTrue("No time spent finding providers for b1", statistics.getFindProvidersTimes().containsKey("b1_1.0.0 [" + b1.getId() + "]"));
+		Assert.assertTrue("No total time", statistics.getTotalTime() > 0);
+
+		List<ResolutionStatistics> history = container.getResolutionHistory().getStatistics();
+		Assert.assertEquals("Wrong number of resolve processes", 2, history.size());
+		Assert.assertSame("Wrong latest statistics", statistics, history.get(1));
+	}
+
 	@Test
 	public void testMultiHost() throws BundleException, IOException {
 		DummyContainerAdaptor adaptor = createDummyAdaptor();
@@ -1819,6 +1845,52 @@ public class TestModuleContainer extends AbstractTest {
 		Assert.assertEquals("n3 should resolve.", State.RESOLVED, uses_n3.getState());
 	}
 
+	@Test
+	public void testUsesOfResolvedProviders() throws BundleException, IOException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		installDummyModule("system.bundle.MF", Constants.SYSTEM_BUNDLE_LOCATION, Constants.SYSTEM_BUNDLE_SYMBOLICNAME, null, null, container);
+		Map<String, String> manifest = new HashMap<>();
+		manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, "a1");
+		manifest.put(Constants.EXPORT_PACKAGE, "a; version=1");
+		Module a1 = installDummyModule(manifest, "a1", container);
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, "a2");
+		manifest.put(Constants.EXPORT_PACKAGE, "a; version=2");
+		installDummyModule(manifest, "a2", container);
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, "b");
+		manifest.put(Constants.IMPORT_PACKAGE, "a; version=\"[1,2)\"");
+		manifest.put(Constants.EXPORT_PACKAGE, "b; uses:=a");
+		installDummyModule(manifest, "b", container);
+		manifest.remove(Constants.IMPORT_PACKAGE);
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, "c");
+		manifest.put(Constants.REQUIRE_BUNDLE, "a1; visibility:=reexport");
+		manifest.put(Constants.EXPORT_PACKAGE, "c; uses:=a");
+		installDummyModule(manifest, "c", container);
+		ResolutionReport report = container.resolve(null, false);
+		assertNull("Error resolving.", report.getResolutionException());
+
+		// the uses constraints of the resolved providers must still be enforced
+		// when resolving a new module into the resolved modules
+		for (String pkg : Arrays.asList("b", "c")) {
+			Map<String, String> consumer = new HashMap<>();
+			consumer.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			consumer.put(Constants.BUNDLE_SYMBOLICNAME, "consumer." + pkg);
+			consumer.put(Constants.IMPORT_PACKAGE, pkg + ", a");
+			Module module = installDummyModule(consumer, "consumer." + pkg, container);
+			report = container.resolve(Arrays.asList(module), true);
+			assertNull("Error resolving.", report.getResolutionException());
+			List<ModuleWire> wires = module.getCurrentRevision().getWiring().getRequiredModuleWires(PackageNamespace.PACKAGE_NAMESPACE);
+			assertEquals("Wrong number of wires.", 2, wires.size());
+			for (ModuleWire wire : wires) {
+				if ("a".equals(wire.getCapability().getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE))) {
+					assertEquals("Wrong provider of a.", a1.getCurrentRevision(), wire.getProvider());
+				}
+			}
+		}
+	}
+
 	@Test
 	public void testUsesTimeout() throws BundleException {
 		// Always want to go to zero threads when idle
@@ -1901,6 +1973,35 @@ public class TestModuleContainer extends AbstractTest {
 		return result;
 	}
 
+	@Test
+	public void testUsesPermutationThreads() throws BundleException {
+		Map<String, String> sequential = resolveUsesTimeoutManifests(Collections.emptyMap());
+		Map<String, String> speculative = resolveUsesTimeoutManifests(Collections.singletonMap(EquinoxConfiguration.PROP_RESOLVER_PERMUTATION_THREAD_COUNT, "4"));
+		Assert.assertEquals("Wrong wires found with speculative permutations.", sequential, speculative);
+	}
+
+	private Map<String, String> resolveUsesTimeoutManifests(Map<String, String> configuration) throws BundleException {
+		DummyContainerAdaptor adaptor = new DummyContainerAdaptor(new DummyCollisionHook(false), configuration);
+		ModuleContainer container = adaptor.getContainer();
+		for (int i = 1; i <= 50; i++) {
+			for (Map<String, String> manifest : getUsesTimeoutManifests("test" + i)) {
+				installDummyModule(manifest, manifest.get(Constants.BUNDLE_SYMBOLICNAME), container);
+			}
+		}
+		ResolutionReport report = container.resolve(container.getModules(), true);
+		Assert.assertNull("Found resolution errors.", report.getResolutionException());
+		Map<String, String> wires = new HashMap<>();
+		for (Module module : container.getModules()) {
+			Assert.assertEquals("Wrong state of module: " + module, State.RESOLVED, module.getState());
+			List<String> providers = new ArrayList<>();
+			for (ModuleWire wire : module.getCurrentRevision().getWiring().getRequiredModuleWires(null)) {
+				providers.add(wire.getProvider().getSymbolicName());
+			}
+			wires.put(module.getCurrentRevision().getSymbolicName(), providers.toString());
+		}
+		return wires;
+	}
+
 	@Test
 	public void testOptionalSubstituted() throws BundleException, IOException {
 		DummyContainerAdaptor adaptor = createDummyAdaptor();
@@ -2535,6 +2636,218 @@ public class TestModuleContainer extends AbstractTest {
 		assertNotNull("No requirer found.", requirerModule);
 		requirerAttrs = requirerModule.getCurrentRevision().getRequirements("optional").get(0).getAttributes();
 		assertEquals("Wrong requirer attrs", attrs, requirerAttrs);
+
+		// store the loaded database again before its persistent maps are decoded
+		bytes = new ByteArrayOutputStream();
+		data = new DataOutputStream(bytes);
+		adaptor.getDatabase().store(data, true);
+
+		adaptor = createDummyAdaptor();
+		container = adaptor.getContainer();
+		adaptor.getDatabase().load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		requirerModule = container.getModule("requirer");
+		assertNotNull("No requirer found.", requirerModule);
+		assertNotNull("Requirer is not resolved.", requirerModule.getCurrentRevision().getWiring());
+		requirerAttrs = requirerModule.getCurrentRevision().getRequirements("optional").get(0).getAttributes();
+		assertEquals("Wrong requirer attrs", attrs, requirerAttrs);
+		Map<String, String> exportDirectives = container.getModule("provider").getCurrentRevision().getCapabilities(PackageNamespace.PACKAGE_NAMESPACE).get(0).getDirectives();
+		assertEquals("Wrong export directives", "dir1", exportDirectives.get("dir1"));
+	}
+
+	@Test
+	public void testPersistenceParallelLoad() throws BundleException, IOException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		// install the system.bundle
+		installDummyModule("system.bundle.MF", Constants.SYSTEM_BUNDLE_LOCATION, Constants.SYSTEM_BUNDLE_SYMBOLICNAME, null, null, container);
+		// enough modules and wirings to be decoded in multiple batches
+		for (int i = 0; i < 300; i++) {
+			Map<String, String> manifest = new HashMap<>();
+			manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			manifest.put(Constants.BUNDLE_SYMBOLICNAME, "chain" + i);
+			manifest.put(Constants.EXPORT_PACKAGE, "chain" + i + "; version=" + i);
+			if (i > 0) {
+				manifest.put(Constants.IMPORT_PACKAGE, "chain" + (i - 1));
+			}
+			installDummyModule(manifest, "chain" + i, container);
+		}
+		ResolutionReport report = container.resolve(container.getModules(), true);
+		assertNull("Error resolving.", report.getResolutionException());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		adaptor.getDatabase().store(new DataOutputStream(bytes), true);
+
+		// reload into a new container which decodes with multiple threads
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			DummyContainerAdaptor loadAdaptor = createDummyAdaptor();
+			loadAdaptor.setResolverExecutor(executor);
+			ModuleContainer loadContainer = loadAdaptor.getContainer();
+			loadAdaptor.getDatabase().load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+			assertEquals("Wrong number of modules.", container.getModules().size(), loadContainer.getModules().size());
+			for (Module module : container.getModules()) {
+				Module loaded = loadContainer.getModule(module.getId());
+				assertNotNull("No module found: " + module, loaded);
+				assertEquals("Wrong location.", module.getLocation(), loaded.getLocation());
+				assertEquals("Wrong state: " + loaded, State.RESOLVED, loaded.getState());
+				ModuleRevision revision = module.getCurrentRevision();
+				ModuleRevision loadedRevision = loaded.getCurrentRevision();
+				assertEquals("Wrong symbolic name.", revision.getSymbolicName(), loadedRevision.getSymbolicName());
+				assertEquals("Wrong version.", revision.getVersion(), loadedRevision.getVersion());
+				List<ModuleWire> required = revision.getWiring().getRequiredModuleWires(null);
+				List<ModuleWire> loadedRequired = loadedRevision.getWiring().getRequiredModuleWires(null);
+				assertEquals("Wrong number of required wires.", required.size(), loadedRequired.size());
+				for (int i = 0; i < required.size(); i++) {
+					assertEquals("Wrong provider.", required.get(i).getProvider().getSymbolicName(), loadedRequired.get(i).getProvider().getSymbolicName());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSharedMetadata() throws BundleException, IOException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		List<Module> modules = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			Map<String, String> manifest = new HashMap<>();
+			manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			manifest.put(Constants.BUNDLE_SYMBOLICNAME, "shared" + i);
+			manifest.put(Constants.PROVIDE_CAPABILITY, "shared.cap; shared.cap=value; list:List<String>=\"a,b\"; uses:=\"p1,p2\"");
+			modules.add(installDummyModule(manifest, "shared" + i, container));
+		}
+		ModuleCapability cap0 = modules.get(0).getCurrentRevision().getModuleCapabilities("shared.cap").get(0);
+		ModuleCapability cap1 = modules.get(1).getCurrentRevision().getModuleCapabilities("shared.cap").get(0);
+		assertEquals("Wrong attributes.", Arrays.asList("a", "b"), cap0.getAttributes().get("list"));
+		Assert.assertSame("Attributes not shared.", cap0.getAttributes(), cap1.getAttributes());
+		Assert.assertSame("Directives not shared.", cap0.getDirectives(), cap1.getDirectives());
+		try {
+			cap0.getAttributes().put("other", "value");
+			fail("Attributes are modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testResolutionCache() throws BundleException, IOException {
+		Map<String, String> configuration = new HashMap<>();
+		configuration.put(EquinoxConfiguration.PROP_RESOLVER_CACHE, Boolean.TRUE.toString());
+		DummyContainerAdaptor adaptor = new DummyContainerAdaptor(new DummyCollisionHook(false), configuration);
+		ModuleContainer container = adaptor.getContainer();
+
+		// install the system.bundle
+		installDummyModule("system.bundle.MF", Constants.SYSTEM_BUNDLE_LOCATION, Constants.SYSTEM_BUNDLE_SYMBOLICNAME, null, null, container);
+		Map<String, String> providerManifest = new HashMap<>();
+		providerManifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		providerManifest.put(Constants.BUNDLE_SYMBOLICNAME, "provider");
+		providerManifest.put(Constants.EXPORT_PACKAGE, "provider; version=1");
+		Module provider = installDummyModule(providerManifest, "provider", container);
+		Map<String, String> consumerManifest = new HashMap<>();
+		consumerManifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		consumerManifest.put(Constants.BUNDLE_SYMBOLICNAME, "consumer");
+		consumerManifest.put(Constants.IMPORT_PACKAGE, "provider");
+		Module consumer = installDummyModule(consumerManifest, "consumer", container);
+
+		ResolutionReport report = container.resolve(Arrays.asList(consumer), true);
+		assertNull("Error resolving.", report.getResolutionException());
+		// the first refresh caches the resolution of the consumer; the second replays it
+		for (int i = 0; i < 2; i++) {
+			container.refresh(Collections.singleton(consumer));
+			assertEquals("Wrong state.", State.RESOLVED, consumer.getState());
+			List<ModuleWire> wires = consumer.getCurrentRevision().getWiring().getRequiredModuleWires(PackageNamespace.PACKAGE_NAMESPACE);
+			assertEquals("Wrong number of wires.", 1, wires.size());
+			assertEquals("Wrong provider.", provider.getCurrentRevision(), wires.get(0).getProvider());
+		}
+
+		// reload the database and the cache into a new container
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		adaptor.getDatabase().store(new DataOutputStream(bytes), true);
+		ByteArrayOutputStream cacheBytes = new ByteArrayOutputStream();
+		adaptor.getDatabase().storeResolutionCache(new DataOutputStream(cacheBytes));
+		DummyContainerAdaptor loadAdaptor = new DummyContainerAdaptor(new DummyCollisionHook(false), configuration);
+		ModuleContainer loadContainer = loadAdaptor.getContainer();
+		loadAdaptor.getDatabase().load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		loadAdaptor.getDatabase().loadResolutionCache(new DataInputStream(new ByteArrayInputStream(cacheBytes.toByteArray())));
+		Module loadedConsumer = loadContainer.getModule(consumer.getId());
+		loadContainer.refresh(Collections.singleton(loadedConsumer));
+		assertEquals("Wrong state.", State.RESOLVED, loadedConsumer.getState());
+		List<ModuleWire> wires = loadedConsumer.getCurrentRevision().getWiring().getRequiredModuleWires(PackageNamespace.PACKAGE_NAMESPACE);
+		assertEquals("Wrong number of wires.", 1, wires.size());
+		assertEquals("Wrong provider.", provider.getId(), wires.get(0).getProvider().getRevisions().getModule().getId());
+
+		// a new provider must invalidate the cached resolution
+		providerManifest.put(Constants.BUNDLE_SYMBOLICNAME, "provider2");
+		providerManifest.put(Constants.EXPORT_PACKAGE, "provider; version=2");
+		Module provider2 = installDummyModule(providerManifest, "provider2", container);
+		container.resolve(Arrays.asList(provider2), true);
+		container.refresh(Collections.singleton(consumer));
+		assertEquals("Wrong state.", State.RESOLVED, consumer.getState());
+		wires = consumer.getCurrentRevision().getWiring().getRequiredModuleWires(PackageNamespace.PACKAGE_NAMESPACE);
+		assertEquals("Wrong number of wires.", 1, wires.size());
+		assertEquals("Wrong provider.", provider2.getCurrentRevision(), wires.get(0).getProvider());
+	}
+
+	@Test
+	public void testInvalidResolutionCache() throws BundleException, IOException {
+		Map<String, String> configuration = new HashMap<>();
+		configuration.put(EquinoxConfiguration.PROP_RESOLVER_CACHE, Boolean.TRUE.toString());
+		DummyContainerAdaptor adaptor = new DummyContainerAdaptor(new DummyCollisionHook(false), configuration);
+		ModuleContainer container = adaptor.getContainer();
+
+		// install the system.bundle
+		installDummyModule("system.bundle.MF", Constants.SYSTEM_BUNDLE_LOCATION, Constants.SYSTEM_BUNDLE_SYMBOLICNAME, null, null, container);
+		Map<String, String> providerManifest = new HashMap<>();
+		providerManifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		providerManifest.put(Constants.BUNDLE_SYMBOLICNAME, "provider");
+		providerManifest.put(Constants.EXPORT_PACKAGE, "provider");
+		Module provider = installDummyModule(providerManifest, "provider", container);
+		Map<String, String> consumerManifest = new HashMap<>();
+		consumerManifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		consumerManifest.put(Constants.BUNDLE_SYMBOLICNAME, "consumer");
+		consumerManifest.put(Constants.IMPORT_PACKAGE, "provider");
+		Module consumer = installDummyModule(consumerManifest, "consumer", container);
+
+		// an entry with a provider outside of the revisions of the entry
+		ByteArrayOutputStream cacheBytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(cacheBytes);
+		out.writeInt(2); // version
+		out.writeInt(1); // entries
+		out.writeBoolean(true);
+		long[] ids = new long[] {consumer.getId()};
+		for (int i = 0; i < 5; i++) {
+			// roots, ids, counts, contents and wirings
+			out.writeInt(ids.length);
+			out.writeLong(i < 2 ? ids[0] : 0);
+		}
+		out.writeInt(1); // queries
+		out.writeInt(4);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeInt(5);
+		out.writeInt(0);
+		out.writeInt(0); // related
+		out.writeInt(0); // wires
+		out.flush();
+		try {
+			adaptor.getDatabase().loadResolutionCache(new DataInputStream(new ByteArrayInputStream(cacheBytes.toByteArray())));
+			fail("Expected an invalid resolution cache.");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse("Resolution cache is dirty.", adaptor.getDatabase().isResolutionCacheDirty());
+
+		ResolutionReport report = container.resolve(Arrays.asList(consumer), true);
+		assertNull("Error resolving.", report.getResolutionException());
+		List<ModuleWire> wires = consumer.getCurrentRevision().getWiring().getRequiredModuleWires(PackageNamespace.PACKAGE_NAMESPACE);
+		assertEquals("Wrong number of wires.", 1, wires.size());
+		assertEquals("Wrong provider.", provider.getCurrentRevision(), wires.get(0).getProvider());
 	}
 
 	@Test
@@ -3889,6 +4202,103 @@ public class TestModuleContainer extends AbstractTest {
 		assertEquals("Wrong last package wire.", dynamicImport2, pkgWires.get(pkgWires.size() - 1));
 	}
 
+	@Test
+	public void testCapabilityVersionRangeLookup() throws BundleException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		Module p1 = installProvider("p1", "pkg; version=1.0", "test.cap; test.cap=a; version:Version=1.0", container);
+		Module p15 = installProvider("p15", "pkg; version=1.5", "test.cap; test.cap=a; version:Version=1.5", container);
+		Module p2 = installProvider("p2", "pkg; version=2.0", "test.cap; test.cap=a; version:Version=2.0", container);
+		Module p3 = installProvider("p3", "pkg; version=3.0", "test.cap; test.cap=a", container);
+		installProvider("other", "other; version=2.0", "test.cap; test.cap=b; version:Version=2.0", container);
+
+		String pkg = PackageNamespace.PACKAGE_NAMESPACE;
+		assertEquals("Wrong providers for all versions.", Arrays.asList("p3", "p2", "p15", "p1"), //
+				findProviders(container, pkg, "(osgi.wiring.package=pkg)"));
+		assertEquals("Wrong providers for including range.", Arrays.asList("p3", "p2", "p15"), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version>=1.5)(version<=3.0))"));
+		assertEquals("Wrong providers for excluding range.", Arrays.asList("p2"), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(!(version<=1.5))(!(version>=3.0)))"));
+		assertEquals("Wrong providers for exact version.", Arrays.asList("p15"), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version=1.5))"));
+		assertEquals("Wrong providers for open range.", Arrays.asList("p3", "p2"), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version>=2.0))"));
+		assertEquals("Wrong providers for excluded version.", Arrays.asList("p3", "p15"), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version>=1.5)(!(version=2.0)))"));
+		assertEquals("Wrong providers for empty range.", Collections.emptyList(), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version>=3.0)(version<=1.0))"));
+		assertEquals("Wrong providers for missing range.", Collections.emptyList(), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version>=4.0))"));
+
+		// unversioned capabilities are matched against the filter regardless of the range
+		assertEquals("Wrong providers for generic capability.", Arrays.asList("p2", "p15", "p1", "p3"), //
+				findProviders(container, "test.cap", "(test.cap=a)"));
+		assertEquals("Wrong providers for generic range.", Arrays.asList("p2", "p15"), //
+				findProviders(container, "test.cap", "(&(test.cap=a)(version>=1.5))"));
+		assertEquals("Wrong providers for generic excluding range.", Arrays.asList("p1", "p3"), //
+				findProviders(container, "test.cap", "(&(test.cap=a)(!(version>=1.5)))"));
+
+		container.uninstall(p15);
+		assertEquals("Wrong providers after uninstall.", Arrays.asList("p2"), //
+				findProviders(container, pkg, "(&(osgi.wiring.package=pkg)(version>=1.5)(!(version>=3.0)))"));
+		assertEquals("Wrong providers after uninstall.", Arrays.asList("p2", "p1", "p3"), //
+				findProviders(container, "test.cap", "(test.cap=a)"));
+		container.uninstall(p3);
+		assertEquals("Wrong providers after uninstall.", Arrays.asList("p2", "p1"), //
+				findProviders(container, "test.cap", "(test.cap=a)"));
+		container.uninstall(p2);
+		container.uninstall(p1);
+		assertEquals("Wrong providers after uninstall.", Collections.emptyList(), //
+				findProviders(container, pkg, "(osgi.wiring.package=pkg)"));
+		assertEquals("Wrong providers after uninstall.", Arrays.asList("other"), //
+				findProviders(container, "test.cap", "(test.cap=b)"));
+	}
+
+	@Test
+	public void testServiceCapabilityLookup() throws BundleException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		Module s1 = installProvider("s1", null, "osgi.service; objectClass:List<String>=\"a.A,b.B\"", container);
+		installProvider("s2", null, "osgi.service; objectClass:List<String>=b.B", container);
+
+		assertEquals("Wrong providers for a.A.", Arrays.asList("s1"), //
+				findProviders(container, "osgi.service", "(objectClass=a.A)"));
+		assertEquals("Wrong providers for b.B.", Arrays.asList("s1", "s2"), //
+				findProviders(container, "osgi.service", "(objectClass=b.B)"));
+		assertEquals("Wrong providers for c.C.", Collections.emptyList(), //
+				findProviders(container, "osgi.service", "(objectClass=c.C)"));
+		assertEquals("Wrong providers for any service.", new HashSet<>(Arrays.asList("s1", "s2")), //
+				new HashSet<>(findProviders(container, "osgi.service", null)));
+
+		container.uninstall(s1);
+		assertEquals("Wrong providers for a.A after uninstall.", Collections.emptyList(), //
+				findProviders(container, "osgi.service", "(objectClass=a.A)"));
+		assertEquals("Wrong providers for b.B after uninstall.", Arrays.asList("s2"), //
+				findProviders(container, "osgi.service", "(objectClass=b.B)"));
+	}
+
+	private Module installProvider(String name, String exports, String capabilities, ModuleContainer container) throws BundleException {
+		Map<String, String> manifest = new HashMap<>();
+		manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, name);
+		if (exports != null) {
+			manifest.put(Constants.EXPORT_PACKAGE, exports);
+		}
+		manifest.put(Constants.PROVIDE_CAPABILITY, capabilities);
+		return installDummyModule(manifest, name, container);
+	}
+
+	private static List<String> findProviders(ModuleContainer container, String namespace, String filter) {
+		Map<String, String> directives = filter == null ? Collections.emptyMap() : Collections.singletonMap(Namespace.REQUIREMENT_FILTER_DIRECTIVE, filter);
+		List<String> result = new ArrayList<>();
+		for (BundleCapability provider : container.getFrameworkWiring().findProviders(ModuleContainer.createRequirement(namespace, directives, Collections.emptyMap()))) {
+			result.add(provider.getRevision().getSymbolicName());
+		}
+		return result;
+	}
+
 	private static void assertWires(List<ModuleWire> required, List<ModuleWire>... provided) {
 		for (ModuleWire requiredWire : required) {
 			for (List<ModuleWire> providedList : provided) {
@@ -16,6 +16,8 @@ package org.eclipse.osgi.tests.filter;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
@@ -29,6 +31,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
 import org.eclipse.osgi.framework.util.CaseInsensitiveDictionaryMap;
+import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.eclipse.osgi.tests.OSGiTestsActivator;
 import org.eclipse.osgi.tests.util.MapDictionary;
 import org.junit.Test;
@@ -41,6 +44,7 @@ import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.VersionRange;
 
 @RunWith(Parameterized.class)
 public class FilterTests {
@@ -336,6 +340,36 @@ public class FilterTests {
 		assertFalse("does match filter", f1.match(new DictionaryServiceReference(hash)));
 	}
 
+	@Test
+	public void testMixedValueTypes() throws InvalidSyntaxException {
+		Filter f1 = createFilter("(value=42)");
+		Filter f2 = createFilter("(value>=4.2)");
+		Dictionary<String, Object> hash = new Hashtable<>();
+		// match the same filters repeatedly against alternating value types
+		for (int i = 0; i < 3; i++) {
+			hash.put("value", Integer.valueOf(42));
+			assertTrue("does not match filter", f1.match(hash));
+			// 4.2 is not a valid integer value
+			assertFalse("does match filter", f2.match(hash));
+			hash.put("value", Double.valueOf(42));
+			assertTrue("does not match filter", f1.match(hash));
+			assertTrue("does not match filter", f2.match(hash));
+			hash.put("value", "42");
+			assertTrue("does not match filter", f1.match(hash));
+			assertTrue("does not match filter", f2.match(hash));
+			hash.put("value", new SampleComparable("42"));
+			assertTrue("does not match filter", f1.match(hash));
+			hash.put("value", new SampleObject("42"));
+			assertTrue("does not match filter", f1.match(hash));
+			hash.put("value", new SampleObject("43"));
+			assertFalse("does match filter", f1.match(hash));
+			hash.put("value", Boolean.TRUE);
+			assertFalse("does match filter", f1.match(hash));
+			hash.put("value", Double.valueOf(4));
+			assertFalse("does match filter", f2.match(hash));
+		}
+	}
+
 	@Test
 	public void testNullValueMatch() throws InvalidSyntaxException {
 		Dictionary<String, Object> nullProps = new MapDictionary<>();
@@ -363,6 +397,55 @@ public class FilterTests {
 				bundleContextFilter.getClass().equals(frameworkUtilFilter.getClass()));
 	}
 
+	// Equinox specific test to make sure parsed filters are shared
+	@Test
+	public void testSharedFilterInstances() throws InvalidSyntaxException {
+		String filterString = "(&(objectClass=" + name + ")(shared=true))";
+		Filter f1 = createFilter(filterString);
+		Filter f2 = createFilter(filterString);
+		assertSame("Filter was parsed again", f1, f2);
+		assertEquals("Wrong filter", filterString, f1.toString());
+	}
+
+	// Equinox specific test to make sure new filters are shared when the cache is full
+	@Test
+	public void testSharedFilterInstancesAfterEviction() throws InvalidSyntaxException {
+		// keep the filters strongly reachable so that they are not collected
+		List<Filter> filters = new ArrayList<>();
+		long hits = FilterImpl.getCacheHitCount();
+		long misses = FilterImpl.getCacheMissCount();
+		long evictions = FilterImpl.getCacheEvictionCount();
+		for (int i = 0; i < 5000; i++) {
+			filters.add(createFilter("(&(objectClass=" + name + ")(evict=" + i + "))"));
+		}
+		String filterString = "(&(objectClass=" + name + ")(evict=new))";
+		Filter f1 = createFilter(filterString);
+		Filter f2 = createFilter(filterString);
+		assertSame("Filter was parsed again", f1, f2);
+		assertEquals("Wrong number of filters", 5000, filters.size());
+		// other tests may use the cache concurrently
+		assertTrue("Missing cache hits: " + FilterImpl.getCacheStatistics(), FilterImpl.getCacheHitCount() - hits >= 1);
+		assertTrue("Missing cache misses: " + FilterImpl.getCacheStatistics(), FilterImpl.getCacheMissCount() - misses >= 5001);
+		assertTrue("Missing cache evictions: " + FilterImpl.getCacheStatistics(), FilterImpl.getCacheEvictionCount() - evictions >= 5001 - 4096);
+	}
+
+	// Equinox specific test for the version ranges used to look up capabilities
+	@Test
+	public void testStandardOSGiVersionRange() throws InvalidSyntaxException {
+		assertEquals(new VersionRange("[1.0,2.0)"), getVersionRange("(&(osgi.wiring.package=a)(version>=1.0)(!(version>=2.0)))"));
+		assertEquals(new VersionRange("(1.0,2.0]"), getVersionRange("(&(osgi.wiring.package=a)(!(version<=1.0))(version<=2.0))"));
+		assertEquals(new VersionRange("[1.5,1.5]"), getVersionRange("(&(osgi.wiring.package=a)(version=1.5))"));
+		assertEquals(new VersionRange("1.0"), getVersionRange("(&(osgi.wiring.package=a)(version>=1.0)(x=1))"));
+		assertNull(getVersionRange("(osgi.wiring.package=a)"));
+		assertNull(getVersionRange("(&(osgi.wiring.package=a)(!(version=1.5)))"));
+		assertNull(getVersionRange("(&(osgi.wiring.package=a)(|(version>=1.0)(x=1)))"));
+		assertNull(getVersionRange("(&(osgi.wiring.package=a)(!(&(version>=1.0)(version<=2.0))))"));
+	}
+
+	private VersionRange getVersionRange(String filterString) throws InvalidSyntaxException {
+		return ((FilterImpl) createFilter(filterString)).getStandardOSGiVersionRange("version");
+	}
+
 	private static class SampleComparable implements Comparable<SampleComparable> {
 		private int value = -1;
 
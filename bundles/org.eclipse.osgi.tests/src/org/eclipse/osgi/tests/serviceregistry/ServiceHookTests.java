@@ -39,6 +39,7 @@ import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.hooks.service.EventHook;
+import org.osgi.framework.hooks.service.EventListenerHook;
 import org.osgi.framework.hooks.service.FindHook;
 import org.osgi.framework.hooks.service.ListenerHook;
 
@@ -593,4 +594,66 @@ public class ServiceHookTests extends AbstractBundleTests {
 			}
 		}
 	}
+
+	@Test
+	public void testEventListenerHookSystemListeners() throws InvalidSyntaxException {
+		final String testMethodName = getName();
+		// test that an EventListenerHook cannot hide events from system bundle listeners
+		Runnable runIt = () -> {
+			// nothing
+		};
+		final BundleContext systemContext = OSGiTestsActivator.getContext().getBundle(Constants.SYSTEM_BUNDLE_LOCATION).getBundleContext();
+		final List<String> events = new ArrayList<>();
+		final String filterString1 = "(&(objectClass=java.lang.Runnable)(name=" + testMethodName + "))"; //$NON-NLS-1$ //$NON-NLS-2$
+		final String filterString2 = "(name=" + testMethodName + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		final String filterString3 = "(&(objectClass=java.lang.Object)(name=" + testMethodName + "))"; //$NON-NLS-1$ //$NON-NLS-2$
+		ServiceListener sl1 = event -> events.add("sl1"); //$NON-NLS-1$
+		ServiceListener sl2 = event -> events.add("sl2"); //$NON-NLS-1$
+		ServiceListener sl3 = event -> events.add("sl3"); //$NON-NLS-1$
+		systemContext.addServiceListener(sl1, filterString1);
+		systemContext.addServiceListener(sl2, filterString2);
+		systemContext.addServiceListener(sl3, filterString3);
+
+		final int[] hookCalled = new int[] {0};
+		EventListenerHook hook = (event, listeners) -> {
+			if (!testMethodName.equals(event.getServiceReference().getProperty("name"))) { //$NON-NLS-1$
+				return;
+			}
+			hookCalled[0]++;
+			Collection<ListenerHook.ListenerInfo> systemListeners = listeners.get(systemContext);
+			assertNotNull("no system listeners", systemListeners); //$NON-NLS-1$
+			// remove a single system listener instead of the whole context
+			for (Iterator<ListenerHook.ListenerInfo> iListeners = systemListeners.iterator(); iListeners.hasNext();) {
+				if (filterString1.equals(iListeners.next().getFilter())) {
+					iListeners.remove();
+				}
+			}
+		};
+
+		Hashtable props = new Hashtable();
+		props.put("name", testMethodName); //$NON-NLS-1$
+		ServiceRegistration regHook = OSGiTestsActivator.getContext().registerService(EventListenerHook.class.getName(), hook, props);
+		ServiceRegistration reg1 = null;
+		try {
+			hookCalled[0] = 0;
+			events.clear();
+			reg1 = OSGiTestsActivator.getContext().registerService(Runnable.class.getName(), runIt, props);
+			assertEquals("hook not called", 1, hookCalled[0]); //$NON-NLS-1$
+			// the removed listener still receives the event, in the order the listeners were added
+			assertEquals("wrong listeners called", Arrays.asList("sl1", "sl2"), events); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+			events.clear();
+			reg1.unregister();
+			reg1 = null;
+			assertEquals("hook not called", 2, hookCalled[0]); //$NON-NLS-1$
+			assertEquals("wrong listeners called", Arrays.asList("sl1", "sl2"), events); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} finally {
+			regHook.unregister();
+			if (reg1 != null)
+				reg1.unregister();
+			systemContext.removeServiceListener(sl1);
+			systemContext.removeServiceListener(sl2);
+			systemContext.removeServiceListener(sl3);
+		}
+	}
 }
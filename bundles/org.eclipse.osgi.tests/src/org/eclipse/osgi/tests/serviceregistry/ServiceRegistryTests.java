@@ -19,8 +19,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -470,6 +474,435 @@ public class ServiceRegistryTests extends AbstractBundleTests {
 		}
 	}
 
+	@Test
+	public void testModifiedRankingOrder() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		String filter = "(" + getName() + "=true)"; //$NON-NLS-1$ //$NON-NLS-2$
+		Hashtable props = new Hashtable();
+		props.put(getName(), Boolean.TRUE);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(30));
+		ServiceRegistration reg1 = getContext().registerService(Runnable.class.getName(), runIt, props);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(20));
+		ServiceRegistration reg2 = getContext().registerService(Runnable.class.getName(), runIt, props);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+		ServiceRegistration reg3 = getContext().registerService(Runnable.class.getName(), runIt, props);
+		try {
+			ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong number of references", 3, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[2]); //$NON-NLS-1$
+
+			props.put(Constants.SERVICE_RANKING, Integer.valueOf(25));
+			reg3.setProperties(props);
+			refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong service reference", reg1.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[2]); //$NON-NLS-1$
+
+			refs = getContext().getServiceReferences((String) null, filter);
+			assertEquals("wrong number of references", 3, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[2]); //$NON-NLS-1$
+
+			reg1.unregister();
+			reg1 = null;
+			refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong number of references", 2, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[1]); //$NON-NLS-1$
+		} finally {
+			if (reg1 != null)
+				reg1.unregister();
+			if (reg2 != null)
+				reg2.unregister();
+			if (reg3 != null)
+				reg3.unregister();
+		}
+	}
+
+	@Test
+	public void testRegistrationOrder() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		String filter = "(" + getName() + "=true)"; //$NON-NLS-1$ //$NON-NLS-2$
+		String[] classes = new String[] {Runnable.class.getName(), Object.class.getName()};
+		Hashtable props = new Hashtable();
+		props.put(getName(), Boolean.TRUE);
+		// equal rankings are ordered by service id
+		ServiceRegistration reg1 = getContext().registerService(classes, runIt, props);
+		ServiceRegistration reg2 = getContext().registerService(Runnable.class.getName(), runIt, props);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(5));
+		ServiceRegistration reg3 = getContext().registerService(classes, runIt, props);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(-5));
+		ServiceRegistration reg4 = getContext().registerService(classes, runIt, props);
+		try {
+			ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong number of references", 4, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[2]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg4.getReference(), refs[3]); //$NON-NLS-1$
+
+			refs = getContext().getServiceReferences(Object.class.getName(), filter);
+			assertEquals("wrong number of references", 3, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg4.getReference(), refs[2]); //$NON-NLS-1$
+
+			// a ranking change must reorder every class the service is registered under
+			props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+			reg4.setProperties(props);
+			refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong service reference", reg4.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[2]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[3]); //$NON-NLS-1$
+			refs = getContext().getServiceReferences(Object.class.getName(), filter);
+			assertEquals("wrong service reference", reg4.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg3.getReference(), refs[1]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[2]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg4.getReference(), getContext().getServiceReference(Object.class.getName())); //$NON-NLS-1$
+
+			// a registration which is no longer the best must not stay first
+			reg4.unregister();
+			reg4 = null;
+			reg3.unregister();
+			reg3 = null;
+			assertEquals("wrong service reference", reg1.getReference(), getContext().getServiceReference(Object.class.getName())); //$NON-NLS-1$
+			refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong number of references", 2, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg1.getReference(), refs[0]); //$NON-NLS-1$
+			assertEquals("wrong service reference", reg2.getReference(), refs[1]); //$NON-NLS-1$
+		} finally {
+			if (reg1 != null)
+				reg1.unregister();
+			if (reg2 != null)
+				reg2.unregister();
+			if (reg3 != null)
+				reg3.unregister();
+			if (reg4 != null)
+				reg4.unregister();
+		}
+	}
+
+	@Test
+	public void testConcurrentRegistrationOrder() throws Exception {
+		final Runnable runIt = () -> {
+			// nothing
+		};
+		final String filter = "(" + getName() + "=true)"; //$NON-NLS-1$ //$NON-NLS-2$
+		final int registrations = 200;
+		final List<ServiceRegistration> live = Collections.synchronizedList(new ArrayList<>());
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(2);
+		Runnable writer = () -> {
+			try {
+				for (int i = 0; i < registrations; i++) {
+					Hashtable props = new Hashtable();
+					props.put(getName(), Boolean.TRUE);
+					props.put(Constants.SERVICE_RANKING, Integer.valueOf(i % 7));
+					ServiceRegistration reg = getContext().registerService(Runnable.class.getName(), runIt, props);
+					if (i % 3 == 0) {
+						// rankings are not changed since readers compare the references after the lookup
+						props.put("index", Integer.valueOf(i)); //$NON-NLS-1$
+						reg.setProperties(props);
+					}
+					if (i % 3 == 1) {
+						reg.unregister();
+					} else {
+						live.add(reg);
+					}
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				done.countDown();
+			}
+		};
+		Runnable reader = () -> {
+			try {
+				while (done.getCount() > 1) {
+					ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+					assertSorted(refs);
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				done.countDown();
+			}
+		};
+		Thread readerThread = new Thread(reader, getName() + ".reader"); //$NON-NLS-1$
+		readerThread.start();
+		writer.run();
+		assertTrue("Timeout waiting for the reader.", done.await(30, TimeUnit.SECONDS)); //$NON-NLS-1$
+		try {
+			if (failure.get() != null) {
+				throw new AssertionError("Unexpected failure", failure.get()); //$NON-NLS-1$
+			}
+			ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), filter);
+			assertEquals("wrong number of references", live.size(), refs.length); //$NON-NLS-1$
+			assertSorted(refs);
+		} finally {
+			for (ServiceRegistration reg : live) {
+				reg.unregister();
+			}
+		}
+	}
+
+	private static void assertSorted(ServiceReference[] refs) {
+		if (refs == null) {
+			return;
+		}
+		for (int i = 1; i < refs.length; i++) {
+			assertTrue("references are not sorted", refs[i - 1].compareTo(refs[i]) > 0); //$NON-NLS-1$
+		}
+	}
+
+	@Test
+	public void testIndexedPropertyLookup() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		String pidPrefix = getName() + '.';
+		ServiceRegistration[] regs = new ServiceRegistration[40];
+		try {
+			for (int i = 0; i < regs.length; i++) {
+				Hashtable props = new Hashtable();
+				props.put(Constants.SERVICE_PID, i % 2 == 0 ? pidPrefix + i : new String[] {pidPrefix + i, pidPrefix + "odd"}); //$NON-NLS-1$
+				props.put(Constants.SERVICE_RANKING, Integer.valueOf(i));
+				regs[i] = getContext().registerService(Runnable.class.getName(), runIt, props);
+			}
+			Hashtable props = new Hashtable();
+			props.put(Constants.SERVICE_PID, Long.valueOf(20));
+			ServiceRegistration nonString = getContext().registerService(Runnable.class.getName(), runIt, props);
+			try {
+				ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidPrefix + 10 + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+				assertEquals("wrong number of references", 1, refs.length); //$NON-NLS-1$
+				assertEquals("wrong service reference", regs[10].getReference(), refs[0]); //$NON-NLS-1$
+
+				refs = getContext().getServiceReferences(Runnable.class.getName(), "(SERVICE.PID=" + pidPrefix + "odd)"); //$NON-NLS-1$ //$NON-NLS-2$
+				assertEquals("wrong number of references", regs.length / 2, refs.length); //$NON-NLS-1$
+				assertEquals("wrong service reference", regs[regs.length - 1].getReference(), refs[0]); //$NON-NLS-1$
+
+				refs = getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=20)"); //$NON-NLS-1$
+				assertEquals("wrong number of references", 1, refs.length); //$NON-NLS-1$
+				assertEquals("wrong service reference", nonString.getReference(), refs[0]); //$NON-NLS-1$
+
+				props = new Hashtable();
+				props.put(Constants.SERVICE_PID, pidPrefix + "modified"); //$NON-NLS-1$
+				regs[10].setProperties(props);
+				assertNull("found stale reference", getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidPrefix + 10 + ")")); //$NON-NLS-1$ //$NON-NLS-2$
+				refs = getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidPrefix + "modified)"); //$NON-NLS-1$ //$NON-NLS-2$
+				assertEquals("wrong number of references", 1, refs.length); //$NON-NLS-1$
+				assertEquals("wrong service reference", regs[10].getReference(), refs[0]); //$NON-NLS-1$
+			} finally {
+				nonString.unregister();
+			}
+		} finally {
+			for (ServiceRegistration reg : regs) {
+				if (reg != null)
+					reg.unregister();
+			}
+		}
+	}
+
+	@Test
+	public void testIndexedPropertyModified() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		String pidA = getName() + ".a"; //$NON-NLS-1$
+		String pidB = getName() + ".b"; //$NON-NLS-1$
+		ServiceRegistration[] regs = new ServiceRegistration[20];
+		try {
+			for (int i = 0; i < regs.length; i++) {
+				Hashtable props = new Hashtable();
+				props.put(Constants.SERVICE_PID, i < regs.length / 2 ? pidA : pidB);
+				regs[i] = getContext().registerService(Runnable.class.getName(), runIt, props);
+			}
+			assertEquals("wrong number of references", 10, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidA + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertEquals("wrong number of references", 10, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidB + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+			// move a registration from one value to the other
+			Hashtable props = new Hashtable();
+			props.put(Constants.SERVICE_PID, pidB);
+			regs[0].setProperties(props);
+			ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidA + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("wrong number of references", 9, refs.length); //$NON-NLS-1$
+			assertFalse("found moved reference", Arrays.asList(refs).contains(regs[0].getReference())); //$NON-NLS-1$
+			refs = getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidB + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("wrong number of references", 11, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", regs[0].getReference(), refs[0]); //$NON-NLS-1$
+
+			// move a registration to a value which cannot be indexed and back
+			props.put(Constants.SERVICE_PID, new String[] {pidA, pidB});
+			regs[1].setProperties(props);
+			assertEquals("wrong number of references", 9, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidA + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertEquals("wrong number of references", 12, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidB + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			props.put(Constants.SERVICE_PID, Arrays.asList(pidA, Integer.valueOf(1)));
+			regs[1].setProperties(props);
+			assertEquals("wrong number of references", 9, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidA + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertEquals("wrong number of references", 11, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidB + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+			// remove the property
+			regs[2].setProperties(new Hashtable());
+			assertEquals("wrong number of references", 8, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidA + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			props.put(Constants.SERVICE_PID, pidA);
+			regs[2].setProperties(props);
+			assertEquals("wrong number of references", 9, getContext().getServiceReferences(Runnable.class.getName(), "(service.pid=" + pidA + ")").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} finally {
+			for (ServiceRegistration reg : regs) {
+				if (reg != null)
+					reg.unregister();
+			}
+		}
+	}
+
+	@Test
+	public void testLearnedPropertyIndex() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		// use more keys than can be learned to make sure lookups stay correct
+		String[] keys = new String[20];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = getName() + ".key" + i; //$NON-NLS-1$
+		}
+		ServiceRegistration[] regs = new ServiceRegistration[20];
+		try {
+			for (int i = 0; i < regs.length; i++) {
+				Hashtable props = new Hashtable();
+				for (String key : keys) {
+					props.put(key, "value" + (i % 4)); //$NON-NLS-1$
+				}
+				regs[i] = getContext().registerService(Runnable.class.getName(), runIt, props);
+			}
+			// enough lookups of the same key for it to become indexed
+			for (int lookup = 0; lookup < 150; lookup++) {
+				for (String key : keys) {
+					ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), "(" + key + "=value" + (lookup % 4) + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					assertEquals("wrong number of references", 5, refs.length); //$NON-NLS-1$
+				}
+			}
+			for (String key : keys) {
+				// key lookups are case insensitive
+				ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), "(" + key.toUpperCase() + "=value1)"); //$NON-NLS-1$ //$NON-NLS-2$
+				assertEquals("wrong number of references", 5, refs.length); //$NON-NLS-1$
+				assertEquals("wrong service reference", regs[1].getReference(), refs[0]); //$NON-NLS-1$
+			}
+
+			// modify a registration after the key is indexed
+			Hashtable props = new Hashtable();
+			props.put(keys[0], "value2"); //$NON-NLS-1$
+			regs[1].setProperties(props);
+			ServiceReference[] refs = getContext().getServiceReferences(Runnable.class.getName(), "(" + keys[0] + "=value1)"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("wrong number of references", 4, refs.length); //$NON-NLS-1$
+			refs = getContext().getServiceReferences(Runnable.class.getName(), "(" + keys[0] + "=value2)"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("wrong number of references", 6, refs.length); //$NON-NLS-1$
+			assertEquals("wrong service reference", regs[1].getReference(), refs[0]); //$NON-NLS-1$
+			assertFalse("found stale reference", Arrays.asList(getContext().getServiceReferences(Runnable.class.getName(), "(" + keys[0] + "=value1)")).contains(regs[1].getReference())); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+			// a new registration must be found by the learned key
+			props.put(keys[0], "value5"); //$NON-NLS-1$
+			ServiceRegistration added = getContext().registerService(Runnable.class.getName(), runIt, props);
+			try {
+				refs = getContext().getServiceReferences(Runnable.class.getName(), "(" + keys[0] + "=value5)"); //$NON-NLS-1$ //$NON-NLS-2$
+				assertEquals("wrong number of references", 1, refs.length); //$NON-NLS-1$
+				assertEquals("wrong service reference", added.getReference(), refs[0]); //$NON-NLS-1$
+			} finally {
+				added.unregister();
+			}
+			assertNull("found unregistered reference", getContext().getServiceReferences(Runnable.class.getName(), "(" + keys[0] + "=value5)")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} finally {
+			for (ServiceRegistration reg : regs) {
+				if (reg != null)
+					reg.unregister();
+			}
+		}
+	}
+
+	@Test
+	public void testObjectClassListenerIndex() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		final int[] events = new int[1];
+		ServiceListener testListener = event -> events[0]++;
+		getContext().addServiceListener(testListener, "(objectClass=" + Runnable.class.getName() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			ServiceRegistration reg = getContext().registerService(Object.class.getName(), runIt, null);
+			reg.unregister();
+			assertEquals("listener received events for another class", 0, events[0]); //$NON-NLS-1$
+
+			reg = getContext().registerService(new String[] {Object.class.getName(), Runnable.class.getName()}, runIt, null);
+			reg.unregister();
+			assertEquals("wrong number of events", 2, events[0]); //$NON-NLS-1$
+
+			// replacing the listener must move it to the index of the new objectClass
+			getContext().addServiceListener(testListener, "(objectClass=" + Object.class.getName() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+			reg = getContext().registerService(Runnable.class.getName(), runIt, null);
+			reg.unregister();
+			assertEquals("listener received events for old class", 2, events[0]); //$NON-NLS-1$
+			reg = getContext().registerService(Object.class.getName(), runIt, null);
+			reg.unregister();
+			assertEquals("wrong number of events", 4, events[0]); //$NON-NLS-1$
+
+			getContext().removeServiceListener(testListener);
+			reg = getContext().registerService(Object.class.getName(), runIt, null);
+			reg.unregister();
+			assertEquals("removed listener received events", 4, events[0]); //$NON-NLS-1$
+		} finally {
+			getContext().removeServiceListener(testListener);
+		}
+	}
+
+	@Test
+	public void testListenerOrder() throws InvalidSyntaxException {
+		Runnable runIt = () -> {
+			// nothing
+		};
+		final List<String> events = new ArrayList<>();
+		ServiceListener listenerA = event -> events.add("A"); //$NON-NLS-1$
+		ServiceListener listenerB = event -> events.add("B"); //$NON-NLS-1$
+		ServiceListener listenerC = event -> events.add("C"); //$NON-NLS-1$
+		ServiceListener listenerD = event -> events.add("D"); //$NON-NLS-1$
+		String nameFilter = "(" + getName() + "=true)"; //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			// indexed and unindexed listeners are called in the order they were added
+			getContext().addServiceListener(listenerA, "(&(objectClass=" + Runnable.class.getName() + ")" + nameFilter + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			getContext().addServiceListener(listenerB, nameFilter);
+			getContext().addServiceListener(listenerC, "(&(objectClass=" + Object.class.getName() + ")" + nameFilter + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			getContext().addServiceListener(listenerD, "(&(objectClass=" + Runnable.class.getName() + ")" + nameFilter + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			Hashtable props = new Hashtable();
+			props.put(getName(), Boolean.TRUE);
+			ServiceRegistration reg = getContext().registerService(new String[] {Object.class.getName(), Runnable.class.getName()}, runIt, props);
+			reg.unregister();
+			assertEquals("wrong listener order", Arrays.asList("A", "B", "C", "D", "A", "B", "C", "D"), events); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+			// replacing the filter of a listener keeps its position
+			events.clear();
+			getContext().addServiceListener(listenerA, "(&(objectClass=" + Object.class.getName() + ")" + nameFilter + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			reg = getContext().registerService(new String[] {Object.class.getName(), Runnable.class.getName()}, runIt, props);
+			reg.unregister();
+			assertEquals("wrong listener order", Arrays.asList("A", "B", "C", "D", "A", "B", "C", "D"), events); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+			events.clear();
+			reg = getContext().registerService(Runnable.class.getName(), runIt, props);
+			reg.unregister();
+			assertEquals("wrong listener order", Arrays.asList("B", "D", "B", "D"), events); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		} finally {
+			getContext().removeServiceListener(listenerA);
+			getContext().removeServiceListener(listenerB);
+			getContext().removeServiceListener(listenerC);
+			getContext().removeServiceListener(listenerD);
+		}
+	}
+
 	@Test
 	public void testInvalidRanking() throws InterruptedException {
 		final CountDownLatch warning = new CountDownLatch(1);
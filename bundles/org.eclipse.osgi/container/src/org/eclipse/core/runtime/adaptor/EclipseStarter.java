@@ -30,6 +30,7 @@ import org.eclipse.osgi.framework.log.FrameworkLog;
 import org.eclipse.osgi.framework.log.FrameworkLogEntry;
 import org.eclipse.osgi.framework.util.FilePath;
 import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.framework.BundleContextImpl;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.framework.EquinoxContainer;
 import org.eclipse.osgi.internal.location.EquinoxLocations;
@@ -41,6 +42,7 @@ import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.osgi.service.environment.EnvironmentInfo;
 import org.eclipse.osgi.service.runnable.ApplicationLauncher;
 import org.eclipse.osgi.service.runnable.StartupMonitor;
+import org.eclipse.osgi.storage.Storage.InstallResult;
 import org.eclipse.osgi.storage.url.reference.Handler;
 import org.eclipse.osgi.util.ManifestElement;
 import org.eclipse.osgi.util.NLS;
@@ -974,45 +976,101 @@ public class EclipseStarter {
 	}
 
 	private static void installBundles(InitialBundle[] initialBundles, Bundle[] curInitBundles, List<Bundle> startBundles, List<Bundle> lazyActivationBundles, List<Bundle> toRefresh) {
-		for (InitialBundle initialBundle : initialBundles) {
-			Bundle osgiBundle = getBundleByLocation(initialBundle.locationString, curInitBundles);
+		Bundle[] osgiBundles = new Bundle[initialBundles.length];
+		boolean[] installed = new boolean[initialBundles.length];
+		// don't need to install if it is already installed
+		List<Integer> toInstall = new ArrayList<>();
+		List<String> locations = new ArrayList<>();
+		List<URL> contents = new ArrayList<>();
+		for (int i = 0; i < initialBundles.length; i++) {
+			osgiBundles[i] = getBundleByLocation(initialBundles[i].locationString, curInitBundles);
+			if (osgiBundles[i] == null) {
+				toInstall.add(i);
+				locations.add(initialBundles[i].locationString);
+				contents.add(initialBundles[i].location);
+			}
+		}
+		Bundle[] newBundles = new Bundle[toInstall.size()];
+		Exception[] failures = new Exception[toInstall.size()];
+		installBundles(locations, contents, newBundles, failures);
+		for (int j = 0; j < newBundles.length; j++) {
+			int i = toInstall.get(j);
+			if (failures[j] instanceof BundleException && ((BundleException) failures[j]).getType() == BundleException.DUPLICATE_BUNDLE_ERROR) {
+				// TODO should attempt to lookup the existing bundle
+				continue;
+			}
+			if (failures[j] != null) {
+				logInstallFailed(initialBundles[i], failures[j]);
+				continue;
+			}
+			osgiBundles[i] = newBundles[j];
+			installed[i] = true;
+		}
+
+		for (int i = 0; i < initialBundles.length; i++) {
+			InitialBundle initialBundle = initialBundles[i];
+			Bundle osgiBundle = osgiBundles[i];
+			if (osgiBundle == null) {
+				continue;
+			}
+			// only check for lazy activation header if this is a newly installed bundle and is not marked for persistent start
+			if (installed[i] && !initialBundle.start && hasLazyActivationPolicy(osgiBundle)) {
+				lazyActivationBundles.add(osgiBundle);
+			}
+			// always set the startlevel incase it has changed (bug 111549)
+			// this is a no-op if the level is the same as previous launch.
+			if ((osgiBundle.getState() & Bundle.UNINSTALLED) == 0 && initialBundle.level >= 0) {
+				osgiBundle.adapt(BundleStartLevel.class).setStartLevel(initialBundle.level);
+			}
+			// if this bundle is supposed to be started then add it to the start list
+			if (initialBundle.start) {
+				startBundles.add(osgiBundle);
+			}
+			// include basic bundles in case they were not resolved before
+			if ((osgiBundle.getState() & Bundle.INSTALLED) != 0)
+				toRefresh.add(osgiBundle);
+		}
+	}
+
+	/*
+	 * Installs the bundles at the locations from the content URLs. For each location
+	 * either the installed bundle or the failure is set. The framework context installs
+	 * the bundles in parallel, opening the content of each bundle only while it is
+	 * prepared; any other context installs them one at a time.
+	 */
+	private static void installBundles(List<String> locations, List<URL> contents, Bundle[] bundles, Exception[] failures) {
+		if (locations.isEmpty()) {
+			return;
+		}
+		if (context instanceof BundleContextImpl) {
 			try {
-				// don't need to install if it is already installed
-				if (osgiBundle == null) {
-					InputStream in = LocationHelper.getStream(initialBundle.location);
-					try {
-						osgiBundle = context.installBundle(initialBundle.locationString, in);
-					}catch (BundleException e) {
-						if (e.getType() == BundleException.DUPLICATE_BUNDLE_ERROR) {
-							continue;
-							// TODO should attempt to lookup the existing bundle
-						}
-						throw e;
-					}
-					// only check for lazy activation header if this is a newly installed bundle and is not marked for persistent start
-					if (!initialBundle.start && hasLazyActivationPolicy(osgiBundle)) {
-						lazyActivationBundles.add(osgiBundle);
+				List<InstallResult> results = ((BundleContextImpl) context).installBundles(locations, contents);
+				for (int i = 0; i < results.size(); i++) {
+					InstallResult result = results.get(i);
+					failures[i] = result.getException();
+					if (result.getGeneration() != null) {
+						bundles[i] = result.getGeneration().getRevision().getBundle();
 					}
 				}
-				// always set the startlevel incase it has changed (bug 111549)
-				// this is a no-op if the level is the same as previous launch.
-				if ((osgiBundle.getState() & Bundle.UNINSTALLED) == 0 && initialBundle.level >= 0) {
-					osgiBundle.adapt(BundleStartLevel.class).setStartLevel(initialBundle.level);
-				}
-				// if this bundle is supposed to be started then add it to the start list
-				if (initialBundle.start) {
-					startBundles.add(osgiBundle);
-				}
-				// include basic bundles in case they were not resolved before
-				if ((osgiBundle.getState() & Bundle.INSTALLED) != 0)
-					toRefresh.add(osgiBundle);
+			} catch (BundleException e) {
+				Arrays.fill(failures, e);
+			}
+			return;
+		}
+		for (int i = 0; i < locations.size(); i++) {
+			try (InputStream in = LocationHelper.getStream(contents.get(i))) {
+				bundles[i] = context.installBundle(locations.get(i), in);
 			} catch (BundleException | IOException e) {
-				FrameworkLogEntry entry = new FrameworkLogEntry(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, 0, NLS.bind(Msg.ECLIPSE_STARTUP_FAILED_INSTALL, initialBundle.location), 0, e, null);
-				log.log(entry);
+				failures[i] = e;
 			}
 		}
 	}
 
+	private static void logInstallFailed(InitialBundle initialBundle, Throwable e) {
+		FrameworkLogEntry entry = new FrameworkLogEntry(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, 0, NLS.bind(Msg.ECLIPSE_STARTUP_FAILED_INSTALL, initialBundle.location), 0, e, null);
+		log.log(entry);
+	}
+
 	@SuppressWarnings("deprecation")
 	private static boolean hasLazyActivationPolicy(Bundle target) {
 		// check the bundle manifest to see if it defines a lazy activation policy
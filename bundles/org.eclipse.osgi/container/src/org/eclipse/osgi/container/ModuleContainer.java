@@ -55,6 +55,7 @@ import org.eclipse.osgi.internal.container.NamespaceList;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.messages.Msg;
+import org.eclipse.osgi.report.resolution.ResolutionHistory;
 import org.eclipse.osgi.report.resolution.ResolutionReport;
 import org.eclipse.osgi.report.resolution.ResolutionReport.Entry;
 import org.eclipse.osgi.service.debug.DebugOptions;
@@ -479,6 +480,15 @@ public final class ModuleContainer implements DebugOptionsListener {
 		return frameworkStartLevel;
 	}
 
+	/**
+	 * Returns the {@link ResolutionHistory} for this container
+	 * @return the resolution history for this container
+	 * @since 3.18
+	 */
+	public ResolutionHistory getResolutionHistory() {
+		return moduleResolver.history;
+	}
+
 	/**
 	 * Attempts to resolve the current revisions of the specified modules.
 	 * @param triggers the modules to resolve or {@code null} to resolve all unresolved
@@ -13,23 +13,34 @@
  *******************************************************************************/
 package org.eclipse.osgi.container;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.AbstractList;
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -42,6 +53,7 @@ import org.eclipse.osgi.container.namespaces.EquinoxModuleDataNamespace;
 import org.eclipse.osgi.framework.util.ObjectPool;
 import org.eclipse.osgi.internal.container.Capabilities;
 import org.eclipse.osgi.internal.container.ComputeNodeOrder;
+import org.eclipse.osgi.internal.container.MetadataPool;
 import org.eclipse.osgi.internal.container.NamespaceList;
 import org.eclipse.osgi.internal.container.NamespaceList.Builder;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
@@ -133,6 +145,29 @@ public class ModuleDatabase {
 	 */
 	final Map<Long, EnumSet<Settings>> moduleSettings;
 
+	/**
+	 * The timestamp of the last change to the settings or start level of
+	 * each module keyed by module id.
+	 */
+	private final Map<Long, Long> moduleChanges;
+
+	/**
+	 * The timestamp of the last install, update or uninstall of each module
+	 * keyed by module id.
+	 */
+	private final Map<Long, Long> revisionChanges;
+
+	/**
+	 * The persistent state of each wiring when the wirings were last stored
+	 * keyed by revision, or {@code null} if the wirings were not stored.
+	 */
+	private volatile Map<ModuleRevision, StoredWiring> storedWirings;
+
+	/**
+	 * The cached results of resolve operations.
+	 */
+	final ResolutionCache resolutionCache;
+
 	/**
 	 * The initial module start level.
 	 */
@@ -167,6 +202,8 @@ public class ModuleDatabase {
 		this.adaptor = adaptor;
 		this.modulesByLocations = new HashMap<>();
 		this.modulesById = new HashMap<>();
+		this.moduleChanges = new HashMap<>();
+		this.revisionChanges = new HashMap<>();
 		this.wirings = new HashMap<>();
 		// Start at id 1 because 0 is reserved for the system bundle
 		this.nextId = new AtomicLong(1);
@@ -176,6 +213,7 @@ public class ModuleDatabase {
 		this.allTimeStamp = new AtomicLong(constructionTime);
 		this.moduleSettings = new HashMap<>();
 		this.capabilities = new Capabilities();
+		this.resolutionCache = new ResolutionCache();
 	}
 
 	/**
@@ -238,6 +276,7 @@ public class ModuleDatabase {
 			long currentTime = System.currentTimeMillis();
 			module.setlastModified(currentTime);
 			setSystemLastModified(currentTime);
+			revisionChanges.put(id, allTimeStamp.get());
 			incrementTimestamps(true);
 			return module;
 		} finally {
@@ -307,6 +346,7 @@ public class ModuleDatabase {
 			modulesByLocations.remove(module.getLocation());
 			modulesById.remove(module.getId());
 			moduleSettings.remove(module.getId());
+			moduleChanges.remove(module.getId());
 			// remove the revisions by name
 			List<ModuleRevision> revisions = uninstalling.getModuleRevisions();
 			for (ModuleRevision revision : revisions) {
@@ -324,12 +364,54 @@ public class ModuleDatabase {
 			long currentTime = System.currentTimeMillis();
 			module.setlastModified(currentTime);
 			setSystemLastModified(currentTime);
+			revisionChanges.put(module.getId(), allTimeStamp.get());
 			incrementTimestamps(true);
 		} finally {
 			writeUnlock();
 		}
 	}
 
+	/**
+	 * Removes the specified module and its revisions from this database
+	 * without uninstalling the module.  Used to apply stored changes.
+	 * @param module the module to remove
+	 */
+	private void unload(Module module) {
+		// sanity check
+		checkWrite();
+		modulesByLocations.remove(module.getLocation());
+		modulesById.remove(module.getId());
+		moduleSettings.remove(module.getId());
+		unloadRevisions(module);
+	}
+
+	/**
+	 * Removes the revisions of the specified module along with their wirings
+	 * and capabilities from this database.  Used to apply stored changes.
+	 * @param module the module to remove the revisions for
+	 */
+	private void unloadRevisions(Module module) {
+		// sanity check
+		checkWrite();
+		for (ModuleRevision revision : module.getRevisions().getModuleRevisions()) {
+			wirings.remove(revision);
+			module.getRevisions().removeRevision(revision);
+			removeCapabilities(revision);
+		}
+	}
+
+	/**
+	 * Remembers the persistent state of the current wirings after they
+	 * have been stored.
+	 */
+	private void setStoredWirings() {
+		Map<ModuleRevision, StoredWiring> stored = new HashMap<>(wirings.size());
+		for (ModuleWiring wiring : wirings.values()) {
+			stored.put(wiring.getRevision(), new StoredWiring(wiring));
+		}
+		storedWirings = stored;
+	}
+
 	/**
 	 * Updates the specified module with anew revision using the specified builder.
 	 * <p>
@@ -357,6 +439,7 @@ public class ModuleDatabase {
 			long currentTime = System.currentTimeMillis();
 			module.setlastModified(currentTime);
 			setSystemLastModified(currentTime);
+			revisionChanges.put(module.getId(), allTimeStamp.get());
 			incrementTimestamps(true);
 		} finally {
 			writeUnlock();
@@ -937,12 +1020,109 @@ public class ModuleDatabase {
 		}
 	}
 
+	/**
+	 * Writes the changes to this database since it was last stored in a format
+	 * suitable for using the {@link #loadChanges(DataInputStream)} method.
+	 * These are the modules which were installed, updated or uninstalled, the
+	 * changes to the settings and start level of modules, the changes to the
+	 * initial module start level and the wirings which changed.  Only the
+	 * modules which changed since the specified timestamp are written.
+	 * <p>
+	 * The changes can only be applied to a database which was loaded from the
+	 * data last stored from this database, followed by any changes stored
+	 * since then.  This allows a small record of the changes to be appended
+	 * to a journal instead of storing the complete database.
+	 * <p>
+	 * Nothing is written if the last {@link #store(DataOutputStream, boolean) store}
+	 * did not include the wirings or if there are {@link #getRemovalPending()
+	 * removal pending} revisions; the complete database must be stored instead.
+	 * <p>
+	 * This method acquires the {@link #readLock() read} lock while writing the
+	 * changes.
+	 * @param out the data output steam.
+	 * @param timestamp the {@link #getTimestamp() timestamp} of this database
+	 *        when it was last stored
+	 * @return true if the changes were written; false if the complete database must be stored
+	 * @throws IOException if writing the changes to the specified output stream throws an IOException
+	 * @since 3.18
+	 */
+	public final boolean storeChanges(DataOutputStream out, long timestamp) throws IOException {
+		readLock();
+		try {
+			return Persistence.storeChanges(this, out, timestamp);
+		} finally {
+			readUnlock();
+		}
+	}
+
+	/**
+	 * Applies changes written by the {@link #storeChanges(DataOutputStream, long)}
+	 * method to this database.  The changes must have been stored from a database
+	 * in the same state as this database.  The {@link #getTimestamp() timestamp}
+	 * and {@link #getRevisionsTimestamp() revisions timestamp} of this database are
+	 * set to the timestamps of the stored changes.
+	 * <p>
+	 * Since this method modifies this database it is considered a write operation.
+	 * This method acquires the {@link #writeLock() write} lock while loading
+	 * the changes into this database.
+	 * @param in the data input stream.
+	 * @throws IOException if an error occurred when reading from the input stream.
+	 * @since 3.18
+	 */
+	public final void loadChanges(DataInputStream in) throws IOException {
+		writeLock();
+		try {
+			Persistence.loadChanges(this, in);
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Writes the cached results of resolve operations in a format suitable for
+	 * using the {@link #loadResolutionCache(DataInputStream)} method.  The cached
+	 * results refer to modules by id and are validated against the modules of
+	 * this database before they are used, so they may be stored independently
+	 * of this database.
+	 * @param out the data output steam.
+	 * @throws IOException if writing to the specified output stream throws an IOException
+	 * @since 3.18
+	 */
+	public final void storeResolutionCache(DataOutputStream out) throws IOException {
+		resolutionCache.store(out);
+	}
+
+	/**
+	 * Loads cached results of resolve operations written by the
+	 * {@link #storeResolutionCache(DataOutputStream)} method.  Any results cached
+	 * by this database are discarded.  If the data cannot be read completely,
+	 * or is not valid, then no results are loaded.
+	 * @param in the data input stream.
+	 * @throws IOException if an error occurred when reading from the input stream
+	 *         or the data is not valid.
+	 * @since 3.18
+	 */
+	public final void loadResolutionCache(DataInputStream in) throws IOException {
+		resolutionCache.load(in);
+	}
+
+	/**
+	 * Returns true if the cached results of resolve operations changed since
+	 * they were last stored or loaded.
+	 * @return true if the cached results of resolve operations changed
+	 * @since 3.18
+	 */
+	public final boolean isResolutionCacheDirty() {
+		return resolutionCache.isDirty();
+	}
+
 	final void persistSettings(EnumSet<Settings> settings, Module module) {
 		writeLock();
 		try {
 			EnumSet<Settings> existing = moduleSettings.get(module.getId());
 			if (!settings.equals(existing)) {
 				moduleSettings.put(module.getId(), EnumSet.copyOf(settings));
+				moduleChanges.put(module.getId(), allTimeStamp.get());
 				incrementTimestamps(false);
 			}
 		} finally {
@@ -955,6 +1135,7 @@ public class ModuleDatabase {
 		try {
 			module.checkValid();
 			module.storeStartLevel(startlevel);
+			moduleChanges.put(module.getId(), allTimeStamp.get());
 			incrementTimestamps(false);
 		} finally {
 			writeUnlock();
@@ -980,8 +1161,38 @@ public class ModuleDatabase {
 		}
 	}
 
+	/**
+	 * The persistent state of a wiring when it was stored.  The lists of a
+	 * wiring are replaced, never modified, when the wiring changes; comparing
+	 * them by identity tells if the wiring changed since it was stored.
+	 */
+	private static final class StoredWiring {
+		private final NamespaceList<ModuleCapability> capabilities;
+		private final NamespaceList<ModuleRequirement> requirements;
+		private final NamespaceList<ModuleWire> providedWires;
+		private final NamespaceList<ModuleWire> requiredWires;
+
+		StoredWiring(ModuleWiring wiring) {
+			this.capabilities = wiring.getCapabilities();
+			this.requirements = wiring.getRequirements();
+			this.providedWires = wiring.getProvidedWires();
+			this.requiredWires = wiring.getRequiredWires();
+		}
+
+		boolean isStored(ModuleWiring wiring) {
+			return capabilities == wiring.getCapabilities() && requirements == wiring.getRequirements() //
+					&& providedWires == wiring.getProvidedWires() && requiredWires == wiring.getRequiredWires();
+		}
+	}
+
 	private static class Persistence {
-		private static final int VERSION = 3;
+		private static final int VERSION = 5;
+		// strings, maps and modules are persisted in blocks with offset tables
+		private static final int LAZY_VERSION = 4;
+		// wirings are persisted in a block with an offset table
+		private static final int WIRINGS_BLOCK_VERSION = 5;
+		// the number of module or wiring records decoded by one task
+		private static final int DECODE_BATCH_SIZE = 64;
 		private static final byte NULL = 0;
 		private static final byte OBJECT = 1;
 		private static final byte INDEX = 2;
@@ -1045,38 +1256,54 @@ public class ModuleDatabase {
 				allStrings.addAll(substituted);
 			}
 
-			// Now persist all the Strings
+			// Now persist all the Strings; the index of each string is implied by its position.
+			// The strings are written to a block with an offset table so they can be decoded on demand.
 			Map<Object, Integer> objectTable = new HashMap<>();
 			allStrings.remove(null);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream block = new DataOutputStream(bytes);
 			out.writeInt(allStrings.size());
 			for (String string : allStrings) {
-				writeString(string, out, objectTable);
-				out.writeInt(addToWriteTable(string, objectTable));
+				out.writeInt(bytes.size());
+				writeString(string, block, objectTable);
+				addToWriteTable(string, objectTable);
 			}
+			writeBlock(bytes, out);
 			// Followed by versions which may reference strings with their qualifier
 			out.writeInt(allVersions.size());
 			for (Version version : allVersions) {
 				writeVersion(version, out, objectTable);
-				out.writeInt(addToWriteTable(version, objectTable));
+				addToWriteTable(version, objectTable);
 			}
 			// Followed by maps which may reference the strings and versions
 			out.writeInt(allMaps.size());
 			for (Map<String, ?> map : allMaps) {
-				writeMap(map, out, objectTable, moduleDatabase);
-				out.writeInt(addToWriteTable(map, objectTable));
+				out.writeInt(bytes.size());
+				writeMap(map, block, objectTable, moduleDatabase);
+				addToWriteTable(map, objectTable);
 			}
+			writeBlock(bytes, out);
 
 			// Followed by modules which reference the strings, versions, and maps
-			out.writeInt(modules.size());
+			List<Module> persistentModules = new ArrayList<>(modules.size());
 			for (Module module : modules) {
-				writeModule(module, moduleDatabase, out, objectTable);
+				if (module.getCurrentRevision() != null) {
+					persistentModules.add(module);
+				}
+			}
+			out.writeInt(persistentModules.size());
+			for (Module module : persistentModules) {
+				out.writeInt(bytes.size());
+				writeModule(module, moduleDatabase, block, objectTable);
 			}
+			writeBlock(bytes, out);
 
 			Collection<ModuleRevision> removalPendings = moduleDatabase.getRemovalPending();
 			// only persist wirings if there are no removals pending
 			persistWirings &= removalPendings.isEmpty();
 			out.writeBoolean(persistWirings);
 			if (!persistWirings) {
+				moduleDatabase.storedWirings = null;
 				return;
 			}
 
@@ -1092,10 +1319,377 @@ public class ModuleDatabase {
 
 			// now write all the info about each wiring using only indexes from the objectTable
 			for (ModuleWiring wiring : wirings.values()) {
-				writeWiring(wiring, out, objectTable);
+				out.writeInt(bytes.size());
+				writeWiring(wiring, block, objectTable);
 			}
+			writeBlock(bytes, out);
 
 			out.flush();
+			moduleDatabase.setStoredWirings();
+		}
+
+		public static boolean storeChanges(ModuleDatabase moduleDatabase, DataOutputStream out, long timestamp) throws IOException {
+			Map<ModuleRevision, StoredWiring> storedWirings = moduleDatabase.storedWirings;
+			// removal pending revisions and their wirings are never stored
+			if (storedWirings == null || !moduleDatabase.getRemovalPending().isEmpty()) {
+				return false;
+			}
+			out.writeLong(moduleDatabase.getTimestamp());
+			out.writeLong(moduleDatabase.getRevisionsTimestamp());
+			out.writeLong(moduleDatabase.getNextId());
+			out.writeInt(moduleDatabase.getInitialModuleStartLevel());
+
+			// first the modules which got uninstalled, installed or updated
+			List<Long> uninstalled = new ArrayList<>();
+			List<Module> revised = new ArrayList<>();
+			for (Map.Entry<Long, Long> change : moduleDatabase.revisionChanges.entrySet()) {
+				if (change.getValue() >= timestamp) {
+					Module module = moduleDatabase.getModule(change.getKey());
+					if (module == null) {
+						uninstalled.add(change.getKey());
+					} else {
+						revised.add(module);
+					}
+				}
+			}
+			out.writeInt(uninstalled.size());
+			for (Long id : uninstalled) {
+				out.writeLong(id);
+			}
+			// the strings and versions of the revised modules are written in place; only the maps are indexed
+			Set<String> allStrings = new HashSet<>();
+			Set<Version> allVersions = new HashSet<>();
+			Set<Map<String, ?>> allMaps = new HashSet<>();
+			for (Module module : revised) {
+				getStringsVersionsAndMaps(module, moduleDatabase, allStrings, allVersions, allMaps);
+			}
+			Map<Object, Integer> objectTable = new HashMap<>();
+			out.writeInt(allMaps.size());
+			for (Map<String, ?> map : allMaps) {
+				writeMap(map, out, objectTable, moduleDatabase);
+				out.writeInt(addToWriteTable(map, objectTable));
+			}
+			out.writeInt(revised.size());
+			for (Module module : revised) {
+				writeModule(module, moduleDatabase, out, objectTable);
+			}
+
+			// next the settings and start level changes
+			List<Module> changed = new ArrayList<>();
+			for (Map.Entry<Long, Long> change : moduleDatabase.moduleChanges.entrySet()) {
+				if (change.getValue() >= timestamp) {
+					Module module = moduleDatabase.getModule(change.getKey());
+					if (module != null) {
+						changed.add(module);
+					}
+				}
+			}
+			out.writeInt(changed.size());
+			for (Module module : changed) {
+				out.writeLong(module.getId());
+				out.writeInt(module.getStartLevel());
+				out.writeLong(module.getLastModified());
+				EnumSet<Settings> settings = moduleDatabase.moduleSettings.get(module.getId());
+				out.writeInt(settings == null ? 0 : settings.size());
+				if (settings != null) {
+					for (Settings setting : settings) {
+						out.writeUTF(setting.name());
+					}
+				}
+			}
+
+			// finally the wirings which got removed from current revisions and the wirings which changed
+			List<Long> unresolved = new ArrayList<>();
+			for (ModuleRevision revision : storedWirings.keySet()) {
+				Module module = revision.getRevisions().getModule();
+				if (!moduleDatabase.wirings.containsKey(revision) && moduleDatabase.getModule(module.getId()) == module && module.getCurrentRevision() == revision) {
+					unresolved.add(module.getId());
+				}
+			}
+			List<ModuleWiring> changedWirings = new ArrayList<>();
+			for (ModuleWiring wiring : moduleDatabase.wirings.values()) {
+				StoredWiring stored = storedWirings.get(wiring.getRevision());
+				if (stored == null || !stored.isStored(wiring)) {
+					changedWirings.add(wiring);
+				}
+			}
+			out.writeInt(unresolved.size());
+			for (Long id : unresolved) {
+				out.writeLong(id);
+			}
+			Map<ModuleRevision, Map<Object, Integer>> revisionIndexes = new HashMap<>();
+			out.writeInt(changedWirings.size());
+			for (ModuleWiring wiring : changedWirings) {
+				writeWiringChange(wiring, out, revisionIndexes);
+			}
+
+			// the changes are stored; only later changes need to be written next time
+			storedWirings.keySet().retainAll(moduleDatabase.wirings.keySet());
+			for (ModuleWiring wiring : changedWirings) {
+				storedWirings.put(wiring.getRevision(), new StoredWiring(wiring));
+			}
+			return true;
+		}
+
+		public static void loadChanges(ModuleDatabase moduleDatabase, DataInputStream in) throws IOException {
+			long allTimeStamp = in.readLong();
+			long revisionsTimeStamp = in.readLong();
+			moduleDatabase.nextId.set(in.readLong());
+			moduleDatabase.initialModuleStartLevel = in.readInt();
+
+			int numUninstalled = in.readInt();
+			for (int i = 0; i < numUninstalled; i++) {
+				Module module = moduleDatabase.getModule(in.readLong());
+				if (module != null) {
+					moduleDatabase.unload(module);
+				}
+			}
+			List<Object> objectTable = new ArrayList<>();
+			int numMaps = in.readInt();
+			for (int i = 0; i < numMaps; i++) {
+				readIndexedMap(in, objectTable);
+			}
+			int numRevised = in.readInt();
+			for (int i = 0; i < numRevised; i++) {
+				loadRevisedModule(moduleDatabase, readPersistedModule(in, objectTable, VERSION), objectTable);
+			}
+
+			int numChanged = in.readInt();
+			for (int i = 0; i < numChanged; i++) {
+				long id = in.readLong();
+				int startlevel = in.readInt();
+				long lastModified = in.readLong();
+				EnumSet<Settings> settings = EnumSet.noneOf(Settings.class);
+				int numSettings = in.readInt();
+				for (int j = 0; j < numSettings; j++) {
+					settings.add(Settings.valueOf(in.readUTF()));
+				}
+				Module module = moduleDatabase.getModule(id);
+				if (module == null) {
+					continue;
+				}
+				module.storeStartLevel(startlevel);
+				module.storeSettings(settings);
+				module.setlastModified(lastModified);
+				moduleDatabase.moduleSettings.put(id, settings);
+			}
+
+			int numUnresolved = in.readInt();
+			for (int i = 0; i < numUnresolved; i++) {
+				ModuleRevision revision = readCurrentRevision(moduleDatabase, in);
+				moduleDatabase.wirings.remove(revision);
+				revision.getRevisions().getModule().setState(State.INSTALLED);
+			}
+			int numWirings = in.readInt();
+			if (numWirings > 0) {
+				// the changed wirings must share the wire objects of the wirings which did not change
+				Map<List<Object>, ModuleWire> wires = new HashMap<>();
+				for (ModuleWiring wiring : moduleDatabase.wirings.values()) {
+					for (ModuleWire wire : wiring.getRequiredWires().getList(null)) {
+						wires.put(getWireKey(wire.getCapability(), wire.getProvider(), wire.getRequirement(), wire.getRequirer()), wire);
+					}
+				}
+				List<ModuleWiring> changedWirings = new ArrayList<>(numWirings);
+				for (int i = 0; i < numWirings; i++) {
+					changedWirings.add(readWiringChange(moduleDatabase, in, wires));
+				}
+				for (ModuleWiring wiring : changedWirings) {
+					moduleDatabase.wirings.put(wiring.getRevision(), wiring);
+					wiring.getRevision().getRevisions().getModule().setState(State.RESOLVED);
+				}
+			}
+			moduleDatabase.setStoredWirings();
+
+			moduleDatabase.revisionsTimeStamp.set(revisionsTimeStamp);
+			moduleDatabase.allTimeStamp.set(allTimeStamp);
+		}
+
+		private static void loadRevisedModule(ModuleDatabase moduleDatabase, PersistedModule persisted, List<Object> objectTable) {
+			Module module = moduleDatabase.getModule(persisted.id);
+			if (module == null) {
+				// an installed module
+				loadModule(moduleDatabase, persisted, objectTable);
+				return;
+			}
+			// an updated module; replace its revision
+			moduleDatabase.unloadRevisions(module);
+			Object revisionInfo = moduleDatabase.adaptor.getRevisionInfo(persisted.location, persisted.id);
+			ModuleRevision current = persisted.builder.addRevision(module, revisionInfo);
+			moduleDatabase.addCapabilities(current);
+			EnumSet<Settings> settings = persisted.settings == null ? EnumSet.noneOf(Settings.class) : persisted.settings;
+			module.storeStartLevel(persisted.startlevel);
+			module.storeSettings(settings);
+			module.setlastModified(persisted.lastModified);
+			module.setState(State.INSTALLED);
+			if (persisted.settings == null) {
+				moduleDatabase.moduleSettings.remove(persisted.id);
+			} else {
+				moduleDatabase.moduleSettings.put(persisted.id, persisted.settings);
+			}
+			addToReadTable(current, persisted, objectTable);
+		}
+
+		private static void writeWiringChange(ModuleWiring wiring, DataOutputStream out, Map<ModuleRevision, Map<Object, Integer>> revisionIndexes) throws IOException {
+			out.writeLong(wiring.getRevision().getRevisions().getModule().getId());
+
+			List<ModuleCapability> capabilities = wiring.getModuleCapabilities(null);
+			out.writeInt(capabilities.size());
+			for (ModuleCapability capability : capabilities) {
+				writeReference(capability.getRevision(), capability, out, revisionIndexes);
+			}
+
+			List<ModuleRequirement> requirements = wiring.getPersistentRequirements();
+			out.writeInt(requirements.size());
+			for (ModuleRequirement requirement : requirements) {
+				writeReference(requirement.getRevision(), requirement, out, revisionIndexes);
+			}
+
+			List<ModuleWire> providedWires = wiring.getPersistentProvidedWires();
+			out.writeInt(providedWires.size());
+			for (ModuleWire wire : providedWires) {
+				writeWireReference(wire, out, revisionIndexes);
+			}
+
+			List<ModuleWire> requiredWires = wiring.getPersistentRequiredWires();
+			out.writeInt(requiredWires.size());
+			for (ModuleWire wire : requiredWires) {
+				writeWireReference(wire, out, revisionIndexes);
+			}
+
+			Collection<String> substituted = wiring.getSubstitutedNames();
+			out.writeInt(substituted.size());
+			for (String pkgName : substituted) {
+				writeString(pkgName, out, Collections.emptyMap());
+			}
+		}
+
+		private static ModuleWiring readWiringChange(ModuleDatabase moduleDatabase, DataInputStream in, Map<List<Object>, ModuleWire> wires) throws IOException {
+			ModuleRevision revision = readCurrentRevision(moduleDatabase, in);
+
+			int numCapabilities = in.readInt();
+			NamespaceList.Builder<ModuleCapability> capabilities = Builder.create(NamespaceList.CAPABILITY);
+			for (int i = 0; i < numCapabilities; i++) {
+				capabilities.add(readCapabilityReference(moduleDatabase, in));
+			}
+
+			int numRequirements = in.readInt();
+			NamespaceList.Builder<ModuleRequirement> requirements = Builder.create(NamespaceList.REQUIREMENT);
+			for (int i = 0; i < numRequirements; i++) {
+				requirements.add(readRequirementReference(moduleDatabase, in));
+			}
+
+			int numProvidedWires = in.readInt();
+			NamespaceList.Builder<ModuleWire> providedWires = Builder.create(NamespaceList.WIRE);
+			for (int i = 0; i < numProvidedWires; i++) {
+				providedWires.add(readWireReference(moduleDatabase, in, wires));
+			}
+
+			int numRequiredWires = in.readInt();
+			NamespaceList.Builder<ModuleWire> requiredWires = Builder.create(NamespaceList.WIRE);
+			for (int i = 0; i < numRequiredWires; i++) {
+				requiredWires.add(readWireReference(moduleDatabase, in, wires));
+			}
+
+			int numSubstitutedNames = in.readInt();
+			Collection<String> substituted = new ArrayList<>(numSubstitutedNames);
+			for (int i = 0; i < numSubstitutedNames; i++) {
+				substituted.add(readString(in, Collections.emptyList()));
+			}
+
+			return new ModuleWiring(revision, capabilities.build(), requirements.build(), providedWires.build(),
+					requiredWires.build(), substituted);
+		}
+
+		private static void writeWireReference(ModuleWire wire, DataOutputStream out, Map<ModuleRevision, Map<Object, Integer>> revisionIndexes) throws IOException {
+			writeReference(wire.getCapability().getRevision(), wire.getCapability(), out, revisionIndexes);
+			out.writeLong(wire.getProvider().getRevisions().getModule().getId());
+			writeReference(wire.getRequirement().getRevision(), wire.getRequirement(), out, revisionIndexes);
+			out.writeLong(wire.getRequirer().getRevisions().getModule().getId());
+		}
+
+		private static ModuleWire readWireReference(ModuleDatabase moduleDatabase, DataInputStream in, Map<List<Object>, ModuleWire> wires) throws IOException {
+			ModuleCapability capability = readCapabilityReference(moduleDatabase, in);
+			ModuleRevision provider = readCurrentRevision(moduleDatabase, in);
+			ModuleRequirement requirement = readRequirementReference(moduleDatabase, in);
+			ModuleRevision requirer = readCurrentRevision(moduleDatabase, in);
+			return wires.computeIfAbsent(getWireKey(capability, provider, requirement, requirer), k -> new ModuleWire(capability, provider, requirement, requirer));
+		}
+
+		private static List<Object> getWireKey(ModuleCapability capability, ModuleRevision provider, ModuleRequirement requirement, ModuleRevision requirer) {
+			// none of the wire ends override equals; the key compares them by identity
+			return Arrays.asList(capability, provider, requirement, requirer);
+		}
+
+		/**
+		 * Writes a reference to a capability or requirement as the id of the module
+		 * and the index of the capability or requirement in the current revision.
+		 */
+		private static void writeReference(ModuleRevision revision, Object capabilityOrRequirement, DataOutputStream out, Map<ModuleRevision, Map<Object, Integer>> revisionIndexes) throws IOException {
+			Integer index = revisionIndexes.computeIfAbsent(revision, Persistence::getIndexes).get(capabilityOrRequirement);
+			if (index == null)
+				throw new NullPointerException("Could not find the expected indexes"); //$NON-NLS-1$
+			out.writeLong(revision.getRevisions().getModule().getId());
+			out.writeInt(index);
+		}
+
+		private static Map<Object, Integer> getIndexes(ModuleRevision revision) {
+			Map<Object, Integer> indexes = new IdentityHashMap<>();
+			List<ModuleCapability> capabilities = revision.getModuleCapabilities(null);
+			for (int i = 0; i < capabilities.size(); i++) {
+				indexes.put(capabilities.get(i), i);
+			}
+			List<ModuleRequirement> requirements = revision.getModuleRequirements(null);
+			for (int i = 0; i < requirements.size(); i++) {
+				indexes.put(requirements.get(i), i);
+			}
+			return indexes;
+		}
+
+		private static ModuleCapability readCapabilityReference(ModuleDatabase moduleDatabase, DataInputStream in) throws IOException {
+			return getReferenced(readCurrentRevision(moduleDatabase, in).getModuleCapabilities(null), in.readInt());
+		}
+
+		private static ModuleRequirement readRequirementReference(ModuleDatabase moduleDatabase, DataInputStream in) throws IOException {
+			return getReferenced(readCurrentRevision(moduleDatabase, in).getModuleRequirements(null), in.readInt());
+		}
+
+		private static <T> T getReferenced(List<T> list, int index) throws IOException {
+			if (index < 0 || index >= list.size())
+				throw new IOException("Could not find the expected index: " + index); //$NON-NLS-1$
+			return list.get(index);
+		}
+
+		private static ModuleRevision readCurrentRevision(ModuleDatabase moduleDatabase, DataInputStream in) throws IOException {
+			long id = in.readLong();
+			Module module = moduleDatabase.getModule(id);
+			ModuleRevision current = module == null ? null : module.getCurrentRevision();
+			if (current == null)
+				throw new IOException("Could not find the expected module: " + id); //$NON-NLS-1$
+			return current;
+		}
+
+		private static void writeBlock(ByteArrayOutputStream bytes, DataOutputStream out) throws IOException {
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			bytes.reset();
+		}
+
+		private static int[] readOffsets(DataInputStream in, int count) throws IOException {
+			int[] offsets = new int[count];
+			for (int i = 0; i < count; i++) {
+				offsets[i] = in.readInt();
+			}
+			return offsets;
+		}
+
+		private static byte[] readBlock(DataInputStream in) throws IOException {
+			byte[] block = new byte[in.readInt()];
+			in.readFully(block);
+			return block;
+		}
+
+		static DataInputStream getBlockInput(byte[] block, int offset) {
+			return new DataInputStream(new ByteArrayInputStream(block, offset, block.length - offset));
 		}
 
 		private static void getStringsVersionsAndMaps(Module module, ModuleDatabase moduleDatabase, Set<String> allStrings, Set<Version> allVersions, Set<Map<String, ?>> allMaps) {
@@ -1171,7 +1765,34 @@ public class ModuleDatabase {
 
 			List<Object> objectTable = new ArrayList<>();
 
-			if (version >= 2) {
+			if (version >= LAZY_VERSION) {
+				// strings and maps are decoded on first use from the persisted blocks
+				int numStrings = in.readInt();
+				int[] stringOffsets = readOffsets(in, numStrings);
+				byte[] stringBlock = readBlock(in);
+				int numVersions = in.readInt();
+				PersistedValues values = new PersistedValues(stringBlock, stringOffsets, numVersions);
+				for (int i = 0; i < numVersions; i++) {
+					values.setVersion(i, readVersion0(in, values, false));
+				}
+				int numMaps = in.readInt();
+				int[] mapOffsets = readOffsets(in, numMaps);
+				byte[] mapBlock = readBlock(in);
+				objectTable = new ReadTable(values);
+				for (int i = 0; i < numMaps; i++) {
+					objectTable.add(PersistedMap.create(mapBlock, mapOffsets[i], values));
+				}
+				int numModules = in.readInt();
+				int[] moduleOffsets = readOffsets(in, numModules);
+				byte[] moduleBlock = readBlock(in);
+				// decode the module records in parallel; only loading the modules into the database is serial
+				List<Object> decodeTable = objectTable;
+				List<PersistedModule> persistedModules = decodeAll(moduleDatabase.adaptor.getResolverExecutor(), numModules, //
+						i -> readPersistedModule(getBlockInput(moduleBlock, moduleOffsets[i]), decodeTable, version));
+				for (PersistedModule persistedModule : persistedModules) {
+					loadModule(moduleDatabase, persistedModule, objectTable);
+				}
+			} else if (version >= 2) {
 				int numStrings = in.readInt();
 				for (int i = 0; i < numStrings; i++) {
 					readIndexedString(in, objectTable);
@@ -1185,10 +1806,11 @@ public class ModuleDatabase {
 					readIndexedMap(in, objectTable);
 				}
 			}
-			int numModules = in.readInt();
-			ModuleRevisionBuilder builder = new ModuleRevisionBuilder();
-			for (int i = 0; i < numModules; i++) {
-				readModule(builder, moduleDatabase, in, objectTable, version);
+			if (version < LAZY_VERSION) {
+				int numModules = in.readInt();
+				for (int i = 0; i < numModules; i++) {
+					loadModule(moduleDatabase, readPersistedModule(in, objectTable, version), objectTable);
+				}
 			}
 
 			moduleDatabase.revisionsTimeStamp.set(revisionsTimeStamp);
@@ -1207,9 +1829,21 @@ public class ModuleDatabase {
 
 			// now read all the info about each wiring using only indexes
 			Map<ModuleRevision, ModuleWiring> wirings = new HashMap<>();
-			for (int i = 0; i < numWirings; i++) {
-				ModuleWiring wiring = readWiring(in, objectTable);
-				wirings.put(wiring.getRevision(), wiring);
+			if (version >= WIRINGS_BLOCK_VERSION) {
+				// the wires are all in the table; the wirings can be decoded in parallel
+				int[] wiringOffsets = readOffsets(in, numWirings);
+				byte[] wiringBlock = readBlock(in);
+				List<Object> decodeTable = objectTable;
+				List<ModuleWiring> persistedWirings = decodeAll(moduleDatabase.adaptor.getResolverExecutor(), numWirings, //
+						i -> readWiring(getBlockInput(wiringBlock, wiringOffsets[i]), decodeTable));
+				for (ModuleWiring wiring : persistedWirings) {
+					wirings.put(wiring.getRevision(), wiring);
+				}
+			} else {
+				for (int i = 0; i < numWirings; i++) {
+					ModuleWiring wiring = readWiring(in, objectTable);
+					wirings.put(wiring.getRevision(), wiring);
+				}
 			}
 			// TODO need to do this without incrementing the timestamp
 			moduleDatabase.setWiring(wirings);
@@ -1219,6 +1853,8 @@ public class ModuleDatabase {
 				wiring.getRevision().getRevisions().getModule().setState(State.RESOLVED);
 			}
 
+			moduleDatabase.setStoredWirings();
+
 			// Setting the timestamp at the end since some operations increment it
 			moduleDatabase.revisionsTimeStamp.set(revisionsTimeStamp);
 			moduleDatabase.allTimeStamp.set(allTimeStamp);
@@ -1267,61 +1903,143 @@ public class ModuleDatabase {
 			out.writeLong(module.getLastModified());
 		}
 
-		private static void readModule(ModuleRevisionBuilder builder, ModuleDatabase moduleDatabase, DataInputStream in, List<Object> objectTable, int version) throws IOException {
-			builder.clear();
-			int moduleIndex = in.readInt();
-			String location = readString(in, objectTable);
-			long id = in.readLong();
+		private static PersistedModule readPersistedModule(DataInputStream in, List<Object> objectTable, int version) throws IOException {
+			PersistedModule result = new PersistedModule();
+			ModuleRevisionBuilder builder = result.builder;
+			result.moduleIndex = in.readInt();
+			result.location = readString(in, objectTable);
+			result.id = in.readLong();
 			builder.setSymbolicName(readString(in, objectTable));
 			builder.setVersion(readVersion(in, objectTable));
 			builder.setTypes(in.readInt());
 
 			int numCapabilities = in.readInt();
-			int[] capabilityIndexes = new int[numCapabilities];
+			result.capabilityIndexes = new int[numCapabilities];
 			for (int i = 0; i < numCapabilities; i++) {
-				capabilityIndexes[i] = in.readInt();
+				result.capabilityIndexes[i] = in.readInt();
 				readGenericInfo(true, in, builder, objectTable, version);
 			}
 
 			int numRequirements = in.readInt();
-			int[] requirementIndexes = new int[numRequirements];
+			result.requirementIndexes = new int[numRequirements];
 			for (int i = 0; i < numRequirements; i++) {
-				requirementIndexes[i] = in.readInt();
+				result.requirementIndexes[i] = in.readInt();
 				readGenericInfo(false, in, builder, objectTable, version);
 			}
 
 			// settings
-			EnumSet<Settings> settings = null;
 			int numSettings = in.readInt();
 			if (numSettings > 0) {
-				settings = EnumSet.noneOf(Settings.class);
+				result.settings = EnumSet.noneOf(Settings.class);
 				for (int i = 0; i < numSettings; i++) {
-					settings.add(Settings.valueOf(readString(in, objectTable)));
+					result.settings.add(Settings.valueOf(readString(in, objectTable)));
 				}
 			}
 
 			// startlevel
-			int startlevel = in.readInt();
-			Object revisionInfo = moduleDatabase.adaptor.getRevisionInfo(location, id);
-			Module module = moduleDatabase.load(location, builder, revisionInfo, id, settings, startlevel);
+			result.startlevel = in.readInt();
 
 			// last modified
-			module.setlastModified(in.readLong());
+			result.lastModified = in.readLong();
+			return result;
+		}
 
-			ModuleRevision current = module.getCurrentRevision();
-			addToReadTable(current, moduleIndex, objectTable);
+		private static void loadModule(ModuleDatabase moduleDatabase, PersistedModule persisted, List<Object> objectTable) {
+			Object revisionInfo = moduleDatabase.adaptor.getRevisionInfo(persisted.location, persisted.id);
+			Module module = moduleDatabase.load(persisted.location, persisted.builder, revisionInfo, persisted.id, persisted.settings, persisted.startlevel);
+
+			module.setlastModified(persisted.lastModified);
+
+			addToReadTable(module.getCurrentRevision(), persisted, objectTable);
+		}
+
+		private static void addToReadTable(ModuleRevision current, PersistedModule persisted, List<Object> objectTable) {
+			addToReadTable(current, persisted.moduleIndex, objectTable);
 
 			List<ModuleCapability> capabilities = current.getModuleCapabilities(null);
 			for (int i = 0; i < capabilities.size(); i++) {
-				addToReadTable(capabilities.get(i), capabilityIndexes[i], objectTable);
+				addToReadTable(capabilities.get(i), persisted.capabilityIndexes[i], objectTable);
 			}
 
 			List<ModuleRequirement> requirements = current.getModuleRequirements(null);
 			for (int i = 0; i < requirements.size(); i++) {
-				addToReadTable(requirements.get(i), requirementIndexes[i], objectTable);
+				addToReadTable(requirements.get(i), persisted.requirementIndexes[i], objectTable);
 			}
 		}
 
+		/**
+		 * Decodes the records with the specified indexes using the executor. The
+		 * records are decoded in batches; the calling thread waits for all batches
+		 * to complete.
+		 * @param executor the executor to decode the batches with
+		 * @param count the number of records
+		 * @param decoder decodes the record with a given index
+		 * @return the decoded records in index order
+		 * @throws IOException if a record could not be decoded
+		 */
+		private static <T> List<T> decodeAll(Executor executor, int count, RecordDecoder<T> decoder) throws IOException {
+			@SuppressWarnings("unchecked")
+			T[] results = (T[]) new Object[count];
+			List<FutureTask<Void>> batches = new ArrayList<>();
+			for (int start = 0; start < count; start += DECODE_BATCH_SIZE) {
+				int batchStart = start;
+				int batchEnd = Math.min(count, start + DECODE_BATCH_SIZE);
+				FutureTask<Void> batch = new FutureTask<>(() -> {
+					for (int i = batchStart; i < batchEnd; i++) {
+						results[i] = decoder.decode(i);
+					}
+					return null;
+				});
+				batches.add(batch);
+				if (batches.size() == 1 && batchEnd == count) {
+					// a single batch; just decode with the current thread
+					batch.run();
+				} else {
+					executor.execute(batch);
+				}
+			}
+			for (FutureTask<Void> batch : batches) {
+				try {
+					batch.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw (IOException) new InterruptedIOException().initCause(e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+			return Arrays.asList(results);
+		}
+
+		private interface RecordDecoder<T> {
+			T decode(int index) throws IOException;
+		}
+
+		/**
+		 * A decoded module record which has not been loaded into the database yet.
+		 */
+		private static final class PersistedModule {
+			final ModuleRevisionBuilder builder = new ModuleRevisionBuilder();
+			int moduleIndex;
+			String location;
+			long id;
+			EnumSet<Settings> settings;
+			int startlevel;
+			long lastModified;
+			int[] capabilityIndexes;
+			int[] requirementIndexes;
+		}
+
 		private static void writeWire(ModuleWire wire, DataOutputStream out, Map<Object, Integer> objectTable) throws IOException {
 			Wire w = wire;
 			Integer capability = objectTable.get(w.getCapability());
@@ -1511,7 +2229,7 @@ public class ModuleDatabase {
 			addToReadTable(result, in.readInt(), objectTable);
 		}
 
-		private static Map<String, Object> readMap(DataInputStream in, List<Object> objectTable) throws IOException {
+		static Map<String, Object> readMap(DataInputStream in, List<Object> objectTable) throws IOException {
 			int count = in.readInt();
 			Map<String, Object> result;
 			if (count == 0) {
@@ -1716,7 +2434,7 @@ public class ModuleDatabase {
 			return readString0(in, objectTable, true);
 		}
 
-		static private String readString0(DataInputStream in, List<Object> objectTable, boolean intern) throws IOException {
+		static String readString0(DataInputStream in, List<Object> objectTable, boolean intern) throws IOException {
 			byte type = in.readByte();
 			if (type == INDEX) {
 				int index = in.readInt();
@@ -1737,5 +2455,149 @@ public class ModuleDatabase {
 
 			return intern ? ObjectPool.intern(string) : string;
 		}
+
+		/**
+		 * The persisted strings and versions. Versions are read eagerly; each
+		 * string is decoded from the string block the first time it is used.
+		 * The string block is released once all strings have been decoded.
+		 */
+		private static final class PersistedValues extends AbstractList<Object> {
+			private final int[] stringOffsets;
+			private final AtomicReferenceArray<Object> values;
+			private final AtomicInteger undecoded;
+			private volatile byte[] stringBlock;
+
+			PersistedValues(byte[] stringBlock, int[] stringOffsets, int numVersions) {
+				this.stringBlock = stringBlock;
+				this.stringOffsets = stringOffsets;
+				this.values = new AtomicReferenceArray<>(stringOffsets.length + numVersions);
+				this.undecoded = new AtomicInteger(stringOffsets.length);
+			}
+
+			void setVersion(int index, Version version) {
+				values.set(stringOffsets.length + index, version);
+			}
+
+			@Override
+			public Object get(int index) {
+				Object value = values.get(index);
+				if (value == null && index < stringOffsets.length) {
+					byte[] block = stringBlock;
+					if (block == null) {
+						// decoded concurrently after the last string was decoded
+						return values.get(index);
+					}
+					try {
+						value = readString0(getBlockInput(block, stringOffsets[index]), this, false);
+					} catch (IOException e) {
+						throw new IllegalStateException("Invalid persistent string: " + index, e); //$NON-NLS-1$
+					}
+					if (values.compareAndSet(index, null, value)) {
+						if (undecoded.decrementAndGet() == 0) {
+							stringBlock = null;
+						}
+					} else {
+						value = values.get(index);
+					}
+				}
+				return value;
+			}
+
+			@Override
+			public int size() {
+				return values.length();
+			}
+		}
+
+		/**
+		 * The object table used to load the modules and wirings. The persisted
+		 * strings and versions are looked up from the {@link PersistedValues}.
+		 */
+		private static final class ReadTable extends ArrayList<Object> {
+			private static final long serialVersionUID = 1L;
+			private final transient PersistedValues values;
+
+			ReadTable(PersistedValues values) {
+				super(values.size());
+				this.values = values;
+				for (int i = 0; i < values.size(); i++) {
+					add(null);
+				}
+			}
+
+			@Override
+			public Object get(int index) {
+				return index < values.size() ? values.get(index) : super.get(index);
+			}
+		}
+	}
+
+	/**
+	 * An unmodifiable attribute or directive map loaded from the persistent
+	 * data of the database. The content of the map is decoded from the map
+	 * block and interned in the {@link MetadataPool} the first time it is
+	 * accessed.
+	 */
+	static final class PersistedMap extends AbstractMap<String, Object> {
+		private final byte[] block;
+		private final int offset;
+		private final int size;
+		private final List<Object> values;
+		private volatile Map<String, Object> decoded;
+
+		private PersistedMap(byte[] block, int offset, int size, List<Object> values) {
+			this.block = block;
+			this.offset = offset;
+			this.size = size;
+			this.values = values;
+		}
+
+		static Map<String, Object> create(byte[] block, int offset, List<Object> values) throws IOException {
+			int size = Persistence.getBlockInput(block, offset).readInt();
+			return size == 0 ? Collections.emptyMap() : new PersistedMap(block, offset, size, values);
+		}
+
+		private Map<String, Object> getDecoded() {
+			Map<String, Object> result = decoded;
+			if (result == null) {
+				synchronized (this) {
+					result = decoded;
+					if (result == null) {
+						try {
+							result = MetadataPool.intern(Persistence.readMap(Persistence.getBlockInput(block, offset), values));
+						} catch (IOException e) {
+							throw new IllegalStateException("Invalid persistent map.", e); //$NON-NLS-1$
+						}
+						decoded = result;
+					}
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return false;
+		}
+
+		@Override
+		public Object get(Object key) {
+			return getDecoded().get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return getDecoded().containsKey(key);
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			return getDecoded().entrySet();
+		}
 	}
 }
@@ -23,6 +23,7 @@ import java.util.Set;
 import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.report.resolution.ResolutionReport;
+import org.eclipse.osgi.report.resolution.ResolutionStatistics;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.namespace.BundleNamespace;
@@ -54,8 +55,8 @@ class ModuleResolutionReport implements ResolutionReport {
 			entries.add(new EntryImpl(type, data));
 		}
 
-		public ModuleResolutionReport build(Map<Resource, List<Wire>> resolutionResult, ResolutionException cause) {
-			return new ModuleResolutionReport(resolutionResult, resourceToEntries, cause);
+		public ModuleResolutionReport build(Map<Resource, List<Wire>> resolutionResult, ResolutionException cause, ResolutionStatistics statistics) {
+			return new ModuleResolutionReport(resolutionResult, resourceToEntries, cause, statistics);
 		}
 	}
 
@@ -82,11 +83,17 @@ class ModuleResolutionReport implements ResolutionReport {
 	private final Map<Resource, List<Entry>> entries;
 	private final ResolutionException resolutionException;
 	private final Map<Resource, List<Wire>> resolutionResult;
+	private final ResolutionStatistics statistics;
 
 	ModuleResolutionReport(Map<Resource, List<Wire>> resolutionResult, Map<Resource, List<Entry>> entries, ResolutionException cause) {
+		this(resolutionResult, entries, cause, null);
+	}
+
+	ModuleResolutionReport(Map<Resource, List<Wire>> resolutionResult, Map<Resource, List<Entry>> entries, ResolutionException cause, ResolutionStatistics statistics) {
 		this.entries = entries == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(entries));
 		this.resolutionResult = resolutionResult == null ? Collections.emptyMap() : Collections.unmodifiableMap(resolutionResult);
 		this.resolutionException = cause;
+		this.statistics = statistics;
 	}
 
 	@Override
@@ -99,6 +106,11 @@ class ModuleResolutionReport implements ResolutionReport {
 		return resolutionException;
 	}
 
+	@Override
+	public ResolutionStatistics getStatistics() {
+		return statistics;
+	}
+
 	Map<Resource, List<Wire>> getResolutionResult() {
 		return resolutionResult;
 	}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.container;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.osgi.report.resolution.ResolutionHistory;
+import org.eclipse.osgi.report.resolution.ResolutionStatistics;
+import org.osgi.resource.Resource;
+
+/**
+ * The statistics of a resolve process of the container.  Providers are found
+ * and resolver hooks are called by the resolver threads, so the statistics
+ * are collected concurrently until the process is {@link #complete() complete}.
+ * <p>
+ * The statistics are kept in the {@link History history} after the resolve
+ * process, so they must not hold on to the resources of the process.
+ * Resources are recorded by a description of their module instead.
+ */
+final class ModuleResolutionStatistics implements ResolutionStatistics {
+	/**
+	 * Keeps the statistics of the most recent resolve processes of a container.
+	 */
+	static final class History implements ResolutionHistory {
+		private final int size;
+		private final Deque<ResolutionStatistics> statistics;
+
+		History(int size) {
+			this.size = size;
+			this.statistics = new ArrayDeque<>(size);
+		}
+
+		void add(ResolutionStatistics resolutionStatistics) {
+			synchronized (statistics) {
+				if (statistics.size() == size) {
+					statistics.removeFirst();
+				}
+				statistics.addLast(resolutionStatistics);
+			}
+		}
+
+		@Override
+		public List<ResolutionStatistics> getStatistics() {
+			synchronized (statistics) {
+				return Collections.unmodifiableList(new ArrayList<>(statistics));
+			}
+		}
+	}
+
+	private final long startTime = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private final LongAdder findProvidersTime = new LongAdder();
+	private final LongAdder populateTime = new LongAdder();
+	private final LongAdder packageSpaceTime = new LongAdder();
+	private final LongAdder consistencyCheckTime = new LongAdder();
+	private final LongAdder hookTime = new LongAdder();
+	private final AtomicInteger permutationCount = new AtomicInteger();
+	private final AtomicInteger batchRetryCount = new AtomicInteger();
+	private final Map<String, Long> findProvidersTimes = new ConcurrentHashMap<>();
+	private volatile long totalTime = -1;
+
+	void addFindProvidersTime(Resource resource, long time) {
+		findProvidersTime.add(time);
+		findProvidersTimes.merge(describe(resource), time, Long::sum);
+	}
+
+	/*
+	 * Describes a resource in the same way as a bundle: <symbolic name>_<version> [<bundle id>]
+	 */
+	static String describe(Resource resource) {
+		if (!(resource instanceof ModuleRevision)) {
+			return String.valueOf(resource);
+		}
+		ModuleRevision revision = (ModuleRevision) resource;
+		String name = revision.getSymbolicName();
+		if (name == null)
+			name = "unknown"; //$NON-NLS-1$
+		return name + '_' + revision.getVersion() + " [" + revision.getRevisions().getModule().getId() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	void addResolveTimes(long populate, long packageSpace, long consistencyCheck, int permutations) {
+		populateTime.add(populate);
+		packageSpaceTime.add(packageSpace);
+		consistencyCheckTime.add(consistencyCheck);
+		permutationCount.addAndGet(permutations);
+	}
+
+	void addHookTime(long time) {
+		hookTime.add(time);
+	}
+
+	void countBatchRetry() {
+		batchRetryCount.incrementAndGet();
+	}
+
+	void complete() {
+		totalTime = System.nanoTime() - startNanos;
+	}
+
+	@Override
+	public long getStartTime() {
+		return startTime;
+	}
+
+	@Override
+	public long getTotalTime() {
+		long total = totalTime;
+		return total < 0 ? System.nanoTime() - startNanos : total;
+	}
+
+	@Override
+	public long getFindProvidersTime() {
+		return findProvidersTime.sum();
+	}
+
+	@Override
+	public long getPopulateTime() {
+		return populateTime.sum();
+	}
+
+	@Override
+	public long getPackageSpaceTime() {
+		return packageSpaceTime.sum();
+	}
+
+	@Override
+	public long getConsistencyCheckTime() {
+		return consistencyCheckTime.sum();
+	}
+
+	@Override
+	public long getHookTime() {
+		return hookTime.sum();
+	}
+
+	@Override
+	public int getPermutationCount() {
+		return permutationCount.get();
+	}
+
+	@Override
+	public int getBatchRetryCount() {
+		return batchRetryCount.get();
+	}
+
+	@Override
+	public Map<String, Long> getFindProvidersTimes() {
+		return Collections.unmodifiableMap(new HashMap<>(findProvidersTimes));
+	}
+
+	@Override
+	public String toString() {
+		return "Resolve statistics: total " + millis(getTotalTime()) + "ms, find providers " + millis(getFindProvidersTime()) //$NON-NLS-1$ //$NON-NLS-2$
+				+ "ms, populate " + millis(getPopulateTime()) + "ms, package spaces " + millis(getPackageSpaceTime()) //$NON-NLS-1$ //$NON-NLS-2$
+				+ "ms, consistency checks " + millis(getConsistencyCheckTime()) + "ms, hooks " + millis(getHookTime()) //$NON-NLS-1$ //$NON-NLS-2$
+				+ "ms, permutations " + getPermutationCount() + ", batch retries " + getBatchRetryCount(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+}
@@ -100,8 +100,11 @@ final class ModuleResolver {
 	private static final int DEFAULT_BATCH_SIZE = Integer.MAX_VALUE;
 	private static final int BATCH_MIN_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(5);
 	private static final int DEFAULT_BATCH_TIMEOUT = (int) TimeUnit.MINUTES.toMillis(2);
+	private static final int HISTORY_SIZE = 10;
 	final int resolverRevisionBatchSize;
 	final int resolverBatchTimeout;
+	final boolean resolutionCacheEnabled;
+	final int resolverPermutationThreadCount;
 
 	void setDebugOptions() {
 		DebugOptions options = adaptor.getDebugOptions();
@@ -123,6 +126,7 @@ final class ModuleResolver {
 
 	final ThreadLocal<Boolean> threadResolving = new ThreadLocal<>();
 	final ModuleContainerAdaptor adaptor;
+	final ModuleResolutionStatistics.History history = new ModuleResolutionStatistics.History(HISTORY_SIZE);
 
 	/**
 	 * Constructs the module resolver with the specified resolver hook factory
@@ -138,6 +142,10 @@ final class ModuleResolver {
 		this.resolverRevisionBatchSize = parseInteger(batchSizeConfig, DEFAULT_BATCH_SIZE, 1);
 		String batchTimeoutConfig = this.adaptor.getProperty(EquinoxConfiguration.PROP_RESOLVER_BATCH_TIMEOUT);
 		this.resolverBatchTimeout = parseInteger(batchTimeoutConfig, DEFAULT_BATCH_TIMEOUT, BATCH_MIN_TIMEOUT);
+		this.resolutionCacheEnabled = Boolean.parseBoolean(this.adaptor.getProperty(EquinoxConfiguration.PROP_RESOLVER_CACHE));
+		String permutationThreadCountConfig = this.adaptor.getProperty(EquinoxConfiguration.PROP_RESOLVER_PERMUTATION_THREAD_COUNT);
+		// permutations are checked one after the other by default
+		this.resolverPermutationThreadCount = parseInteger(permutationThreadCountConfig, 0, 0);
 
 	}
 
@@ -468,6 +476,11 @@ final class ModuleResolver {
 				return errors == null ? Collections.emptyMap() : errors;
 			}
 
+			@Override
+			public void logResolveStatistics(long populateTime, long packageSpaceTime, long consistencyCheckTime, int permutationCount) {
+				statistics.addResolveTimes(populateTime, packageSpaceTime, consistencyCheckTime, permutationCount);
+			}
+
 			@Override
 			public boolean isDebugEnabled() {
 				return DEBUG_USES;
@@ -481,6 +494,7 @@ final class ModuleResolver {
 		}
 
 		private final ModuleResolutionReport.Builder reportBuilder = new ModuleResolutionReport.Builder();
+		final ModuleResolutionStatistics statistics = new ModuleResolutionStatistics();
 		/*
 		 * Contains the revisions that were requested to be resolved and is not
 		 * modified post instantiation.
@@ -512,6 +526,11 @@ final class ModuleResolver {
 		private final Set<Resource> failedToResolve = new HashSet<>();
 		private AtomicBoolean scheduleTimeout = new AtomicBoolean(true);
 		private AtomicReference<ScheduledFuture<?>> timoutFuture = new AtomicReference<>();
+		/*
+		 * Records the providers and related resources of the resolve operation
+		 * currently running, if it can be cached.
+		 */
+		private volatile ResolutionCache.Recorder recorder = null;
 		/*
 		 * Used to generate the UNRESOLVED_PROVIDER resolution report entries.
 		 *
@@ -559,7 +578,12 @@ final class ModuleResolver {
 		public List<Capability> findProviders(Requirement requirement) {
 			Requirement origReq = requirement;
 			Requirement lookupReq = dynamicReq == null || dynamicReq.getOriginal() != requirement ? requirement : dynamicReq;
-			return findProviders0(origReq, lookupReq);
+			long start = System.nanoTime();
+			try {
+				return findProviders0(origReq, lookupReq);
+			} finally {
+				statistics.addFindProvidersTime(origReq.getResource(), System.nanoTime() - start);
+			}
 		}
 
 		private List<Capability> findProviders0(Requirement origReq, Requirement lookupReq) {
@@ -575,6 +599,10 @@ final class ModuleResolver {
 			}
 			List<ModuleCapability> candidates = moduleDatabase.findCapabilities(lookupReq);
 			List<Capability> result = filterProviders(origReq, candidates);
+			ResolutionCache.Recorder currentRecorder = recorder;
+			if (currentRecorder != null) {
+				currentRecorder.providers(origReq, result);
+			}
 			if (DEBUG_PROVIDERS) {
 				StringBuilder builder = new StringBuilder("RESOLVER: Capabilities being returned to the resolver"); //$NON-NLS-1$
 				int i = 0;
@@ -597,6 +625,15 @@ final class ModuleResolver {
 		}
 
 		List<Capability> filterProviders(Requirement requirement, List<ModuleCapability> candidates, boolean filterResolvedHosts) {
+			filterCandidates(requirement, candidates, filterResolvedHosts);
+			reportProviders(requirement, candidates);
+			filterFailedToResolve(candidates);
+
+			Collections.sort(candidates, this);
+			return InternalUtils.asList(candidates);
+		}
+
+		private void filterCandidates(Requirement requirement, List<ModuleCapability> candidates, boolean filterResolvedHosts) {
 			filterDisabled(candidates);
 			removeNonEffectiveCapabilities(candidates);
 			removeSubstituted(candidates);
@@ -606,7 +643,12 @@ final class ModuleResolver {
 			if (DEBUG_PROVIDERS || DEBUG_HOOKS) {
 				filteredMatches = new ArrayList<>(candidates);
 			}
-			hook.filterMatches((BundleRequirement) requirement, InternalUtils.asList(candidates));
+			long start = System.nanoTime();
+			try {
+				hook.filterMatches((BundleRequirement) requirement, InternalUtils.asList(candidates));
+			} finally {
+				statistics.addHookTime(System.nanoTime() - start);
+			}
 			if (DEBUG_PROVIDERS || DEBUG_HOOKS) {
 				filteredMatches.removeAll(candidates);
 				if (!filteredMatches.isEmpty()) {
@@ -627,7 +669,9 @@ final class ModuleResolver {
 
 			// filter resolved hosts after calling hooks to allow hooks to see the host capability
 			filterResolvedHosts(requirement, candidates, filterResolvedHosts);
+		}
 
+		private void reportProviders(Requirement requirement, List<ModuleCapability> candidates) {
 			if (candidates.isEmpty()) {
 				if (!wirings.containsKey(requirement.getResource()) || isDynamic(requirement)) {
 					reportBuilder.addEntry(requirement.getResource(), Entry.Type.MISSING_CAPABILITY, requirement);
@@ -639,11 +683,6 @@ final class ModuleResolver {
 			} else {
 				computeUnresolvedProviders(requirement, candidates);
 			}
-
-			filterFailedToResolve(candidates);
-
-			Collections.sort(candidates, this);
-			return InternalUtils.asList(candidates);
 		}
 
 		private void filterFailedToResolve(List<ModuleCapability> candidates) {
@@ -826,6 +865,10 @@ final class ModuleResolver {
 				}
 			}
 
+			ResolutionCache.Recorder currentRecorder = recorder;
+			if (currentRecorder != null) {
+				currentRecorder.related(host, relatedFragments);
+			}
 			return relatedFragments;
 		}
 
@@ -864,8 +907,10 @@ final class ModuleResolver {
 			}
 			threadResolving.set(Boolean.TRUE);
 			try {
+				long start = System.nanoTime();
 				try {
 					hook = adaptor.getResolverHookFactory().begin(InternalUtils.asList((List<? extends BundleRevision>) triggers));
+					statistics.addHookTime(System.nanoTime() - start);
 				} catch (RuntimeException e) {
 					if (e.getCause() instanceof BundleException) {
 						BundleException be = (BundleException) e.getCause();
@@ -920,11 +965,14 @@ final class ModuleResolver {
 					if (DEBUG_WIRING) {
 						printWirings(result);
 					}
-					report = reportBuilder.build(result, re);
+					statistics.complete();
+					history.add(statistics);
+					report = reportBuilder.build(result, re, statistics);
 					if (DEBUG_REPORT) {
 						if (report.getResolutionException() != null) {
 							Debug.printStackTrace(report.getResolutionException());
 						}
+						Debug.println("RESOLVER: " + statistics); //$NON-NLS-1$
 						Set<Resource> resources = report.getEntries().keySet();
 						if (!resources.isEmpty()) {
 							Debug.println("RESOLVER: Resolution report"); //$NON-NLS-1$
@@ -1014,6 +1062,7 @@ final class ModuleResolver {
 		}
 
 		private void resolveRevisionsIndividually(boolean isMandatory, ResolveLogger logger, Map<Resource, List<Wire>> result, Collection<Resource> toResolve, Collection<ModuleRevision> revisions) throws ResolutionException {
+			statistics.countBatchRetry();
 			scheduleTimeout.set(false);
 			for (Resource resource : toResolve) {
 				if (!wirings.containsKey(resource) && !failedToResolve.contains(resource)) {
@@ -1033,9 +1082,21 @@ final class ModuleResolver {
 			currentlyResolvingMandatory = isMandatory;
 			transitivelyResolveFailures.clear();
 			Map<Resource, List<Wire>> interimResults = null;
+			ResolutionCache.Key cacheKey = resolutionCacheEnabled && dynamicReq == null ? ResolutionCache.createKey(revisions, isMandatory) : null;
 			try {
 				transitivelyResolveFailures.addAll(revisions);
-				interimResults = new ResolverImpl(logger, this).resolve(this);
+				if (cacheKey != null) {
+					interimResults = replayCachedResolution(cacheKey);
+				}
+				if (interimResults == null) {
+					int usesConstraintViolations = logger.getUsesConstraintViolations().size();
+					recorder = cacheKey == null ? null : moduleDatabase.resolutionCache.newRecorder();
+					interimResults = new ResolverImpl(logger, this, resolverPermutationThreadCount).resolve(this);
+					if (recorder != null && interimResults.keySet().containsAll(transitivelyResolveFailures) && logger.getUsesConstraintViolations().size() == usesConstraintViolations) {
+						// only resolutions where all the roots resolved are cached
+						recorder.cache(cacheKey, revisions, interimResults, wirings);
+					}
+				}
 				applyInterimResultToWiringCopy(interimResults);
 				if (DEBUG_ROOTS) {
 					Debug.println("Resolver: resolved " + interimResults.size() + " bundles."); //$NON-NLS-1$ //$NON-NLS-2$
@@ -1073,9 +1134,64 @@ final class ModuleResolver {
 				}
 				currentlyResolving = null;
 				currentlyResolvingMandatory = false;
+				recorder = null;
 			}
 		}
 
+		/*
+		 * Replays the cached resolution of the specified resolve operation.
+		 * The resolution is only valid if all the revisions involved are
+		 * unchanged and each requirement the resolver asked for still has the
+		 * same providers. Returns null if the resolution is not cached or no
+		 * longer valid.
+		 */
+		private Map<Resource, List<Wire>> replayCachedResolution(ResolutionCache.Key cacheKey) {
+			ResolutionCache.Entry entry = moduleDatabase.resolutionCache.get(cacheKey);
+			if (entry == null) {
+				return null;
+			}
+			ModuleRevision[] cachedRevisions = entry.getRevisions(moduleDatabase, wirings);
+			if (cachedRevisions == null) {
+				return null;
+			}
+			int queries = entry.queries.length;
+			List<ModuleRequirement> requirements = new ArrayList<>(queries);
+			List<List<ModuleCapability>> candidates = new ArrayList<>(queries);
+			for (int i = 0; i < queries; i++) {
+				ModuleRequirement requirement = entry.getRequirement(i, cachedRevisions);
+				if (requirement == null) {
+					return null;
+				}
+				List<ModuleCapability> matches = moduleDatabase.findCapabilities(requirement);
+				filterCandidates(requirement, matches, true);
+				List<ModuleCapability> providers = new ArrayList<>(matches);
+				filterFailedToResolve(providers);
+				Collections.sort(providers, this);
+				if (!entry.hasProviders(i, cachedRevisions, providers)) {
+					return null;
+				}
+				requirements.add(requirement);
+				candidates.add(matches);
+			}
+			for (int i = 0; i < entry.related.length; i++) {
+				if (!entry.hasRelated(i, cachedRevisions, findRelatedResources(entry.getHost(i, cachedRevisions)))) {
+					return null;
+				}
+			}
+			Map<Resource, List<Wire>> cachedResults = entry.getWires(cachedRevisions);
+			if (cachedResults == null) {
+				return null;
+			}
+			// the resolver would have seen the same providers; report them the same way
+			for (int i = 0; i < queries; i++) {
+				reportProviders(requirements.get(i), candidates.get(i));
+			}
+			if (DEBUG_ROOTS) {
+				Debug.println("Resolver: replayed cached resolution of " + cachedResults.size() + " bundles."); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			return cachedResults;
+		}
+
 		private void applyInterimResultToWiringCopy(Map<Resource, List<Wire>> interimResult) {
 			if (!interimResult.isEmpty()) {
 				// update the copy of wirings to include interim results
@@ -1323,7 +1439,12 @@ final class ModuleResolver {
 
 		private void filterResolvable() {
 			Collection<ModuleRevision> enabledCandidates = new ArrayList<>(unresolved);
-			hook.filterResolvable(InternalUtils.asList((List<? extends BundleRevision>) enabledCandidates));
+			long start = System.nanoTime();
+			try {
+				hook.filterResolvable(InternalUtils.asList((List<? extends BundleRevision>) enabledCandidates));
+			} finally {
+				statistics.addHookTime(System.nanoTime() - start);
+			}
 			// do this the hard way because the 'optimization' in removeAll hurts us
 			for (ModuleRevision enabledRevision : enabledCandidates) {
 				disabled.remove(enabledRevision);
@@ -1457,7 +1578,12 @@ final class ModuleResolver {
 						continue; // Ignore the bundle we are checking and non-singletons and non-resolvable
 					capabilities.add(getIdentity(collision));
 				}
-				hook.filterSingletonCollisions(getIdentity(singleton), capabilities);
+				long start = System.nanoTime();
+				try {
+					hook.filterSingletonCollisions(getIdentity(singleton), capabilities);
+				} finally {
+					statistics.addHookTime(System.nanoTime() - start);
+				}
 				Collection<ModuleRevision> collisionCandidates = new ArrayList<>(capabilities.size());
 				for (BundleCapability identity : capabilities) {
 					collisionCandidates.add((ModuleRevision) identity.getRevision());
@@ -13,8 +13,6 @@
  *******************************************************************************/
 package org.eclipse.osgi.container;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -23,6 +21,7 @@ import java.util.function.Function;
 import org.eclipse.osgi.container.ModuleRevisionBuilder.GenericInfo;
 import org.eclipse.osgi.container.namespaces.EquinoxModuleDataNamespace;
 import org.eclipse.osgi.internal.container.InternalUtils;
+import org.eclipse.osgi.internal.container.MetadataPool;
 import org.eclipse.osgi.internal.container.NamespaceList;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Version;
@@ -60,25 +59,13 @@ public final class ModuleRevision implements BundleRevision {
 	private NamespaceList<ModuleCapability> createCapabilities(NamespaceList.Builder<GenericInfo> capabilityInfos) {
 		return capabilityInfos.transformIntoCopy(new Function<GenericInfo, ModuleCapability>()  {
 			public ModuleCapability apply(GenericInfo i) {
-				Map<String, String> directives = i.mutable ? copyUnmodifiableMap(i.directives) : i.directives;
-				Map<String, Object> attributes = i.mutable ? copyUnmodifiableMap(i.attributes) : i.attributes;
+				Map<String, String> directives = i.mutable ? MetadataPool.intern(i.directives) : i.directives;
+				Map<String, Object> attributes = i.mutable ? MetadataPool.intern(i.attributes) : i.attributes;
 				return new ModuleCapability(i.namespace, directives, attributes, ModuleRevision.this);
 			}
 		}, NamespaceList.CAPABILITY).build();
 	}
 
-	private static <K, V> Map<K, V> copyUnmodifiableMap(Map<K, V> map) {
-		int size = map.size();
-		if (size == 0) {
-			return Collections.emptyMap();
-		}
-		if (size == 1) {
-			Map.Entry<K, V> entry = map.entrySet().iterator().next();
-			return Collections.singletonMap(entry.getKey(), entry.getValue());
-		}
-		return Collections.unmodifiableMap(new HashMap<>(map));
-	}
-
 	private NamespaceList<ModuleRequirement> createRequirements(NamespaceList.Builder<GenericInfo> infos) {
 		return infos.transformIntoCopy(new Function<GenericInfo, ModuleRequirement>()  {
 			public ModuleRequirement apply(GenericInfo i) {
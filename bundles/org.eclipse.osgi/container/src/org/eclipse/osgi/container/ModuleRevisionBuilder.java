@@ -20,6 +20,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import org.eclipse.osgi.internal.container.CompactMap;
+import org.eclipse.osgi.internal.container.MetadataPool;
 import org.eclipse.osgi.internal.container.NamespaceList;
 import org.eclipse.osgi.internal.container.NamespaceList.Builder;
 import org.eclipse.osgi.internal.framework.FilterImpl;
@@ -44,8 +46,6 @@ import org.osgi.resource.Namespace;
  * @since 3.10
  */
 public final class ModuleRevisionBuilder {
-	private final static Class<?> SINGLETON_MAP_CLASS = Collections.singletonMap(null, null).getClass();
-	private final static Class<?> UNMODIFIABLE_MAP_CLASS = Collections.unmodifiableMap(Collections.emptyMap()).getClass();
 
 	/**
 	 * Provides information about a capability or requirement
@@ -350,22 +350,12 @@ public final class ModuleRevisionBuilder {
 	}
 
 	@SuppressWarnings("unchecked")
-	static <K, V> Map<K, V> unmodifiableMap(Map<? extends K, ? extends V> map) {
-		int size = map.size();
-		if (size == 0) {
-			return Collections.emptyMap();
+	static <V> Map<String, V> unmodifiableMap(Map<String, ? extends V> map) {
+		if (map instanceof ModuleDatabase.PersistedMap || map instanceof CompactMap) {
+			// already unmodifiable; avoid decoding or interning the map again
+			return (Map<String, V>) map;
 		}
-		if (size == 1) {
-			if (map.getClass() != SINGLETON_MAP_CLASS) {
-				Map.Entry<? extends K, ? extends V> entry = map.entrySet().iterator().next();
-				map = Collections.singletonMap(entry.getKey(), entry.getValue());
-			}
-		} else {
-			if (map.getClass() != UNMODIFIABLE_MAP_CLASS) {
-				map = Collections.unmodifiableMap(map);
-			}
-		}
-		return (Map<K, V>) map;
+		return MetadataPool.intern(map);
 	}
 
 	void clear() {
@@ -0,0 +1,582 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.container;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+/**
+ * A cache of the results of the resolve operations of the resolver. Each
+ * entry is keyed by the root revisions of one resolve operation. An entry
+ * holds the providers the resolve context returned for each requirement the
+ * resolver asked for, the fragments related to each host and the wires of
+ * the resolution.
+ * <p>
+ * Revisions are referenced by module id together with a fingerprint of their
+ * content and of their wiring, so entries remain valid across restarts of
+ * the framework. An entry is only replayed if all its revisions still match
+ * and the resolve context returns exactly the same providers and related
+ * fragments, in the same order, as recorded. The resolver would then work on
+ * the same input, so the recorded wires are a valid resolution.
+ * <p>
+ * The fingerprints are hash codes and may collide. Capabilities and
+ * requirements are referenced by their index in their revision, so the
+ * number of capabilities and requirements of each revision is recorded and
+ * compared as well, and each replayed wire must still have a requirement
+ * that matches its capability. Otherwise the entry is not used.
+ */
+final class ResolutionCache {
+	private static final int VERSION = 2;
+	private static final int DEFAULT_LIMIT = 100;
+
+	private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, ResolutionCache.Entry> eldest) {
+			return size() > DEFAULT_LIMIT;
+		}
+	};
+	private boolean dirty = false;
+
+	/**
+	 * Returns the key for a resolve operation of the specified roots.
+	 * @param roots the roots of the resolve operation
+	 * @param mandatory true if the roots are mandatory
+	 * @return the key, or {@code null} if a root is not a current revision
+	 */
+	static Key createKey(List<Resource> roots, boolean mandatory) {
+		long[] ids = new long[roots.size()];
+		for (int i = 0; i < ids.length; i++) {
+			Resource root = roots.get(i);
+			if (!(root instanceof ModuleRevision) || !((ModuleRevision) root).isCurrent()) {
+				return null;
+			}
+			ids[i] = getId((ModuleRevision) root);
+		}
+		return new Key(ids, mandatory);
+	}
+
+	synchronized Entry get(Key key) {
+		return entries.get(key);
+	}
+
+	synchronized void remove(Key key) {
+		if (entries.remove(key) != null) {
+			dirty = true;
+		}
+	}
+
+	synchronized void put(Key key, Entry entry) {
+		entries.put(key, entry);
+		dirty = true;
+	}
+
+	synchronized boolean isDirty() {
+		return dirty;
+	}
+
+	Recorder newRecorder() {
+		return new Recorder();
+	}
+
+	synchronized void store(DataOutputStream out) throws IOException {
+		out.writeInt(VERSION);
+		out.writeInt(entries.size());
+		for (Map.Entry<Key, Entry> mapEntry : entries.entrySet()) {
+			Key key = mapEntry.getKey();
+			out.writeBoolean(key.mandatory);
+			writeLongs(key.roots, out);
+			Entry entry = mapEntry.getValue();
+			writeLongs(entry.ids, out);
+			writeLongs(entry.counts, out);
+			writeLongs(entry.contents, out);
+			writeLongs(entry.wirings, out);
+			writeTable(entry.queries, out);
+			writeTable(entry.related, out);
+			writeTable(entry.wires, out);
+		}
+		dirty = false;
+	}
+
+	synchronized void load(DataInputStream in) throws IOException {
+		entries.clear();
+		dirty = false;
+		if (in.readInt() != VERSION) {
+			return;
+		}
+		int size = in.readInt();
+		// only use the entries if all of them could be read
+		Map<Key, Entry> loaded = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			boolean mandatory = in.readBoolean();
+			Key key = new Key(readLongs(in), mandatory);
+			long[] ids = readLongs(in);
+			long[] counts = readLongs(in);
+			long[] contents = readLongs(in);
+			long[] wirings = readLongs(in);
+			Entry entry = new Entry(ids, counts, contents, wirings, readTable(in), readTable(in), readTable(in));
+			if (!entry.isValid()) {
+				throw new IOException("Invalid resolution cache entry."); //$NON-NLS-1$
+			}
+			loaded.put(key, entry);
+		}
+		entries.putAll(loaded);
+	}
+
+	private static void writeLongs(long[] values, DataOutputStream out) throws IOException {
+		out.writeInt(values.length);
+		for (long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	private static long[] readLongs(DataInputStream in) throws IOException {
+		long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+	private static void writeTable(int[][] table, DataOutputStream out) throws IOException {
+		out.writeInt(table.length);
+		for (int[] row : table) {
+			out.writeInt(row.length);
+			for (int value : row) {
+				out.writeInt(value);
+			}
+		}
+	}
+
+	private static int[][] readTable(DataInputStream in) throws IOException {
+		int[][] table = new int[in.readInt()][];
+		for (int i = 0; i < table.length; i++) {
+			int[] row = new int[in.readInt()];
+			for (int j = 0; j < row.length; j++) {
+				row[j] = in.readInt();
+			}
+			table[i] = row;
+		}
+		return table;
+	}
+
+	static long getId(ModuleRevision revision) {
+		return revision.getRevisions().getModule().getId();
+	}
+
+	/**
+	 * Returns the number of capabilities and requirements of a revision.
+	 */
+	static long getCounts(ModuleRevision revision) {
+		return ((long) revision.getModuleCapabilities(null).size() << 32) | revision.getModuleRequirements(null).size();
+	}
+
+	/**
+	 * Returns a fingerprint of the content of a revision.
+	 */
+	static long getContentFingerprint(ModuleRevision revision) {
+		long h = Objects.hashCode(revision.getSymbolicName());
+		h = 31 * h + revision.getVersion().hashCode();
+		h = 31 * h + revision.getTypes();
+		for (ModuleCapability capability : revision.getModuleCapabilities(null)) {
+			h = 31 * h + capability.getNamespace().hashCode();
+			h = 31 * h + capability.getPersistentAttributes().hashCode();
+			h = 31 * h + capability.getDirectives().hashCode();
+		}
+		for (ModuleRequirement requirement : revision.getModuleRequirements(null)) {
+			h = 31 * h + requirement.getNamespace().hashCode();
+			h = 31 * h + requirement.getAttributes().hashCode();
+			h = 31 * h + requirement.getDirectives().hashCode();
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a fingerprint of the wiring of a revision, or zero if the
+	 * revision is not resolved.
+	 */
+	static long getWiringFingerprint(ModuleWiring wiring) {
+		if (wiring == null) {
+			return 0;
+		}
+		List<ModuleWire> requiredWires = wiring.getRequiredModuleWires(null);
+		long h = wiring.getModuleCapabilities(null).size();
+		h = 31 * h + requiredWires.size();
+		for (ModuleWire wire : requiredWires) {
+			h = 31 * h + getId(wire.getProvider());
+			h = 31 * h + wire.getCapability().getNamespace().hashCode();
+			h = 31 * h + wire.getCapability().getPersistentAttributes().hashCode();
+		}
+		// never zero for a resolved revision
+		return h == 0 ? 1 : h;
+	}
+
+	static final class Key {
+		final long[] roots;
+		final boolean mandatory;
+		private final int hash;
+
+		Key(long[] roots, boolean mandatory) {
+			this.roots = roots;
+			this.mandatory = mandatory;
+			this.hash = 31 * Arrays.hashCode(roots) + (mandatory ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return mandatory == other.mandatory && Arrays.equals(roots, other.roots);
+		}
+	}
+
+	/**
+	 * A recorded resolve operation. Revisions are referenced by their index
+	 * in the revision table of the entry; capabilities and requirements by
+	 * the index of their revision and their index in that revision.
+	 */
+	static final class Entry {
+		final long[] ids;
+		final long[] counts;
+		final long[] contents;
+		final long[] wirings;
+		// requirer, requirement, then pairs of provider and capability
+		final int[][] queries;
+		// host, then the fragments
+		final int[][] related;
+		// resource, then for each wire: capability revision, capability, provider, requirement revision, requirement, requirer
+		final int[][] wires;
+
+		Entry(long[] ids, long[] counts, long[] contents, long[] wirings, int[][] queries, int[][] related, int[][] wires) {
+			this.ids = ids;
+			this.counts = counts;
+			this.contents = contents;
+			this.wirings = wirings;
+			this.queries = queries;
+			this.related = related;
+			this.wires = wires;
+		}
+
+		/**
+		 * Returns the current revisions of the modules of this entry if all of
+		 * them still have the recorded content and wiring.
+		 * @param database the module database
+		 * @param wiringCopy the wirings of the resolve operation
+		 * @return the revisions, or {@code null} if the entry is not valid
+		 */
+		ModuleRevision[] getRevisions(ModuleDatabase database, Map<ModuleRevision, ModuleWiring> wiringCopy) {
+			ModuleRevision[] revisions = new ModuleRevision[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				Module module = database.getModule(ids[i]);
+				ModuleRevision revision = module == null ? null : module.getCurrentRevision();
+				if (revision == null) {
+					return null;
+				}
+				if (counts[i] != getCounts(revision) || contents[i] != getContentFingerprint(revision) || wirings[i] != getWiringFingerprint(wiringCopy.get(revision))) {
+					return null;
+				}
+				revisions[i] = revision;
+			}
+			return revisions;
+		}
+
+		/**
+		 * Checks that the tables only refer to revisions of this entry.
+		 * @return true if the entry is well formed
+		 */
+		boolean isValid() {
+			if (counts.length != ids.length || contents.length != ids.length || wirings.length != ids.length) {
+				return false;
+			}
+			for (int[] row : queries) {
+				if (row.length < 2 || row.length % 2 != 0 || !isRevision(row[0])) {
+					return false;
+				}
+				for (int i = 2; i < row.length; i += 2) {
+					if (!isRevision(row[i])) {
+						return false;
+					}
+				}
+			}
+			for (int[] row : related) {
+				if (row.length < 1) {
+					return false;
+				}
+				for (int index : row) {
+					if (!isRevision(index)) {
+						return false;
+					}
+				}
+			}
+			for (int[] row : wires) {
+				if (row.length < 1 || (row.length - 1) % 6 != 0 || !isRevision(row[0])) {
+					return false;
+				}
+				for (int i = 1; i < row.length; i += 6) {
+					if (!isRevision(row[i]) || !isRevision(row[i + 2]) || !isRevision(row[i + 3]) || !isRevision(row[i + 5])) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		private boolean isRevision(int index) {
+			return index >= 0 && index < ids.length;
+		}
+
+		ModuleRequirement getRequirement(int query, ModuleRevision[] revisions) {
+			return getModuleRequirement(revisions, queries[query][0], queries[query][1]);
+		}
+
+		boolean hasProviders(int query, ModuleRevision[] revisions, List<ModuleCapability> providers) {
+			int[] row = queries[query];
+			if (row.length - 2 != providers.size() * 2) {
+				return false;
+			}
+			for (int i = 0; i < providers.size(); i++) {
+				if (getModuleCapability(revisions, row[2 + i * 2], row[3 + i * 2]) != providers.get(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		ModuleRevision getHost(int index, ModuleRevision[] revisions) {
+			return revisions[related[index][0]];
+		}
+
+		boolean hasRelated(int index, ModuleRevision[] revisions, Collection<Resource> fragments) {
+			int[] row = related[index];
+			if (row.length - 1 != fragments.size()) {
+				return false;
+			}
+			int i = 1;
+			for (Resource fragment : fragments) {
+				if (revisions[row[i++]] != fragment) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Creates the recorded wires for the specified revisions.
+		 * @param revisions the revisions of this entry
+		 * @return the wires, or {@code null} if the wires cannot be created
+		 */
+		Map<Resource, List<Wire>> getWires(ModuleRevision[] revisions) {
+			Map<Resource, List<Wire>> result = new HashMap<>(wires.length * 4 / 3 + 1);
+			for (int[] row : wires) {
+				List<Wire> resourceWires = new ArrayList<>((row.length - 1) / 6);
+				for (int i = 1; i < row.length; i += 6) {
+					ModuleCapability capability = getModuleCapability(revisions, row[i], row[i + 1]);
+					ModuleRequirement requirement = getModuleRequirement(revisions, row[i + 3], row[i + 4]);
+					if (capability == null || requirement == null || !requirement.matches(capability)) {
+						return null;
+					}
+					resourceWires.add(new ModuleWire(capability, revisions[row[i + 2]], requirement, revisions[row[i + 5]]));
+				}
+				result.put(revisions[row[0]], resourceWires);
+			}
+			return result;
+		}
+
+		private static ModuleCapability getModuleCapability(ModuleRevision[] revisions, int revision, int index) {
+			List<ModuleCapability> capabilities = revisions[revision].getModuleCapabilities(null);
+			return index >= 0 && index < capabilities.size() ? capabilities.get(index) : null;
+		}
+
+		private static ModuleRequirement getModuleRequirement(ModuleRevision[] revisions, int revision, int index) {
+			List<ModuleRequirement> requirements = revisions[revision].getModuleRequirements(null);
+			return index >= 0 && index < requirements.size() ? requirements.get(index) : null;
+		}
+	}
+
+	/**
+	 * Records the providers and related resources returned to the resolver
+	 * during one resolve operation. The resolver may ask for providers from
+	 * multiple threads.
+	 */
+	final class Recorder {
+		private final Map<Requirement, List<Capability>> providers = new LinkedHashMap<>();
+		private final Map<Resource, Collection<Resource>> related = new LinkedHashMap<>();
+
+		synchronized void providers(Requirement requirement, List<Capability> result) {
+			providers.put(requirement, new ArrayList<>(result));
+		}
+
+		synchronized void related(Resource host, Collection<Resource> result) {
+			related.put(host, new ArrayList<>(result));
+		}
+
+		/**
+		 * Caches the resolution of the recorded resolve operation.
+		 * @param key the key of the resolve operation
+		 * @param roots the roots of the resolve operation
+		 * @param resolution the wires of the resolution
+		 * @param wiringCopy the wirings the resolve operation started with
+		 */
+		synchronized void cache(Key key, List<Resource> roots, Map<Resource, List<Wire>> resolution, Map<ModuleRevision, ModuleWiring> wiringCopy) {
+			try {
+				RevisionTable table = new RevisionTable();
+				for (Resource root : roots) {
+					table.indexOf(root);
+				}
+				int[][] queries = new int[providers.size()][];
+				int q = 0;
+				for (Map.Entry<Requirement, List<Capability>> query : providers.entrySet()) {
+					ModuleRequirement requirement = asModuleRequirement(query.getKey());
+					List<Capability> capabilities = query.getValue();
+					int[] row = new int[2 + capabilities.size() * 2];
+					row[0] = table.indexOf(requirement.getRevision());
+					row[1] = table.indexOf(requirement);
+					int i = 2;
+					for (Capability capability : capabilities) {
+						ModuleCapability moduleCapability = asModuleCapability(capability);
+						row[i++] = table.indexOf(moduleCapability.getRevision());
+						row[i++] = table.indexOf(moduleCapability);
+					}
+					queries[q++] = row;
+				}
+				int[][] relatedTable = new int[related.size()][];
+				int r = 0;
+				for (Map.Entry<Resource, Collection<Resource>> entry : related.entrySet()) {
+					int[] row = new int[1 + entry.getValue().size()];
+					row[0] = table.indexOf(entry.getKey());
+					int i = 1;
+					for (Resource fragment : entry.getValue()) {
+						row[i++] = table.indexOf(fragment);
+					}
+					relatedTable[r++] = row;
+				}
+				int[][] wiresTable = new int[resolution.size()][];
+				int w = 0;
+				for (Map.Entry<Resource, List<Wire>> entry : resolution.entrySet()) {
+					int[] row = new int[1 + entry.getValue().size() * 6];
+					row[0] = table.indexOf(entry.getKey());
+					int i = 1;
+					for (Wire wire : entry.getValue()) {
+						ModuleCapability capability = asModuleCapability(wire.getCapability());
+						ModuleRequirement requirement = asModuleRequirement(wire.getRequirement());
+						row[i++] = table.indexOf(capability.getRevision());
+						row[i++] = table.indexOf(capability);
+						row[i++] = table.indexOf(wire.getProvider());
+						row[i++] = table.indexOf(requirement.getRevision());
+						row[i++] = table.indexOf(requirement);
+						row[i++] = table.indexOf(wire.getRequirer());
+					}
+					wiresTable[w++] = row;
+				}
+				put(key, table.createEntry(wiringCopy, queries, relatedTable, wiresTable));
+			} catch (IllegalArgumentException e) {
+				// something which cannot be cached was involved in the resolve operation
+				remove(key);
+			}
+		}
+
+		private ModuleRequirement asModuleRequirement(Requirement requirement) {
+			if (requirement instanceof ModuleRequirement) {
+				return (ModuleRequirement) requirement;
+			}
+			throw new IllegalArgumentException("Not a module requirement: " + requirement); //$NON-NLS-1$
+		}
+
+		private ModuleCapability asModuleCapability(Capability capability) {
+			if (capability instanceof ModuleCapability) {
+				return (ModuleCapability) capability;
+			}
+			throw new IllegalArgumentException("Not a module capability: " + capability); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Assigns the indexes of the revisions referenced by an entry.
+	 */
+	static final class RevisionTable {
+		private final Map<ModuleRevision, Integer> indexes = new IdentityHashMap<>();
+		private final List<ModuleRevision> revisions = new ArrayList<>();
+
+		int indexOf(Resource resource) {
+			if (!(resource instanceof ModuleRevision) || !((ModuleRevision) resource).isCurrent()) {
+				throw new IllegalArgumentException("Not a current revision: " + resource); //$NON-NLS-1$
+			}
+			ModuleRevision revision = (ModuleRevision) resource;
+			Integer index = indexes.get(revision);
+			if (index == null) {
+				index = revisions.size();
+				indexes.put(revision, index);
+				revisions.add(revision);
+			}
+			return index;
+		}
+
+		int indexOf(ModuleCapability capability) {
+			return indexOf(capability.getRevision().getModuleCapabilities(null), capability);
+		}
+
+		int indexOf(ModuleRequirement requirement) {
+			return indexOf(requirement.getRevision().getModuleRequirements(null), requirement);
+		}
+
+		private static int indexOf(List<?> list, Object element) {
+			int i = 0;
+			for (Iterator<?> iterator = list.iterator(); iterator.hasNext(); i++) {
+				if (iterator.next() == element) {
+					return i;
+				}
+			}
+			throw new IllegalArgumentException("Not declared by its revision: " + element); //$NON-NLS-1$
+		}
+
+		Entry createEntry(Map<ModuleRevision, ModuleWiring> wiringCopy, int[][] queries, int[][] related, int[][] wires) {
+			int size = revisions.size();
+			long[] ids = new long[size];
+			long[] counts = new long[size];
+			long[] contents = new long[size];
+			long[] wirings = new long[size];
+			for (int i = 0; i < size; i++) {
+				ModuleRevision revision = revisions.get(i);
+				ids[i] = getId(revision);
+				counts[i] = getCounts(revision);
+				contents[i] = getContentFingerprint(revision);
+				wirings[i] = getWiringFingerprint(wiringCopy.get(revision));
+			}
+			return new Entry(ids, counts, contents, wirings, queries, related, wires);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2021 IBM Corporation and others.
+ * Copyright (c) 2012, 2022 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -19,35 +19,132 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.eclipse.osgi.container.ModuleCapability;
 import org.eclipse.osgi.container.ModuleRevision;
 import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.eclipse.osgi.util.ManifestElement;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
 import org.osgi.framework.namespace.AbstractWiringNamespace;
 import org.osgi.framework.namespace.BundleNamespace;
 import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.resource.Capability;
 import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
 
 public class Capabilities {
+	/**
+	 * The capabilities of a namespace with the same index value.  Capabilities
+	 * with a version are kept sorted by version and then by module id so that
+	 * the capabilities within a version range are found without evaluating
+	 * filters against the capabilities outside of the range.  Capabilities are
+	 * returned highest version first, in the order the resolver prefers them.
+	 */
+	static class VersionIndex {
+		private final String versionAttr;
+		private final NavigableMap<Version, List<ModuleCapability>> versioned = new TreeMap<>();
+		private final Set<ModuleCapability> unversioned = new LinkedHashSet<>(0);
+		private final Set<ModuleCapability> members = new HashSet<>(1);
+
+		VersionIndex(String versionAttr) {
+			this.versionAttr = versionAttr;
+		}
+
+		void add(ModuleCapability capability) {
+			if (!members.add(capability)) {
+				return;
+			}
+			Object version = capability.getAttributes().get(versionAttr);
+			if (!(version instanceof Version)) {
+				unversioned.add(capability);
+				return;
+			}
+			List<ModuleCapability> capabilities = versioned.get(version);
+			if (capabilities == null) {
+				capabilities = new ArrayList<>(1);
+				versioned.put((Version) version, capabilities);
+			}
+			// keep the lowest module id first; revisions of the same module in the order they are added
+			long id = capability.getRevision().getRevisions().getModule().getId().longValue();
+			int i = capabilities.size();
+			while (i > 0 && capabilities.get(i - 1).getRevision().getRevisions().getModule().getId().longValue() > id) {
+				i--;
+			}
+			capabilities.add(i, capability);
+		}
+
+		void remove(ModuleCapability capability) {
+			if (!members.remove(capability)) {
+				return;
+			}
+			Object version = capability.getAttributes().get(versionAttr);
+			if (!(version instanceof Version)) {
+				unversioned.remove(capability);
+				return;
+			}
+			// only the capabilities with the same version are searched
+			List<ModuleCapability> capabilities = versioned.get(version);
+			if (capabilities != null && capabilities.remove(capability) && capabilities.isEmpty()) {
+				versioned.remove(version);
+			}
+		}
+
+		List<ModuleCapability> getCandidates(FilterImpl f) {
+			Collection<List<ModuleCapability>> inRange;
+			if (versioned.size() < 2) {
+				// with a single version the filter is cheaper than looking up the range
+				inRange = versioned.descendingMap().values();
+			} else {
+				VersionRange range = f.getStandardOSGiVersionRange(versionAttr);
+				if (range == null) {
+					inRange = versioned.descendingMap().values();
+				} else if (range.isEmpty()) {
+					inRange = Collections.emptyList();
+				} else {
+					boolean leftClosed = range.getLeftType() == VersionRange.LEFT_CLOSED;
+					NavigableMap<Version, List<ModuleCapability>> subMap = range.getRight() == null //
+							? versioned.tailMap(range.getLeft(), leftClosed) //
+							: versioned.subMap(range.getLeft(), leftClosed, range.getRight(), range.getRightType() == VersionRange.RIGHT_CLOSED);
+					inRange = subMap.descendingMap().values();
+				}
+			}
+			List<ModuleCapability> candidates = new ArrayList<>();
+			for (List<ModuleCapability> capabilities : inRange) {
+				candidates.addAll(capabilities);
+			}
+			candidates.addAll(unversioned);
+			return candidates;
+		}
+	}
+
 	static class NamespaceSet {
 		private final String name;
-		private final Map<String, Set<ModuleCapability>> indexes = new HashMap<>();
+		private final String indexAttr;
+		private final String versionAttr;
+		private final Map<String, VersionIndex> indexes = new HashMap<>();
 		private final Set<ModuleCapability> all = new HashSet<>();
 		private final Set<ModuleCapability> nonStringIndexes = new HashSet<>(0);
 		private final boolean matchMandatory;
 
 		NamespaceSet(String name) {
 			this.name = name;
+			// by convention we index by the namespace attribute; services are indexed by their object classes
+			this.indexAttr = SERVICE_NAMESPACE.equals(name) ? Constants.OBJECTCLASS : name;
+			// the same version attributes the resolver orders the capabilities by
+			this.versionAttr = BundleNamespace.BUNDLE_NAMESPACE.equals(name) || HostNamespace.HOST_NAMESPACE.equals(name) ? AbstractWiringNamespace.CAPABILITY_BUNDLE_VERSION_ATTRIBUTE : IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE;
 			this.matchMandatory = PackageNamespace.PACKAGE_NAMESPACE.equals(name) || BundleNamespace.BUNDLE_NAMESPACE.equals(name) || HostNamespace.HOST_NAMESPACE.equals(name);
 		}
 
@@ -56,8 +153,7 @@ public class Capabilities {
 				throw new IllegalArgumentException("Invalid namespace: " + capability.getNamespace() + ": expecting: " + name); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 			all.add(capability);
-			// by convention we index by the namespace attribute
-			Object index = capability.getAttributes().get(name);
+			Object index = capability.getAttributes().get(indexAttr);
 			if (index == null) {
 				return;
 			}
@@ -80,9 +176,9 @@ public class Capabilities {
 			if (!(indexKey instanceof String)) {
 				nonStringIndexes.add(capability);
 			} else {
-				Set<ModuleCapability> capabilities = indexes.get(indexKey);
+				VersionIndex capabilities = indexes.get(indexKey);
 				if (capabilities == null) {
-					capabilities = new HashSet<>(1);
+					capabilities = new VersionIndex(versionAttr);
 					indexes.put((String) indexKey, capabilities);
 				}
 				capabilities.add(capability);
@@ -94,8 +190,7 @@ public class Capabilities {
 				throw new IllegalArgumentException("Invalid namespace: " + capability.getNamespace() + ": expecting: " + name); //$NON-NLS-1$//$NON-NLS-2$
 			}
 			all.remove(capability);
-			// by convention we index by the namespace attribute
-			Object index = capability.getAttributes().get(name);
+			Object index = capability.getAttributes().get(indexAttr);
 			if (index == null) {
 				return;
 			}
@@ -118,7 +213,7 @@ public class Capabilities {
 			if (!(indexKey instanceof String)) {
 				nonStringIndexes.remove(capability);
 			} else {
-				Set<ModuleCapability> capabilities = indexes.get(indexKey);
+				VersionIndex capabilities = indexes.get(indexKey);
 				if (capabilities != null) {
 					capabilities.remove(capability);
 				}
@@ -145,15 +240,15 @@ public class Capabilities {
 			if (filterSpec == null) {
 				result = match(null, all, synthetic);
 			} else {
-				String indexKey = f.getPrimaryKeyValue(name);
+				String indexKey = f.getPrimaryKeyValue(indexAttr);
 				if (indexKey == null) {
 					result = match(f, all, synthetic);
 				} else {
-					Set<ModuleCapability> indexed = indexes.get(indexKey);
+					VersionIndex indexed = indexes.get(indexKey);
 					if (indexed == null) {
 						result = new ArrayList<>(0);
 					} else {
-						result = match(f, indexed, synthetic);
+						result = match(f, indexed.getCandidates(f), synthetic);
 					}
 					if (!nonStringIndexes.isEmpty()) {
 						List<ModuleCapability> nonStringResult = match(f, nonStringIndexes, synthetic);
@@ -168,7 +263,7 @@ public class Capabilities {
 			return result;
 		}
 
-		private List<ModuleCapability> match(Filter f, Set<ModuleCapability> candidates, boolean synthetic) {
+		private List<ModuleCapability> match(Filter f, Collection<ModuleCapability> candidates, boolean synthetic) {
 			List<ModuleCapability> result = new ArrayList<>(1);
 			for (ModuleCapability candidate : candidates) {
 				if (matches(f, candidate, !synthetic && matchMandatory)) {
@@ -181,6 +276,7 @@ public class Capabilities {
 
 	public static final Pattern MANDATORY_ATTR = Pattern.compile("\\(([^(=<>]+)\\s*[=<>]\\s*[^)]+\\)"); //$NON-NLS-1$
 	public static final String SYNTHETIC_REQUIREMENT = "org.eclipse.osgi.container.synthetic"; //$NON-NLS-1$
+	static final String SERVICE_NAMESPACE = "osgi.service"; //$NON-NLS-1$
 
 	public static boolean matches(Filter f, Capability candidate, boolean matchMandatory) {
 		if (f != null && !f.matches(candidate.getAttributes())) {
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.container;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable map with string keys which is backed by two arrays. The keys
+ * are sorted so equal maps have the same iteration order and a key is found
+ * with a binary search. The map has no per entry objects, which makes it much
+ * smaller than a hash map for the small attribute and directive maps of
+ * capabilities and requirements.
+ *
+ * @param <V> the type of the values
+ */
+public final class CompactMap<V> extends AbstractMap<String, V> {
+	private final String[] keys;
+	private final Object[] values;
+	private int hash;
+
+	private CompactMap(String[] keys, Object[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a compact copy of the specified map.
+	 * @param map the map to copy; the map must not contain a {@code null} key
+	 * @return the compact copy
+	 */
+	public static <V> CompactMap<V> copyOf(Map<String, ? extends V> map) {
+		int size = map.size();
+		String[] keys = map.keySet().toArray(new String[size]);
+		Arrays.sort(keys);
+		Object[] values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = map.get(keys[i]);
+		}
+		return new CompactMap<>(keys, values);
+	}
+
+	/**
+	 * Creates a compact map with the specified keys and values. The arrays are
+	 * used as is and must not be modified afterwards.
+	 * @param keys the sorted keys without duplicates
+	 * @param values the value of each key
+	 * @return the compact map
+	 */
+	static <V> CompactMap<V> of(String[] keys, Object[] values) {
+		return new CompactMap<>(keys, values);
+	}
+
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	private int indexOf(Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		return Arrays.binarySearch(keys, (String) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (V) values[index];
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		return new AbstractSet<Map.Entry<String, V>>() {
+			@Override
+			public Iterator<Map.Entry<String, V>> iterator() {
+				return new Iterator<Map.Entry<String, V>>() {
+					private int next = 0;
+
+					@Override
+					public boolean hasNext() {
+						return next < keys.length;
+					}
+
+					@SuppressWarnings("unchecked")
+					@Override
+					public Map.Entry<String, V> next() {
+						if (next >= keys.length) {
+							throw new NoSuchElementException();
+						}
+						Map.Entry<String, V> entry = new SimpleImmutableEntry<>(keys[next], (V) values[next]);
+						next++;
+						return entry;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+		};
+	}
+
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			for (int i = 0; i < keys.length; i++) {
+				h += keys[i].hashCode() ^ Objects.hashCode(values[i]);
+			}
+			hash = h;
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof CompactMap) {
+			CompactMap<?> other = (CompactMap<?>) o;
+			return hashCode() == other.hashCode() && Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
+		}
+		return super.equals(o);
+	}
+}
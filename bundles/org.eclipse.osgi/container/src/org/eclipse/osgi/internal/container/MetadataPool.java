@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.container;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.osgi.framework.util.ObjectPool;
+import org.osgi.framework.Version;
+
+/**
+ * A pool of the attribute and directive maps of capabilities and requirements.
+ * Interned maps are immutable {@link CompactMap compact maps}. The keys, the
+ * string and version values, lists of those and the maps themselves are
+ * shared with equal objects already in use, so the same metadata declared by
+ * many bundles is held in memory only once.
+ * <p>
+ * Strings and versions are shared through the {@link ObjectPool}. Maps and
+ * lists are kept in a separate pool so that only immutable instances are
+ * ever handed out. Like the {@link ObjectPool} the pool only holds weak
+ * references; the interned objects are discarded when they are no longer used.
+ */
+public final class MetadataPool {
+	private static final Map<Object, WeakReference<Object>> pool = new WeakHashMap<>();
+	private static final AtomicLong internedMaps = new AtomicLong();
+	private static final AtomicLong sharedMaps = new AtomicLong();
+	private static final AtomicLong internedValues = new AtomicLong();
+	private static final AtomicLong sharedValues = new AtomicLong();
+	private static final AtomicLong savedBytes = new AtomicLong();
+
+	// rough object sizes for a 64-bit VM with compressed references
+	private static final int OBJECT_SIZE = 16;
+	private static final int ARRAY_SIZE = 16;
+	private static final int REFERENCE_SIZE = 4;
+
+	private MetadataPool() {
+		// no instances
+	}
+
+	/**
+	 * Returns an immutable map equal to the specified map which is shared with
+	 * other users of equal maps.
+	 * @param map the map to intern
+	 * @return the interned map
+	 */
+	public static <V> Map<String, V> intern(Map<String, ? extends V> map) {
+		int size = map.size();
+		if (size == 0) {
+			return Collections.emptyMap();
+		}
+		if (map.containsKey(null)) {
+			// not a valid attribute or directive map; just keep an unmodifiable copy
+			return Collections.unmodifiableMap(new HashMap<>(map));
+		}
+		String[] keys = map.keySet().toArray(new String[size]);
+		Arrays.sort(keys);
+		Object[] values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = internValue(map.get(keys[i]));
+			keys[i] = internValue(keys[i]);
+		}
+		CompactMap<V> candidate = CompactMap.of(keys, values);
+		CompactMap<V> result = internPooled(candidate);
+		internedMaps.incrementAndGet();
+		if (result != candidate) {
+			sharedMaps.incrementAndGet();
+			// the map object and its key and value arrays
+			savedBytes.addAndGet(OBJECT_SIZE + 2 * (ARRAY_SIZE + size * REFERENCE_SIZE));
+		}
+		return result;
+	}
+
+	private static <T> T internValue(T value) {
+		if (value instanceof List) {
+			return internList(value);
+		}
+		if (!(value instanceof String) && !(value instanceof Version)) {
+			// only the immutable types common in the metadata are shared
+			return value;
+		}
+		T result = ObjectPool.intern(value);
+		count(result != value, value);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T internList(T value) {
+		List<?> list = (List<?>) value;
+		List<Object> copy = new ArrayList<>(list.size());
+		for (Object element : list) {
+			copy.add(internValue(element));
+		}
+		List<Object> candidate = Collections.unmodifiableList(copy);
+		List<Object> result = internPooled(candidate);
+		count(result != candidate, result);
+		return (T) result;
+	}
+
+	private static void count(boolean shared, Object value) {
+		internedValues.incrementAndGet();
+		if (shared) {
+			sharedValues.incrementAndGet();
+			savedBytes.addAndGet(estimateSize(value));
+		}
+	}
+
+	/*
+	 * Estimates the memory held by a value that is no longer needed because an
+	 * equal value is shared. Strings are estimated with one byte per char and
+	 * versions without their qualifier, which is usually shared on its own.
+	 */
+	private static long estimateSize(Object value) {
+		if (value instanceof String) {
+			return OBJECT_SIZE + 8 + ARRAY_SIZE + ((String) value).length();
+		}
+		if (value instanceof List) {
+			// the unmodifiable list, the array list and its element array
+			return 2 * OBJECT_SIZE + 8 + ARRAY_SIZE + ((List<?>) value).size() * REFERENCE_SIZE;
+		}
+		// a version holds three ints and two references
+		return OBJECT_SIZE + 3 * 4 + 2 * REFERENCE_SIZE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T internPooled(T object) {
+		synchronized (pool) {
+			WeakReference<Object> ref = pool.get(object);
+			if (ref != null) {
+				Object existing = ref.get();
+				if (existing != null) {
+					return (T) existing;
+				}
+			}
+			pool.put(object, new WeakReference<>(object));
+			return object;
+		}
+	}
+
+	/**
+	 * Returns a report of the use of the pool since it was first used. The
+	 * report includes an estimate of the bytes saved by sharing maps, keys and
+	 * values instead of holding a copy for each user. The estimate assumes a
+	 * 64-bit VM with compressed references and compact strings.
+	 * @return the report
+	 */
+	public static String getReport() {
+		long maps = internedMaps.get();
+		long mapHits = sharedMaps.get();
+		long values = internedValues.get();
+		long valueHits = sharedValues.get();
+		return "Metadata pool: interned " + maps + " maps (" + mapHits + " shared, " + percent(mapHits, maps) + "%), " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				+ values + " keys and values (" + valueHits + " shared, " + percent(valueHits, values) + "%), " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ "about " + savedBytes.get() / 1024 + " KB saved"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static long percent(long part, long total) {
+		return total == 0 ? 0 : part * 100 / total;
+	}
+}
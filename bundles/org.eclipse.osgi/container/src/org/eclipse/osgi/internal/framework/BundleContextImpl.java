@@ -17,6 +17,7 @@ package org.eclipse.osgi.internal.framework;
 import java.io.File;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
@@ -41,6 +42,8 @@ import org.eclipse.osgi.internal.serviceregistry.ServiceRegistry;
 import org.eclipse.osgi.internal.serviceregistry.ServiceUse;
 import org.eclipse.osgi.internal.serviceregistry.ShrinkableCollection;
 import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.Storage;
+import org.eclipse.osgi.storage.Storage.InstallResult;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -183,6 +186,20 @@ public class BundleContextImpl implements BundleContext, EventDispatcher<Object,
 		return generation.getRevision().getBundle();
 	}
 
+	/**
+	 * Installs multiple bundles with the context bundle as the origin.
+	 * @param locations the locations of the bundles to install
+	 * @param contents the URL of the content for each location, or {@code null} to use the locations
+	 * @return the install results in the order of the specified locations
+	 * @throws BundleException if the framework storage area is read only
+	 * @see Storage#install(Module, List, List)
+	 */
+	public List<InstallResult> installBundles(List<String> locations, List<URL> contents) throws BundleException {
+		checkValid();
+
+		return container.getStorage().install(bundle.getModule(), locations, contents);
+	}
+
 	/**
 	 * Retrieve the bundle that has the given unique identifier.
 	 *
@@ -140,6 +140,8 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 
 	public final boolean CLASS_CERTIFICATE;
 	public final boolean PARALLEL_CAPABLE;
+	public final int CLASS_NOT_FOUND_CACHE_SIZE;
+	public final boolean CLASS_NOT_FOUND_CACHE_STACKLESS;
 
 	private final Map<Throwable, Integer> exceptions = new LinkedHashMap<>(0);
 
@@ -202,10 +204,18 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 	public static final String PROP_FRAMEWORK_LIBRARY_EXTENSIONS = "osgi.framework.library.extensions"; //$NON-NLS-1$
 	public static final String PROP_COPY_NATIVES = "osgi.classloader.copy.natives"; //$NON-NLS-1$
 	public static final String PROP_DEFINE_PACKAGES = "osgi.classloader.define.packages"; //$NON-NLS-1$
+	public static final String PROP_CLASS_NOT_FOUND_CACHE_SIZE = "osgi.classloader.notfound.cache.size"; //$NON-NLS-1$
+	public static final String PROP_CLASS_NOT_FOUND_CACHE_STACKLESS = "osgi.classloader.notfound.cache.stackless"; //$NON-NLS-1$
 	public static final String PROP_BUNDLE_SETTCCL = "eclipse.bundle.setTCCL"; //$NON-NLS-1$
 
 	public static final String PROP_EQUINOX_SECURITY = "eclipse.security"; //$NON-NLS-1$
 	public static final String PROP_FILE_LIMIT = "osgi.bundlefile.limit"; //$NON-NLS-1$
+	public static final String PROP_BUNDLE_FILE_INDEX = "osgi.bundlefile.index"; //$NON-NLS-1$
+	public static final String PROP_BUNDLE_FILE_MAPPED = "osgi.bundlefile.mapped"; //$NON-NLS-1$
+	public static final String PROP_ENTRY_INDEX = "osgi.entry.index"; //$NON-NLS-1$
+	public static final String PROP_CONTENT_STORE = "osgi.storage.content.store"; //$NON-NLS-1$
+	public static final String PROP_STORAGE_JOURNAL = "osgi.storage.journal"; //$NON-NLS-1$
+	public static final String PROP_STORAGE_JOURNAL_LIMIT = "osgi.storage.journal.limit"; //$NON-NLS-1$
 
 	public final static String PROP_CLASS_CERTIFICATE_SUPPORT = "osgi.support.class.certificate"; //$NON-NLS-1$
 	public final static String PROP_CLASS_LOADER_TYPE = "osgi.classloader.type"; //$NON-NLS-1$
@@ -232,9 +242,16 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 	public static final String PROP_RESOLVER_THREAD_COUNT = "equinox.resolver.thead.count"; //$NON-NLS-1$
 	public static final String PROP_EQUINOX_RESOLVER_THREAD_COUNT = "equinox.resolver.thread.count"; //$NON-NLS-1$
 	public static final String PROP_EQUINOX_START_LEVEL_THREAD_COUNT = "equinox.start.level.thread.count"; //$NON-NLS-1$
+	public static final String PROP_EQUINOX_INSTALL_THREAD_COUNT = "equinox.install.thread.count"; //$NON-NLS-1$
 	public static final String PROP_EQUINOX_START_LEVEL_RESTRICT_PARALLEL = "equinox.start.level.restrict.parallel"; //$NON-NLS-1$
 	public static final String PROP_RESOLVER_REVISION_BATCH_SIZE = "equinox.resolver.revision.batch.size"; //$NON-NLS-1$
 	public static final String PROP_RESOLVER_BATCH_TIMEOUT = "equinox.resolver.batch.timeout"; //$NON-NLS-1$
+	public static final String PROP_RESOLVER_CACHE = "equinox.resolver.cache"; //$NON-NLS-1$
+	public static final String PROP_RESOLVER_PERMUTATION_THREAD_COUNT = "equinox.resolver.permutation.thread.count"; //$NON-NLS-1$
+
+	public static final String PROP_SERVICE_INDEX_KEYS = "equinox.service.index.keys"; //$NON-NLS-1$
+	public static final String PROP_SERVICE_INDEX_HOT_THRESHOLD = "equinox.service.index.hot.threshold"; //$NON-NLS-1$
+	public static final String PROP_SERVICE_EVENT_ASYNC = "equinox.service.event.async"; //$NON-NLS-1$
 
 	public static final String PROP_SYSTEM_PROVIDE_HEADER = "equinox.system.provide.header"; //$NON-NLS-1$
 	public static final String SYSTEM_PROVIDE_HEADER_ORIGINAL = "original"; //$NON-NLS-1$
@@ -631,6 +648,17 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 
 		PARALLEL_CAPABLE = CLASS_LOADER_TYPE_PARALLEL.equals(getConfiguration(PROP_CLASS_LOADER_TYPE));
 
+		int notFoundCacheSize = 0;
+		try {
+			String prop = getConfiguration(PROP_CLASS_NOT_FOUND_CACHE_SIZE);
+			if (prop != null)
+				notFoundCacheSize = Math.max(0, Integer.parseInt(prop));
+		} catch (NumberFormatException e) {
+			// use default of 0 to disable the cache
+		}
+		CLASS_NOT_FOUND_CACHE_SIZE = notFoundCacheSize;
+		CLASS_NOT_FOUND_CACHE_STACKLESS = "true".equals(getConfiguration(PROP_CLASS_NOT_FOUND_CACHE_STACKLESS)); //$NON-NLS-1$
+
 		// A specified osgi.dev property but unspecified osgi.checkConfiguration
 		// property implies osgi.checkConfiguration = true.
 		inCheckConfigurationMode = Boolean.valueOf(getConfiguration(PROP_CHECK_CONFIGURATION, Boolean.toString(devMode)));
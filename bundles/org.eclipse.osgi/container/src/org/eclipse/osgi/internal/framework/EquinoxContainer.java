@@ -32,6 +32,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.osgi.framework.eventmgr.ListenerQueue;
 import org.eclipse.osgi.framework.log.FrameworkLogEntry;
 import org.eclipse.osgi.framework.util.SecureAction;
@@ -84,6 +85,7 @@ public class EquinoxContainer implements ThreadFactory, Runnable {
 
 	private ScheduledExecutorService executor;
 	private StorageSaver storageSaver;
+	private final AtomicLong classSpaceTimestamp = new AtomicLong();
 
 	public EquinoxContainer(Map<String, ?> configuration, ModuleConnector moduleConnector) {
 		ClassLoader platformClassLoader = null;
@@ -229,13 +231,16 @@ public class EquinoxContainer implements ThreadFactory, Runnable {
 		StorageSaver currentSaver;
 		Storage currentStorage;
 		ScheduledExecutorService currentExecutor;
+		ServiceRegistry currentRegistry;
 		synchronized (this.monitor) {
+			currentRegistry = serviceRegistry;
 			serviceRegistry = null;
 			currentSaver = storageSaver;
 			currentStorage = storage;
 			currentExecutor = executor;
 		}
 		// do this outside of the lock to avoid deadlock
+		currentRegistry.close();
 		currentSaver.close();
 		currentStorage.close();
 		// Must be done last since it will result in termination of the
@@ -358,6 +363,21 @@ public class EquinoxContainer implements ThreadFactory, Runnable {
 		// Do nothing; just used to ensure the active thread is created during init
 	}
 
+	/**
+	 * Returns a timestamp which changes whenever the module database is
+	 * modified, for example when bundles are installed, uninstalled or
+	 * when wirings change. Unlike the database timestamps, this method does
+	 * not acquire the database lock and is safe to call while loading classes.
+	 * @return the class space timestamp
+	 */
+	public long getClassSpaceTimestamp() {
+		return classSpaceTimestamp.get();
+	}
+
+	void classSpaceChanged() {
+		classSpaceTimestamp.incrementAndGet();
+	}
+
 	public ClassLoader getBootLoader() {
 		return bootLoader;
 	}
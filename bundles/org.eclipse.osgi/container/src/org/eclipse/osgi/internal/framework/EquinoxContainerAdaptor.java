@@ -362,6 +362,7 @@ public class EquinoxContainerAdaptor extends ModuleContainerAdaptor {
 
 	@Override
 	public void updatedDatabase() {
+		container.classSpaceChanged();
 		StorageSaver saver = container.getStorageSaver();
 		if (saver == null)
 			return;
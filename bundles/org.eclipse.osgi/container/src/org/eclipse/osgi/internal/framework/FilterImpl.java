@@ -16,6 +16,8 @@ package org.eclipse.osgi.internal.framework;
 
 import static java.util.Objects.requireNonNull;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -32,6 +34,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import org.eclipse.osgi.framework.util.CaseInsensitiveDictionaryMap;
 import org.eclipse.osgi.internal.debug.Debug;
@@ -43,6 +48,7 @@ import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
 
 /**
  * RFC 1960-based Filter. Filter objects can be created by calling the
@@ -159,6 +165,9 @@ import org.osgi.framework.Version;
  * will evaluate to {@code false} .
  */
 public abstract class FilterImpl implements Filter {
+	/* cache of parsed non-debug filters keyed by filter string */
+	private static final Cache cache = new Cache(4096);
+
 	/* normalized filter string for Filter object */
 	private transient String filterString;
 
@@ -178,7 +187,50 @@ public abstract class FilterImpl implements Filter {
 	}
 
 	public static FilterImpl newInstance(String filterString, boolean debug) throws InvalidSyntaxException {
-		return new Parser(filterString, debug).parse();
+		if (debug) {
+			// debug filters print their evaluation; they are not shared
+			return new Parser(filterString, true).parse();
+		}
+		return cache.getFilter(filterString);
+	}
+
+	/**
+	 * Returns the number of filters which were found in the filter cache
+	 * by {@link #newInstance(String)}.
+	 *
+	 * @return The number of filter cache hits.
+	 */
+	public static long getCacheHitCount() {
+		return cache.hits.sum();
+	}
+
+	/**
+	 * Returns the number of filters which had to be parsed by
+	 * {@link #newInstance(String)} because they were not in the filter cache.
+	 *
+	 * @return The number of filter cache misses.
+	 */
+	public static long getCacheMissCount() {
+		return cache.misses.sum();
+	}
+
+	/**
+	 * Returns the number of filters which were removed from the filter cache
+	 * to stay within its maximum size.
+	 *
+	 * @return The number of filter cache evictions.
+	 */
+	public static long getCacheEvictionCount() {
+		return cache.evictions.sum();
+	}
+
+	/**
+	 * Returns a description of the filter cache and its statistics.
+	 *
+	 * @return The filter cache statistics.
+	 */
+	public static String getCacheStatistics() {
+		return cache.toString();
 	}
 
 	FilterImpl() {
@@ -844,22 +896,34 @@ public abstract class FilterImpl implements Filter {
 	}
 
 	static class Equal extends Item {
+		/* marker for an operand which cannot be converted to the type of a property value */
+		private static final Object INVALID = new Object();
+
 		final String value;
-		private Object cached;
+		/*
+		 * The value converted for each property value type. Each operand is
+		 * converted once on first use, so a failed conversion does not throw
+		 * again and alternating property value types do not reconvert.
+		 */
+		private Object longOperand;
+		private Object doubleOperand;
+		private Object floatOperand;
+		private Object booleanOperand;
+		private Object versionOperand;
+		private ValueOfOperand valueOfOperand;
 
 		Equal(String attr, String value, boolean debug) {
 			super(attr, debug);
 			this.value = value;
 		}
 
-		private <T> T convert(Class<T> type, Function<String, ? extends T> converter) {
-			@SuppressWarnings("unchecked")
-			T converted = (T) cached;
-			if ((converted != null) && type.isInstance(converted)) {
-				return converted;
+		private Object convert(Function<String, ?> converter) {
+			try {
+				return converter.apply(value.trim());
+			} catch (RuntimeException e) {
+				// the value cannot be converted; it never matches this type
+				return INVALID;
 			}
-			cached = converted = converter.apply(value.trim());
-			return converted;
 		}
 
 		@Override
@@ -883,18 +947,28 @@ public abstract class FilterImpl implements Filter {
 
 		@Override
 		boolean compare_Version(Version value1) {
+			Object operand = versionOperand;
+			if (operand == null) {
+				versionOperand = operand = convert(Version::valueOf);
+			}
+			if (operand == INVALID) {
+				return false;
+			}
 			try {
-				Version version2 = convert(Version.class, Version::valueOf);
-				return comparison(value1.compareTo(version2));
+				return comparison(value1.compareTo((Version) operand));
 			} catch (Exception e) {
-				// if the valueOf or compareTo method throws an exception
+				// if the compareTo method throws an exception
 				return false;
 			}
 		}
 
 		@Override
 		boolean compare_Boolean(boolean boolval) {
-			boolean boolval2 = convert(Boolean.class, Boolean::valueOf).booleanValue();
+			Object operand = booleanOperand;
+			if (operand == null) {
+				booleanOperand = operand = convert(Boolean::valueOf);
+			}
+			boolean boolval2 = ((Boolean) operand).booleanValue();
 			return comparison(Boolean.compare(boolval, boolval2));
 		}
 
@@ -911,35 +985,38 @@ public abstract class FilterImpl implements Filter {
 
 		@Override
 		boolean compare_Double(double doubleval) {
-			double doubleval2;
-			try {
-				doubleval2 = convert(Double.class, Double::valueOf).doubleValue();
-			} catch (IllegalArgumentException e) {
+			Object operand = doubleOperand;
+			if (operand == null) {
+				doubleOperand = operand = convert(Double::valueOf);
+			}
+			if (operand == INVALID) {
 				return false;
 			}
-			return comparison(Double.compare(doubleval, doubleval2));
+			return comparison(Double.compare(doubleval, ((Double) operand).doubleValue()));
 		}
 
 		@Override
 		boolean compare_Float(float floatval) {
-			float floatval2;
-			try {
-				floatval2 = convert(Float.class, Float::valueOf).floatValue();
-			} catch (IllegalArgumentException e) {
+			Object operand = floatOperand;
+			if (operand == null) {
+				floatOperand = operand = convert(Float::valueOf);
+			}
+			if (operand == INVALID) {
 				return false;
 			}
-			return comparison(Float.compare(floatval, floatval2));
+			return comparison(Float.compare(floatval, ((Float) operand).floatValue()));
 		}
 
 		@Override
 		boolean compare_Long(long longval) {
-			long longval2;
-			try {
-				longval2 = convert(Long.class, Long::valueOf).longValue();
-			} catch (IllegalArgumentException e) {
+			Object operand = longOperand;
+			if (operand == null) {
+				longOperand = operand = convert(Long::valueOf);
+			}
+			if (operand == INVALID) {
 				return false;
 			}
-			return comparison(Long.compare(longval, longval2));
+			return comparison(Long.compare(longval, ((Long) operand).longValue()));
 		}
 
 		@Override
@@ -976,7 +1053,26 @@ public abstract class FilterImpl implements Filter {
 			return encodeValue(sb, value).append(')');
 		}
 
+		/**
+		 * Returns the value converted to the specified type. The conversion for
+		 * the most recently used type is cached to avoid the reflective lookup
+		 * and construction on each match.
+		 *
+		 * @param target The type of the property value.
+		 * @return The converted value or {@code null} if the value cannot be
+		 *         converted.
+		 */
 		Object valueOf(Class<?> target) {
+			ValueOfOperand operand = valueOfOperand;
+			if ((operand != null) && (operand.type == target)) {
+				return operand.operand;
+			}
+			Object result = valueOf0(target);
+			valueOfOperand = new ValueOfOperand(target, result);
+			return result;
+		}
+
+		private Object valueOf0(Class<?> target) {
 			do {
 				Method method;
 				try {
@@ -1033,6 +1129,16 @@ public abstract class FilterImpl implements Filter {
 			return null;
 		}
 
+		private static final class ValueOfOperand {
+			final Class<?> type;
+			final Object operand;
+
+			ValueOfOperand(Class<?> type, Object operand) {
+				this.type = type;
+				this.operand = operand;
+			}
+		}
+
 		@Override
 		void addAttributes(Map<String, String> attributes, Map<String, Range> versionAttrs, boolean not) {
 			if (!versionAttrs.containsKey(attr)) {
@@ -1306,6 +1412,50 @@ public abstract class FilterImpl implements Filter {
 		return result;
 	}
 
+	/**
+	 * Returns the range the specified version attribute must be within for this
+	 * filter to match, as determined by {@link #getStandardOSGiAttributes(String...)}.
+	 * Only filters in the form of standard OSGi requirements are considered, that is
+	 * simple items or negated simple items, optionally combined with an {@code AND}.
+	 * The filter may still not match all versions within the returned range.
+	 * @param versionAttr the version attribute
+	 * @return the range of the version attribute or {@code null} if the filter does
+	 * not restrict the version attribute to a range
+	 */
+	public VersionRange getStandardOSGiVersionRange(String versionAttr) {
+		FilterImpl[] operands = this instanceof And ? ((And) this).operands : new FilterImpl[] {this};
+		boolean rangeStarted = false;
+		for (FilterImpl operand : operands) {
+			boolean not = operand instanceof Not;
+			FilterImpl item = not ? ((Not) operand).operand : operand;
+			if (!(item instanceof Item)) {
+				return null;
+			}
+			if (versionAttr.equals(((Item) item).attr)) {
+				if (item instanceof Approx) {
+					return null;
+				}
+				if (not && !(item instanceof LessEqual || item instanceof GreaterEqual)) {
+					// a negated version is only an exclude of a range already started
+					if (!rangeStarted) {
+						return null;
+					}
+				}
+				rangeStarted = true;
+			}
+		}
+		if (!rangeStarted) {
+			return null;
+		}
+		try {
+			String range = getStandardOSGiAttributes(versionAttr).get(versionAttr);
+			return range == null ? null : new VersionRange(range);
+		} catch (RuntimeException e) {
+			// the version attribute is not restricted to a single range
+			return null;
+		}
+	}
+
 	abstract void addAttributes(Map<String, String> attributes, Map<String, Range> versionAttrs, boolean not);
 
 	/**
@@ -1618,6 +1768,90 @@ public abstract class FilterImpl implements Filter {
 		}
 	}
 
+	/**
+	 * A bounded cache of parsed filters keyed by the filter string. The
+	 * filters are weakly referenced so that filters which are no longer used
+	 * can be collected. Parsed filters are immutable and can therefore be
+	 * shared by all callers of {@link FilterImpl#newInstance(String)}.
+	 * <p>
+	 * When the cache is full an entry which has not been used since the last
+	 * eviction pass is evicted (second chance), so that new filters keep
+	 * being cached while the framework is running.
+	 */
+	private static final class Cache {
+		private final ConcurrentMap<String, FilterReference> filters = new ConcurrentHashMap<>();
+		private final ReferenceQueue<FilterImpl> queue = new ReferenceQueue<>();
+		private final int maxSize;
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder evictions = new LongAdder();
+
+		Cache(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		FilterImpl getFilter(String filterString) throws InvalidSyntaxException {
+			purge();
+			FilterReference ref = filters.get(filterString);
+			FilterImpl filter = (ref == null) ? null : ref.get();
+			if (filter != null) {
+				ref.used = true;
+				hits.increment();
+				return filter;
+			}
+			misses.increment();
+			filter = new Parser(filterString, false).parse();
+			if ((ref == null) && (filters.size() >= maxSize)) {
+				evict();
+			}
+			filters.put(filterString, new FilterReference(filterString, filter, queue));
+			return filter;
+		}
+
+		private void purge() {
+			FilterReference ref;
+			while ((ref = (FilterReference) queue.poll()) != null) {
+				filters.remove(ref.filterString, ref);
+			}
+		}
+
+		private void evict() {
+			FilterReference first = null;
+			for (FilterReference ref : filters.values()) {
+				if (!ref.used) {
+					if (filters.remove(ref.filterString, ref)) {
+						evictions.increment();
+					}
+					return;
+				}
+				// give the entry a second chance
+				ref.used = false;
+				if (first == null) {
+					first = ref;
+				}
+			}
+			// every entry was used since the last eviction pass
+			if (first != null && filters.remove(first.filterString, first)) {
+				evictions.increment();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "FilterImpl.Cache [size=" + filters.size() + ", maxSize=" + maxSize + ", hits=" + hits.sum() + ", misses=" + misses.sum() + ", evictions=" + evictions.sum() + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		}
+
+		private static final class FilterReference extends WeakReference<FilterImpl> {
+			final String filterString;
+			volatile boolean used;
+
+			FilterReference(String filterString, FilterImpl filter, ReferenceQueue<FilterImpl> queue) {
+				super(filter, queue);
+				this.filterString = filterString;
+			}
+		}
+	}
+
 	/**
 	 * This Map is used for key lookup during filter
 	 * evaluation. This Map implementation only supports the get operation using
@@ -28,6 +28,7 @@ import org.eclipse.osgi.internal.location.EquinoxLocations;
 import org.eclipse.osgi.internal.permadmin.EquinoxSecurityManager;
 import org.eclipse.osgi.internal.permadmin.SecurityAdmin;
 import org.eclipse.osgi.internal.url.EquinoxFactoryManager;
+import org.eclipse.osgi.report.resolution.ResolutionHistory;
 import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.osgi.service.debug.DebugOptions;
 import org.eclipse.osgi.service.debug.DebugOptionsListener;
@@ -90,6 +91,7 @@ public class SystemBundleActivator implements BundleActivator {
 		StartLevel startLevel = new StartLevelImpl(
 				equinoxContainer.getStorage().getModuleContainer().getFrameworkStartLevel());
 		register(bc, StartLevel.class, startLevel, null);
+		register(bc, ResolutionHistory.class, equinoxContainer.getStorage().getModuleContainer().getResolutionHistory(), null);
 
 		SecurityAdmin sa = equinoxContainer.getStorage().getSecurityAdmin();
 		register(bc, PermissionAdmin.class, sa, null);
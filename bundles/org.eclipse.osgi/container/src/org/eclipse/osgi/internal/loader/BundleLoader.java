@@ -29,6 +29,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -101,21 +103,27 @@ public class BundleLoader extends ModuleLoader {
 	private final BundleLoaderSources exportSources;
 
 	/* cache of required package sources. Key is packagename, value is PackageSource */
-	private final Map<String, PackageSource> requiredSources = new HashMap<>();
+	private final ConcurrentMap<String, PackageSource> requiredSources = new ConcurrentHashMap<>();
 	/* cache of imported packages. Key is packagename, Value is PackageSource */
-	private final Map<String, PackageSource> importedSources = new HashMap<>();
+	private final ConcurrentMap<String, PackageSource> importedSources = new ConcurrentHashMap<>();
 	private final List<ModuleWire> requiredBundleWires;
+	/* routing table of the package names that may be provided by the required bundles */
+	private volatile RequiredPackageNames requiredPackageNames;
 
-	/* @GuardedBy("importedSources") */
-	private boolean importsInitialized = false;
-	/* @GuardedBy("importedSources") */
-	private boolean dynamicAllPackages;
+	/*
+	 * The imported sources map is read without holding a lock; the importedSources
+	 * monitor is only used to serialize initialization and updates of the dynamic
+	 * import tables. The dynamic import arrays are replaced, never modified.
+	 */
+	private volatile boolean importsInitialized = false;
+	/* @GuardedBy("importedSources") for writes */
+	private volatile boolean dynamicAllPackages;
 	/* If not null, list of package stems to import dynamically. */
-	/* @GuardedBy("importedSources") */
-	private String[] dynamicImportPackageStems;
-	/* @GuardedBy("importedSources") */
+	/* @GuardedBy("importedSources") for writes */
+	private volatile String[] dynamicImportPackageStems;
+	/* @GuardedBy("importedSources") for writes */
 	/* If not null, list of package names to import dynamically. */
-	private String[] dynamicImportPackages;
+	private volatile String[] dynamicImportPackages;
 
 	private final Object classLoaderCreatedMonitor = new Object();
 	/* @GuardedBy("classLoaderCreatedMonitor") */
@@ -124,6 +132,8 @@ public class BundleLoader extends ModuleLoader {
 	private final ClassLoader parent;
 	private final AtomicBoolean triggerClassLoaded = new AtomicBoolean(false);
 	private final AtomicBoolean firstUseOfInvalidLoader = new AtomicBoolean(false);
+	/* cache of classes which could not be found; null if disabled */
+	private final ClassNotFoundCache notFoundCache;
 
 	/**
 	 * Returns the package name from the specified class name.
@@ -166,12 +176,14 @@ public class BundleLoader extends ModuleLoader {
 		this.container = container;
 		this.debug = container.getConfiguration().getDebug();
 		this.parent = parent;
+		EquinoxConfiguration configuration = container.getConfiguration();
+		this.notFoundCache = configuration.CLASS_NOT_FOUND_CACHE_SIZE > 0 ? new ClassNotFoundCache(container, configuration.CLASS_NOT_FOUND_CACHE_SIZE, configuration.CLASS_NOT_FOUND_CACHE_STACKLESS) : null;
 
 		// init the provided packages set
 		exportSources = new BundleLoaderSources(this);
 		List<ModuleCapability> exports = wiring.getModuleCapabilities(PackageNamespace.PACKAGE_NAMESPACE);
 		exports = exports == null ? Collections.emptyList() : exports;
-		exportedPackages = Collections.synchronizedCollection(exports.size() > 10 ? new HashSet<String>(exports.size()) : new ArrayList<String>(exports.size()));
+		exportedPackages = ConcurrentHashMap.newKeySet(exports.size());
 		initializeExports(exports, exportSources, exportedPackages);
 
 		// init the dynamic imports tables
@@ -307,6 +319,10 @@ public class BundleLoader extends ModuleLoader {
 
 	@Override
 	protected void loadFragments(Collection<ModuleRevision> fragments) {
+		if (notFoundCache != null) {
+			// attached fragments may provide classes that could not be found before
+			notFoundCache.invalidate();
+		}
 		addFragmentExports(wiring.getModuleCapabilities(PackageNamespace.PACKAGE_NAMESPACE));
 		loadClassLoaderFragments(fragments);
 		clearManifestLocalizationCache();
@@ -437,6 +453,17 @@ public class BundleLoader extends ModuleLoader {
 		if (debug.DEBUG_LOADER)
 			Debug.println("BundleLoader[" + this + "].findClass(" + name + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
+		long notFoundStamp = 0;
+		if (parentAndGenerateException && notFoundCache != null) {
+			notFoundStamp = notFoundCache.getStamp();
+			if (notFoundCache.isNotFound(name)) {
+				if (debug.DEBUG_LOADER) {
+					Debug.println("BundleLoader[" + this + "].loadClass(" + name + ") failed from not found cache."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				}
+				throw notFoundCache.newException(name + " cannot be found by " + this); //$NON-NLS-1$
+			}
+		}
+
 		String pkgName = getPackageName(name);
 		boolean bootDelegation = false;
 		// follow the OSGi delegation model
@@ -472,7 +499,7 @@ public class BundleLoader extends ModuleLoader {
 			}
 			if (result != null)
 				return result;
-			return generateException(name, parentAndGenerateException);
+			return generateException(name, parentAndGenerateException, notFoundStamp);
 		}
 		// 4) search the required bundles
 		source = findRequiredSource(pkgName, null);
@@ -495,7 +522,7 @@ public class BundleLoader extends ModuleLoader {
 				result = source.loadClass(name);
 				if (result != null)
 					return result;
-				return generateException(name, parentAndGenerateException);
+				return generateException(name, parentAndGenerateException, notFoundStamp);
 			}
 		}
 
@@ -521,11 +548,14 @@ public class BundleLoader extends ModuleLoader {
 				// we want to generate our own exception below
 			}
 		}
-		return generateException(name, parentAndGenerateException);
+		return generateException(name, parentAndGenerateException, notFoundStamp);
 	}
 
-	private Class<?> generateException(String name, boolean generate) throws ClassNotFoundException {
+	private Class<?> generateException(String name, boolean generate, long notFoundStamp) throws ClassNotFoundException {
 		if (generate) {
+			if (notFoundCache != null) {
+				notFoundCache.notFound(name, notFoundStamp);
+			}
 			ClassNotFoundException e = new ClassNotFoundException(name + " cannot be found by " + this); //$NON-NLS-1$
 			if (debug.DEBUG_LOADER) {
 				Debug.println("BundleLoader[" + this + "].loadClass(" + name + ") failed."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -810,12 +840,7 @@ public class BundleLoader extends ModuleLoader {
 		boolean subPackages = (options & BundleWiring.LISTRESOURCES_RECURSE) != 0;
 		List<String> packages = new ArrayList<>();
 		// search imported package names
-		Map<String, PackageSource> importSources = getImportedSources(null);
-		Collection<PackageSource> imports;
-		synchronized (importSources) {
-			imports = new ArrayList<>(importSources.values());
-		}
-		for (PackageSource source : imports) {
+		for (PackageSource source : getImportedSources(null).values()) {
 			String id = source.getId();
 			if (id.equals(pkgName) || (subPackages && isSubPackage(pkgName, id)))
 				packages.add(id);
@@ -933,27 +958,27 @@ public class BundleLoader extends ModuleLoader {
 		if (pkgname.startsWith("java.")) //$NON-NLS-1$
 			return true;
 
-		synchronized (importedSources) {
-			/* "*" shortcut */
-			if (dynamicAllPackages)
-				return true;
+		/* "*" shortcut */
+		if (dynamicAllPackages)
+			return true;
 
-			/* match against specific names */
-			if (dynamicImportPackages != null)
-				for (String dynamicImportPackage : dynamicImportPackages) {
-					if (pkgname.equals(dynamicImportPackage)) {
-						return true;
-					}
+		/* match against specific names */
+		String[] names = dynamicImportPackages;
+		if (names != null)
+			for (String dynamicImportPackage : names) {
+				if (pkgname.equals(dynamicImportPackage)) {
+					return true;
 				}
+			}
 
-			/* match against names with trailing wildcards */
-			if (dynamicImportPackageStems != null)
-				for (String dynamicImportPackageStem : dynamicImportPackageStems) {
-					if (pkgname.startsWith(dynamicImportPackageStem)) {
-						return true;
-					}
+		/* match against names with trailing wildcards */
+		String[] stems = dynamicImportPackageStems;
+		if (stems != null)
+			for (String dynamicImportPackageStem : stems) {
+				if (pkgname.startsWith(dynamicImportPackageStem)) {
+					return true;
 				}
-		}
+			}
 		return false;
 	}
 
@@ -1003,12 +1028,10 @@ public class BundleLoader extends ModuleLoader {
 		if (visited.contains(this))
 			return;
 		visited.add(this);
-		synchronized (exportedPackages) {
-			for (String exported : exportedPackages) {
-				if (exported.equals(packageName) || (subPackages && isSubPackage(packageName, exported))) {
-					if (!result.contains(exported))
-						result.add(exported);
-				}
+		for (String exported : exportedPackages) {
+			if (exported.equals(packageName) || (subPackages && isSubPackage(packageName, exported))) {
+				if (!result.contains(exported))
+					result.add(exported);
 			}
 		}
 		for (String substituted : wiring.getSubstitutedNames()) {
@@ -1066,6 +1089,10 @@ public class BundleLoader extends ModuleLoader {
 		if (packages == null)
 			return;
 
+		if (notFoundCache != null) {
+			// new dynamic imports may provide classes that could not be found before
+			notFoundCache.invalidate();
+		}
 		synchronized (importedSources) {
 			int size = packages.length;
 			List<String> stems;
@@ -1166,13 +1193,13 @@ public class BundleLoader extends ModuleLoader {
 	}
 
 	private PackageSource findImportedSource(String pkgName, Collection<BundleLoader> visited) {
-		Map<String, PackageSource> imports = getImportedSources(visited);
-		synchronized (imports) {
-			return imports.get(pkgName);
-		}
+		return getImportedSources(visited).get(pkgName);
 	}
 
 	private Map<String, PackageSource> getImportedSources(Collection<BundleLoader> visited) {
+		if (importsInitialized) {
+			return importedSources;
+		}
 		synchronized (importedSources) {
 			if (importsInitialized) {
 				return importedSources;
@@ -1203,8 +1230,9 @@ public class BundleLoader extends ModuleLoader {
 				if (debug.DEBUG_LOADER) {
 					Debug.println("BundleLoader[" + this + "] using dynamic import source: " + source); //$NON-NLS-1$ //$NON-NLS-2$
 				}
-				synchronized (importedSources) {
-					importedSources.put(source.getId(), source);
+				importedSources.put(source.getId(), source);
+				if (notFoundCache != null) {
+					notFoundCache.invalidate();
 				}
 				return source;
 			}
@@ -1216,10 +1244,12 @@ public class BundleLoader extends ModuleLoader {
 		if (requiredBundleWires.isEmpty()) {
 			return null;
 		}
-		synchronized (requiredSources) {
-			PackageSource result = requiredSources.get(pkgName);
-			if (result != null)
-				return result.isNullSource() ? null : result;
+		PackageSource cached = requiredSources.get(pkgName);
+		if (cached != null)
+			return cached.isNullSource() ? null : cached;
+		if (!getRequiredPackageNames().contains(pkgName)) {
+			// none of the required bundles can provide the package; avoid searching them
+			return null;
 		}
 		if (visited == null)
 			visited = new ArrayList<>();
@@ -1246,12 +1276,67 @@ public class BundleLoader extends ModuleLoader {
 			PackageSource[] srcs = result.toArray(new PackageSource[result.size()]);
 			source = createMultiSource(pkgName, srcs);
 		}
-		synchronized (requiredSources) {
-			requiredSources.put(source.getId(), source);
+		PackageSource existing = requiredSources.putIfAbsent(source.getId(), source);
+		if (existing != null) {
+			// another thread computed the source first; use it to keep the source unique
+			source = existing;
 		}
 		return source.isNullSource() ? null : source;
 	}
 
+	/*
+	 * Returns the names of all packages which may be provided by the required bundles
+	 * of this loader. The names are computed from the wirings in a single walk of the
+	 * required bundle wires and are recomputed when the class space changes.
+	 */
+	private Set<String> getRequiredPackageNames() {
+		long timestamp = container.getClassSpaceTimestamp();
+		RequiredPackageNames current = requiredPackageNames;
+		if (current == null || current.timestamp != timestamp) {
+			Set<String> names = new HashSet<>();
+			Set<ModuleWiring> visited = new HashSet<>();
+			visited.add(wiring); // never route back to ourselves
+			for (ModuleWire bundleWire : requiredBundleWires) {
+				addRequiredPackageNames(bundleWire.getProviderWiring(), names, visited);
+			}
+			current = new RequiredPackageNames(timestamp, names);
+			requiredPackageNames = current;
+		}
+		return current.names;
+	}
+
+	private static void addRequiredPackageNames(ModuleWiring provider, Set<String> names, Set<ModuleWiring> visited) {
+		if (provider == null || !visited.add(provider)) {
+			return;
+		}
+		List<ModuleCapability> exports = provider.getModuleCapabilities(PackageNamespace.PACKAGE_NAMESPACE);
+		if (exports != null) {
+			for (ModuleCapability export : exports) {
+				names.add((String) export.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE));
+			}
+		}
+		names.addAll(provider.getSubstitutedNames());
+		// only re-exported required bundles can provide packages the provider does not export itself
+		List<ModuleWire> providerBundleWires = provider.getRequiredModuleWires(BundleNamespace.BUNDLE_NAMESPACE);
+		if (providerBundleWires != null) {
+			for (ModuleWire bundleWire : providerBundleWires) {
+				if (BundleNamespace.VISIBILITY_REEXPORT.equals(bundleWire.getRequirement().getDirectives().get(BundleNamespace.REQUIREMENT_VISIBILITY_DIRECTIVE))) {
+					addRequiredPackageNames(bundleWire.getProviderWiring(), names, visited);
+				}
+			}
+		}
+	}
+
+	private static final class RequiredPackageNames {
+		final long timestamp;
+		final Set<String> names;
+
+		RequiredPackageNames(long timestamp, Set<String> names) {
+			this.timestamp = timestamp;
+			this.names = names;
+		}
+	}
+
 	/*
 	 * Gets the package source for the pkgName.  This will include the local package source
 	 * if the bundle exports the package.  This is used to compare the PackageSource of a
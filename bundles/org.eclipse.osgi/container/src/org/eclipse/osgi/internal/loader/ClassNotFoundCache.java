@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.internal.loader;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.osgi.internal.framework.EquinoxContainer;
+
+/**
+ * A bounded cache of class names which a {@link BundleLoader} failed to find.
+ * <p>
+ * A class which cannot be found may become loadable when the class space
+ * changes, for example when a bundle is installed that a dynamic import or
+ * buddy policy can use. The cache is therefore tied to a stamp made of the
+ * {@link EquinoxContainer#getClassSpaceTimestamp() class space timestamp} and
+ * the number of local invalidations of the loader. All cached names are
+ * discarded as soon as the stamp changes. A search must obtain the stamp
+ * before it starts and pass it when recording a miss so that a miss found
+ * while the class space changed is not recorded. The names are kept together
+ * with the stamp they are valid for, so a miss recorded concurrently with
+ * a change of the stamp can never be found after the change.
+ */
+final class ClassNotFoundCache {
+	private final EquinoxContainer container;
+	private final int maxSize;
+	private final boolean stackless;
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicReference<Misses> misses;
+
+	ClassNotFoundCache(EquinoxContainer container, int maxSize, boolean stackless) {
+		this.container = container;
+		this.maxSize = maxSize;
+		this.stackless = stackless;
+		this.misses = new AtomicReference<>(new Misses(getStamp()));
+	}
+
+	/**
+	 * Returns the current stamp of this cache.
+	 * @return the current stamp
+	 */
+	long getStamp() {
+		return container.getClassSpaceTimestamp() + invalidations.get();
+	}
+
+	/**
+	 * Returns true if the class with the specified name is known to not be found
+	 * for the current stamp.
+	 * @param name the name of the class
+	 * @return true if the class is known to not be found
+	 */
+	boolean isNotFound(String name) {
+		long stamp = getStamp();
+		Misses current = misses.get();
+		if (stamp != current.stamp) {
+			// stamps only increase; never go back to the names of an older stamp
+			if (stamp > current.stamp) {
+				misses.compareAndSet(current, new Misses(stamp));
+			}
+			return false;
+		}
+		return current.names.contains(name);
+	}
+
+	/**
+	 * Records that a class could not be found by a search which started at the
+	 * specified stamp.
+	 * @param name the name of the class
+	 * @param stamp the stamp obtained before the search started
+	 */
+	void notFound(String name, long stamp) {
+		Misses current = misses.get();
+		if (stamp != current.stamp || stamp != getStamp()) {
+			// the class space changed during or before the search
+			return;
+		}
+		Set<String> names = current.names;
+		if (names.size() >= maxSize) {
+			// evict an arbitrary name to keep the cache bounded
+			Iterator<String> iterator = names.iterator();
+			if (iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		}
+		// if the stamp changes now the name is added to names which are already discarded
+		names.add(name);
+	}
+
+	/**
+	 * Discards all cached names. This must be called whenever the loader
+	 * changes in a way that may allow a missing class to be found.
+	 */
+	void invalidate() {
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Creates the exception to throw for a class that is known to not be found.
+	 * @param message the message of the exception
+	 * @return a new exception
+	 */
+	ClassNotFoundException newException(String message) {
+		return stackless ? new StacklessClassNotFoundException(message) : new ClassNotFoundException(message);
+	}
+
+	static final class StacklessClassNotFoundException extends ClassNotFoundException {
+		private static final long serialVersionUID = 1L;
+
+		StacklessClassNotFoundException(String message) {
+			super(message);
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	/**
+	 * The names which are not found for a single stamp. A new instance
+	 * replaces the names as soon as the stamp changes.
+	 */
+	private static final class Misses {
+		final long stamp;
+		final Set<String> names = ConcurrentHashMap.newKeySet();
+
+		Misses(long stamp) {
+			this.stamp = stamp;
+		}
+	}
+}
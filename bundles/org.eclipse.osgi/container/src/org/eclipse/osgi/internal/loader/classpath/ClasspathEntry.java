@@ -35,6 +35,8 @@ import org.eclipse.osgi.storage.BundleInfo.Generation;
 import org.eclipse.osgi.storage.Storage;
 import org.eclipse.osgi.storage.bundlefile.BundleEntry;
 import org.eclipse.osgi.storage.bundlefile.BundleFile;
+import org.eclipse.osgi.storage.bundlefile.CloseableBundleFile;
+import org.eclipse.osgi.storage.bundlefile.BundleFileIndex;
 
 /**
  * A ClasspathEntry contains a single <code>BundleFile</code> which is used as
@@ -179,6 +181,32 @@ public class ClasspathEntry {
 		}
 	}
 
+	/**
+	 * Returns false if this classpath entry definitely does not contain the
+	 * specified path. This check uses the directory index of archive bundle files
+	 * and does not open the bundle file if the index has been persisted.
+	 * @param path the path to check
+	 * @return false if this classpath entry does not contain the path
+	 */
+	public boolean mayContain(String path) {
+		if (!mrBundleFiles.isEmpty() || !(bundlefile instanceof CloseableBundleFile)) {
+			return true;
+		}
+		BundleFileIndex index = ((CloseableBundleFile<?>) bundlefile).getIndex();
+		return index == null || index.mayContain(path);
+	}
+
+	/**
+	 * Returns true if this classpath entry is the root of the content of the
+	 * specified generation and has no multi-release versions. Only such entries
+	 * are covered by the {@link org.eclipse.osgi.storage.EntryIndex entry index}.
+	 * @param generation the generation
+	 * @return true if this classpath entry is the root of the generation content
+	 */
+	boolean isRoot(Generation generation) {
+		return bundlefile == generation.getBundleFile() && mrBundleFiles.isEmpty();
+	}
+
 	/**
 	 * Finds the entry with the specified path.
 	 * This handles Multi-Release searching also.
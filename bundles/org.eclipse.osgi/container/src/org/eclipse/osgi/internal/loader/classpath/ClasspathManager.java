@@ -26,6 +26,7 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import org.eclipse.osgi.container.Module;
 import org.eclipse.osgi.container.ModuleCapability;
 import org.eclipse.osgi.container.ModuleContainerAdaptor.ContainerEvent;
@@ -42,6 +43,7 @@ import org.eclipse.osgi.internal.loader.ModuleClassLoader.DefineClassResult;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.internal.weaving.WeavingHookConfigurator;
 import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.EntryIndex;
 import org.eclipse.osgi.storage.NativeCodeFinder;
 import org.eclipse.osgi.storage.Storage;
 import org.eclipse.osgi.storage.bundlefile.BundleEntry;
@@ -417,7 +419,7 @@ public class ClasspathManager {
 	private URL findLocalResourceImpl(String resource, ClasspathEntry[] cpEntries, Module m, int classPathIndex, int[] curIndex) {
 		URL result;
 		for (ClasspathEntry cpEntry : cpEntries) {
-			if (cpEntry != null) {
+			if (cpEntry != null && cpEntry.mayContain(resource)) {
 				result = cpEntry.findResource(resource, m, curIndex[0]);
 				if (result != null && (classPathIndex == -1 || classPathIndex == curIndex[0])) {
 					return result;
@@ -448,11 +450,20 @@ public class ClasspathManager {
 		}
 
 		classPathIndex[0] = 0;
+		Set<Long> indexed = getIndexedBundles(resource.substring(0, resource.lastIndexOf('/') + 1));
 		// look in host classpath entries
-		findLocalResources(resource, entries, m, classPathIndex, resources);
+		if (isMissingDirectory(indexed, generation, entries)) {
+			classPathIndex[0] += entries.length;
+		} else {
+			findLocalResources(resource, entries, m, classPathIndex, resources);
+		}
 		// look in fragment entries
 		for (FragmentClasspath fragCP : getFragmentClasspaths()) {
-			findLocalResources(resource, fragCP.getEntries(), m, classPathIndex, resources);
+			if (isMissingDirectory(indexed, fragCP.getGeneration(), fragCP.getEntries())) {
+				classPathIndex[0] += fragCP.getEntries().length;
+			} else {
+				findLocalResources(resource, fragCP.getEntries(), m, classPathIndex, resources);
+			}
 		}
 
 		if (resources.size() > 0)
@@ -462,7 +473,7 @@ public class ClasspathManager {
 
 	private void findLocalResources(String resource, ClasspathEntry[] cpEntries, Module m, int[] classPathIndex, List<URL> resources) {
 		for (ClasspathEntry cpEntry : cpEntries) {
-			if (cpEntry != null) {
+			if (cpEntry != null && cpEntry.mayContain(resource)) {
 				URL url = cpEntry.findResource(resource, m, classPathIndex[0]);
 				if (url != null) {
 					resources.add(url);
@@ -521,7 +532,7 @@ public class ClasspathManager {
 	private BundleEntry findLocalEntry(String path, ClasspathEntry[] cpEntries, int classPathIndex, int[] curIndex) {
 		for (ClasspathEntry cpEntry : cpEntries) {
 			if (cpEntry != null) {
-				if (classPathIndex == -1 || classPathIndex == curIndex[0]) {
+				if ((classPathIndex == -1 || classPathIndex == curIndex[0]) && cpEntry.mayContain(path)) {
 					BundleEntry result = cpEntry.findEntry(path);
 					if (result != null) {
 						return result;
@@ -602,8 +613,10 @@ public class ClasspathManager {
 
 	private Class<?> findLocalClassImpl(String classname, ClasspathEntry[] cpEntries, List<ClassLoaderHook> hooks) {
 		Class<?> result;
+		// the index only checks the package directory of the class file
+		String classPath = classname.replace('.', '/');
 		for (ClasspathEntry cpEntry : cpEntries) {
-			if (cpEntry != null) {
+			if (cpEntry != null && cpEntry.mayContain(classPath)) {
 				result = findClassImpl(classname, cpEntry, hooks);
 				if (result != null) {
 					return result;
@@ -896,12 +909,18 @@ public class ClasspathManager {
 			}
 		}
 
+		Set<Long> indexed = getIndexedBundles(path);
 		ClasspathEntry[] cpEntries = getHostClasspathEntries();
-		for (ClasspathEntry cpEntry : cpEntries) {
-			cpEntry.addBundleFiles(bundleFiles);
+		if (!isMissingDirectory(indexed, generation, cpEntries)) {
+			for (ClasspathEntry cpEntry : cpEntries) {
+				cpEntry.addBundleFiles(bundleFiles);
+			}
 		}
 
 		for (FragmentClasspath fragmentClasspath : getFragmentClasspaths()) {
+			if (isMissingDirectory(indexed, fragmentClasspath.getGeneration(), fragmentClasspath.getEntries())) {
+				continue;
+			}
 			for (ClasspathEntry cpEntry : fragmentClasspath.getEntries()) {
 				cpEntry.addBundleFiles(bundleFiles);
 			}
@@ -910,6 +929,40 @@ public class ClasspathManager {
 		return Storage.listEntryPaths(bundleFiles, path, filePattern, options);
 	}
 
+	/**
+	 * Returns the ids of the bundles which have entries in the specified directory
+	 * according to the entry index.
+	 * @param directory the directory
+	 * @return the ids of the bundles or {@code null} if the entry index is not enabled
+	 */
+	private Set<Long> getIndexedBundles(String directory) {
+		EntryIndex entryIndex = generation.getBundleInfo().getStorage().getEntryIndex();
+		return entryIndex == null ? null : entryIndex.getBundles(directory);
+	}
+
+	/**
+	 * Returns true if the entry index shows that the specified class path entries
+	 * of a generation have no entries in a directory.  This is only known if the
+	 * class path consists of the root of the indexed generation content.
+	 * @param indexed the ids of the bundles which have entries in the directory
+	 * or {@code null} if the entry index is not enabled
+	 * @param cpGeneration the generation of the class path entries
+	 * @param cpEntries the class path entries
+	 * @return true if the class path entries have no entries in the directory
+	 */
+	private static boolean isMissingDirectory(Set<Long> indexed, Generation cpGeneration, ClasspathEntry[] cpEntries) {
+		if (indexed == null || indexed.contains(cpGeneration.getBundleInfo().getBundleId())) {
+			return false;
+		}
+		for (ClasspathEntry cpEntry : cpEntries) {
+			if (cpEntry != null && !cpEntry.isRoot(cpGeneration)) {
+				return false;
+			}
+		}
+		// bundles which are not indexed are never included in the indexed bundles
+		return cpGeneration.getBundleInfo().getStorage().getEntryIndex().getIndex(cpGeneration) != null;
+	}
+
 	public Generation getGeneration() {
 		return generation;
 	}
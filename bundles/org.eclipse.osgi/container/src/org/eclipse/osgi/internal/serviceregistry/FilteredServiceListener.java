@@ -88,13 +88,7 @@ class FilteredServiceListener implements ServiceListener, ListenerHook.ListenerI
 		ServiceReferenceImpl<?> reference = (ServiceReferenceImpl<?>) event.getServiceReference();
 
 		// first check if we can short circuit the filter match if the required objectClass does not match the event
-		objectClassCheck: if (objectClass != null) {
-			String[] classes = reference.getClasses();
-			int size = classes.length;
-			for (int i = 0; i < size; i++) {
-				if (classes[i] == objectClass) // objectClass strings have previously been interned for identity comparison
-					break objectClassCheck;
-			}
+		if (!isInterested(reference)) {
 			return; // no class in this event matches a required part of the filter; we do not need to deliver this event
 		}
 		// TODO could short circuit service.id filters as well since the id is constant for a registration.
@@ -121,6 +115,38 @@ class FilteredServiceListener implements ServiceListener, ListenerHook.ListenerI
 		}
 	}
 
+	/**
+	 * Returns the objectClass required by the filter of this listener.
+	 *
+	 * @return The interned objectClass or {@code null} if the filter does not
+	 *         require a single objectClass.
+	 */
+	String getObjectClass() {
+		return objectClass;
+	}
+
+	/**
+	 * Returns whether this listener may be interested in events for the specified
+	 * service. A listener whose filter requires an objectClass is only interested in
+	 * services registered under that class. This check does not evaluate the filter.
+	 *
+	 * @param reference The reference of the service of an event.
+	 * @return {@code false} if the listener cannot match events for the service;
+	 *         {@code true} otherwise.
+	 */
+	boolean isInterested(ServiceReferenceImpl<?> reference) {
+		if (objectClass == null) {
+			return true;
+		}
+		String[] classes = reference.getClasses();
+		int size = classes.length;
+		for (int i = 0; i < size; i++) {
+			if (classes[i] == objectClass) // objectClass strings have previously been interned for identity comparison
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Returns a service event that should be delivered to the listener based on the filter evaluation.
 	 * This may result in a service event of type MODIFIED_ENDMATCH.
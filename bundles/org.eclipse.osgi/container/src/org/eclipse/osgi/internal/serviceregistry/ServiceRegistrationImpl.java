@@ -88,6 +88,9 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 	/* internal object to use for synchronization */
 	private final Object registrationLock = new Object();
 
+	/** The REGISTERED event of this registration while it waits for asynchronous delivery. */
+	volatile ServiceRegistry.PendingServiceEvent pendingEvent;
+
 	/** The registration state */
 	/* @GuardedBy("registrationLock") */
 	private int state;
@@ -167,6 +170,8 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 	public void setProperties(Dictionary<String, ?> props) {
 		final ServiceReferenceImpl<S> ref;
 		final Map<String, Object> previousProperties;
+		/* listeners must receive a pending REGISTERED event before the properties change */
+		registry.deliverPendingServiceEvents(this);
 		synchronized (registry) {
 			int previousRanking;
 			synchronized (registrationLock) {
@@ -218,6 +223,8 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 	@Override
 	public void unregister() {
 		final ServiceReferenceImpl<S> ref;
+		/* listeners must receive a pending REGISTERED event before the UNREGISTERING event */
+		registry.deliverPendingServiceEvents(this);
 		synchronized (registry) {
 			synchronized (registrationLock) {
 				if (state != REGISTERED) { /* in the process of unregisterING */
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.internal.serviceregistry;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable, array backed list of service registrations. The list is both
+ * sorted in the natural order of ServiceRegistrationImpl and also is a set in
+ * that there must be no two entries in the list which are equal.
+ * <p>
+ * Instances are never modified after construction. Writers create a new
+ * list with {@link #insert(ServiceRegistrationImpl)},
+ * {@link #delete(ServiceRegistrationImpl)} or
+ * {@link #reorder(ServiceRegistrationImpl)} and publish it, which allows
+ * readers to use a list without holding a lock or making a copy.
+ * <p>
+ * A list may also hold secondary indexes of its registrations by the
+ * value of a service property. The indexes are built lazily and are only
+ * valid for the properties the registrations had when the list was created.
+ * Writers must therefore publish a new list, see {@link #copy()}, when the
+ * properties of a registration in the list are modified.
+ *
+ * @Immutable
+ */
+final class ServiceRegistrationList extends AbstractList<ServiceRegistrationImpl<?>> implements RandomAccess {
+	static final ServiceRegistrationList EMPTY = new ServiceRegistrationList(new ServiceRegistrationImpl<?>[0]);
+
+	private final ServiceRegistrationImpl<?>[] registrations;
+	/* lazily created map of property key to property index */
+	private volatile ConcurrentMap<String, PropertyIndex> propertyIndexes;
+
+	private ServiceRegistrationList(ServiceRegistrationImpl<?>[] registrations) {
+		this.registrations = registrations;
+	}
+
+	@Override
+	public ServiceRegistrationImpl<?> get(int index) {
+		return registrations[index];
+	}
+
+	@Override
+	public int size() {
+		return registrations.length;
+	}
+
+	/**
+	 * Returns a new list which contains the registrations of this list plus the
+	 * specified registration inserted at its sorted location.
+	 *
+	 * @param registration The registration to add.
+	 * @return A new list containing the registration.
+	 */
+	ServiceRegistrationList insert(ServiceRegistrationImpl<?> registration) {
+		int insertIndex = -Arrays.binarySearch(registrations, registration) - 1;
+		if (insertIndex < 0) {
+			// already contained in the list
+			return this;
+		}
+		ServiceRegistrationImpl<?>[] result = new ServiceRegistrationImpl<?>[registrations.length + 1];
+		System.arraycopy(registrations, 0, result, 0, insertIndex);
+		result[insertIndex] = registration;
+		System.arraycopy(registrations, insertIndex, result, insertIndex + 1, registrations.length - insertIndex);
+		return new ServiceRegistrationList(result);
+	}
+
+	/**
+	 * Returns a new list which contains the registrations of this list minus the
+	 * specified registration. The registration is located by identity so that a
+	 * registration whose ranking has changed is still found.
+	 *
+	 * @param registration The registration to remove.
+	 * @return A new list without the registration, or {@link #EMPTY} if no
+	 *         registrations remain.
+	 */
+	ServiceRegistrationList delete(ServiceRegistrationImpl<?> registration) {
+		int index = indexOfIdentity(registration);
+		if (index < 0) {
+			return this;
+		}
+		if (registrations.length == 1) {
+			return EMPTY;
+		}
+		ServiceRegistrationImpl<?>[] result = new ServiceRegistrationImpl<?>[registrations.length - 1];
+		System.arraycopy(registrations, 0, result, 0, index);
+		System.arraycopy(registrations, index + 1, result, index, registrations.length - index - 1);
+		return new ServiceRegistrationList(result);
+	}
+
+	/**
+	 * Returns a new list in which the specified registration has been moved to
+	 * the sorted location for its current ranking.
+	 *
+	 * @param registration The registration whose ranking has changed.
+	 * @return A new sorted list.
+	 */
+	ServiceRegistrationList reorder(ServiceRegistrationImpl<?> registration) {
+		return delete(registration).insert(registration);
+	}
+
+	/**
+	 * Returns a new list which contains the same registrations as this list
+	 * but without any secondary indexes.
+	 *
+	 * @return A new list.
+	 */
+	ServiceRegistrationList copy() {
+		return registrations.length == 0 ? EMPTY : new ServiceRegistrationList(registrations);
+	}
+
+	/**
+	 * Returns the registrations of this list which may have the specified
+	 * value for the specified property key. The returned list is in the
+	 * order of this list and contains every registration whose property
+	 * value is, or contains, the specified String value. Registrations with
+	 * a property value which is not a String are always included since
+	 * they must be matched according to the type of their value. The caller
+	 * must still match the returned registrations against the filter.
+	 *
+	 * @param key The lower case property key.
+	 * @param value The String value of the property.
+	 * @return The candidate registrations.
+	 */
+	List<ServiceRegistrationImpl<?>> getCandidates(String key, String value) {
+		ConcurrentMap<String, PropertyIndex> indexes = propertyIndexes;
+		if (indexes == null) {
+			synchronized (this) {
+				indexes = propertyIndexes;
+				if (indexes == null) {
+					propertyIndexes = indexes = new ConcurrentHashMap<>(4);
+				}
+			}
+		}
+		PropertyIndex index = indexes.get(key);
+		if (index == null) {
+			index = new PropertyIndex(registrations, key);
+			PropertyIndex existing = indexes.putIfAbsent(key, index);
+			if (existing != null) {
+				index = existing;
+			}
+		}
+		return index.getCandidates(registrations, value);
+	}
+
+	private int indexOfIdentity(ServiceRegistrationImpl<?> registration) {
+		for (int i = 0; i < registrations.length; i++) {
+			if (registrations[i] == registration) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * An index of the positions of the registrations of a list by the
+	 * String values of a single property.
+	 */
+	static final class PropertyIndex {
+		private static final int[] NO_POSITIONS = new int[0];
+		private final Map<String, int[]> positionsByValue;
+		/* positions of registrations with property values which are not Strings */
+		private final int[] unindexed;
+
+		PropertyIndex(ServiceRegistrationImpl<?>[] registrations, String key) {
+			Map<String, List<Integer>> byValue = new HashMap<>();
+			List<Integer> other = new ArrayList<>(0);
+			for (int i = 0; i < registrations.length; i++) {
+				Object value = registrations[i].getProperties().get(key);
+				if (value == null) {
+					// a missing property can never match an equality filter
+					continue;
+				}
+				Collection<?> values = asStringValues(value);
+				if (values == null) {
+					other.add(i);
+					continue;
+				}
+				for (Object stringValue : values) {
+					List<Integer> positions = byValue.get(stringValue);
+					if (positions == null) {
+						positions = new ArrayList<>(1);
+						byValue.put((String) stringValue, positions);
+					}
+					if (positions.isEmpty() || positions.get(positions.size() - 1) != i) {
+						positions.add(i);
+					}
+				}
+			}
+			this.positionsByValue = new HashMap<>(byValue.size());
+			for (Map.Entry<String, List<Integer>> entry : byValue.entrySet()) {
+				positionsByValue.put(entry.getKey(), toArray(entry.getValue()));
+			}
+			this.unindexed = toArray(other);
+		}
+
+		List<ServiceRegistrationImpl<?>> getCandidates(ServiceRegistrationImpl<?>[] registrations, String value) {
+			int[] positions = positionsByValue.get(value);
+			if (positions == null) {
+				positions = NO_POSITIONS;
+			}
+			if (positions.length + unindexed.length == 0) {
+				return Collections.emptyList();
+			}
+			// merge the two sorted position arrays to keep the order of the list
+			List<ServiceRegistrationImpl<?>> result = new ArrayList<>(positions.length + unindexed.length);
+			int p = 0, u = 0;
+			while (p < positions.length || u < unindexed.length) {
+				if (u == unindexed.length || (p < positions.length && positions[p] < unindexed[u])) {
+					result.add(registrations[positions[p++]]);
+				} else {
+					result.add(registrations[unindexed[u++]]);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the values of the specified property value if the property value
+		 * is a String or an array or collection containing only Strings.
+		 */
+		private static Collection<?> asStringValues(Object value) {
+			if (value instanceof String) {
+				return Collections.singletonList(value);
+			}
+			Collection<?> values;
+			if (value instanceof Object[]) {
+				values = Arrays.asList((Object[]) value);
+			} else if (value instanceof Collection) {
+				values = (Collection<?>) value;
+			} else {
+				return null;
+			}
+			for (Object element : values) {
+				if (!(element instanceof String)) {
+					return null;
+				}
+			}
+			return values;
+		}
+
+		private static int[] toArray(List<Integer> positions) {
+			if (positions.isEmpty()) {
+				return NO_POSITIONS;
+			}
+			int[] result = new int[positions.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = positions.get(i);
+			}
+			return result;
+		}
+	}
+}
@@ -22,12 +22,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.osgi.container.Module;
 import org.eclipse.osgi.container.ModuleRevision;
 import org.eclipse.osgi.framework.eventmgr.CopyOnWriteIdentityMap;
@@ -35,9 +42,12 @@ import org.eclipse.osgi.framework.eventmgr.EventDispatcher;
 import org.eclipse.osgi.framework.eventmgr.ListenerQueue;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.BundleContextImpl;
+import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.framework.EquinoxContainer;
+import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.util.ManifestElement;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -71,19 +81,18 @@ public class ServiceRegistry {
 
 
 	/** Published services by class name.
-	 * The {@literal List<ServiceRegistrationImpl<?>>}s are both sorted
-	 * in the natural order of ServiceRegistrationImpl and also are sets in that
-	 * there must be no two entries in a List which are equal.
+	 * The {@link ServiceRegistrationList}s are immutable snapshots which are
+	 * replaced while holding the registry monitor. Readers do not lock.
 	 */
-	/* @GuardedBy("this") */
-	private final Map<String, List<ServiceRegistrationImpl<?>>> publishedServicesByClass;
+	/* @GuardedBy("this") for updates */
+	private final ConcurrentMap<String, ServiceRegistrationList> publishedServicesByClass;
 
 	/** All published services.
-	 * The List is both sorted in the natural order of ServiceRegistrationImpl and also is a
-	 * set in that there must be no two entries in the List which are equal.
+	 * The {@link ServiceRegistrationList} is an immutable snapshot which is
+	 * replaced while holding the registry monitor. Readers do not lock.
 	 */
-	/* @GuardedBy("this") */
-	private final List<ServiceRegistrationImpl<?>> allPublishedServices;
+	/* @GuardedBy("this") for updates */
+	private volatile ServiceRegistrationList allPublishedServices;
 
 	/** Published services by BundleContextImpl.
 	 * The {@literal List<ServiceRegistrationImpl<?>>}s are NOT sorted
@@ -103,6 +112,50 @@ public class ServiceRegistry {
 	/* @GuardedBy("serviceEventListeners") */
 	private final Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> serviceEventListeners;
 
+	/** Active Service Listeners with a filter requiring an objectClass, indexed by that objectClass.
+	 * {@literal Map<String,Map<BundleContextImpl,CopyOnWriteIdentityMap<ServiceListener,FilteredServiceListener>>>}.
+	 */
+	/* @GuardedBy("serviceEventListeners") */
+	private final Map<String, Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>>> serviceEventListenersByClass;
+
+	/** Active Service Listeners which cannot be indexed by objectClass.
+	 * {@literal Map<BundleContextImpl,CopyOnWriteIdentityMap<ServiceListener,FilteredServiceListener>>}.
+	 */
+	/* @GuardedBy("serviceEventListeners") */
+	private final Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> unindexedServiceEventListeners;
+
+	/** Delivers batches of REGISTERED service events or null if all service events are delivered synchronously. */
+	private final ThreadPoolExecutor serviceEventDispatcher;
+
+	/** Service events waiting for asynchronous delivery or null if no batch is scheduled. */
+	/* @GuardedBy("serviceEventBatchMonitor") */
+	private List<PendingServiceEvent> serviceEventBatch;
+	private final Object serviceEventBatchMonitor = new Object();
+
+	/** Lower case service property keys which are used to index published services.
+	 * Contains the configured keys and the keys learned from lookups.
+	 */
+	private final Set<String> indexedKeys;
+
+	/** Number of lookups which could have used an index for a property key which is not yet indexed. */
+	private final ConcurrentMap<String, AtomicInteger> unindexedKeyLookups;
+
+	/** Number of property keys which have been learned from lookups. */
+	private final AtomicInteger learnedKeys = new AtomicInteger();
+
+	/** Number of lookups after which a property key is indexed; 0 disables learning */
+	private final int indexHotThreshold;
+
+	/** default property keys to index published services */
+	private static final String defaultIndexKeys = Constants.SERVICE_PID + ',' + "component.name"; //$NON-NLS-1$
+	/** default number of lookups after which a property key is indexed */
+	private static final int defaultIndexHotThreshold = 100;
+	/** maximum number of property keys which are learned from lookups */
+	private static final int maxLearnedKeys = 16;
+	/** maximum number of property keys whose lookups are counted at the same time */
+	private static final int maxCountedKeys = 64;
+	/** minimum number of registrations for a class before an index is used */
+	private static final int indexMinimumSize = 16;
 	/** initial capacity of the main data structure */
 	private static final int initialCapacity = 50;
 	/** initial capacity of the nested data structure */
@@ -120,15 +173,49 @@ public class ServiceRegistry {
 		this.container = container;
 		this.debug = container.getConfiguration().getDebug();
 		serviceid = 1;
-		publishedServicesByClass = new HashMap<>(initialCapacity);
+		publishedServicesByClass = new ConcurrentHashMap<>(initialCapacity);
 		publishedServicesByContext = new HashMap<>(initialCapacity);
-		allPublishedServices = new ArrayList<>(initialCapacity);
+		allPublishedServices = ServiceRegistrationList.EMPTY;
 		serviceEventListeners = new LinkedHashMap<>(initialCapacity);
+		serviceEventListenersByClass = new HashMap<>(initialCapacity);
+		unindexedServiceEventListeners = new LinkedHashMap<>(initialCapacity);
+		EquinoxConfiguration configuration = container.getConfiguration();
+		indexedKeys = ConcurrentHashMap.newKeySet();
+		String[] keys = ManifestElement.getArrayFromList(configuration.getConfiguration(EquinoxConfiguration.PROP_SERVICE_INDEX_KEYS, defaultIndexKeys), ","); //$NON-NLS-1$
+		for (String key : keys) {
+			indexedKeys.add(key.toLowerCase());
+		}
+		unindexedKeyLookups = new ConcurrentHashMap<>();
+		indexHotThreshold = getIndexHotThreshold(configuration);
+		if (Boolean.parseBoolean(configuration.getConfiguration(EquinoxConfiguration.PROP_SERVICE_EVENT_ASYNC))) {
+			final String threadName = "Equinox Service Event Dispatcher - " + container.toString(); //$NON-NLS-1$
+			ThreadFactory threadFactory = r -> {
+				Thread t = new Thread(r, threadName);
+				t.setDaemon(true);
+				return t;
+			};
+			// a single thread delivers the batches in the order they are scheduled
+			serviceEventDispatcher = new ThreadPoolExecutor(0, 1, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+		} else {
+			serviceEventDispatcher = null;
+		}
 		Module systemModule = container.getStorage().getModuleContainer().getModule(0);
 		systemBundleContext = (BundleContextImpl) systemModule.getBundle().getBundleContext();
 		systemBundleContext.provisionServicesInUseMap();
 	}
 
+	private static int getIndexHotThreshold(EquinoxConfiguration configuration) {
+		int propValue = defaultIndexHotThreshold;
+		try {
+			String prop = configuration.getConfiguration(EquinoxConfiguration.PROP_SERVICE_INDEX_HOT_THRESHOLD);
+			if (prop != null)
+				propValue = Math.max(0, Integer.parseInt(prop));
+		} catch (NumberFormatException e) {
+			// use default
+		}
+		return propValue;
+	}
+
 	/**
 	 * Registers the specified service object with the specified properties
 	 * under the specified class names into the Framework. A
@@ -791,6 +878,10 @@ public class ServiceRegistry {
 				serviceEventListeners.put(context, listeners);
 			}
 			oldFilteredListener = listeners.put(listener, filteredListener);
+			if (oldFilteredListener != null) {
+				removeListenerIndex(context, listener, oldFilteredListener);
+			}
+			addListenerIndex(context, listener, filteredListener);
 		}
 
 		if (oldFilteredListener != null) {
@@ -822,6 +913,9 @@ public class ServiceRegistry {
 				return; // this context has no listeners to begin with
 			}
 			oldFilteredListener = listeners.remove(listener);
+			if (oldFilteredListener != null) {
+				removeListenerIndex(context, listener, oldFilteredListener);
+			}
 		}
 
 		if (oldFilteredListener == null) {
@@ -841,6 +935,11 @@ public class ServiceRegistry {
 		Map<ServiceListener, FilteredServiceListener> removedListenersMap;
 		synchronized (serviceEventListeners) {
 			removedListenersMap = serviceEventListeners.remove(context);
+			if (removedListenersMap != null) {
+				for (Map.Entry<ServiceListener, FilteredServiceListener> entry : removedListenersMap.entrySet()) {
+					removeListenerIndex(context, entry.getKey(), entry.getValue());
+				}
+			}
 		}
 		if ((removedListenersMap == null) || removedListenersMap.isEmpty()) {
 			return;
@@ -852,6 +951,76 @@ public class ServiceRegistry {
 		notifyListenerHooks(asListenerInfos(removedListeners), false);
 	}
 
+	/**
+	 * Add a listener to the listener index. The caller must hold the
+	 * serviceEventListeners lock.
+	 *
+	 * @param context Context of bundle which added the listener.
+	 * @param listener The service listener.
+	 * @param filteredListener The filtered listener to index.
+	 */
+	private void addListenerIndex(BundleContextImpl context, ServiceListener listener, FilteredServiceListener filteredListener) {
+		Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> index = unindexedServiceEventListeners;
+		String objectClass = filteredListener.getObjectClass();
+		if (objectClass != null) {
+			index = serviceEventListenersByClass.get(objectClass);
+			if (index == null) {
+				index = new LinkedHashMap<>(4);
+				serviceEventListenersByClass.put(objectClass, index);
+			}
+		}
+		CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener> listeners = index.get(context);
+		if (listeners == null) {
+			listeners = new CopyOnWriteIdentityMap<>();
+			index.put(context, listeners);
+		}
+		listeners.put(listener, filteredListener);
+	}
+
+	/**
+	 * Remove a listener from the listener index. The caller must hold the
+	 * serviceEventListeners lock.
+	 *
+	 * @param context Context of bundle which added the listener.
+	 * @param listener The service listener.
+	 * @param filteredListener The filtered listener to remove.
+	 */
+	private void removeListenerIndex(BundleContextImpl context, ServiceListener listener, FilteredServiceListener filteredListener) {
+		String objectClass = filteredListener.getObjectClass();
+		Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> index = (objectClass == null) ? unindexedServiceEventListeners : serviceEventListenersByClass.get(objectClass);
+		if (index == null) {
+			return;
+		}
+		CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener> listeners = index.get(context);
+		if ((listeners == null) || (listeners.get(listener) != filteredListener)) {
+			return;
+		}
+		listeners.remove(listener);
+		if (listeners.isEmpty()) {
+			index.remove(context);
+			if (index.isEmpty() && (objectClass != null)) {
+				serviceEventListenersByClass.remove(objectClass);
+			}
+		}
+	}
+
+	/**
+	 * Count the listeners of a listener index per context.
+	 *
+	 * @param candidates The number of candidate listeners per context.
+	 * @param index The listener index.
+	 */
+	private static void countCandidates(Map<BundleContextImpl, Integer> candidates, Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> index) {
+		for (Map.Entry<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> entry : index.entrySet()) {
+			int size = entry.getValue().size();
+			if (size == 0) {
+				continue;
+			}
+			Integer existing = candidates.get(entry.getKey());
+			candidates.put(entry.getKey(), existing == null ? size : existing + size);
+		}
+	}
+
 	/**
 	 * Coerce the generic type of a collection from Collection<FilteredServiceListener>
 	 * to Collection<ListenerInfo>
@@ -888,16 +1057,41 @@ public class ServiceRegistry {
 		Set<Map.Entry<ServiceListener, FilteredServiceListener>> systemServiceListenersOrig = null;
 		BundleContextImpl systemContext = null;
 		synchronized (serviceEventListeners) {
-			listenerSnapshot = new LinkedHashMap<>(serviceEventListeners.size());
-			for (Map.Entry<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> entry : serviceEventListeners.entrySet()) {
-				Map<ServiceListener, FilteredServiceListener> listeners = entry.getValue();
-				if (!listeners.isEmpty()) {
+			// only listeners which do not require an objectClass or require one of the classes of the service can match the event
+			ServiceReferenceImpl<?> reference = (ServiceReferenceImpl<?>) event.getServiceReference();
+			Map<BundleContextImpl, Integer> candidates = new HashMap<>();
+			countCandidates(candidates, unindexedServiceEventListeners);
+			for (String clazz : reference.getClasses()) {
+				Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> index = serviceEventListenersByClass.get(clazz);
+				if (index != null) {
+					countCandidates(candidates, index);
+				}
+			}
+			// keep the contexts and their listeners in the order the listeners were added
+			listenerSnapshot = new LinkedHashMap<>(candidates.size());
+			if (!candidates.isEmpty()) {
+				for (Map.Entry<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> entry : serviceEventListeners.entrySet()) {
+					Integer count = candidates.get(entry.getKey());
+					if (count == null) {
+						continue;
+					}
+					CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener> listeners = entry.getValue();
+					Set<Map.Entry<ServiceListener, FilteredServiceListener>> contextListeners = listeners.entrySet();
+					if (count < listeners.size()) {
+						Set<Map.Entry<ServiceListener, FilteredServiceListener>> interested = new LinkedHashSet<>();
+						for (Map.Entry<ServiceListener, FilteredServiceListener> listener : contextListeners) {
+							if (listener.getValue().isInterested(reference)) {
+								interested.add(listener);
+							}
+						}
+						contextListeners = interested;
+					}
 					if (entry.getKey().getBundleImpl().getBundleId() == 0) {
 						systemContext = entry.getKey();
 						// make a copy that we can use to discard hook removals later
-						systemServiceListenersOrig = listeners.entrySet();
+						systemServiceListenersOrig = new LinkedHashSet<>(contextListeners);
 					}
-					listenerSnapshot.put(entry.getKey(), listeners.entrySet());
+					listenerSnapshot.put(entry.getKey(), contextListeners);
 				}
 			}
 		}
@@ -925,7 +1119,16 @@ public class ServiceRegistry {
 			return;
 		}
 
+		if ((serviceEventDispatcher != null) && (event.getType() == ServiceEvent.REGISTERED)) {
+			queueServiceEvent(event, listenerSnapshot);
+			return;
+		}
+
 		/* deliver the event to the snapshot */
+		deliverServiceEvent(event, listenerSnapshot);
+	}
+
+	private void deliverServiceEvent(ServiceEvent event, Map<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>> listenerSnapshot) {
 		ListenerQueue<ServiceListener, FilteredServiceListener, ServiceEvent> queue = container.newListenerQueue();
 		for (Map.Entry<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>> entry : listenerSnapshot.entrySet()) {
 			@SuppressWarnings({"unchecked", "rawtypes"})
@@ -936,6 +1139,217 @@ public class ServiceRegistry {
 		queue.dispatchEventSynchronous(SERVICEEVENT, event);
 	}
 
+	/**
+	 * Add a REGISTERED service event and its listener snapshot to the current
+	 * batch of service events. If no batch is scheduled yet, a new batch is
+	 * scheduled for delivery on the service event dispatcher thread. The hooks
+	 * have already been called for the event on the publishing thread.
+	 * <p>
+	 * Only REGISTERED events are delivered asynchronously. UNREGISTERING events
+	 * must be delivered before {@link ServiceRegistration#unregister()} returns,
+	 * and MODIFIED events must be matched against the properties the service
+	 * had when the event was published.
+	 *
+	 * @param event The service event to deliver.
+	 * @param listenerSnapshot The listeners to deliver the event to.
+	 */
+	private void queueServiceEvent(ServiceEvent event, Map<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>> listenerSnapshot) {
+		PendingServiceEvent pending = new PendingServiceEvent(event, listenerSnapshot);
+		if (!pending.deliveries.isEmpty()) {
+			pending.registration.pendingEvent = pending;
+		}
+		boolean schedule;
+		synchronized (serviceEventBatchMonitor) {
+			schedule = serviceEventBatch == null;
+			if (schedule) {
+				serviceEventBatch = new ArrayList<>();
+			}
+			serviceEventBatch.add(pending);
+		}
+		if (schedule) {
+			try {
+				serviceEventDispatcher.execute(this::deliverServiceEventBatch);
+			} catch (RejectedExecutionException e) {
+				// the registry is closed; deliver on the publishing thread
+				deliverServiceEventBatch();
+			}
+		}
+	}
+
+	/**
+	 * Deliver the current batch of service events. The events are coalesced
+	 * per listener such that each listener receives all of its events of the
+	 * batch in the order they were published. Listeners which cannot be
+	 * interested in the class of an event, and listeners which have been
+	 * removed, do not receive the event. Events which have already been
+	 * delivered by the thread that registered the service are skipped.
+	 */
+	void deliverServiceEventBatch() {
+		List<PendingServiceEvent> batch;
+		synchronized (serviceEventBatchMonitor) {
+			batch = serviceEventBatch;
+			serviceEventBatch = null;
+		}
+		if (batch == null) {
+			return;
+		}
+		Map<FilteredServiceListener, List<ServiceEventDelivery>> deliveriesByListener = new LinkedHashMap<>();
+		for (PendingServiceEvent pending : batch) {
+			for (ServiceEventDelivery delivery : pending.deliveries) {
+				List<ServiceEventDelivery> deliveries = deliveriesByListener.get(delivery.filteredListener);
+				if (deliveries == null) {
+					deliveries = new ArrayList<>(2);
+					deliveriesByListener.put(delivery.filteredListener, deliveries);
+				}
+				deliveries.add(delivery);
+			}
+		}
+		for (List<ServiceEventDelivery> deliveries : deliveriesByListener.values()) {
+			for (ServiceEventDelivery delivery : deliveries) {
+				if (delivery.claim()) {
+					delivery.deliver();
+				} else {
+					// keep the order of the listener's events while a publisher delivers one of them
+					delivery.awaitDelivered();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deliver the REGISTERED event of a service which is still waiting for
+	 * asynchronous delivery. The event is delivered on the calling thread to
+	 * the listeners the dispatcher has not yet delivered it to. If the
+	 * dispatcher is delivering the event to a listener, the calling thread
+	 * waits for that listener only; the listeners of other services are never
+	 * waited for. This is used to make sure listeners receive the REGISTERED
+	 * event of a service before any later event of the service.
+	 *
+	 * @param registration The registration to deliver the pending event of.
+	 */
+	void deliverPendingServiceEvents(ServiceRegistrationImpl<?> registration) {
+		PendingServiceEvent pending = registration.pendingEvent;
+		if (pending == null) {
+			return;
+		}
+		for (ServiceEventDelivery delivery : pending.deliveries) {
+			if (delivery.claim()) {
+				delivery.deliver();
+			}
+		}
+		for (ServiceEventDelivery delivery : pending.deliveries) {
+			delivery.awaitDelivered();
+		}
+	}
+
+	/**
+	 * Deliver any pending service events and stop the service event
+	 * dispatcher. Events published after the registry is closed are
+	 * delivered on the publishing thread.
+	 */
+	public void close() {
+		if (serviceEventDispatcher == null) {
+			return;
+		}
+		serviceEventDispatcher.shutdown();
+		deliverServiceEventBatch();
+	}
+
+	/**
+	 * A service event waiting for asynchronous delivery.
+	 */
+	static final class PendingServiceEvent {
+		final ServiceEvent event;
+		final ServiceRegistrationImpl<?> registration;
+		final List<ServiceEventDelivery> deliveries = new ArrayList<>();
+		private final AtomicInteger undelivered;
+
+		PendingServiceEvent(ServiceEvent event, Map<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>> listenerSnapshot) {
+			this.event = event;
+			this.registration = ((ServiceReferenceImpl<?>) event.getServiceReference()).getRegistration();
+			for (Map.Entry<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>> entry : listenerSnapshot.entrySet()) {
+				for (Map.Entry<ServiceListener, FilteredServiceListener> listener : entry.getValue()) {
+					deliveries.add(new ServiceEventDelivery(this, entry.getKey(), listener.getKey(), listener.getValue()));
+				}
+			}
+			this.undelivered = new AtomicInteger(deliveries.size());
+		}
+
+		void delivered() {
+			if (undelivered.decrementAndGet() == 0 && registration.pendingEvent == this) {
+				// the event no longer needs to be delivered before later events of the service
+				registration.pendingEvent = null;
+			}
+		}
+	}
+
+	/**
+	 * The delivery of a pending service event to a single listener. The delivery
+	 * is claimed by the thread which delivers it, either the dispatcher or the
+	 * thread which publishes a later event of the same service.
+	 */
+	private static final class ServiceEventDelivery {
+		private final PendingServiceEvent pending;
+		private final BundleContextImpl context;
+		private final ServiceListener listener;
+		final FilteredServiceListener filteredListener;
+		/* @GuardedBy("this") */
+		private Thread deliveringThread;
+		/* @GuardedBy("this") */
+		private boolean delivered;
+
+		ServiceEventDelivery(PendingServiceEvent pending, BundleContextImpl context, ServiceListener listener, FilteredServiceListener filteredListener) {
+			this.pending = pending;
+			this.context = context;
+			this.listener = listener;
+			this.filteredListener = filteredListener;
+		}
+
+		synchronized boolean claim() {
+			if (delivered || (deliveringThread != null)) {
+				return false;
+			}
+			deliveringThread = Thread.currentThread();
+			return true;
+		}
+
+		void deliver() {
+			try {
+				if (!filteredListener.isRemoved() && filteredListener.isInterested((ServiceReferenceImpl<?>) pending.event.getServiceReference())) {
+					context.dispatchEvent(listener, filteredListener, SERVICEEVENT, pending.event);
+				}
+			} finally {
+				synchronized (this) {
+					delivered = true;
+					deliveringThread = null;
+					notifyAll();
+				}
+				pending.delivered();
+			}
+		}
+
+		/**
+		 * Wait until another thread has delivered the event to the listener.
+		 * Interrupts do not end the wait, otherwise the listener could receive
+		 * later events of the service first; the interrupt status is kept.
+		 */
+		void awaitDelivered() {
+			boolean interrupted = false;
+			synchronized (this) {
+				while (!delivered && (deliveringThread != null) && (deliveringThread != Thread.currentThread())) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	/**
 	 * Coerce the generic type of a collection from Collection<BundleContextImpl>
 	 * to Collection<BundleContext>
@@ -977,24 +1391,17 @@ public class ServiceRegistry {
 		contextServices.add(registration);
 
 		// Add the ServiceRegistrationImpl to the list of Services published by Class Name.
-		int insertIndex;
+		// Only the lists for the classes of the registration are replaced.
 		for (String clazz : registration.getClasses()) {
-			List<ServiceRegistrationImpl<?>> services = publishedServicesByClass.get(clazz);
-
+			ServiceRegistrationList services = publishedServicesByClass.get(clazz);
 			if (services == null) {
-				services = new ArrayList<>(initialSubCapacity);
-				publishedServicesByClass.put(clazz, services);
+				services = ServiceRegistrationList.EMPTY;
 			}
-
-			// The list is sorted, so we must find the proper location to insert
-			insertIndex = -Collections.binarySearch(services, registration) - 1;
-			services.add(insertIndex, registration);
+			publishedServicesByClass.put(clazz, services.insert(registration));
 		}
 
 		// Add the ServiceRegistrationImpl to the list of all published Services.
-		// The list is sorted, so we must find the proper location to insert
-		insertIndex = -Collections.binarySearch(allPublishedServices, registration) - 1;
-		allPublishedServices.add(insertIndex, registration);
+		allPublishedServices = allPublishedServices.insert(registration);
 	}
 
 	/**
@@ -1010,27 +1417,15 @@ public class ServiceRegistry {
 		// The list of Services published by BundleContextImpl is not sorted, so
 		// we do not need to modify it.
 
-		// If the insert location has changed
-		if (registration.compareTo(previousRanking, registration.getId()) != 0) {
-			// Remove the ServiceRegistrationImpl from the list of Services published by
-			// Class Name
-			// and then add at the correct index.
-			int insertIndex;
-			for (String clazz : registration.getClasses()) {
-				List<ServiceRegistrationImpl<?>> services = publishedServicesByClass.get(clazz);
-				services.remove(registration);
-				// The list is sorted, so we must find the proper location to insert
-				insertIndex = -1 - Collections.binarySearch(services, registration);
-				services.add(insertIndex, registration);
-			}
-
-			// Remove the ServiceRegistrationImpl from the list of all published Services
-			// and then add at the correct index.
-			allPublishedServices.remove(registration);
-			// The list is sorted, so we must find the proper location to insert
-			insertIndex = -1 - Collections.binarySearch(allPublishedServices, registration);
-			allPublishedServices.add(insertIndex, registration);
+		// The lists are always replaced to discard the property indexes.
+		// If the insert location has changed the new lists also
+		// have the ServiceRegistrationImpl at the correct index.
+		boolean reorder = registration.compareTo(previousRanking, registration.getId()) != 0;
+		for (String clazz : registration.getClasses()) {
+			ServiceRegistrationList services = publishedServicesByClass.get(clazz);
+			publishedServicesByClass.put(clazz, reorder ? services.reorder(registration) : services.copy());
 		}
+		allPublishedServices = reorder ? allPublishedServices.reorder(registration) : allPublishedServices.copy();
 	}
 
 	/**
@@ -1050,15 +1445,16 @@ public class ServiceRegistry {
 
 		// Remove the ServiceRegistrationImpl from the list of Services published by Class Name.
 		for (String clazz : registration.getClasses()) {
-			List<ServiceRegistrationImpl<?>> services = publishedServicesByClass.get(clazz);
-			services.remove(registration);
+			ServiceRegistrationList services = publishedServicesByClass.get(clazz).delete(registration);
 			if (services.isEmpty()) { // remove empty list
 				publishedServicesByClass.remove(clazz);
+			} else {
+				publishedServicesByClass.put(clazz, services);
 			}
 		}
 
 		// Remove the ServiceRegistrationImpl from the list of all published Services.
-		allPublishedServices.remove(registration);
+		allPublishedServices = allPublishedServices.delete(registration);
 	}
 
 	/**
@@ -1070,42 +1466,93 @@ public class ServiceRegistry {
 	 * @return List<ServiceRegistrationImpl>
 	 */
 	private List<ServiceRegistrationImpl<?>> lookupServiceRegistrations(String clazz, Filter filter) {
-		List<ServiceRegistrationImpl<?>> result;
-		synchronized (this) {
-			if (clazz == null) { /* all services */
-				result = allPublishedServices;
-			} else {
-				/* services registered under the class name */
-				result = publishedServicesByClass.get(clazz);
-			}
-
-			if ((result == null) || result.isEmpty()) {
-				return Collections.emptyList();
-			}
+		/* the lists are immutable snapshots so no lock or copy is needed */
+		List<ServiceRegistrationImpl<?>> snapshot;
+		if (clazz == null) { /* all services */
+			snapshot = allPublishedServices;
+		} else {
+			/* services registered under the class name */
+			snapshot = publishedServicesByClass.get(clazz);
+		}
 
-			result = new LinkedList<>(result); /* make a new list since we don't want to change the real list */
+		if ((snapshot == null) || snapshot.isEmpty()) {
+			return Collections.emptyList();
 		}
 
 		if (filter == null) {
-			return result;
+			return snapshot;
 		}
 
-		for (Iterator<ServiceRegistrationImpl<?>> iter = result.iterator(); iter.hasNext();) {
-			ServiceRegistrationImpl<?> registration = iter.next();
+		List<ServiceRegistrationImpl<?>> candidates = snapshot;
+		if ((snapshot.size() >= indexMinimumSize) && (filter instanceof FilterImpl)) {
+			candidates = lookupIndexedCandidates((ServiceRegistrationList) snapshot, (FilterImpl) filter);
+		}
+		List<ServiceRegistrationImpl<?>> result = new ArrayList<>(candidates.size());
+		for (ServiceRegistrationImpl<?> registration : candidates) {
 			ServiceReferenceImpl<?> reference;
 			try {
 				reference = registration.getReferenceImpl();
 			} catch (IllegalStateException e) {
-				iter.remove(); /* service was unregistered after we left the synchronized block above */
-				continue;
+				continue; /* service was unregistered after the snapshot was taken */
 			}
-			if (!filter.match(reference)) {
-				iter.remove();
+			if (filter.match(reference)) {
+				result.add(registration);
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Use a property index to find the candidate registrations which may match
+	 * the filter. The filter must require an equality match for an indexed key.
+	 * If no indexed key can be used the equality keys of the filter are
+	 * counted and keys which are used often enough become indexed, up to a
+	 * limited number of learned keys.
+	 *
+	 * @param services The registrations to search.
+	 * @param filter The filter criteria.
+	 * @return The registrations which may match the filter.
+	 */
+	private List<ServiceRegistrationImpl<?>> lookupIndexedCandidates(ServiceRegistrationList services, FilterImpl filter) {
+		for (String key : indexedKeys) {
+			String value = filter.getPrimaryKeyValue(key);
+			if (value != null) {
+				return services.getCandidates(key, value);
+			}
+		}
+		if (indexHotThreshold > 0 && learnedKeys.get() < maxLearnedKeys) {
+			for (String attr : filter.getAttributes()) {
+				if (Constants.OBJECTCLASS.equalsIgnoreCase(attr) || filter.getPrimaryKeyValue(attr) == null) {
+					continue;
+				}
+				String key = attr.toLowerCase();
+				AtomicInteger count = unindexedKeyLookups.get(key);
+				if (count == null) {
+					if (unindexedKeyLookups.size() >= maxCountedKeys) {
+						/* too many rarely used keys; start counting again */
+						unindexedKeyLookups.clear();
+					}
+					count = unindexedKeyLookups.computeIfAbsent(key, k -> new AtomicInteger());
+				}
+				if (count.incrementAndGet() == indexHotThreshold) {
+					unindexedKeyLookups.remove(key);
+					if (learnedKeys.incrementAndGet() <= maxLearnedKeys) {
+						if (debug.DEBUG_SERVICES) {
+							Debug.println("Indexing services by property: " + key); //$NON-NLS-1$
+						}
+						indexedKeys.add(key);
+					}
+					if (learnedKeys.get() >= maxLearnedKeys) {
+						/* no more keys are learned */
+						unindexedKeyLookups.clear();
+						break;
+					}
+				}
+			}
+		}
+		return services;
+	}
+
 	/**
 	 * Lookup Service Registrations in the data structure by BundleContext.
 	 *
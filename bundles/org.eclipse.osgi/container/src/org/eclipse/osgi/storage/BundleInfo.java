@@ -84,6 +84,8 @@ public final class BundleInfo {
 		private long lastModified;
 		private boolean isMRJar;
 		private Type contentType;
+		// true if this generation is in the framework info or the journal
+		private volatile boolean persisted;
 
 		Generation(long generationId) {
 			this.generationId = generationId;
@@ -99,6 +101,7 @@ public final class BundleInfo {
 			this.cachedHeaders = new CachedManifest(this, cached);
 			this.lastModified = lastModified;
 			this.isMRJar = isMRJar;
+			this.persisted = true;
 		}
 
 		public BundleFile getBundleFile() {
@@ -400,6 +403,14 @@ public final class BundleInfo {
 			return BundleInfo.this;
 		}
 
+		boolean isPersisted() {
+			return persisted;
+		}
+
+		void setPersisted() {
+			persisted = true;
+		}
+
 		public void delete() {
 			List<StorageHook<?, ?>> hooks = getStorageHooks();
 			if (hooks != null) {
@@ -417,6 +428,10 @@ public final class BundleInfo {
 					}
 				}
 			}
+			EntryIndex entryIndex = getStorage().getEntryIndex();
+			if (entryIndex != null) {
+				entryIndex.remove(this);
+			}
 			getBundleInfo().delete(this);
 		}
 
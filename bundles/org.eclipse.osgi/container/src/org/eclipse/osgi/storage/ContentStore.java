@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.eclipse.osgi.internal.debug.Debug;
+
+/**
+ * A content addressed store of bundle content which may be shared by
+ * multiple frameworks. Each stored file is named by the SHA-256 hash of its
+ * content. The content file of a generation is replaced by a hard link to the
+ * stored file with the same content, so identical bundle content is stored
+ * on disk and cached in memory only once.
+ * <p>
+ * The content file of a generation always remains a complete file. If the
+ * file system does not support hard links, or the store is on another file
+ * system, the content file is left as is.
+ * <p>
+ * A stored file is not trusted by its name. Its bytes are compared with the
+ * content file before the content file is replaced, so a stored file with
+ * other content only prevents sharing. Because the content file becomes a
+ * link to the stored file, the store must only be writable by the users
+ * running the frameworks that share it.
+ */
+final class ContentStore {
+	private static final String HASH_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	private final File root;
+	private final Debug debug;
+
+	ContentStore(File root, Debug debug) {
+		this.root = root;
+		this.debug = debug;
+	}
+
+	/**
+	 * Shares the specified content file with the store. If the store already
+	 * has the same content then the content file is replaced by a link to the
+	 * stored file; otherwise the content file is added to the store. Errors are
+	 * ignored and leave the content file unchanged.
+	 * @param contentFile the content file of a generation
+	 */
+	void share(File contentFile) {
+		if (!contentFile.isFile()) {
+			return;
+		}
+		Path content = contentFile.toPath();
+		Path link = null;
+		try {
+			String hash = hash(content);
+			File dir = new File(root, hash.substring(0, 2));
+			if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+				throw new IOException("Unable to create directory: " + dir); //$NON-NLS-1$
+			}
+			Path stored = new File(dir, hash).toPath();
+			if (!Files.exists(stored)) {
+				try {
+					// add the content to the store
+					Files.createLink(stored, content);
+					return;
+				} catch (FileAlreadyExistsException e) {
+					// stored concurrently by another framework; link to it
+				}
+			}
+			if (Files.isSameFile(stored, content)) {
+				return;
+			}
+			// link to the stored content and replace the content file atomically
+			link = Files.createTempFile(content.getParent(), contentFile.getName(), ".tmp"); //$NON-NLS-1$
+			Files.delete(link);
+			Files.createLink(link, stored);
+			// verify the linked content rather than trusting the name of the stored file
+			if (!contentEquals(link, content)) {
+				if (debug.DEBUG_STORAGE) {
+					Debug.println("Stored bundle content does not match: " + stored); //$NON-NLS-1$
+				}
+				return;
+			}
+			Files.move(link, content, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			link = null;
+			if (debug.DEBUG_STORAGE) {
+				Debug.println("Shared bundle content: " + contentFile + " -> " + stored); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			if (debug.DEBUG_STORAGE) {
+				Debug.println("Unable to share bundle content: " + contentFile + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} finally {
+			if (link != null) {
+				try {
+					Files.deleteIfExists(link);
+				} catch (IOException e) {
+					// tried our best
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the stored files which are no longer linked by any generation.
+	 * This requires the file system to report the number of links of a file;
+	 * otherwise nothing is deleted.
+	 */
+	void clean() {
+		File[] dirs = root.listFiles();
+		if (dirs == null) {
+			return;
+		}
+		for (File dir : dirs) {
+			File[] files = dir.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				try {
+					Object links = Files.getAttribute(file.toPath(), "unix:nlink"); //$NON-NLS-1$
+					if (links instanceof Integer && ((Integer) links).intValue() == 1) {
+						Files.delete(file.toPath());
+					}
+				} catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+					// link counts are not available; keep the file
+					return;
+				}
+			}
+		}
+	}
+
+	private static boolean contentEquals(Path path1, Path path2) throws IOException {
+		if (Files.size(path1) != Files.size(path2)) {
+			return false;
+		}
+		byte[] buffer1 = new byte[8192];
+		byte[] buffer2 = new byte[8192];
+		try (InputStream in1 = Files.newInputStream(path1); InputStream in2 = Files.newInputStream(path2)) {
+			int read1;
+			while ((read1 = readFully(in1, buffer1)) > 0) {
+				if (readFully(in2, buffer2) != read1) {
+					return false;
+				}
+				for (int i = 0; i < read1; i++) {
+					if (buffer1[i] != buffer2[i]) {
+						return false;
+					}
+				}
+			}
+			return in2.read() == -1;
+		}
+	}
+
+	private static int readFully(InputStream in, byte[] buffer) throws IOException {
+		int total = 0;
+		int read;
+		while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+			total += read;
+		}
+		return total;
+	}
+
+	private static String hash(Path content) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(content)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.bundlefile.BundleFileIndex;
+
+/**
+ * A framework wide index of the entries of the archive content of installed
+ * bundles. For each bundle the index keeps the {@link BundleFileIndex} of the
+ * current generation. It also keeps an inverted index from each directory to
+ * the bundles which have entries in that directory. Class loaders use the
+ * inverted index to skip the bundles and attached fragments which have no
+ * entries in the directory of a resource, and entry searches use it to skip
+ * the generations which do not have the searched path.
+ * <p>
+ * The index is maintained when bundles are installed, updated and uninstalled,
+ * and is persisted in a single file of the storage area so that the index of
+ * each bundle file does not need to be read separately on restart. Each
+ * persisted bundle index records the generation and the length and last
+ * modified time of its content so that a stale index is never used.
+ */
+public final class EntryIndex {
+	private static final int VERSION = 1;
+
+	private final File indexFile;
+	private final Map<Long, Record> records = new ConcurrentHashMap<>();
+	private final Map<String, Set<Long>> directories = new ConcurrentHashMap<>();
+	private volatile boolean dirty;
+
+	private static final class Record {
+		final long generationId;
+		final File content;
+		final long length;
+		final long lastModified;
+		final BundleFileIndex index;
+		// persisted records are checked against the content once on first use
+		volatile boolean validated;
+
+		Record(long generationId, File content, long length, long lastModified, BundleFileIndex index, boolean validated) {
+			this.generationId = generationId;
+			this.content = content;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.index = index;
+			this.validated = validated;
+		}
+	}
+
+	EntryIndex(File indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Returns the index of the archive content of the specified generation.
+	 * @param generation the generation
+	 * @return the index or {@code null} if the generation is not indexed
+	 */
+	public BundleFileIndex getIndex(Generation generation) {
+		Record record = getRecord(generation);
+		return record == null ? null : record.index;
+	}
+
+	private Record getRecord(Generation generation) {
+		long bundleId = generation.getBundleInfo().getBundleId();
+		Record record = records.get(bundleId);
+		if (record == null || record.generationId != generation.getGenerationId()) {
+			return null;
+		}
+		if (!record.validated) {
+			if (!record.content.equals(generation.getContent()) || Storage.secureAction.length(record.content) != record.length || Storage.secureAction.lastModified(record.content) != record.lastModified) {
+				synchronized (this) {
+					if (records.remove(bundleId, record)) {
+						removeDirectories(bundleId, record);
+						dirty = true;
+					}
+				}
+				return null;
+			}
+			record.validated = true;
+		}
+		return record;
+	}
+
+	/**
+	 * Sets the index of the archive content of the specified generation. This
+	 * replaces the index of any previous generation of the same bundle.
+	 * @param generation the generation
+	 * @param index the index of the generation content
+	 */
+	public void putIndex(Generation generation, BundleFileIndex index) {
+		File content = generation.getContent();
+		if (content == null) {
+			return;
+		}
+		long bundleId = generation.getBundleInfo().getBundleId();
+		Record record = new Record(generation.getGenerationId(), content, Storage.secureAction.length(content), Storage.secureAction.lastModified(content), index, true);
+		synchronized (this) {
+			Record previous = records.put(bundleId, record);
+			if (previous != null) {
+				removeDirectories(bundleId, previous);
+			}
+			addDirectories(bundleId, record);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Removes the index of the specified generation if it is the indexed
+	 * generation of its bundle.
+	 * @param generation the generation
+	 */
+	public void remove(Generation generation) {
+		long bundleId = generation.getBundleInfo().getBundleId();
+		synchronized (this) {
+			Record record = records.get(bundleId);
+			if (record != null && record.generationId == generation.getGenerationId()) {
+				records.remove(bundleId);
+				removeDirectories(bundleId, record);
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the ids of the bundles whose indexed content has entries in the
+	 * specified directory. Bundles which are not indexed are never included.
+	 * @param directory the directory, may start with a slash and may omit the trailing slash
+	 * @return an unmodifiable set of bundle ids
+	 */
+	public Set<Long> getBundles(String directory) {
+		Set<Long> result = directories.get(normalize(directory));
+		return result == null ? Collections.emptySet() : Collections.unmodifiableSet(result);
+	}
+
+	private static String normalize(String directory) {
+		int start = directory.length() > 0 && directory.charAt(0) == '/' ? 1 : 0;
+		if (directory.length() > start && directory.charAt(directory.length() - 1) != '/') {
+			return directory.substring(start) + '/';
+		}
+		return directory.substring(start);
+	}
+
+	// must be called while synchronizing "this"
+	private void addDirectories(long bundleId, Record record) {
+		for (String directory : record.index.getDirectories()) {
+			directories.computeIfAbsent(directory, d -> ConcurrentHashMap.newKeySet()).add(bundleId);
+		}
+	}
+
+	// must be called while synchronizing "this"
+	private void removeDirectories(long bundleId, Record record) {
+		for (String directory : record.index.getDirectories()) {
+			Set<Long> bundles = directories.get(directory);
+			if (bundles != null) {
+				bundles.remove(bundleId);
+				if (bundles.isEmpty()) {
+					directories.remove(directory);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads the persisted index. Records for content which changed since the
+	 * index was persisted are discarded on first use.
+	 */
+	void load() {
+		if (!indexFile.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != VERSION) {
+				return;
+			}
+			int size = in.readInt();
+			synchronized (this) {
+				for (int i = 0; i < size; i++) {
+					long bundleId = in.readLong();
+					long generationId = in.readLong();
+					File content = new File(in.readUTF());
+					long length = in.readLong();
+					long lastModified = in.readLong();
+					BundleFileIndex index = BundleFileIndex.readFrom(in);
+					Record record = new Record(generationId, content, length, lastModified, index, false);
+					records.put(bundleId, record);
+					addDirectories(bundleId, record);
+				}
+			}
+		} catch (IOException e) {
+			// start with an empty index
+			synchronized (this) {
+				records.clear();
+				directories.clear();
+			}
+		}
+	}
+
+	/**
+	 * Persists the index if it changed since it was loaded or last saved.
+	 * The index is written to a temporary file first which is then renamed
+	 * to the index file.
+	 * @throws IOException if an error occurs writing the index
+	 */
+	void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		File parent = indexFile.getParentFile();
+		File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", parent); //$NON-NLS-1$
+		try {
+			synchronized (this) {
+				dirty = false;
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+					out.writeInt(VERSION);
+					out.writeInt(records.size());
+					for (Map.Entry<Long, Record> entry : records.entrySet()) {
+						Record record = entry.getValue();
+						out.writeLong(entry.getKey());
+						out.writeLong(record.generationId);
+						out.writeUTF(record.content.getAbsolutePath());
+						out.writeLong(record.length);
+						out.writeLong(record.lastModified);
+						record.index.writeTo(out);
+					}
+				} catch (IOException e) {
+					dirty = true;
+					throw e;
+				}
+			}
+			indexFile.delete();
+			if (!tmpFile.renameTo(indexFile)) {
+				dirty = true;
+				throw new IOException("Unable to rename: " + tmpFile); //$NON-NLS-1$
+			}
+		} finally {
+			tmpFile.delete();
+		}
+	}
+}
@@ -85,6 +85,7 @@ public class PermissionData {
 	public void setPermissionData(String location, String[] data) {
 		if (location == null) {
 			defaultInfos = data;
+			setDirty(true);
 			return;
 		}
 		synchronized (locations) {
@@ -21,8 +21,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
@@ -52,8 +54,15 @@ import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 import org.eclipse.core.runtime.adaptor.EclipseStarter;
 import org.eclipse.osgi.container.Module;
 import org.eclipse.osgi.container.ModuleCapability;
@@ -71,6 +80,7 @@ import org.eclipse.osgi.framework.util.FilePath;
 import org.eclipse.osgi.framework.util.ObjectPool;
 import org.eclipse.osgi.framework.util.SecureAction;
 import org.eclipse.osgi.internal.container.InternalUtils;
+import org.eclipse.osgi.internal.container.MetadataPool;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.framework.EquinoxContainer;
@@ -92,8 +102,10 @@ import org.eclipse.osgi.storage.bundlefile.BundleEntry;
 import org.eclipse.osgi.storage.bundlefile.BundleFile;
 import org.eclipse.osgi.storage.bundlefile.BundleFileWrapper;
 import org.eclipse.osgi.storage.bundlefile.BundleFileWrapperChain;
+import org.eclipse.osgi.storage.bundlefile.CloseableBundleFile;
 import org.eclipse.osgi.storage.bundlefile.DirBundleFile;
 import org.eclipse.osgi.storage.bundlefile.MRUBundleFileList;
+import org.eclipse.osgi.storage.bundlefile.MappedZipBundleFile;
 import org.eclipse.osgi.storage.bundlefile.NestedDirBundleFile;
 import org.eclipse.osgi.storage.bundlefile.ZipBundleFile;
 import org.eclipse.osgi.storage.url.reference.Handler;
@@ -148,6 +160,11 @@ public class Storage {
 	public static final String BUNDLE_DATA_DIR = "data"; //$NON-NLS-1$
 	public static final String BUNDLE_FILE_NAME = "bundleFile"; //$NON-NLS-1$
 	public static final String FRAMEWORK_INFO = "framework.info"; //$NON-NLS-1$
+	public static final String ENTRY_INDEX = "entry.index"; //$NON-NLS-1$
+	public static final String FRAMEWORK_JOURNAL = "framework.journal"; //$NON-NLS-1$
+	public static final String RESOLUTION_CACHE = "framework.resolution"; //$NON-NLS-1$
+	private static final int JOURNAL_VERSION = 2;
+	private static final int DEFAULT_JOURNAL_LIMIT = 1000;
 	public static final String ECLIPSE_SYSTEMBUNDLE = "Eclipse-SystemBundle"; //$NON-NLS-1$
 	public static final String DELETE_FLAG = ".delete"; //$NON-NLS-1$
 	public static final String LIB_TEMP = "libtemp"; //$NON-NLS-1$
@@ -171,10 +188,24 @@ public class Storage {
 	private final ModuleContainer moduleContainer;
 	private final Object saveMonitor = new Object();
 	private long lastSavedTimestamp = -1;
+	private final boolean journalEnabled;
+	private final int journalLimit;
+	private final boolean resolutionCacheEnabled;
+	// the timestamps of the persisted framework info the journal applies to
+	private long snapshotRevisionsTimestamp = -1;
+	private long snapshotTimestamp = -1;
+	// true if the journal file exists and applies to the persisted framework info
+	private boolean journalValid;
+	private int journalRecords;
+	private boolean childInfoLoaded;
 	private final MRUBundleFileList mruList;
 	private final FrameworkExtensionInstaller extensionInstaller;
 	private final List<String> cachedHeaderKeys = Arrays.asList(Constants.BUNDLE_SYMBOLICNAME, Constants.BUNDLE_ACTIVATIONPOLICY, "Service-Component"); //$NON-NLS-1$
 	private final boolean allowRestrictedProvides;
+	private final boolean bundleFileIndex;
+	private final boolean bundleFileMapped;
+	private final EntryIndex entryIndex;
+	private final ContentStore contentStore;
 	private final AtomicBoolean refreshMRBundles = new AtomicBoolean(false);
 	private final Version runtimeVersion;
 	private final String javaSpecVersion;
@@ -221,6 +252,12 @@ public class Storage {
 		equinoxContainer = container;
 		extensionInstaller = new FrameworkExtensionInstaller(container.getConfiguration());
 		allowRestrictedProvides = Boolean.parseBoolean(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_ALLOW_RESTRICTED_PROVIDES));
+		bundleFileIndex = Boolean.parseBoolean(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_BUNDLE_FILE_INDEX));
+		// signed content verification requires a ZipFile; fall back to ZipBundleFile in that case
+		bundleFileMapped = !container.getConfiguration().runtimeVerifySignedBundles && Boolean.parseBoolean(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_BUNDLE_FILE_MAPPED));
+		journalEnabled = Boolean.parseBoolean(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_STORAGE_JOURNAL));
+		journalLimit = getJournalLimit(container.getConfiguration());
+		resolutionCacheEnabled = Boolean.parseBoolean(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_RESOLVER_CACHE));
 
 		// we need to set the install path as soon as possible so we can determine
 		// the absolute location of install relative URLs
@@ -237,6 +274,11 @@ public class Storage {
 		}
 		this.osgiLocation = configLocation.createLocation(osgiParentLocation, configLocation.getDataArea(EquinoxContainer.NAME), configLocation.isReadOnly());
 		this.childRoot = new File(osgiLocation.getURL().getPath());
+		// the framework entry index holds the bundle file indexes so it requires them to be enabled
+		boolean useEntryIndex = bundleFileIndex && Boolean.parseBoolean(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_ENTRY_INDEX));
+		this.entryIndex = useEntryIndex ? new EntryIndex(new File(childRoot, ENTRY_INDEX)) : null;
+		String contentStoreRoot = container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_CONTENT_STORE);
+		this.contentStore = contentStoreRoot == null || contentStoreRoot.isEmpty() || osgiLocation.isReadOnly() ? null : new ContentStore(new File(contentStoreRoot).getAbsoluteFile(), container.getConfiguration().getDebug());
 
 		if (Boolean.valueOf(container.getConfiguration().getConfiguration(EquinoxConfiguration.PROP_CLEAN)).booleanValue()) {
 			cleanOSGiStorage(osgiLocation, childRoot);
@@ -265,6 +307,9 @@ public class Storage {
 				data = null;
 				cleanOSGiStorage(osgiLocation, childRoot);
 			}
+			if (entryIndex != null && !generations.isEmpty()) {
+				entryIndex.load();
+			}
 			this.permissionData = loadPermissionData(data);
 			this.securityAdmin = new SecurityAdmin(null, this.permissionData);
 			this.adaptor = new EquinoxContainerAdaptor(equinoxContainer, this, generations);
@@ -273,7 +318,14 @@ public class Storage {
 			if (data != null) {
 				try {
 					moduleDatabase.load(data);
+					if (childInfoLoaded) {
+						snapshotRevisionsTimestamp = moduleDatabase.getRevisionsTimestamp();
+						snapshotTimestamp = moduleDatabase.getTimestamp();
+						// always replay the journal, even if journaling is now disabled
+						loadJournal(generations);
+					}
 					lastSavedTimestamp = moduleDatabase.getTimestamp();
+					loadResolutionCache();
 				} catch (IllegalArgumentException e) {
 					equinoxContainer.getLogServices().log(EquinoxContainer.NAME, FrameworkLogEntry.WARNING, "Incompatible version.  Starting with empty framework.", e); //$NON-NLS-1$
 					// Clean up the cache.
@@ -302,6 +354,37 @@ public class Storage {
 		return mruList;
 	}
 
+	/**
+	 * Returns true if archive bundle files should maintain a
+	 * {@link org.eclipse.osgi.storage.bundlefile.BundleFileIndex directory index}.
+	 * @return true if bundle file indexes are enabled
+	 */
+	public boolean isBundleFileIndexEnabled() {
+		return bundleFileIndex;
+	}
+
+	/**
+	 * Returns the framework wide index of the entries of installed bundles.
+	 * @return the entry index or {@code null} if the entry index is not enabled
+	 */
+	public EntryIndex getEntryIndex() {
+		return entryIndex;
+	}
+
+	private void indexEntries(Generation generation) {
+		if (entryIndex == null) {
+			return;
+		}
+		BundleFile bundleFile = generation.getBundleFile();
+		if (bundleFile instanceof BundleFileWrapperChain) {
+			bundleFile = ((BundleFileWrapperChain) bundleFile).getWrappedType(CloseableBundleFile.class);
+		}
+		if (bundleFile instanceof CloseableBundleFile) {
+			// creating the bundle file index adds it to the entry index
+			((CloseableBundleFile<?>) bundleFile).getIndex();
+		}
+	}
+
 	private int getBundleFileLimit(EquinoxConfiguration configuration) {
 		int propValue = 100; // enable to 100 open files by default
 		try {
@@ -522,6 +605,9 @@ public class Storage {
 		}
 		mruList.shutdown();
 		adaptor.shutdownExecutors();
+		if (getConfiguration().getDebug().DEBUG_STORAGE) {
+			Debug.println(MetadataPool.getReport());
+		}
 	}
 
 	private boolean systemNeedsUpdate(File systemContent, ModuleRevision currentRevision, Generation existing, String extraCapabilities, String extraExports, String[] cachedInfo) throws BundleException {
@@ -680,83 +766,367 @@ public class Storage {
 		// before doing the staging and generation creation.
 		// This is important since some installers seem to continually
 		// re-install bundles using the same location each startup
-		Module existingLocation = moduleContainer.getModule(bundleLocation);
-		if (existingLocation != null) {
-			// NOTE this same logic is also in the ModuleContainer
-			// This is necessary because the container does the location locking.
-			// Another thread could win the location lock and install before this thread does.
+		Generation existing = getExistingGeneration(origin, bundleLocation, in);
+		if (existing != null) {
+			return existing;
+		}
+
+		PendingInstall pending = new PendingInstall(bundleLocation, sourceURL, in);
+		try {
+			prepareInstall(pending, -1);
+			return completeInstall(origin, pending);
+		} finally {
+			if (pending.generation != null) {
+				pending.generation.getBundleInfo().unlockGeneration(pending.generation);
+			}
+		}
+	}
+
+	/**
+	 * Installs multiple bundles. The content of the bundles is staged, copied into
+	 * the storage area, opened and parsed in parallel. Only the final installation
+	 * of each bundle into the module container is done serially, in the order of the
+	 * specified locations, so the bundle ids are assigned in that order.
+	 * <p>
+	 * The installation of one bundle failing does not prevent the installation of the
+	 * other bundles. The result for each location is either the installed generation
+	 * or the exception which caused the installation to fail.
+	 * <p>
+	 * The content of each bundle is opened by the thread preparing it and is closed
+	 * once it has been staged, so the number of open streams is bounded by the
+	 * number of install threads.  A bundle which was prepared but not installed,
+	 * for example because the installing thread got interrupted, is deleted
+	 * before this method returns.
+	 * @param origin the module performing the install
+	 * @param bundleLocations the locations of the bundles to install
+	 * @param contents the URL of the content to install for each location, or {@code null} to use the locations
+	 * @return the install results in the order of the specified locations
+	 * @throws BundleException if the framework storage area is read only
+	 */
+	public List<InstallResult> install(Module origin, List<String> bundleLocations, List<URL> contents) throws BundleException {
+		if (osgiLocation.isReadOnly()) {
+			throw new BundleException("The framework storage area is read only.", BundleException.INVALID_OPERATION); //$NON-NLS-1$
+		}
+		int size = bundleLocations.size();
+		List<InstallResult> results = new ArrayList<>(size);
+		List<PendingInstall> pendings = new ArrayList<>(size);
+		List<Future<?>> prepared = new ArrayList<>(size);
+		ExecutorService executor = createInstallExecutor(size);
+		try {
+			for (int i = 0; i < size; i++) {
+				String bundleLocation = bundleLocations.get(i);
+				URL contentURL = contents == null ? null : contents.get(i);
+				InstallResult result = new InstallResult(bundleLocation);
+				results.add(result);
+				pendings.add(null);
+				prepared.add(null);
+				try {
+					Generation existing = getExistingGeneration(origin, bundleLocation, null);
+					if (existing != null) {
+						result.generation = existing;
+						continue;
+					}
+					PendingInstall pending = new PendingInstall(bundleLocation, null, null);
+					// assign the ids in the order of the locations
+					long bundleId = moduleDatabase.getAndIncrementNextId();
+					pendings.set(i, pending);
+					prepared.set(i, executor.submit(() -> {
+						InputStream in = null;
+						try {
+							try {
+								in = contentURL == null ? null : LocationHelper.getStream(contentURL);
+								URLConnection content = getContentConnection(null, bundleLocation, in);
+								pending.sourceURL = content.getURL();
+								pending.in = content.getInputStream();
+							} catch (IOException e) {
+								throw new BundleException("Error reading bundle content.", e); //$NON-NLS-1$
+							}
+							prepareInstall(pending, bundleId);
+						} finally {
+							closeQuietly(pending.in);
+							closeQuietly(in);
+							if (pending.generation != null) {
+								// the generation of a new bundle is not visible to others yet;
+								// the lock must be released by the thread that created it
+								pending.generation.getBundleInfo().unlockGeneration(pending.generation);
+							}
+						}
+						return null;
+					}));
+				} catch (BundleException | SecurityException e) {
+					result.exception = asBundleException(e);
+				}
+			}
+			// complete the installs serially in order
+			for (int i = 0; i < size; i++) {
+				PendingInstall pending = pendings.get(i);
+				if (pending == null) {
+					continue;
+				}
+				InstallResult result = results.get(i);
+				try {
+					getPrepared(prepared.get(i));
+					// a completed install cleans up after itself if it fails
+					pendings.set(i, null);
+					result.generation = completeInstall(origin, pending);
+				} catch (BundleException | SecurityException e) {
+					result.exception = asBundleException(e);
+				}
+			}
+		} finally {
+			// stop preparing and wait for the bundles which are still being prepared
+			executor.shutdownNow();
+			awaitTermination(executor);
+			for (PendingInstall pending : pendings) {
+				if (pending != null && pending.builder != null) {
+					// prepared but never installed
+					discardInstall(pending);
+				}
+			}
+		}
+		return results;
+	}
+
+	private static void awaitTermination(ExecutorService executor) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+						return;
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static int getJournalLimit(EquinoxConfiguration configuration) {
+		String limitProp = configuration.getConfiguration(EquinoxConfiguration.PROP_STORAGE_JOURNAL_LIMIT);
+		try {
+			return limitProp == null ? DEFAULT_JOURNAL_LIMIT : Integer.parseInt(limitProp);
+		} catch (NumberFormatException e) {
+			return DEFAULT_JOURNAL_LIMIT;
+		}
+	}
+
+	private ExecutorService createInstallExecutor(int size) {
+		String threadCntProp = getConfiguration().getConfiguration(EquinoxConfiguration.PROP_EQUINOX_INSTALL_THREAD_COUNT);
+		int threadCnt;
+		try {
+			// Note that install thread count defaults to -1 (compute based on processor number)
+			threadCnt = threadCntProp == null ? -1 : Integer.parseInt(threadCntProp);
+		} catch (NumberFormatException e) {
+			threadCnt = -1;
+		}
+		int maxThreads = Math.max(1, Math.min(size, threadCnt <= 0 ? Runtime.getRuntime().availableProcessors() : threadCnt));
+		ThreadFactory threadFactory = r -> {
+			Thread t = new Thread(r, "Equinox install thread - " + Storage.this.toString()); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		};
+		return Executors.newFixedThreadPool(maxThreads, threadFactory);
+	}
+
+	private static void getPrepared(Future<?> prepared) throws BundleException {
+		try {
+			prepared.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BundleException("Interrupted while installing a bundle.", BundleException.STATECHANGE_ERROR, e); //$NON-NLS-1$
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof BundleException) {
+				throw (BundleException) cause;
+			}
+			if (cause instanceof SecurityException) {
+				throw (SecurityException) cause;
+			}
+			throw new BundleException("Error occurred installing a bundle.", cause); //$NON-NLS-1$
+		}
+	}
+
+	private static BundleException asBundleException(Exception e) {
+		if (e instanceof BundleException) {
+			return (BundleException) e;
+		}
+		return new BundleException(e.getMessage(), BundleException.SECURITY_ERROR, e);
+	}
+
+	private static void closeQuietly(InputStream in) {
+		if (in != null) {
 			try {
 				in.close();
 			} catch (IOException e) {
 				// ignore
 			}
-			if (origin != null) {
-				// Check that the existing location is visible from the origin module
-				Bundle bundle = origin.getBundle();
-				BundleContext context = bundle == null ? null : bundle.getBundleContext();
-				if (context != null && context.getBundle(existingLocation.getId()) == null) {
-					Bundle b = existingLocation.getBundle();
-					throw new BundleException(NLS.bind(Msg.ModuleContainer_NameCollisionWithLocation, new Object[] {b.getSymbolicName(), b.getVersion(), bundleLocation}), BundleException.REJECTED_BY_HOOK);
-				}
+		}
+	}
+
+	private Generation getExistingGeneration(Module origin, String bundleLocation, InputStream in) throws BundleException {
+		Module existingLocation = moduleContainer.getModule(bundleLocation);
+		if (existingLocation == null) {
+			return null;
+		}
+		// NOTE this same logic is also in the ModuleContainer
+		// This is necessary because the container does the location locking.
+		// Another thread could win the location lock and install before this thread does.
+		closeQuietly(in);
+		if (origin != null) {
+			// Check that the existing location is visible from the origin module
+			Bundle bundle = origin.getBundle();
+			BundleContext context = bundle == null ? null : bundle.getBundleContext();
+			if (context != null && context.getBundle(existingLocation.getId()) == null) {
+				Bundle b = existingLocation.getBundle();
+				throw new BundleException(NLS.bind(Msg.ModuleContainer_NameCollisionWithLocation, new Object[] {b.getSymbolicName(), b.getVersion(), bundleLocation}), BundleException.REJECTED_BY_HOOK);
 			}
-			return (Generation) existingLocation.getCurrentRevision().getRevisionInfo();
 		}
+		return (Generation) existingLocation.getCurrentRevision().getRevisionInfo();
+	}
 
-		ContentProvider contentProvider = getContentProvider(in, sourceURL);
-		Type contentType = contentProvider.getType();
-		File staged = contentProvider.getContent();
+	/**
+	 * The state of a bundle install between preparing the content and
+	 * installing the module into the container.
+	 */
+	private static final class PendingInstall {
+		final String bundleLocation;
+		URL sourceURL;
+		InputStream in;
+		Type contentType;
+		File staged;
+		Generation generation;
+		ModuleRevisionBuilder builder;
+
+		PendingInstall(String bundleLocation, URL sourceURL, InputStream in) {
+			this.bundleLocation = bundleLocation;
+			this.sourceURL = sourceURL;
+			this.in = in;
+		}
+	}
+
+	/**
+	 * Stages the content, creates the generation and builds the revision of a
+	 * bundle to install. This does not modify the module database and may be
+	 * called concurrently for different bundles. The created generation is locked.
+	 * A bundle id of -1 allocates the next id once the content is staged.
+	 */
+	private void prepareInstall(PendingInstall pending, long bundleId) throws BundleException {
+		ContentProvider contentProvider = getContentProvider(pending.in, pending.sourceURL);
+		pending.contentType = contentProvider.getType();
+		pending.staged = contentProvider.getContent();
 
-		Generation generation = null;
 		try {
-			Long nextID = moduleDatabase.getAndIncrementNextId();
-			BundleInfo info = new BundleInfo(this, nextID, bundleLocation, 0);
-			generation = info.createGeneration();
+			long nextID = bundleId == -1 ? moduleDatabase.getAndIncrementNextId() : bundleId;
+			BundleInfo info = new BundleInfo(this, nextID, pending.bundleLocation, 0);
+			pending.generation = info.createGeneration();
 
-			File contentFile = getContentFile(staged, contentType, nextID, generation.getGenerationId());
-			generation.setContent(contentFile, contentType);
+			File contentFile = getContentFile(pending.staged, pending.contentType, nextID, pending.generation.getGenerationId());
+			pending.generation.setContent(contentFile, pending.contentType);
 			// Check that we can open the bundle file
-			generation.getBundleFile().open();
-			setStorageHooks(generation);
+			pending.generation.getBundleFile().open();
+			indexEntries(pending.generation);
+			setStorageHooks(pending.generation);
 
-			ModuleRevisionBuilder builder = getBuilder(generation);
-			builder.setId(nextID);
+			pending.builder = getBuilder(pending.generation);
+			pending.builder.setId(nextID);
+		} catch (Throwable t) {
+			throw installFailed(pending, t);
+		}
+	}
 
-			Module m = moduleContainer.install(origin, bundleLocation, builder, generation);
-			if (!nextID.equals(m.getId())) {
+	/**
+	 * Installs the prepared revision of a bundle into the module container.
+	 */
+	private Generation completeInstall(Module origin, PendingInstall pending) throws BundleException {
+		Generation generation = pending.generation;
+		try {
+			Module m = moduleContainer.install(origin, pending.bundleLocation, pending.builder, generation);
+			if (pending.builder.getId() != m.getId()) {
 				// this revision is already installed. delete the generation
 				generation.delete();
 				return (Generation) m.getCurrentRevision().getRevisionInfo();
 			}
 			return generation;
 		} catch (Throwable t) {
-			if (contentType == Type.DEFAULT) {
-				try {
-					delete(staged);
-				} catch (IOException e) {
-					// tried our best
-				}
-			}
-			if (generation != null) {
-				generation.delete();
-				generation.getBundleInfo().delete();
-			}
-			if (t instanceof SecurityException) {
-				// TODO hack from ModuleContainer
-				// if the cause is a bundle exception then throw that
-				if (t.getCause() instanceof BundleException) {
-					throw (BundleException) t.getCause();
-				}
-				throw (SecurityException) t;
-			}
-			if (t instanceof BundleException) {
-				throw (BundleException) t;
+			throw installFailed(pending, t);
+		}
+	}
+
+	private BundleException installFailed(PendingInstall pending, Throwable t) {
+		discardInstall(pending);
+		if (t instanceof SecurityException) {
+			// TODO hack from ModuleContainer
+			// if the cause is a bundle exception then throw that
+			if (t.getCause() instanceof BundleException) {
+				return (BundleException) t.getCause();
 			}
-			throw new BundleException("Error occurred installing a bundle.", t); //$NON-NLS-1$
-		} finally {
-			if (generation != null) {
-				generation.getBundleInfo().unlockGeneration(generation);
+			throw (SecurityException) t;
+		}
+		if (t instanceof BundleException) {
+			return (BundleException) t;
+		}
+		return new BundleException("Error occurred installing a bundle.", t); //$NON-NLS-1$
+	}
+
+	/**
+	 * Deletes the staged content, the generation and the bundle info of a
+	 * bundle which did not get installed.
+	 */
+	private void discardInstall(PendingInstall pending) {
+		if (pending.contentType == Type.DEFAULT) {
+			try {
+				delete(pending.staged);
+			} catch (IOException e) {
+				// tried our best
 			}
 		}
+		if (pending.generation != null) {
+			pending.generation.delete();
+			pending.generation.getBundleInfo().delete();
+		}
+	}
+
+	/**
+	 * The result of installing one bundle with {@link Storage#install(Module, List, List)}.
+	 */
+	public static final class InstallResult {
+		private final String location;
+		Generation generation;
+		BundleException exception;
+
+		InstallResult(String location) {
+			this.location = location;
+		}
+
+		/**
+		 * Returns the location of the bundle
+		 * @return the location
+		 */
+		public String getLocation() {
+			return location;
+		}
+
+		/**
+		 * Returns the installed generation, or the generation of the bundle already
+		 * installed at the location.
+		 * @return the generation or {@code null} if the install failed
+		 */
+		public Generation getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * Returns the exception which caused the install to fail.
+		 * @return the exception or {@code null} if the install succeeded
+		 */
+		public BundleException getException() {
+			return exception;
+		}
 	}
 
 	ContentProvider getContentProvider(final InputStream in, final URL sourceURL) {
@@ -961,6 +1331,7 @@ public class Storage {
 			newGen.setContent(contentFile, contentType);
 			// Check that we can open the bundle file
 			newGen.getBundleFile().open();
+			indexEntries(newGen);
 			setStorageHooks(newGen);
 
 			ModuleRevisionBuilder builder = getBuilder(newGen);
@@ -1020,6 +1391,10 @@ public class Storage {
 				throw new BundleException("Error while renaming bundle file to final location: " + contentFile, //$NON-NLS-1$
 						BundleException.READ_ERROR, e);
 			}
+			if (contentStore != null) {
+				// replace identical content with a link to the shared copy
+				contentStore.share(contentFile);
+			}
 		}
 		return contentFile;
 	}
@@ -1181,6 +1556,8 @@ public class Storage {
 				boolean strictPath = Boolean.parseBoolean(getConfiguration().getConfiguration(
 						EquinoxConfiguration.PROPERTY_STRICT_BUNDLE_ENTRY_PATH, Boolean.FALSE.toString()));
 				result = new DirBundleFile(content, strictPath);
+			} else if (bundleFileMapped) {
+				result = new MappedZipBundleFile(content, generation, mruList, getConfiguration().getDebug());
 			} else {
 				result = new ZipBundleFile(content, generation, mruList, getConfiguration().getDebug(),
 						getConfiguration().runtimeVerifySignedBundles);
@@ -1216,6 +1593,9 @@ public class Storage {
 	public void compact() {
 		if (!osgiLocation.isReadOnly()) {
 			compact(childRoot);
+			if (contentStore != null) {
+				contentStore.clean();
+			}
 		}
 	}
 
@@ -1301,16 +1681,28 @@ public class Storage {
 		moduleDatabase.readLock();
 		try {
 			synchronized (this.saveMonitor) {
+				saveEntryIndex();
+				saveResolutionCache();
 				if (lastSavedTimestamp == moduleDatabase.getTimestamp())
 					return;
+				if (appendJournal()) {
+					lastSavedTimestamp = moduleDatabase.getTimestamp();
+					return;
+				}
+				// until the complete framework info is saved the journal no longer applies
+				journalRecords = journalLimit;
 				childStorageManager = getChildStorageManager();
 				mos = childStorageManager.getOutputStream(FRAMEWORK_INFO);
 				out = new DataOutputStream(new BufferedOutputStream(mos));
 				saveGenerations(out);
 				savePermissionData(out);
 				moduleDatabase.store(out, true);
+				// closing commits the new framework info before the journal is discarded
+				out.close();
+				out = null;
 				lastSavedTimestamp = moduleDatabase.getTimestamp();
 				success = true;
+				resetJournal();
 			}
 		} finally {
 			if (!success) {
@@ -1332,6 +1724,182 @@ public class Storage {
 		}
 	}
 
+	/**
+	 * Appends the changes since the last save to the journal if none of the
+	 * changes require the complete framework info to be saved.  A record holds
+	 * the bundle infos of the installed and updated bundles followed by the
+	 * changes to the module database.
+	 * @return true if the changes were appended to the journal
+	 */
+	private boolean appendJournal() {
+		if (!journalEnabled || journalRecords >= journalLimit || snapshotRevisionsTimestamp == -1) {
+			return false;
+		}
+		// permission changes and system bundle updates need the complete framework info
+		List<Generation> generations = new ArrayList<>();
+		for (Module module : moduleContainer.getModules()) {
+			ModuleRevision revision = module.getCurrentRevision();
+			Generation generation = revision == null ? null : (Generation) revision.getRevisionInfo();
+			if (generation != null && !generation.isPersisted()) {
+				if (module.getId() == Constants.SYSTEM_BUNDLE_ID) {
+					return false;
+				}
+				generations.add(generation);
+			}
+		}
+		if (permissionData.isDirty()) {
+			return false;
+		}
+		File journalFile = new File(childRoot, FRAMEWORK_JOURNAL);
+		try {
+			ByteArrayOutputStream changes = new ByteArrayOutputStream();
+			if (!moduleDatabase.storeChanges(new DataOutputStream(changes), lastSavedTimestamp)) {
+				// the wirings were not saved or there are removal pending revisions
+				return false;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			saveGenerationInfos(new DataOutputStream(bytes), generations);
+			changes.writeTo(bytes);
+			byte[] record = bytes.toByteArray();
+			CRC32 checksum = new CRC32();
+			checksum.update(record, 0, record.length);
+			try (FileOutputStream fos = new FileOutputStream(journalFile, journalValid)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+				if (!journalValid) {
+					out.writeInt(JOURNAL_VERSION);
+					out.writeLong(snapshotRevisionsTimestamp);
+					out.writeLong(snapshotTimestamp);
+				}
+				out.writeInt(record.length);
+				out.writeLong(checksum.getValue());
+				out.write(record);
+				out.flush();
+				fos.getFD().sync();
+			}
+			journalValid = true;
+			journalRecords++;
+			return true;
+		} catch (IOException e) {
+			if (getConfiguration().getDebug().DEBUG_STORAGE) {
+				Debug.println("Unable to append to the journal: " + e.getMessage()); //$NON-NLS-1$
+			}
+			// the journal may have a partial record; save the complete framework info instead
+			journalRecords = journalLimit;
+			return false;
+		}
+	}
+
+	private void resetJournal() {
+		snapshotRevisionsTimestamp = moduleDatabase.getRevisionsTimestamp();
+		snapshotTimestamp = moduleDatabase.getTimestamp();
+		journalRecords = 0;
+		journalValid = false;
+		File journalFile = new File(childRoot, FRAMEWORK_JOURNAL);
+		if (journalFile.exists() && !journalFile.delete() && getConfiguration().getDebug().DEBUG_STORAGE) {
+			Debug.println("Unable to delete the journal: " + journalFile); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Replays the journal of changes made since the framework info was saved.
+	 * A journal which does not apply to the loaded framework info is ignored.
+	 * Replaying stops at the first incomplete or corrupt record.
+	 * @param generations the restored generations which are not loaded into the
+	 *        module database yet, keyed by bundle id
+	 */
+	private void loadJournal(Map<Long, Generation> generations) {
+		File journalFile = new File(childRoot, FRAMEWORK_JOURNAL);
+		if (!journalFile.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+			if (in.readInt() != JOURNAL_VERSION || in.readLong() != snapshotRevisionsTimestamp || in.readLong() != snapshotTimestamp) {
+				// left over from a previous framework info; it is replaced on the next append
+				return;
+			}
+			journalValid = true;
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					// no more records
+					break;
+				}
+				long expected = in.readLong();
+				byte[] record = new byte[length];
+				in.readFully(record);
+				CRC32 checksum = new CRC32();
+				checksum.update(record, 0, record.length);
+				if (checksum.getValue() != expected) {
+					throw new IOException("Corrupt journal record: " + journalRecords); //$NON-NLS-1$
+				}
+				DataInputStream changes = new DataInputStream(new ByteArrayInputStream(record));
+				loadGenerationInfos(changes, VERSION, generations);
+				moduleDatabase.loadChanges(changes);
+				journalRecords++;
+			}
+		} catch (IOException | NegativeArraySizeException | IllegalArgumentException e) {
+			if (getConfiguration().getDebug().DEBUG_STORAGE) {
+				Debug.println("Incomplete journal: " + e.getMessage()); //$NON-NLS-1$
+			}
+			// do not append after a damaged record; save the complete framework info next time
+			journalRecords = journalLimit;
+		}
+	}
+
+	private void saveEntryIndex() {
+		if (entryIndex == null) {
+			return;
+		}
+		try {
+			entryIndex.save();
+		} catch (IOException e) {
+			// the index is rebuilt as needed; do not fail the save
+			if (getConfiguration().getDebug().DEBUG_STORAGE) {
+				Debug.printStackTrace(e);
+			}
+		}
+	}
+
+	private void loadResolutionCache() {
+		File cacheFile = new File(childRoot, RESOLUTION_CACHE);
+		if (!resolutionCacheEnabled || !cacheFile.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			moduleDatabase.loadResolutionCache(in);
+		} catch (IOException e) {
+			// start with an empty cache
+			if (getConfiguration().getDebug().DEBUG_STORAGE) {
+				Debug.printStackTrace(e);
+			}
+		}
+	}
+
+	private void saveResolutionCache() {
+		if (!resolutionCacheEnabled || osgiLocation.isReadOnly() || !moduleDatabase.isResolutionCacheDirty()) {
+			return;
+		}
+		File cacheFile = new File(childRoot, RESOLUTION_CACHE);
+		try {
+			File tmpFile = File.createTempFile(RESOLUTION_CACHE, ".tmp", childRoot); //$NON-NLS-1$
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+				moduleDatabase.storeResolutionCache(out);
+			}
+			cacheFile.delete();
+			if (!tmpFile.renameTo(cacheFile)) {
+				tmpFile.delete();
+				throw new IOException("Unable to rename: " + tmpFile); //$NON-NLS-1$
+			}
+		} catch (IOException e) {
+			// the cache is only an optimization; do not fail the save
+			if (getConfiguration().getDebug().DEBUG_STORAGE) {
+				Debug.printStackTrace(e);
+			}
+		}
+	}
+
 	private void savePermissionData(DataOutputStream out) throws IOException {
 		permissionData.savePermissionData(out);
 	}
@@ -1358,6 +1926,14 @@ public class Storage {
 		saveLongString(out, getSystemExtraCapabilities());
 		saveLongString(out, getSystemExtraPackages());
 
+		saveGenerationInfos(out, generations);
+	}
+
+	/**
+	 * Writes the bundle infos of the specified generations along with their
+	 * storage hook data and marks the generations as persisted.
+	 */
+	private void saveGenerationInfos(DataOutputStream out, List<Generation> generations) throws IOException {
 		out.writeInt(cachedHeaderKeys.size());
 		for (String headerKey : cachedHeaderKeys) {
 			out.writeUTF(headerKey);
@@ -1402,6 +1978,9 @@ public class Storage {
 		}
 
 		saveStorageHookData(out, generations);
+		for (Generation generation : generations) {
+			generation.setPersisted();
+		}
 	}
 
 	private void saveLongString(DataOutputStream out, String value) throws IOException {
@@ -1460,12 +2039,24 @@ public class Storage {
 		Version savedRuntimeVersion = (version >= MR_JAR_VERSION) ? Version.parseVersion(in.readUTF()) : null;
 		if (savedRuntimeVersion == null || !savedRuntimeVersion.equals(runtimeVersion)) {
 			refreshMRBundles.set(true);
+			// the saved runtime version is outdated; save the complete framework info next time
+			journalRecords = journalLimit;
 		}
 
 		cachedInfo[0] = (version >= CACHED_SYSTEM_CAPS_VERION) ? in.readUTF() : null;
 		cachedInfo[1] = (version >= CACHED_SYSTEM_CAPS_VERION) ? readLongString(in) : null;
 		cachedInfo[2] = (version >= CACHED_SYSTEM_CAPS_VERION) ? readLongString(in) : null;
 
+		Map<Long, Generation> result = new HashMap<>();
+		loadGenerationInfos(in, version, result);
+		return result;
+	}
+
+	/**
+	 * Reads the bundle infos written by {@link #saveGenerationInfos(DataOutputStream, List)}
+	 * and puts the restored generations into the specified map keyed by bundle id.
+	 */
+	private void loadGenerationInfos(DataInputStream in, int version, Map<Long, Generation> result) throws IOException {
 		int numCachedHeaders = in.readInt();
 		List<String> storedCachedHeaderKeys = new ArrayList<>(numCachedHeaders);
 		for (int i = 0; i < numCachedHeaders; i++) {
@@ -1473,7 +2064,6 @@ public class Storage {
 		}
 
 		int numInfos = in.readInt();
-		Map<Long, Generation> result = new HashMap<>(numInfos);
 		List<Generation> generations = new ArrayList<>(numInfos);
 		Type[] contentTypes = Type.values();
 		for (int i = 0; i < numInfos; i++) {
@@ -1543,7 +2133,6 @@ public class Storage {
 
 		connectPersistentBundles(generations);
 		loadStorageHookData(generations, in);
-		return result;
 	}
 
 	private void connectPersistentBundles(List<Generation> generations) {
@@ -1979,7 +2568,19 @@ public class Storage {
 		return result;
 	}
 
-	public static Enumeration<URL> findEntries(List<Generation> generations, String path, String filePattern, int options) {
+	public static Enumeration<URL> findEntries(List<Generation> allGenerations, String path, String filePattern, int options) {
+		List<Generation> generations = allGenerations;
+		EntryIndex entryIndex = generations.isEmpty() ? null : generations.get(0).getBundleInfo().getStorage().getEntryIndex();
+		if (entryIndex != null) {
+			// skip the generations which are known to not have the path
+			Set<Long> indexed = entryIndex.getBundles(path);
+			generations = new ArrayList<>(allGenerations.size());
+			for (Generation generation : allGenerations) {
+				if (indexed.contains(generation.getBundleInfo().getBundleId()) || entryIndex.getIndex(generation) == null) {
+					generations.add(generation);
+				}
+			}
+		}
 		List<BundleFile> bundleFiles = new ArrayList<>(generations.size());
 		for (Generation generation : generations)
 			bundleFiles.add(generation.getBundleFile());
@@ -1989,7 +2590,8 @@ public class Storage {
 		if (pathList.size() == 0)
 			return null;
 		// create an enumeration to enumerate the pathList (generations must not change)
-		Stream<URL> entries = pathList.stream().flatMap(p -> generations.stream().map(g -> g.getEntry(p)))
+		List<Generation> searched = generations;
+		Stream<URL> entries = pathList.stream().flatMap(p -> searched.stream().map(g -> g.getEntry(p)))
 				.filter(Objects::nonNull);
 		return InternalUtils.asEnumeration(entries.iterator());
 	}
@@ -2212,6 +2814,7 @@ public class Storage {
 		InputStream storageStream = null;
 		try {
 			storageStream = storageManager.getInputStream(FRAMEWORK_INFO);
+			childInfoLoaded = storageStream != null;
 		} catch (IOException ex) {
 			if (getConfiguration().getDebug().DEBUG_STORAGE) {
 				Debug.println("Error reading framework.info: " + ex.getMessage()); //$NON-NLS-1$
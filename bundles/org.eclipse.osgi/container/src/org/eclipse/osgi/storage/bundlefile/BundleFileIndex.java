@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.storage.bundlefile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An index of the directories of an archive bundle file. The index contains
+ * every directory which is a parent of an entry in the bundle file, including
+ * the root directory which is represented by the empty string. Directory names
+ * have no leading slash and end with a slash.
+ * <p>
+ * The index also contains a sorted array of the hash codes of all entry names.
+ * This allows most lookups of entries that do not exist to be answered without
+ * opening the bundle file, at the cost of four bytes per entry. A matching hash
+ * code does not guarantee that the entry exists.
+ * <p>
+ * The index allows lookups to skip a bundle file that cannot contain a path
+ * without opening it. An index is only valid for the content of the file it
+ * was created from; a persisted index records the path, length and last
+ * modified time of the file so that a stale index is never used.
+ */
+public final class BundleFileIndex {
+	private static final int VERSION = 2;
+
+	private final Set<String> directories;
+	private final int[] entryHashes;
+
+	private BundleFileIndex(Set<String> directories, int[] entryHashes) {
+		this.directories = directories;
+		this.entryHashes = entryHashes;
+	}
+
+	/**
+	 * Creates an index for the specified entry paths.
+	 * @param paths the paths of all entries of a bundle file
+	 * @return a new index
+	 */
+	public static BundleFileIndex create(Iterable<String> paths) {
+		Set<String> directories = new HashSet<>();
+		directories.add(""); //$NON-NLS-1$
+		int[] entryHashes = new int[64];
+		int numEntries = 0;
+		for (String path : paths) {
+			if (numEntries == entryHashes.length) {
+				entryHashes = Arrays.copyOf(entryHashes, numEntries * 2);
+			}
+			entryHashes[numEntries++] = path.hashCode();
+			int slash = path.lastIndexOf('/', path.length() - 2);
+			// add all parent directories; stop early if a parent is already known
+			while (slash >= 0 && directories.add(path.substring(0, slash + 1))) {
+				slash = path.lastIndexOf('/', slash - 1);
+			}
+		}
+		entryHashes = Arrays.copyOf(entryHashes, numEntries);
+		Arrays.sort(entryHashes);
+		return new BundleFileIndex(directories, entryHashes);
+	}
+
+	/**
+	 * Returns true if the bundle file may contain the specified path.
+	 * A return value of false indicates the path definitely does not exist
+	 * in the bundle file.
+	 * @param path the path of an entry, may start with a slash
+	 * @return false if the bundle file does not contain the path
+	 */
+	public boolean mayContain(String path) {
+		int start = (path.length() > 0 && path.charAt(0) == '/') ? 1 : 0;
+		int slash = path.lastIndexOf('/', path.length() - 2);
+		if (slash < start) {
+			// the path is in the root directory
+			return true;
+		}
+		return directories.contains(path.substring(start, slash + 1));
+	}
+
+	/**
+	 * Returns true if the bundle file may have an entry for the specified path.
+	 * This follows the lookup rules of archive bundle files: a path without a
+	 * trailing slash also matches a directory entry, and a path with a trailing
+	 * slash matches any directory that contains entries.
+	 * A return value of false indicates no entry exists for the path.
+	 * @param path the path of an entry, may start with a slash
+	 * @return false if the bundle file has no entry for the path
+	 */
+	public boolean mayContainEntry(String path) {
+		if (path.length() > 0 && path.charAt(0) == '/') {
+			path = path.substring(1);
+		}
+		if (path.length() == 0) {
+			return true;
+		}
+		if (path.charAt(path.length() - 1) == '/') {
+			return directories.contains(path) || containsHash(path.hashCode());
+		}
+		return containsHash(path.hashCode()) || containsHash((path + '/').hashCode());
+	}
+
+	/**
+	 * Returns the directories of the bundle file, including the root directory
+	 * which is represented by the empty string.
+	 * @return an unmodifiable set of directories
+	 */
+	public Set<String> getDirectories() {
+		return Collections.unmodifiableSet(directories);
+	}
+
+	private boolean containsHash(int hash) {
+		return Arrays.binarySearch(entryHashes, hash) >= 0;
+	}
+
+	/**
+	 * Reads a persisted index.
+	 * @param indexFile the file containing the persisted index
+	 * @param basefile the bundle file content the index must be valid for
+	 * @return the index or {@code null} if no valid index is persisted
+	 */
+	static BundleFileIndex read(File indexFile, File basefile) {
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			if (!basefile.getAbsolutePath().equals(in.readUTF()) || basefile.length() != in.readLong() || basefile.lastModified() != in.readLong()) {
+				return null;
+			}
+			return readFrom(in);
+		} catch (IOException e) {
+			// treat as no index
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the content of an index without a header.
+	 * @param in the input to read from
+	 * @return the index
+	 * @throws IOException if an error occurs reading the index
+	 */
+	public static BundleFileIndex readFrom(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Set<String> directories = new HashSet<>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			directories.add(in.readUTF());
+		}
+		int[] entryHashes = new int[in.readInt()];
+		for (int i = 0; i < entryHashes.length; i++) {
+			entryHashes[i] = in.readInt();
+		}
+		return new BundleFileIndex(directories, entryHashes);
+	}
+
+	/**
+	 * Writes the content of this index without a header.
+	 * @param out the output to write to
+	 * @throws IOException if an error occurs writing the index
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(directories.size());
+		for (String directory : directories) {
+			out.writeUTF(directory);
+		}
+		out.writeInt(entryHashes.length);
+		for (int entryHash : entryHashes) {
+			out.writeInt(entryHash);
+		}
+	}
+
+	/**
+	 * Persists this index. The index is written to a temporary file first which
+	 * is then renamed to the index file.
+	 * @param indexFile the file to persist the index to
+	 * @param basefile the bundle file content this index was created from
+	 * @throws IOException if an error occurs writing the index
+	 */
+	void write(File indexFile, File basefile) throws IOException {
+		File parent = indexFile.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory: " + parent); //$NON-NLS-1$
+		}
+		File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", parent); //$NON-NLS-1$
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+				out.writeInt(VERSION);
+				out.writeUTF(basefile.getAbsolutePath());
+				out.writeLong(basefile.length());
+				out.writeLong(basefile.lastModified());
+				writeTo(out);
+			}
+			if (!tmpFile.renameTo(indexFile)) {
+				// another thread or process may have written the index first
+				if (!indexFile.isFile()) {
+					throw new IOException("Unable to rename: " + tmpFile); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			tmpFile.delete();
+		}
+	}
+}
@@ -32,6 +32,8 @@ import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.EquinoxContainer;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.storage.BundleInfo;
+import org.eclipse.osgi.storage.EntryIndex;
+import org.eclipse.osgi.storage.Storage;
 import org.eclipse.osgi.storage.Storage.StorageException;
 import org.eclipse.osgi.util.NLS;
 
@@ -59,6 +61,14 @@ public abstract class CloseableBundleFile<E> extends BundleFile {
 	private volatile boolean closed = true;
 
 	private int referenceCount = 0;
+	// true once this bundle file has been opened; only accessed while holding the open lock
+	private boolean openedBefore = false;
+
+	/**
+	 * The directory index, lazily loaded or created
+	 */
+	private volatile BundleFileIndex index;
+	private volatile boolean indexUnavailable;
 
 	public CloseableBundleFile(File basefile, BundleInfo.Generation generation, MRUBundleFileList mruList, Debug debug) {
 		super(basefile);
@@ -131,9 +141,15 @@ public abstract class CloseableBundleFile<E> extends BundleFile {
 					if (needBackPressure) {
 						mruListAdd();
 					}
+					boolean reopen = openedBefore && isMruEnabled();
+					long start = reopen ? System.nanoTime() : 0;
 					// This can throw an IO exception resulting in closed remaining true on exit
 					doOpen();
 					closed = false;
+					openedBefore = true;
+					if (reopen) {
+						mruList.reopened(System.nanoTime() - start);
+					}
 					if (debug.DEBUG_BUNDLE_FILE_OPEN) {
 						Debug.println("OPENED bundle file - " + toString()); //$NON-NLS-1$
 					}
@@ -178,6 +194,76 @@ public abstract class CloseableBundleFile<E> extends BundleFile {
 
 	protected abstract Iterable<String> getPaths();
 
+	/**
+	 * Returns true if the content of this bundle file cannot change for the
+	 * lifetime of its generation, which allows the content to be indexed.
+	 * @return true if this bundle file may be indexed
+	 */
+	protected boolean isIndexable() {
+		return false;
+	}
+
+	/**
+	 * Returns the index of this bundle file. The index is read from
+	 * the storage of the generation if it was persisted before; otherwise it is
+	 * created from the entries of this bundle file and persisted.
+	 * @return the index or {@code null} if indexing is not enabled or not possible
+	 */
+	public BundleFileIndex getIndex() {
+		BundleFileIndex result = index;
+		if (result != null || indexUnavailable) {
+			return result;
+		}
+		Storage storage = generation == null ? null : generation.getBundleInfo().getStorage();
+		if (storage == null || !storage.isBundleFileIndexEnabled() || !isIndexable()) {
+			indexUnavailable = true;
+			return null;
+		}
+		File indexFile;
+		try {
+			indexFile = generation.getExtractFile(".idx", Integer.toHexString(basefile.getAbsolutePath().hashCode())); //$NON-NLS-1$
+		} catch (StorageException e) {
+			indexUnavailable = true;
+			return null;
+		}
+		// the index of the bundle content is kept by the framework entry index if enabled
+		EntryIndex entryIndex = basefile.equals(generation.getContent()) ? storage.getEntryIndex() : null;
+		if (entryIndex != null) {
+			result = entryIndex.getIndex(generation);
+			if (result != null) {
+				index = result;
+				return result;
+			}
+		}
+		result = BundleFileIndex.read(indexFile, basefile);
+		if (result == null) {
+			if (!lockOpen()) {
+				// try again on next use
+				return null;
+			}
+			try {
+				result = BundleFileIndex.create(getPaths());
+			} finally {
+				releaseOpen();
+			}
+			// the entry index persists the index itself
+			if (entryIndex == null && !storage.isReadOnly()) {
+				try {
+					result.write(indexFile, basefile);
+				} catch (IOException e) {
+					if (debug.DEBUG_BUNDLE_FILE) {
+						Debug.printStackTrace(e);
+					}
+				}
+			}
+		}
+		if (entryIndex != null) {
+			entryIndex.putIndex(generation, result);
+		}
+		index = result;
+		return result;
+	}
+
 	private File getExtractFile(String entryName) {
 		if (generation == null)
 			return null;
@@ -271,6 +357,11 @@ public abstract class CloseableBundleFile<E> extends BundleFile {
 
 	@Override
 	public BundleEntry getEntry(String path) {
+		BundleFileIndex current = getIndex();
+		if (current != null && !current.mayContainEntry(path)) {
+			// answer misses without opening the bundle file
+			return null;
+		}
 		if (!lockOpen()) {
 			return null;
 		}
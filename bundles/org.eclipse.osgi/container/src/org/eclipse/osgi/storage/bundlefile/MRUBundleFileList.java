@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2021 IBM Corporation and others.
+ * Copyright (c) 2005, 2022 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -19,6 +19,9 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import org.eclipse.osgi.framework.eventmgr.EventDispatcher;
@@ -31,23 +34,32 @@ import org.eclipse.osgi.internal.debug.Debug;
  * track of open BundleFiles.  The MRU will use the file limit specified by the property
  * &quot;osgi.bundlefile.limit&quot; by default unless the MRU is constructed with a specific
  * file limit.
+ * <p>
+ * The least recently used bundle file is approximated with a clock (second chance)
+ * algorithm. Using a bundle file only sets its referenced bit without locking; adding
+ * a bundle file advances the clock hand, clearing referenced bits, until it finds a
+ * bundle file that has not been used since the hand last passed it.
  */
 public class MRUBundleFileList implements EventDispatcher<Object, Object, BundleFile> {
 	private static final int MIN = 10;
 	private static final ThreadLocal<BundleFile> closingBundleFile = new ThreadLocal<>();
 
-	// list of open bundle files
-	final private BundleFile[] bundleFileList;
-	// list of open bundle files use stamps
-	final private long[] useStampList;
+	// list of open bundle files; only modified while synchronizing "this"
+	final private AtomicReferenceArray<BundleFile> bundleFileList;
+	// list of open bundle files referenced bits
+	final private AtomicIntegerArray referencedList;
+	// stack of the free slots in the bundle file list
+	final private int[] freeList;
 	// the limit of open files to allow before least used bundle file is closed
 	final private int fileLimit; // value < MIN will disable MRU
 	private EventManager bundleFileCloserManager = null;
 	final private Map<Object, Object> bundleFileCloser;
 	// the current number of open bundle files
 	private int numOpen = 0;
-	// the current use stamp
-	private long curUseStamp = 0;
+	// the current number of free slots
+	private int numFree = 0;
+	// the next slot to check for a bundle file to close
+	private int clockHand = 0;
 	// used to work around bug 275166
 	private boolean firstDispatch = true;
 
@@ -56,17 +68,28 @@ public class MRUBundleFileList implements EventDispatcher<Object, Object, Bundle
 	private final AtomicInteger pending = new AtomicInteger();
 	private final Debug debug;
 
+	private final LongAdder opens = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder backPressureWaits = new LongAdder();
+	private final LongAdder reopens = new LongAdder();
+	private final LongAdder reopenTime = new LongAdder();
+
 	public MRUBundleFileList(int fileLimit, Debug debug) {
 		// only enable the MRU if the initFileLimit is > MIN
 		this.fileLimit = fileLimit;
 		this.debug = debug;
 		if (fileLimit >= MIN) {
-			this.bundleFileList = new BundleFile[fileLimit];
-			this.useStampList = new long[fileLimit];
+			this.bundleFileList = new AtomicReferenceArray<>(fileLimit);
+			this.referencedList = new AtomicIntegerArray(fileLimit);
+			this.freeList = new int[fileLimit];
+			// push the slots in reverse so the first slot is used first
+			for (int i = fileLimit - 1; i >= 0; i--)
+				freeList[numFree++] = i;
 			this.bundleFileCloser = Collections.singletonMap(this, this);
 		} else {
 			this.bundleFileList = null;
-			this.useStampList = null;
+			this.referencedList = null;
+			this.freeList = null;
 			this.bundleFileCloser = null;
 		}
 	}
@@ -87,34 +110,25 @@ public class MRUBundleFileList implements EventDispatcher<Object, Object, Bundle
 		synchronized (this) {
 			if (bundleFile.getMruIndex() >= 0)
 				return false; // do nothing; someone is trying add a bundleFile that is already in an MRU list
-			int index = 0; // default to the first slot
-			if (numOpen < fileLimit) {
-				// numOpen does not exceed the fileLimit
-				// find the first null slot to use in the MRU
-				for (int i = 0; i < fileLimit; i++)
-					if (bundleFileList[i] == null) {
-						index = i;
-						break;
-					}
-			} else {
+			if (numOpen >= fileLimit) {
 				// numOpen has reached the fileLimit
-				// find the least recently used bundleFile and close it
-				// and use its slot for the new bundleFile to be opened.
-				index = 0;
-				for (int i = 1; i < fileLimit; i++)
-					if (useStampList[i] < useStampList[index])
-						index = i;
-				toRemove = bundleFileList[index];
+				// find a bundleFile that was not recently used and close it
+				// its slot is freed for the new bundleFile to be opened.
+				int index = nextUnreferenced();
+				toRemove = bundleFileList.get(index);
 				if (toRemove.getMruIndex() != index)
 					throw new IllegalStateException("The BundleFile has the incorrect mru index: " + index + " != " + toRemove.getMruIndex()); //$NON-NLS-1$//$NON-NLS-2$
 				removeInternal(toRemove);
+				evictions.increment();
 				backpressureNeeded = isBackPressureNeeded();
 			}
-			// found an index to place to bundleFile to be opened
-			bundleFileList[index] = bundleFile;
+			// use a free slot to place the bundleFile to be opened
+			int index = freeList[--numFree];
+			bundleFileList.set(index, bundleFile);
 			bundleFile.setMruIndex(index);
-			incUseStamp(index);
+			referencedList.set(index, 1);
 			numOpen++;
+			opens.increment();
 			if (toRemove != null) {
 				if (bundleFileCloserManager == null)
 					bundleFileCloserManager = new EventManager("Bundle File Closer"); //$NON-NLS-1$
@@ -139,7 +153,7 @@ public class MRUBundleFileList implements EventDispatcher<Object, Object, Bundle
 			return false; // MRU is disabled
 		synchronized (this) {
 			int index = bundleFile.getMruIndex();
-			if ((index >= 0 && index < fileLimit) && bundleFileList[index] == bundleFile) {
+			if ((index >= 0 && index < fileLimit) && bundleFileList.get(index) == bundleFile) {
 				removeInternal(bundleFile);
 				return true;
 			}
@@ -151,34 +165,48 @@ public class MRUBundleFileList implements EventDispatcher<Object, Object, Bundle
 	private void removeInternal(BundleFile bundleFile) {
 		int index = bundleFile.getMruIndex();
 		bundleFile.setMruIndex(-1);
-		bundleFileList[index] = null;
-		useStampList[index] = -1;
+		bundleFileList.set(index, null);
+		referencedList.set(index, 0);
+		freeList[numFree++] = index;
 		numOpen--;
 	}
 
+	// must be called while synchronizing "this" and all slots are in use
+	private int nextUnreferenced() {
+		// give each referenced bundle file a second chance; concurrent
+		// use may set bits again so stop after one full turn of the clock
+		for (int turn = 0;; turn++) {
+			int index = clockHand;
+			clockHand = index + 1 == fileLimit ? 0 : index + 1;
+			if (referencedList.get(index) == 0 || turn >= fileLimit)
+				return index;
+			referencedList.set(index, 0);
+		}
+	}
+
 	/**
-	 * Increments the use stamp of a bundle file
-	 * @param bundleFile the bundle file to increment the use stamp for
+	 * Marks a bundle file as recently used.  This does not lock the list;
+	 * a concurrent add or remove may cause the mark to be lost or to be
+	 * applied to another bundle file which only affects the choice of the
+	 * next bundle file to close.
+	 * @param bundleFile the bundle file to mark as used
 	 */
 	public void use(BundleFile bundleFile) {
 		if (fileLimit < MIN)
 			return; // MRU is disabled
-		synchronized (this) {
-			int index = bundleFile.getMruIndex();
-			if ((index >= 0 && index < fileLimit) && bundleFileList[index] == bundleFile)
-				incUseStamp(index);
-		}
+		int index = bundleFile.getMruIndex();
+		// avoid writing if already referenced to keep the slot cache line shared
+		if ((index >= 0 && index < fileLimit) && referencedList.get(index) == 0 && bundleFileList.get(index) == bundleFile)
+			referencedList.lazySet(index, 1);
 	}
 
-	// must be called while synchronizing "this"
-	private void incUseStamp(int index) {
-		if (curUseStamp == Long.MAX_VALUE) {
-			// we hit the curUseStamp max better reset all the stamps
-			for (int i = 0; i < fileLimit; i++)
-				useStampList[i] = 0;
-			curUseStamp = 0;
-		}
-		useStampList[index] = ++curUseStamp;
+	/**
+	 * Records the time it took to open a bundle file again after it was closed
+	 * @param nanos the time in nanoseconds
+	 */
+	void reopened(long nanos) {
+		reopens.increment();
+		reopenTime.add(nanos);
 	}
 
 	@Override
@@ -223,6 +251,7 @@ public class MRUBundleFileList implements EventDispatcher<Object, Object, Bundle
 				if (debug.DEBUG_BUNDLE_FILE) {
 					Debug.println("MRUBundleFileList: Applying back pressure before opening: " + toString()); //$NON-NLS-1$
 				}
+				backPressureWaits.increment();
 				// delay to allow the closer to catchup
 				try {
 					pendingCond.await(Math.min(500, pendingNum), TimeUnit.MILLISECONDS);
@@ -284,4 +313,51 @@ public class MRUBundleFileList implements EventDispatcher<Object, Object, Bundle
 	public boolean isEnabled() {
 		return fileLimit >= MIN;
 	}
+
+	/**
+	 * Returns the number of bundle files added to this list for opening.
+	 * @return the number of opens
+	 */
+	public long getOpenCount() {
+		return opens.sum();
+	}
+
+	/**
+	 * Returns the number of bundle files closed to stay within the file limit.
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the number of times an open waited for pending closes to catch up.
+	 * @return the number of back pressure waits
+	 */
+	public long getBackPressureWaitCount() {
+		return backPressureWaits.sum();
+	}
+
+	/**
+	 * Returns the number of times a bundle file was opened again after it was closed.
+	 * @return the number of reopens
+	 */
+	public long getReopenCount() {
+		return reopens.sum();
+	}
+
+	/**
+	 * Returns the total time spent opening bundle files again after they were closed.
+	 * @return the total reopen time in nanoseconds
+	 */
+	public long getReopenTime() {
+		return reopenTime.sum();
+	}
+
+	@Override
+	public String toString() {
+		// do not synchronize; this is called while holding the pending lock
+		return "MRUBundleFileList [limit=" + fileLimit + ", open=" + numOpen + ", opens=" + getOpenCount() + ", evictions=" + getEvictionCount() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				+ ", backPressureWaits=" + getBackPressureWaitCount() + ", reopens=" + getReopenCount() + ", reopenTime=" + TimeUnit.NANOSECONDS.toMillis(getReopenTime()) + "ms]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
 }
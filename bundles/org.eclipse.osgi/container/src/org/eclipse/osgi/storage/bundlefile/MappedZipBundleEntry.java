@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.storage.bundlefile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.GregorianCalendar;
+
+/**
+ * A BundleEntry represented by an entry of the central directory of a
+ * {@link MappedZipBundleFile}.
+ */
+public class MappedZipBundleEntry extends BundleEntry {
+	private final MappedZipBundleFile bundleFile;
+	final MappedZipBundleFile.Directory directory;
+	final int index;
+
+	MappedZipBundleEntry(MappedZipBundleFile bundleFile, MappedZipBundleFile.Directory directory, int index) {
+		this.bundleFile = bundleFile;
+		this.directory = directory;
+		this.index = index;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return bundleFile.getInputStream(this);
+	}
+
+	@Override
+	public long getSize() {
+		return directory.sizes[index];
+	}
+
+	@Override
+	public String getName() {
+		return directory.names[index];
+	}
+
+	@Override
+	public long getTime() {
+		int dosTime = directory.dosTimes[index];
+		int time = dosTime & 0xFFFF;
+		int date = dosTime >>> 16;
+		if (date == 0) {
+			return -1;
+		}
+		return new GregorianCalendar(((date >> 9) & 0x7f) + 1980, ((date >> 5) & 0x0f) - 1, date & 0x1f, (time >> 11) & 0x1f, (time >> 5) & 0x3f, (time << 1) & 0x3e).getTimeInMillis();
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public URL getLocalURL() {
+		try {
+			return new URL("jar:" + bundleFile.basefile.toURL() + "!/" + getName()); //$NON-NLS-1$//$NON-NLS-2$
+		} catch (MalformedURLException e) {
+			//This can not happen.
+			return null;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public URL getFileURL() {
+		try {
+			File file = bundleFile.getFile(getName(), false);
+			if (file != null)
+				return file.toURL();
+		} catch (MalformedURLException e) {
+			//This can not happen.
+		}
+		return null;
+	}
+}
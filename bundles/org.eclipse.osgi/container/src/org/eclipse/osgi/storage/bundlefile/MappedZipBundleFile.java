@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.osgi.storage.bundlefile;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.messages.Msg;
+import org.eclipse.osgi.storage.BundleInfo;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * A BundleFile that maps its base file into memory and reads the central
+ * directory of the archive directly instead of using a ZipFile.
+ * <p>
+ * The central directory is parsed once into compact arrays and a hash table
+ * of entry names. The parsed directory is kept when the bundle file is closed
+ * by the {@link MRUBundleFileList} so that reopening the bundle file only
+ * requires the file to be mapped again. Stored entries are read directly from
+ * the mapped buffer without copying; deflated entries are inflated from the
+ * mapped buffer using pooled inflaters.
+ * <p>
+ * This bundle file does not support signed content verification.
+ */
+public class MappedZipBundleFile extends CloseableBundleFile<MappedZipBundleEntry> {
+	static final int STORED = 0;
+	static final int DEFLATED = 8;
+
+	private static final int LOCSIG = 0x04034b50;
+	private static final int CENSIG = 0x02014b50;
+	private static final int ENDSIG = 0x06054b50;
+	private static final int ZIP64_ENDSIG = 0x06064b50;
+	private static final int ZIP64_LOCSIG = 0x07064b50;
+	private static final int LOCHDR = 30;
+	private static final int CENHDR = 46;
+	private static final int ENDHDR = 22;
+	private static final int ZIP64_LOCHDR = 20;
+	private static final int ZIP64_EXTID = 0x0001;
+	private static final int MAX_COMMENT = 0xFFFF;
+
+	private static final int MAX_POOLED_INFLATERS = 16;
+	private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger pooledInflaters = new AtomicInteger();
+
+	/**
+	 * The mapped content of the base file, only available while open
+	 */
+	private volatile ByteBuffer buffer;
+	/**
+	 * The parsed central directory, retained across close and reopen
+	 */
+	private volatile Directory directory;
+
+	public MappedZipBundleFile(File basefile, BundleInfo.Generation generation, MRUBundleFileList mruList, Debug debug) throws IOException {
+		super(basefile, generation, mruList, debug);
+		if (!BundleFile.secureAction.exists(basefile))
+			throw new IOException(NLS.bind(Msg.ADAPTER_FILEEXIST_EXCEPTION, basefile));
+	}
+
+	@Override
+	protected void doOpen() throws IOException {
+		long length = BundleFile.secureAction.length(basefile);
+		long lastModified = BundleFile.secureAction.lastModified(basefile);
+		if (length > Integer.MAX_VALUE) {
+			throw new ZipException("File too large to map: " + basefile); //$NON-NLS-1$
+		}
+		ByteBuffer mapped;
+		try (FileInputStream in = BundleFile.secureAction.getFileInputStream(basefile); FileChannel channel = in.getChannel()) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		Directory current = directory;
+		if (current == null || current.length != length || current.lastModified != lastModified) {
+			current = Directory.read(mapped, length, lastModified);
+			if (debug.DEBUG_BUNDLE_FILE)
+				Debug.println("Parsed central directory: " + basefile + " entries: " + current.names.length); //$NON-NLS-1$ //$NON-NLS-2$
+			directory = current;
+		}
+		buffer = mapped;
+	}
+
+	/**
+	 * Returns the index of the directory entry for the bundle file. Must be called while holding the open lock.
+	 * @param path the path to an entry
+	 * @return the index of the entry or -1 if the entry does not exist
+	 */
+	private int getEntryIndex(Directory dir, String path) {
+		if (path.length() > 0 && path.charAt(0) == '/')
+			path = path.substring(1);
+		int index = dir.find(path);
+		if (index < 0 && path.length() > 0 && path.charAt(path.length() - 1) != '/') {
+			// same as ZipFile.getEntry, check for a directory entry
+			index = dir.find(path + '/');
+		} else if (index >= 0 && dir.sizes[index] == 0 && !dir.isDirectory(index)) {
+			// work around the directory bug see bug 83542
+			int dirIndex = dir.find(path + '/');
+			if (dirIndex >= 0)
+				index = dirIndex;
+		}
+		return index;
+	}
+
+	@Override
+	protected BundleEntry findEntry(String path) {
+		Directory dir = directory;
+		int index = getEntryIndex(dir, path);
+		if (index < 0) {
+			if (path.length() == 0 || path.charAt(path.length() - 1) == '/') {
+				// this is a directory request lets see if any entries exist in this directory
+				if (containsDir(path))
+					return new DirZipBundleEntry(this, path);
+			}
+			return null;
+		}
+		return new MappedZipBundleEntry(this, dir, index);
+	}
+
+	@Override
+	protected void doClose() throws IOException {
+		// the mapping is released once the buffer is garbage collected
+	}
+
+	@Override
+	protected void postClose() {
+		buffer = null;
+	}
+
+	@Override
+	protected InputStream doGetInputStream(MappedZipBundleEntry entry) throws IOException {
+		Directory dir = entry.directory;
+		int index = entry.index;
+		if (dir != directory) {
+			// the content changed since the entry was found
+			throw new ZipException("Stale entry: " + entry.getName()); //$NON-NLS-1$
+		}
+		if (dir.isEncrypted(index)) {
+			throw new ZipException("Encrypted entry: " + entry.getName()); //$NON-NLS-1$
+		}
+		ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		long offset = dir.offsets[index];
+		if (offset + LOCHDR > data.limit() || data.getInt((int) offset) != LOCSIG) {
+			throw new ZipException("Invalid local header: " + entry.getName()); //$NON-NLS-1$
+		}
+		long start = offset + LOCHDR + (data.getShort((int) offset + 26) & 0xFFFF) + (data.getShort((int) offset + 28) & 0xFFFF);
+		long end = start + dir.compressedSizes[index];
+		if (end > data.limit()) {
+			throw new ZipException("Invalid entry size: " + entry.getName()); //$NON-NLS-1$
+		}
+		data.limit((int) end);
+		data.position((int) start);
+		switch (dir.methods[index]) {
+			case STORED :
+				return new ByteBufferInputStream(data.slice());
+			case DEFLATED :
+				return new MappedInflaterInputStream(new ByteBufferInputStream(data.slice()), dir.sizes[index]);
+			default :
+				throw new ZipException("Unsupported compression method " + dir.methods[index] + ": " + entry.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	@Override
+	protected boolean isIndexable() {
+		return true;
+	}
+
+	@Override
+	protected Iterable<String> getPaths() {
+		return Arrays.asList(directory.names);
+	}
+
+	static Inflater getInflater() {
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			return new Inflater(true);
+		}
+		pooledInflaters.decrementAndGet();
+		return inflater;
+	}
+
+	static void releaseInflater(Inflater inflater) {
+		if (pooledInflaters.incrementAndGet() <= MAX_POOLED_INFLATERS) {
+			inflater.reset();
+			inflaters.offer(inflater);
+		} else {
+			pooledInflaters.decrementAndGet();
+			inflater.end();
+		}
+	}
+
+	/**
+	 * The parsed central directory of an archive. Entry data is held in
+	 * parallel arrays indexed by the position of the entry in the directory.
+	 */
+	static final class Directory {
+		final long length;
+		final long lastModified;
+		final String[] names;
+		final long[] offsets;
+		final long[] compressedSizes;
+		final long[] sizes;
+		final int[] methods;
+		final int[] flags;
+		final int[] dosTimes;
+		private final int[] table;
+
+		private Directory(long length, long lastModified, int count) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.names = new String[count];
+			this.offsets = new long[count];
+			this.compressedSizes = new long[count];
+			this.sizes = new long[count];
+			this.methods = new int[count];
+			this.flags = new int[count];
+			this.dosTimes = new int[count];
+			int tableSize = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+			this.table = new int[tableSize];
+		}
+
+		boolean isDirectory(int index) {
+			return names[index].endsWith("/"); //$NON-NLS-1$
+		}
+
+		boolean isEncrypted(int index) {
+			return (flags[index] & 1) != 0;
+		}
+
+		int find(String name) {
+			int mask = table.length - 1;
+			for (int slot = mix(name.hashCode()) & mask;; slot = (slot + 1) & mask) {
+				int entry = table[slot];
+				if (entry == 0) {
+					return -1;
+				}
+				if (names[entry - 1].equals(name)) {
+					return entry - 1;
+				}
+			}
+		}
+
+		private void add(int index) {
+			int mask = table.length - 1;
+			String name = names[index];
+			for (int slot = mix(name.hashCode()) & mask;; slot = (slot + 1) & mask) {
+				int entry = table[slot];
+				if (entry == 0) {
+					table[slot] = index + 1;
+					return;
+				}
+				if (names[entry - 1].equals(name)) {
+					// duplicate names; the first entry wins like ZipFile
+					return;
+				}
+			}
+		}
+
+		private static int mix(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+
+		static Directory read(ByteBuffer buffer, long length, long lastModified) throws IOException {
+			int limit = buffer.limit();
+			int end = -1;
+			for (int i = limit - ENDHDR, min = Math.max(0, limit - ENDHDR - MAX_COMMENT); i >= min; i--) {
+				if (buffer.getInt(i) == ENDSIG && i + ENDHDR + (buffer.getShort(i + 20) & 0xFFFF) <= limit) {
+					end = i;
+					break;
+				}
+			}
+			if (end < 0) {
+				throw new ZipException("End of central directory not found"); //$NON-NLS-1$
+			}
+			long count = buffer.getShort(end + 10) & 0xFFFF;
+			long cenSize = buffer.getInt(end + 12) & 0xFFFFFFFFL;
+			long cenOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+			int locator = end - ZIP64_LOCHDR;
+			if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCSIG) {
+				long zip64End = buffer.getLong(locator + 8);
+				if (zip64End < 0 || zip64End + 56 > limit || buffer.getInt((int) zip64End) != ZIP64_ENDSIG) {
+					throw new ZipException("Invalid zip64 end of central directory"); //$NON-NLS-1$
+				}
+				count = buffer.getLong((int) zip64End + 32);
+				cenSize = buffer.getLong((int) zip64End + 40);
+				cenOffset = buffer.getLong((int) zip64End + 48);
+			}
+			if (count < 0 || count > Integer.MAX_VALUE || cenOffset < 0 || cenSize < 0 || cenOffset + cenSize > limit) {
+				throw new ZipException("Invalid central directory"); //$NON-NLS-1$
+			}
+			Directory dir = new Directory(length, lastModified, (int) count);
+			int pos = (int) cenOffset;
+			int cenEnd = (int) (cenOffset + cenSize);
+			byte[] nameBytes = new byte[256];
+			for (int i = 0; i < count; i++) {
+				if (pos + CENHDR > cenEnd || buffer.getInt(pos) != CENSIG) {
+					throw new ZipException("Invalid central directory header"); //$NON-NLS-1$
+				}
+				int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+				int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+				int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+				int next = pos + CENHDR + nameLength + extraLength + commentLength;
+				if (next > cenEnd) {
+					throw new ZipException("Invalid central directory header"); //$NON-NLS-1$
+				}
+				dir.flags[i] = buffer.getShort(pos + 8) & 0xFFFF;
+				dir.methods[i] = buffer.getShort(pos + 10) & 0xFFFF;
+				dir.dosTimes[i] = buffer.getInt(pos + 12);
+				dir.compressedSizes[i] = buffer.getInt(pos + 20) & 0xFFFFFFFFL;
+				dir.sizes[i] = buffer.getInt(pos + 24) & 0xFFFFFFFFL;
+				dir.offsets[i] = buffer.getInt(pos + 42) & 0xFFFFFFFFL;
+				if (nameBytes.length < nameLength) {
+					nameBytes = new byte[nameLength];
+				}
+				ByteBuffer name = buffer.duplicate();
+				name.position(pos + CENHDR);
+				name.get(nameBytes, 0, nameLength);
+				dir.names[i] = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+				if (extraLength > 0) {
+					readZip64Extra(buffer, pos + CENHDR + nameLength, extraLength, dir, i);
+				}
+				dir.add(i);
+				pos = next;
+			}
+			return dir;
+		}
+
+		private static void readZip64Extra(ByteBuffer buffer, int pos, int length, Directory dir, int i) throws IOException {
+			int end = pos + length;
+			while (pos + 4 <= end) {
+				int id = buffer.getShort(pos) & 0xFFFF;
+				int size = buffer.getShort(pos + 2) & 0xFFFF;
+				pos += 4;
+				if (pos + size > end) {
+					throw new ZipException("Invalid extra field"); //$NON-NLS-1$
+				}
+				if (id == ZIP64_EXTID) {
+					// only the values which overflow are present, in this order
+					int field = pos;
+					if (dir.sizes[i] == 0xFFFFFFFFL && field + 8 <= pos + size) {
+						dir.sizes[i] = buffer.getLong(field);
+						field += 8;
+					}
+					if (dir.compressedSizes[i] == 0xFFFFFFFFL && field + 8 <= pos + size) {
+						dir.compressedSizes[i] = buffer.getLong(field);
+						field += 8;
+					}
+					if (dir.offsets[i] == 0xFFFFFFFFL && field + 8 <= pos + size) {
+						dir.offsets[i] = buffer.getLong(field);
+					}
+					return;
+				}
+				pos += size;
+			}
+		}
+	}
+
+	static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer data;
+		private int mark;
+
+		ByteBufferInputStream(ByteBuffer data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			return data.hasRemaining() ? data.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!data.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, data.remaining());
+			data.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, data.remaining()));
+			data.position(data.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return data.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readlimit) {
+			mark = data.position();
+		}
+
+		@Override
+		public synchronized void reset() {
+			data.position(mark);
+		}
+	}
+
+	static final class MappedInflaterInputStream extends InflaterInputStream {
+		private final long size;
+		private long read;
+		private boolean eof;
+		private boolean closed;
+
+		MappedInflaterInputStream(InputStream in, long size) {
+			super(in, getInflater(), (int) Math.max(512, Math.min(8192, size)));
+			this.size = size;
+		}
+
+		@Override
+		protected void fill() throws IOException {
+			if (eof) {
+				throw new EOFException("Unexpected end of entry"); //$NON-NLS-1$
+			}
+			len = in.read(buf, 0, buf.length);
+			if (len == -1) {
+				// the inflater needs an extra dummy byte when no header is used
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int length) throws IOException {
+			int result = super.read(b, off, length);
+			if (result > 0) {
+				read += result;
+			}
+			return result;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (closed) {
+				return 0;
+			}
+			long remaining = size - read;
+			return remaining > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.max(0, remaining);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				super.close();
+				releaseInflater(inf);
+			}
+		}
+	}
+}
@@ -100,6 +100,11 @@ public class ZipBundleFile extends CloseableBundleFile<ZipEntry> {
 		return zipFile.getInputStream(entry);
 	}
 
+	@Override
+	protected boolean isIndexable() {
+		return true;
+	}
+
 	@Override
 	protected Iterable<String> getPaths() {
 		return () -> {
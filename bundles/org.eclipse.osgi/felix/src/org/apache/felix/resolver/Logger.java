@@ -131,4 +131,19 @@ public class Logger
     {
         // do nothing by default
     }
+
+    /**
+     * Called once at the end of each resolve operation with the time spent
+     * in its phases, in nanoseconds.
+     *
+     * @param populateTime the time spent populating the initial candidates
+     * @param packageSpaceTime the time spent calculating package spaces
+     * @param consistencyCheckTime the time spent checking permutations for
+     * consistency, excluding the time spent calculating package spaces
+     * @param permutationCount the number of permutations checked
+     */
+    public void logResolveStatistics(long populateTime, long packageSpaceTime, long consistencyCheckTime, int permutationCount)
+    {
+        // do nothing by default
+    }
 }
@@ -45,6 +45,8 @@ public class ResolverImpl implements Resolver
 
     private final Executor m_executor;
 
+    private final int m_permutationParallelism;
+
     enum PermutationType {
         USES,
         IMPORT,
@@ -88,9 +90,23 @@ public class ResolverImpl implements Resolver
         private final Executor m_executor;
         private final Set<Requirement> m_mutated = new HashSet<Requirement>();
         private final Set<Requirement> m_sub_mutated = new HashSet<Requirement>();
-        private final ConcurrentMap<String, List<String>> m_usesCache = new ConcurrentHashMap<String, List<String>>();
+        private final ConcurrentMap<String, List<String>> m_usesCache;
+        // Holds the package spaces of resolved resources shared by all permutations
+        private final ResolvedPackages m_resolvedPackages;
         private ResolutionError m_currentError;
         volatile private CancellationException m_isCancelled = null;
+        // The session a speculative session checks a permutation for; null for other sessions
+        private final ResolveSession m_parent;
+        // Holds the substitution permutations of a speculative session;
+        // the parent session decides if they are needed when merging
+        private final Map<Requirement, Candidates> m_substitutions = new LinkedHashMap<Requirement, Candidates>(0);
+        // Holds the log messages of a speculative session until they are merged
+        private final List<LogMessage> m_logMessages = new ArrayList<LogMessage>(0);
+        // The statistics of this session
+        private long m_populateTime;
+        private long m_checkTime;
+        private long m_packageSpaceTime;
+        private int m_permutationCount;
 
         static ResolveSession createSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
         {
@@ -117,6 +133,32 @@ public class ResolverImpl implements Resolver
                 m_mandatoryResources = new ArrayList<Resource>();
                 m_optionalResources = new ArrayList<Resource>();
             }
+            m_usesCache = new ConcurrentHashMap<String, List<String>>();
+            m_resolvedPackages = new ResolvedPackages(this);
+            m_parent = null;
+        }
+
+        // Creates a speculative session which checks a single permutation of the
+        // specified session on another thread. The permutations found by the check
+        // are kept until they are merged into the specified session.
+        private ResolveSession(ResolveSession parent)
+        {
+            m_resolveContext = parent.m_resolveContext;
+            // the package spaces are calculated by the thread doing the check
+            m_executor = new DumbExecutor();
+            m_dynamicHost = parent.m_dynamicHost;
+            m_dynamicReq = parent.m_dynamicReq;
+            m_dynamicCandidates = parent.m_dynamicCandidates;
+            m_mandatoryResources = parent.m_mandatoryResources;
+            m_optionalResources = parent.m_optionalResources;
+            m_usesCache = parent.m_usesCache;
+            m_resolvedPackages = parent.m_resolvedPackages;
+            m_parent = parent;
+        }
+
+        ResolveSession createSpeculativeSession()
+        {
+            return new ResolveSession(this);
         }
 
         private void initMandatoryAndOptionalResources() {
@@ -139,11 +181,22 @@ public class ResolverImpl implements Resolver
             return m_usesCache;
         }
 
+        ResolvedPackages getResolvedPackages() {
+            return m_resolvedPackages;
+        }
+
         void permutateIfNeeded(PermutationType type, Requirement req, Candidates permutation) {
             List<Capability> candidates = permutation.getCandidates(req);
             if ((candidates != null) && (candidates.size() > 1))
             {
                 if ((type == PermutationType.SUBSTITUTE)) {
+                    if (m_parent != null) {
+                        // m_sub_mutated is never cleared; leave the decision to the parent
+                        if (!m_substitutions.containsKey(req)) {
+                            m_substitutions.put(req, permutation.permutate(req));
+                        }
+                        return;
+                    }
                     if (!m_sub_mutated.add(req)) {
                         return;
                     }
@@ -225,6 +278,103 @@ public class ResolverImpl implements Resolver
             return next;
         }
 
+        // Returns up to max of the permutations which will be checked next, in the
+        // order getNextPermutation returns them, without the already processed ones.
+        List<Candidates> getPendingPermutations(int max) {
+            List<Candidates> pending = new ArrayList<Candidates>(max);
+            Set<Object> deltas = new HashSet<Object>();
+            for (List<Candidates> permutations : Arrays.asList(m_usesPermutations, m_importPermutations, m_substPermutations))
+            {
+                for (Candidates permutation : permutations)
+                {
+                    if (pending.size() == max)
+                    {
+                        return pending;
+                    }
+                    Object delta = permutation.getDelta();
+                    if (!m_processedDeltas.contains(delta) && deltas.add(delta))
+                    {
+                        pending.add(permutation);
+                    }
+                }
+            }
+            return pending;
+        }
+
+        // Merges the result of the check of the current permutation done by the
+        // specified speculative session as if this session did the check.
+        void merge(ResolveSession speculation) {
+            for (Candidates permutation : speculation.m_usesPermutations)
+            {
+                addPermutation(PermutationType.USES, permutation);
+            }
+            for (Candidates permutation : speculation.m_importPermutations)
+            {
+                addPermutation(PermutationType.IMPORT, permutation);
+            }
+            for (Entry<Requirement, Candidates> substitution : speculation.m_substitutions.entrySet())
+            {
+                if (m_sub_mutated.add(substitution.getKey()))
+                {
+                    addPermutation(PermutationType.SUBSTITUTE, substitution.getValue());
+                }
+            }
+            m_multipleCardCandidates = speculation.m_multipleCardCandidates;
+            m_currentError = speculation.m_currentError;
+            // the package spaces were calculated for this session
+            m_packageSpaceTime += speculation.m_packageSpaceTime;
+        }
+
+        void debug(Logger logger, String message) {
+            log(logger, Logger.LOG_DEBUG, message);
+        }
+
+        // Logs the message, or holds it until the check of a speculative
+        // session is merged so messages of discarded checks are not logged.
+        void log(Logger logger, int level, String message) {
+            if (m_parent != null)
+            {
+                synchronized (m_logMessages)
+                {
+                    m_logMessages.add(new LogMessage(level, message));
+                }
+            }
+            else
+            {
+                logger.log(level, message);
+            }
+        }
+
+        List<LogMessage> getLogMessages() {
+            synchronized (m_logMessages)
+            {
+                return new ArrayList<LogMessage>(m_logMessages);
+            }
+        }
+
+        void addPopulateTime(long time) {
+            m_populateTime += time;
+        }
+
+        void addCheckTime(long time) {
+            m_checkTime += time;
+        }
+
+        void addPackageSpaceTime(long time) {
+            m_packageSpaceTime += time;
+        }
+
+        void countPermutation() {
+            m_permutationCount++;
+        }
+
+        void logStatistics(Logger logger) {
+            // package spaces of speculative checks are calculated in parallel
+            // and may take longer in total than the check of all permutations
+            logger.logResolveStatistics(
+                m_populateTime, m_packageSpaceTime, Math.max(0, m_checkTime - m_packageSpaceTime), m_permutationCount);
+        }
+
         void clearPermutations() {
             m_usesPermutations.clear();
             m_importPermutations.clear();
@@ -338,7 +488,7 @@ public class ResolverImpl implements Resolver
         }
 
         boolean isCancelled() {
-            return m_isCancelled != null;
+            return m_isCancelled != null || (m_parent != null && m_parent.isCancelled());
         }
 
         void checkForCancel() throws ResolutionException {
@@ -358,13 +508,31 @@ public class ResolverImpl implements Resolver
         this.m_logger = logger;
         this.m_parallelism = parallelism;
         this.m_executor = null;
+        this.m_permutationParallelism = 0;
     }
 
     public ResolverImpl(Logger logger, Executor executor)
+    {
+        this(logger, executor, 0);
+    }
+
+    /**
+     * Creates a resolver which checks up to the specified number of the next
+     * candidate permutations on a {@link ForkJoinPool} while the current
+     * permutation is checked. The speculative results are only used once the
+     * search reaches their permutations, so the resolution is the same as the
+     * one found without speculation.
+     * @param logger the logger
+     * @param executor the executor used to calculate package spaces
+     * @param permutationParallelism the number of permutations checked
+     * speculatively, or {@code 0} to check permutations one after the other
+     */
+    public ResolverImpl(Logger logger, Executor executor, int permutationParallelism)
     {
         this.m_logger = logger;
         this.m_parallelism = -1;
         this.m_executor = executor;
+        this.m_permutationParallelism = permutationParallelism;
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc) throws ResolutionException
@@ -417,7 +585,14 @@ public class ResolverImpl implements Resolver
     public Map<Resource, List<Wire>> resolve(ResolveContext rc, Executor executor) throws ResolutionException
     {
         ResolveSession session = ResolveSession.createSession(rc, executor, null, null, null);
-        return doResolve(session);
+        try
+        {
+            return doResolve(session);
+        }
+        finally
+        {
+            session.logStatistics(m_logger);
+        }
     }
 
     private Map<Resource, List<Wire>> doResolve(ResolveSession session) throws ResolutionException {
@@ -428,13 +603,17 @@ public class ResolverImpl implements Resolver
             retry = false;
             try
             {
+                long start = System.nanoTime();
                 getInitialCandidates(session);
+                session.addPopulateTime(System.nanoTime() - start);
                 if (session.getCurrentError() != null) {
                     throw session.getCurrentError().toException();
                 }
 
                 Map<Resource, ResolutionError> faultyResources = new HashMap<Resource, ResolutionError>();
+                start = System.nanoTime();
                 Candidates allCandidates = findValidCandidates(session, faultyResources);
+                session.addCheckTime(System.nanoTime() - start);
                 session.checkForCancel();
 
                 // If there is a resolve exception, then determine if an
@@ -558,60 +737,215 @@ public class ResolverImpl implements Resolver
     private Candidates findValidCandidates(ResolveSession session, Map<Resource, ResolutionError> faultyResources) {
         Candidates allCandidates = null;
         boolean foundFaultyResources = false;
-        do
+        PermutationSpeculator speculator = m_permutationParallelism > 0
+            ? new PermutationSpeculator(session)
+            : null;
+        try
         {
-            allCandidates = session.getNextPermutation();
-            if (allCandidates == null)
+            do
             {
-                break;
-            }
+                allCandidates = session.getNextPermutation();
+                if (allCandidates == null)
+                {
+                    break;
+                }
+                session.countPermutation();
 
 //allCandidates.dump();
 
-            Map<Resource, ResolutionError> currentFaultyResources = new HashMap<Resource, ResolutionError>();
-
-            session.setCurrentError(
-                    checkConsistency(
-                            session,
-                            allCandidates,
-                            currentFaultyResources
-                    )
-            );
+                Map<Resource, ResolutionError> currentFaultyResources;
+                Speculation speculation = null;
+                if (speculator != null)
+                {
+                    speculation = speculator.take(allCandidates);
+                    speculator.speculate();
+                }
 
-            if (!currentFaultyResources.isEmpty())
-            {
-                if (!foundFaultyResources)
+                if (speculation != null)
+                {
+                    // Use the check done while previous permutations were checked.
+                    speculation.join();
+                    allCandidates = speculation.m_candidates;
+                    currentFaultyResources = speculation.m_faultyResources;
+                    session.merge(speculation.m_session);
+                    for (LogMessage message : speculation.m_session.getLogMessages())
+                    {
+                        m_logger.log(message.m_level, message.m_message);
+                    }
+                }
+                else
                 {
-                    foundFaultyResources = true;
-                    faultyResources.putAll(currentFaultyResources);
+                    currentFaultyResources = new HashMap<Resource, ResolutionError>();
+
+                    session.setCurrentError(
+                            checkConsistency(
+                                    session,
+                                    allCandidates,
+                                    currentFaultyResources
+                            )
+                    );
                 }
-                else if (faultyResources.size() > currentFaultyResources.size())
+
+                if (!currentFaultyResources.isEmpty())
                 {
-                    // save the optimal faultyResources which has less
-                    faultyResources.clear();
-                    faultyResources.putAll(currentFaultyResources);
+                    if (!foundFaultyResources)
+                    {
+                        foundFaultyResources = true;
+                        faultyResources.putAll(currentFaultyResources);
+                    }
+                    else if (faultyResources.size() > currentFaultyResources.size())
+                    {
+                        // save the optimal faultyResources which has less
+                        faultyResources.clear();
+                        faultyResources.putAll(currentFaultyResources);
+                    }
                 }
             }
+            while (!session.isCancelled() && session.getCurrentError() != null);
+        }
+        finally
+        {
+            if (speculator != null)
+            {
+                speculator.shutdown();
+            }
         }
-        while (!session.isCancelled() && session.getCurrentError() != null);
 
         return allCandidates;
     }
 
+    // Checks the permutations which are next in line while the current permutation
+    // is checked. Each speculation checks a copy of its permutation with its own
+    // speculative session, so the permutations found by the check can be merged
+    // in the order of the sequential search when the search reaches the permutation.
+    // Already processed permutations are never speculated. Permutations have no
+    // notion of equality, so the speculations are kept by permutation identity.
+    private final class PermutationSpeculator
+    {
+        private final ResolveSession m_session;
+        private final Map<Candidates, Speculation> m_speculations = new LinkedHashMap<Candidates, Speculation>();
+        private ForkJoinPool m_pool;
+
+        PermutationSpeculator(ResolveSession session)
+        {
+            m_session = session;
+        }
+
+        Speculation take(Candidates permutation)
+        {
+            return m_speculations.remove(permutation);
+        }
+
+        void speculate()
+        {
+            List<Candidates> pending = m_session.getPendingPermutations(m_permutationParallelism);
+            for (Candidates permutation : pending)
+            {
+                if (!m_speculations.containsKey(permutation))
+                {
+                    if (m_pool == null)
+                    {
+                        m_pool = System.getSecurityManager() != null ?
+                            AccessController.doPrivileged(
+                                new PrivilegedAction<ForkJoinPool>()
+                                {
+                                    public ForkJoinPool run()
+                                    {
+                                        return new ForkJoinPool(m_permutationParallelism);
+                                    }
+                                }, m_acc)
+                            :
+                                new ForkJoinPool(m_permutationParallelism);
+                    }
+                    Speculation speculation = new Speculation(
+                        m_session.createSpeculativeSession(), permutation.copy());
+                    m_speculations.put(permutation, speculation);
+                    m_pool.execute(speculation);
+                }
+            }
+            // Keep the speculations of permutations pushed back by new permutations
+            // for when the search backtracks; abandon the oldest ones first.
+            for (Iterator<Speculation> it = m_speculations.values().iterator(); m_speculations.size() > 4 * m_permutationParallelism;)
+            {
+                it.next().abandon();
+                it.remove();
+            }
+        }
+
+        void shutdown()
+        {
+            for (Speculation speculation : m_speculations.values())
+            {
+                speculation.abandon();
+            }
+            m_speculations.clear();
+            if (m_pool == null)
+            {
+                return;
+            }
+            if (System.getSecurityManager() != null)
+            {
+                AccessController.doPrivileged(new PrivilegedAction<Void>(){
+                    public Void run() {
+                        m_pool.shutdownNow();
+                        return null;
+                    }
+                }, m_acc);
+            }
+            else
+            {
+                m_pool.shutdownNow();
+            }
+        }
+    }
+
+    private final class Speculation extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final ResolveSession m_session;
+        private final Candidates m_candidates;
+        private final Map<Resource, ResolutionError> m_faultyResources = new HashMap<Resource, ResolutionError>();
+
+        Speculation(ResolveSession session, Candidates candidates)
+        {
+            m_session = session;
+            m_candidates = candidates;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (!m_session.isCancelled())
+            {
+                m_session.setCurrentError(
+                    checkConsistency(m_session, m_candidates, m_faultyResources));
+            }
+        }
+
+        void abandon()
+        {
+            // cancels the speculative session only
+            m_session.run();
+            cancel(false);
+        }
+    }
+
     private ResolutionError checkConsistency(
         ResolveSession session,
         Candidates allCandidates,
         Map<Resource, ResolutionError> currentFaultyResources)
     {
-        ResolutionError rethrow = allCandidates.checkSubstitutes();
+        ResolutionError rethrow = allCandidates.checkSubstitutes(session);
         if (rethrow != null)
         {
             return rethrow;
         }
         Map<Resource, Resource> allhosts = allCandidates.getRootHosts();
         // Calculate package spaces
+        long start = System.nanoTime();
         Map<Resource, Packages> resourcePkgMap =
             calculatePackageSpaces(session, allCandidates, allhosts.values());
+        session.addPackageSpaceTime(System.nanoTime() - start);
         ResolutionError error = null;
         // Check package consistency
         Map<Resource, Object> resultCache =
@@ -1112,7 +1446,7 @@ public class ResolverImpl implements Resolver
                     }
                     newBlames.add(new Blame(blame.m_cap, newBlameReqs));
                 }
-                addUsedBlames(usedPkgBlames, newBlames, matchingCap, resourcePkgMap);
+                addUsedBlames(session, usedPkgBlames, newBlames, matchingCap, resourcePkgMap);
                 for (Blame newBlame : newBlames)
                 {
                     mergeUses(session, current, currentPkgs, newBlame.m_cap, newBlame.m_reqs, matchingCap,
@@ -1128,6 +1462,13 @@ public class ResolverImpl implements Resolver
             Collection<Resource> hosts)
     {
         final EnhancedExecutor executor = new EnhancedExecutor(session.getExecutor());
+        // The package space of a resolved resource does not depend on the
+        // candidates. Unless a dynamic import is resolved only the package
+        // spaces of the resolving resources are computed here; the package
+        // spaces of the resolved resources are computed when they are first
+        // used and are shared with the other permutations.
+        final boolean incremental = !session.isDynamic();
+        final Map<Resource, Wiring> wirings = session.getContext().getWirings();
 
         // Parallel compute wire candidates
         final Map<Resource, List<WireCandidate>> allWireCandidates = new ConcurrentHashMap<Resource, List<WireCandidate>>();
@@ -1147,6 +1488,10 @@ public class ResolverImpl implements Resolver
                     for (WireCandidate w : wireCandidates)
                     {
                         Resource u = w.capability.getResource();
+                        if (incremental && wirings.containsKey(u))
+                        {
+                            continue;
+                        }
                         if (!tasks.containsKey(u))
                         {
                             Computer c = new Computer(u);
@@ -1167,6 +1512,9 @@ public class ResolverImpl implements Resolver
 
         // Parallel get all exported packages
         final OpenHashMap<Resource, Packages> allPackages = new OpenHashMap<Resource, Packages>(allCandidates.getNbResources());
+        final Map<Resource, Packages> resourcePkgMap = incremental
+            ? new PackageSpaces(allPackages, session.getResolvedPackages(), allCandidates)
+            : allPackages;
         for (final Resource resource : allWireCandidates.keySet())
         {
             final Packages packages = new Packages(resource);
@@ -1189,7 +1537,7 @@ public class ResolverImpl implements Resolver
             {
                 public void run()
                 {
-                    getPackages(session, allCandidates, allWireCandidates, allPackages, resource, allPackages.get(resource));
+                    getPackages(session, allCandidates, allWireCandidates, resourcePkgMap, resource, allPackages.get(resource));
                 }
             });
         }
@@ -1205,7 +1553,7 @@ public class ResolverImpl implements Resolver
             final Packages packages = entry.getValue();
             if (!packages.m_requiredPkgs.isEmpty())
             {
-                getPackageSourcesInternal(session, allPackages, resource, packages);
+                getPackageSourcesInternal(session, resourcePkgMap, resource, packages);
             }
         }
         // Next, for all remaining resources, we can compute them
@@ -1220,7 +1568,7 @@ public class ResolverImpl implements Resolver
                 {
                     public void run()
                     {
-                        getPackageSourcesInternal(session, allPackages, resource, packages);
+                        getPackageSourcesInternal(session, resourcePkgMap, resource, packages);
                     }
                 });
             }
@@ -1234,13 +1582,13 @@ public class ResolverImpl implements Resolver
             {
                 public void run()
                 {
-                    computeUses(session, allWireCandidates, allPackages, resource);
+                    computeUses(session, allWireCandidates, resourcePkgMap, resource);
                 }
             });
         }
         executor.await();
 
-        return allPackages;
+        return resourcePkgMap;
     }
 
     private static List<String> parseUses(String s) {
@@ -1280,7 +1628,7 @@ public class ResolverImpl implements Resolver
     }
 
     private void addUsedBlames(
-        ArrayMap<Set<Capability>, UsedBlames> usedBlames, Collection<Blame> blames, Capability matchingCap, Map<Resource, Packages> resourcePkgMap)
+        ResolveSession session, ArrayMap<Set<Capability>, UsedBlames> usedBlames, Collection<Blame> blames, Capability matchingCap, Map<Resource, Packages> resourcePkgMap)
     {
         Set<Capability> usedCaps;
         if (blames.size() == 1)
@@ -1300,7 +1648,7 @@ public class ResolverImpl implements Resolver
             // This most likely is an issue with the resolve context.
             // To avoid total failure we do not add blames if there is
             // no source capabilities
-            m_logger.log(Logger.LOG_INFO,
+            session.log(m_logger, Logger.LOG_INFO,
                 "Package sources are empty for used capability: " + blames);
             return;
         }
@@ -1366,7 +1714,7 @@ public class ResolverImpl implements Resolver
                                 sourceBlame, blame);
                         if (m_logger.isDebugEnabled())
                         {
-                            m_logger.debug(
+                            session.debug(m_logger,
                                     "Candidate permutation failed due to a conflict with a "
                                             + "fragment import; will try another if possible."
                                             + " (" + rethrow.getMessage() + ")");
@@ -1418,7 +1766,7 @@ public class ResolverImpl implements Resolver
                 }
                 if (m_logger.isDebugEnabled())
                 {
-                    m_logger.debug("Candidate permutation failed due to a conflict between "
+                    session.debug(m_logger, "Candidate permutation failed due to a conflict between "
                             + "an export and import; will try another if possible."
                             + " (" + rethrow.getMessage() + ")");
                 }
@@ -1497,7 +1845,7 @@ public class ResolverImpl implements Resolver
 
                     if (m_logger.isDebugEnabled())
                     {
-                        m_logger.debug("Candidate permutation failed due to a conflict between "
+                        session.debug(m_logger, "Candidate permutation failed due to a conflict between "
                                         + "imports; will try another if possible."
                                         + " (" + rethrow.getMessage() + ")"
                         );
@@ -2101,6 +2449,18 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    private static final class LogMessage
+    {
+        public final int m_level;
+        public final String m_message;
+
+        public LogMessage(int level, String message)
+        {
+            m_level = level;
+            m_message = message;
+        }
+    }
+
     private static final class WireCandidate
     {
         public final Requirement requirement;
@@ -2155,6 +2515,137 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    /**
+     * The package spaces of a candidate permutation. The package spaces of the
+     * resolving resources are computed up front; the package spaces of resolved
+     * resources are looked up in the {@link ResolvedPackages} of the session.
+     */
+    private static final class PackageSpaces extends AbstractMap<Resource, Packages>
+    {
+        private final Map<Resource, Packages> m_resolving;
+        private final ResolvedPackages m_resolved;
+        private final Candidates m_allCandidates;
+
+        PackageSpaces(Map<Resource, Packages> resolving, ResolvedPackages resolved, Candidates allCandidates)
+        {
+            m_resolving = resolving;
+            m_resolved = resolved;
+            m_allCandidates = allCandidates;
+        }
+
+        @Override
+        public Packages get(Object key)
+        {
+            Packages packages = m_resolving.get(key);
+            if (packages == null && key instanceof Resource)
+            {
+                packages = m_resolved.get((Resource) key, m_allCandidates);
+            }
+            return packages;
+        }
+
+        @Override
+        public int size()
+        {
+            return m_resolving.size();
+        }
+
+        @Override
+        public Set<Entry<Resource, Packages>> entrySet()
+        {
+            return m_resolving.entrySet();
+        }
+    }
+
+    /**
+     * Holds the package spaces of resolved resources. The package space of a
+     * resolved resource only depends on the wirings, so it is computed the
+     * first time it is used and then shared by all permutations of a session.
+     * A resource is computed together with the resolved bundles it requires,
+     * since those contribute to its package space. The providers of the
+     * packages it imports are only computed if a uses constraint leads to
+     * them, so adding a few resources to a large resolved system only
+     * computes the package spaces actually involved in the delta.
+     */
+    private static final class ResolvedPackages
+    {
+        private final ResolveSession m_session;
+        private final ConcurrentMap<Resource, Packages> m_packages = new ConcurrentHashMap<Resource, Packages>();
+
+        ResolvedPackages(ResolveSession session)
+        {
+            m_session = session;
+        }
+
+        Packages get(Resource resource, Candidates allCandidates)
+        {
+            Packages packages = m_packages.get(resource);
+            return packages != null ? packages : compute(resource, allCandidates);
+        }
+
+        private synchronized Packages compute(Resource resource, Candidates allCandidates)
+        {
+            Packages packages = m_packages.get(resource);
+            if (packages != null)
+            {
+                return packages;
+            }
+            // Collect the resource and the resolved bundles it requires
+            final Map<Resource, List<WireCandidate>> wireCandidates = new LinkedHashMap<Resource, List<WireCandidate>>();
+            Deque<Resource> queue = new ArrayDeque<Resource>();
+            queue.add(resource);
+            Resource current;
+            while ((current = queue.poll()) != null)
+            {
+                if (wireCandidates.containsKey(current) || m_packages.containsKey(current))
+                {
+                    continue;
+                }
+                List<WireCandidate> candidates = getWireCandidates(m_session, allCandidates, current);
+                wireCandidates.put(current, candidates);
+                for (WireCandidate w : candidates)
+                {
+                    if (w.capability.getNamespace().equals(BundleNamespace.BUNDLE_NAMESPACE))
+                    {
+                        queue.add(w.capability.getResource());
+                    }
+                }
+            }
+
+            // Compute the package spaces the same way as for the resolving resources
+            final Map<Resource, Packages> computing = new HashMap<Resource, Packages>(wireCandidates.size() * 4 / 3 + 1);
+            for (Resource r : wireCandidates.keySet())
+            {
+                Packages p = new Packages(r);
+                calculateExportedPackages(m_session, allCandidates, r, p.m_exportedPkgs, p.m_substitePkgs);
+                computing.put(r, p);
+            }
+            Map<Resource, Packages> resourcePkgMap = new PackageSpaces(computing, this, allCandidates);
+            for (Resource r : wireCandidates.keySet())
+            {
+                getPackages(m_session, allCandidates, wireCandidates, resourcePkgMap, r, computing.get(r));
+            }
+            for (Resource r : wireCandidates.keySet())
+            {
+                Packages p = computing.get(r);
+                if (!p.m_requiredPkgs.isEmpty())
+                {
+                    getPackageSourcesInternal(m_session, resourcePkgMap, r, p);
+                }
+            }
+            for (Resource r : wireCandidates.keySet())
+            {
+                Packages p = computing.get(r);
+                if (p.m_sources.isEmpty())
+                {
+                    getPackageSourcesInternal(m_session, resourcePkgMap, r, p);
+                }
+            }
+            m_packages.putAll(computing);
+            return computing.get(resource);
+        }
+    }
+
     private static class Blame
     {
         public final Capability m_cap;
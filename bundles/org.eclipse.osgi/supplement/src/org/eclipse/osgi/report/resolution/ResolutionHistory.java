@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.report.resolution;
+
+import java.util.List;
+
+/**
+ * A service registered by the framework which keeps the
+ * {@link ResolutionStatistics statistics} of its most recent resolve processes.
+ * @since 3.18
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+public interface ResolutionHistory {
+	/**
+	 * Returns the statistics of the most recent resolve processes of the
+	 * framework, the oldest first.
+	 * @return the statistics of the most recent resolve processes
+	 */
+	List<ResolutionStatistics> getStatistics();
+}
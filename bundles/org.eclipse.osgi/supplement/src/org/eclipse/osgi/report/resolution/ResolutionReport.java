@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2022 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -185,4 +185,14 @@ public interface ResolutionReport {
 	 * @return a resolution report message.
 	 */
 	String getResolutionReportMessage(Resource resource);
+
+	/**
+	 * Returns the statistics of the resolve process or {@code null} if
+	 * the statistics are not available.
+	 * @return the statistics of the resolve process or {@code null}
+	 * @since 3.18
+	 */
+	default ResolutionStatistics getStatistics() {
+		return null;
+	}
 }
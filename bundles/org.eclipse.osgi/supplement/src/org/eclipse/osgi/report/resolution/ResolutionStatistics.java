@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2022 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.report.resolution;
+
+import java.util.Map;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.hooks.resolver.ResolverHook;
+import org.osgi.resource.Requirement;
+
+/**
+ * Statistics of a single resolve process.  The statistics tell where the
+ * time of a resolve process was spent in order to find out which resources
+ * make a resolve process expensive.  All times are in nanoseconds.
+ * <p>
+ * The statistics of a resolve process are available from its
+ * {@link ResolutionReport#getStatistics() resolution report}, the statistics
+ * of the most recent resolve processes are available from the
+ * {@link ResolutionHistory} service.
+ * @since 3.18
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+public interface ResolutionStatistics {
+	/**
+	 * Returns the time at which the resolve process started, as returned by
+	 * {@link System#currentTimeMillis()}.
+	 * @return the start time of the resolve process
+	 */
+	long getStartTime();
+
+	/**
+	 * Returns the total time of the resolve process up to the creation of
+	 * its resolution report.
+	 * @return the total time of the resolve process
+	 */
+	long getTotalTime();
+
+	/**
+	 * Returns the time spent finding the providers of requirements.  This
+	 * includes the time spent in {@link ResolverHook#filterMatches(org.osgi.framework.wiring.BundleRequirement, java.util.Collection)}.
+	 * @return the time spent finding providers
+	 * @see #getFindProvidersTimes()
+	 */
+	long getFindProvidersTime();
+
+	/**
+	 * Returns the time spent populating the candidates of the resources to resolve.
+	 * This includes the time spent finding the providers of their requirements.
+	 * @return the time spent populating candidates
+	 */
+	long getPopulateTime();
+
+	/**
+	 * Returns the time spent calculating the package spaces of candidate permutations.
+	 * Permutations may be checked in parallel, so this may be more than the time
+	 * spent checking permutations.
+	 * @return the time spent calculating package spaces
+	 */
+	long getPackageSpaceTime();
+
+	/**
+	 * Returns the time spent checking candidate permutations for consistency,
+	 * not including the time spent calculating package spaces.
+	 * @return the time spent checking consistency
+	 */
+	long getConsistencyCheckTime();
+
+	/**
+	 * Returns the time spent in the {@link ResolverHook resolver hooks}, not
+	 * including the time spent in {@link ResolverHook#end()}.
+	 * @return the time spent in the resolver hooks
+	 */
+	long getHookTime();
+
+	/**
+	 * Returns the number of candidate permutations that were checked.
+	 * @return the number of candidate permutations
+	 */
+	int getPermutationCount();
+
+	/**
+	 * Returns the number of times a batch of resources failed to resolve in
+	 * time, or with the available memory, and its resources were resolved
+	 * one by one instead.
+	 * @return the number of batch retries
+	 */
+	int getBatchRetryCount();
+
+	/**
+	 * Returns the time spent finding the providers of the requirements of each
+	 * resource.  The key describes the resource declaring the {@link Requirement requirements}
+	 * in the same format the framework uses for {@link Bundle#toString()}:
+	 * <code>&lt;symbolic name&gt;_&lt;version&gt; [&lt;bundle id&gt;]</code>.
+	 * The value is the time spent finding their providers.  The resources themselves
+	 * are not kept so that the statistics do not prevent them from being discarded.
+	 * @return the time spent finding providers for each resource
+	 */
+	Map<String, Long> getFindProvidersTimes();
+}